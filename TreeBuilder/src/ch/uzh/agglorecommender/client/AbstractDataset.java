@@ -1,13 +1,18 @@
 package ch.uzh.agglorecommender.client;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.logging.Logger;
 
 import ch.uzh.agglorecommender.datasets.DatasetLocator;
 import ch.uzh.agglorecommender.util.TBLogger;
@@ -23,15 +28,27 @@ import ch.uzh.agglorecommender.util.TBLogger;
  *
  * @param <T> The data type of the ratings in the data set.
  */
-public abstract class AbstractDataset<T extends Number> implements IDataset<T> {
+public abstract class AbstractDataset<T extends Number> implements IStreamingDataset<T> {
 	
 	/**
 	 * A list of all user-content-rating combinations obtained from the input set.
 	 */
 	private List<IDatasetItem<T>> datasetItems = new ArrayList<IDatasetItem<T>>();
 	
+	/**
+	 * The ratings of the input set if it was parsed by {@link #parseColumns(InputStream)},
+	 * the data set items are created from the columns on iteration.
+	 */
+	private RatingColumns columns;
+	
 	private List<IMetasetItem> metasetItems = new ArrayList<IMetasetItem>();
 	
+	/**
+	 * The meta data of the input set if it consists of {@link MetaDatasetItem}s,
+	 * the data set items are created from the store on iteration.
+	 */
+	private MetadataStore metadata;
+	
 	/**
 	 * The normalizer of this data set.
 	 */
@@ -45,6 +62,9 @@ public abstract class AbstractDataset<T extends Number> implements IDataset<T> {
 	/**
 	 * Instantiates a new data set and parses the data from the specified or 
 	 * the default input source.
+	 * <br>
+	 * If the input source is a file, the parsed data are stored in a {@link DatasetCache}
+	 * next to it, and later instances load the cache instead of parsing the file again.
 	 * 
 	 * @param datasetFile the File to load. If {@code null} the default input source is loaded.
 	 */
@@ -52,6 +72,11 @@ public abstract class AbstractDataset<T extends Number> implements IDataset<T> {
 		
 		this.normalizer = normalizer;
 		
+		File sourceFile = datasetFile != null ? datasetFile : DatasetLocator.getDatasetFile(getPathToDefaultInputFile(split));
+		if (sourceFile != null && loadCache(sourceFile)) {
+			return;
+		}
+		
 		try {
 			if (datasetFile == null) {
 				this.input = DatasetLocator.getDataset(getPathToDefaultInputFile(split));
@@ -65,11 +90,161 @@ public abstract class AbstractDataset<T extends Number> implements IDataset<T> {
 			System.exit(-1);
 		}
 		parseDataset(getInput());
+		createMetadata();
+		if (sourceFile != null) {
+			storeCache(sourceFile);
+		}
+	}
+	
+	/**
+	 * Moves parsed meta items into a {@link MetadataStore}, thus the meta data are
+	 * stored in one format on the heap and in the cache.
+	 */
+	private void createMetadata() {
+		if (columns != null || datasetItems.isEmpty()) {
+			return;
+		}
+		for (IDatasetItem<T> item : datasetItems) {
+			if (! (item instanceof MetaDatasetItem)) {
+				return;
+			}
+		}
+		metadata = MetadataStore.create(datasetItems.iterator());
+		datasetItems = new ArrayList<IDatasetItem<T>>();
+	}
+	
+	/**
+	 * Gets the meta data of this data set.
+	 * 
+	 * @return the meta data or {@code null} if this data set doesn't consist of meta items.
+	 */
+	MetadataStore getMetadata() {
+		return metadata;
+	}
+	
+	/**
+	 * Loads the data of the passed file from its cache.
+	 * 
+	 * @return true if a valid cache was loaded.
+	 */
+	private boolean loadCache(File sourceFile) {
+		DatasetCache cache = DatasetCache.load(sourceFile, getClass());
+		if (cache == null) {
+			return false;
+		}
+		columns = cache.getColumns();
+		metadata = cache.getMetadata();
+		return true;
+	}
+	
+	/**
+	 * Stores the parsed data in the cache of the passed file. Only ratings parsed
+	 * into columns and meta data can be cached, other data sets are not cached.
+	 */
+	private void storeCache(File sourceFile) {
+		if (columns == null && metadata == null) {
+			return;
+		}
+		DatasetCache.store(sourceFile, getClass(), columns, metadata);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * The items of meta data are created from the {@link MetadataStore}, their user id
+	 * and their content id are the data set id of the record, as in the parsed meta sets.
+	 */
 	@Override
 	public Iterator<IDatasetItem<T>> iterateOverDatasetItems(){
-		return datasetItems.iterator();
+		if (metadata != null) {
+			return iterateOverMetadata();
+		}
+		if (columns == null) {
+			return datasetItems.iterator();
+		}
+		return new Iterator<IDatasetItem<T>>() {
+			
+			private int index = 0;
+
+			@Override
+			public boolean hasNext() {
+				return index < columns.size();
+			}
+
+			@Override
+			public IDatasetItem<T> next() {
+				if (! hasNext()) {
+					throw new NoSuchElementException();
+				}
+				IDatasetItem<T> item = new SimpleDatasetItem<T>(
+						createRating(columns.getRating(index)), columns.getUserId(index), columns.getContentId(index));
+				index++;
+				return item;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private Iterator<IDatasetItem<T>> iterateOverMetadata() {
+		return new Iterator<IDatasetItem<T>>() {
+			
+			private int index = 0;
+
+			@Override
+			public boolean hasNext() {
+				return index < metadata.size();
+			}
+
+			@Override
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			public IDatasetItem<T> next() {
+				if (! hasNext()) {
+					throw new NoSuchElementException();
+				}
+				int datasetId = metadata.getDatasetId(index);
+				// meta data sets store their items as raw type, see GrouplensDatasetMeta
+				IDatasetItem item = new MetaDatasetItem(metadata.getRecord(index), datasetId, datasetId);
+				index++;
+				return item;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * The ratings parsed by {@link #parseColumns(InputStream)} are read from the columns,
+	 * the ratings of other data sets from their data set items.
+	 */
+	@Override
+	public IRatingCursor openRatingCursor() {
+		if (columns == null) {
+			return new ItemRatingCursor(this);
+		}
+		return new IRatingCursor() {
+			
+			private int index = 0;
+			
+			@Override
+			public boolean nextBatch(RatingBatch batch) {
+				batch.clear();
+				while (! batch.isFull() && index < columns.size()) {
+					batch.add(columns.getUserId(index), columns.getContentId(index),
+							normalizeColumnRating(columns.getRating(index)));
+					index++;
+				}
+				return batch.size() > 0;
+			}
+		};
 	}
 
 	@Override
@@ -99,26 +274,63 @@ public abstract class AbstractDataset<T extends Number> implements IDataset<T> {
 	 */
 	void parseDataset(InputStream input) {
 		try {
-			int in = input.read();
-			List<Character> charLi = new ArrayList<Character>();
-			while (in != -1) {
-				charLi.add((char)in);
-				if (in == (int)'\n') {
-					StringBuilder builder = new StringBuilder(charLi.size());
-					for(Character ch: charLi)
-					{
-						builder.append(ch);
-					}
-					parseLine(builder.toString());
-					charLi.clear();
-				}
-				in = input.read();
+			// each byte is one character, as in the original input format
+			BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.ISO_8859_1), 1 << 16);
+			String line;
+			while ((line = reader.readLine()) != null) {
+				parseLine(line + "\n");
 			}
+			reader.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 	
+	/**
+	 * Parses an input stream of numeric user id, content id, rating
+	 * and time stamp lines into {@link RatingColumns}.
+	 * <br>
+	 * Subclasses with such an input format call this method from {@code parseDataset}
+	 * instead of parsing each line to a String, and implement {@link #createRating(float)}.
+	 * 
+	 * @param input the stream of the input source, is closed.
+	 */
+	void parseColumns(InputStream input) {
+		try {
+			columns = RatingColumns.load(input);
+		} catch (IOException e) {
+			Logger log = TBLogger.getLogger(getClass().getName());
+			log.severe("IOException on parsing the ratings of the data set: " + e.getMessage());
+			System.exit(-1);
+		}
+	}
+	
+	/**
+	 * Normalizes a rating parsed by {@link #parseColumns(InputStream)}.
+	 * By default the rating is converted by {@link #createRating(float)} and normalized
+	 * by the normalizer of this data set, subclasses may avoid the boxing.
+	 * 
+	 * @param rating the rating as parsed from the input
+	 * @return the normalized rating
+	 */
+	double normalizeColumnRating(float rating) {
+		return normalizer.normalizeRating(createRating(rating));
+	}
+	
+	/**
+	 * Converts a parsed rating to the data type of the data set.
+	 * Must be overwritten by subclasses which call {@link #parseColumns(InputStream)}.
+	 * 
+	 * @param rating the rating as parsed from the input
+	 * @return the raw rating
+	 */
+	T createRating(float rating) {
+		Logger log = TBLogger.getLogger(getClass().getName());
+		log.severe("Err: the ratings of " + getClass().getSimpleName() + " can't be created from columns");
+		System.exit(-1);
+		return null;
+	}
+	
 	/**
 	 * Extracts {@code IDataSetItem}s from a single
 	 * line of the input stream and adds the items
@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.util.UUID;
 
 import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treesearch.MergeSelectionStatistics;
 
 import com.google.common.collect.ImmutableMap;
 
@@ -51,6 +52,16 @@ public class ClusterResult implements Serializable {
 	 * The id of the tree builder. Can be used as run id.
 	 */
 	private final UUID treeBuilderId;
+	
+	/**
+	 * The statistics of the merge selection of the user tree.
+	 */
+	private final MergeSelectionStatistics userMergeStatistics;
+	
+	/**
+	 * The statistics of the merge selection of the content tree.
+	 */
+	private final MergeSelectionStatistics contentMergeStatistics;
 
 	/**
 	 * Instantiates a new immutable cluster result.
@@ -66,11 +77,33 @@ public class ClusterResult implements Serializable {
 			ImmutableMap<Integer, INode> contentTreeLeavesMap,
 			INode userTreeRoot, INode contentTreeRoot, UUID treeBuilderId) {
 		
+		this(userTreeLeavesMap, contentTreeLeavesMap, userTreeRoot, contentTreeRoot, treeBuilderId, null, null);
+	}
+
+	/**
+	 * Instantiates a new immutable cluster result with the statistics of the merge selection.
+	 * @param userTreeLeavesMap maps the user id's as
+	 * in data set to the corresponding node.
+	 * @param contentTreeLeavesMap maps the content item id's as
+	 * in data set to the corresponding node.
+	 * @param userTreeRoot root of the user tree
+	 * @param contentTreeRoot root of the content tree
+	 * @param treeBuilderId unique id of the tree builder / run.
+	 * @param userMergeStatistics statistics of the merge selection of the user tree
+	 * @param contentMergeStatistics statistics of the merge selection of the content tree
+	 */
+	public ClusterResult(ImmutableMap<Integer, INode> userTreeLeavesMap,
+			ImmutableMap<Integer, INode> contentTreeLeavesMap,
+			INode userTreeRoot, INode contentTreeRoot, UUID treeBuilderId,
+			MergeSelectionStatistics userMergeStatistics, MergeSelectionStatistics contentMergeStatistics) {
+		
 		this.userTreeLeavesMap = userTreeLeavesMap;
 		this.contentTreeLeavesMap = contentTreeLeavesMap;
 		this.userTreeRoot = userTreeRoot;
 		this.contentTreeRoot = contentTreeRoot;
 		this.treeBuilderId = treeBuilderId;
+		this.userMergeStatistics = userMergeStatistics;
+		this.contentMergeStatistics = contentMergeStatistics;
 	}
 
 	/**
@@ -121,4 +154,26 @@ public class ClusterResult implements Serializable {
 		return treeBuilderId;
 	}
 	
+	/**
+	 * Gets the statistics of the merge selection of the user tree,
+	 * e.g. the number of divergences from the greedy merge order.
+	 * 
+	 * @return the statistics of the user tree. Is null if clustering has not yet
+	 * converged.
+	 */
+	public MergeSelectionStatistics getUserMergeStatistics() {
+		return userMergeStatistics;
+	}
+	
+	/**
+	 * Gets the statistics of the merge selection of the content tree,
+	 * e.g. the number of divergences from the greedy merge order.
+	 * 
+	 * @return the statistics of the content tree. Is null if clustering has not yet
+	 * converged.
+	 */
+	public MergeSelectionStatistics getContentMergeStatistics() {
+		return contentMergeStatistics;
+	}
+	
 }
@@ -6,13 +6,22 @@ import ch.uzh.agglorecommender.client.jcommander.AlgoConverterValidator;
 import ch.uzh.agglorecommender.client.jcommander.DatasetValidatorConverter;
 import ch.uzh.agglorecommender.client.jcommander.FileReadValidatorConverter;
 import ch.uzh.agglorecommender.client.jcommander.FileWriteValidator;
+import ch.uzh.agglorecommender.client.jcommander.MergeSelectionConverterValidator;
 import ch.uzh.agglorecommender.client.jcommander.NodeUpdaterValidatorConverter;
+import ch.uzh.agglorecommender.client.jcommander.ShardPartitioningConverterValidator;
 import ch.uzh.agglorecommender.clusterer.treecomponent.ClassitTreeComponentFactory;
 import ch.uzh.agglorecommender.clusterer.treecomponent.TreeComponentFactory;
+import ch.uzh.agglorecommender.clusterer.treesearch.BeamSubsetMergeSelector;
+import ch.uzh.agglorecommender.clusterer.treesearch.EMergeSelection;
+import ch.uzh.agglorecommender.clusterer.treepartition.EShardPartitioning;
+import ch.uzh.agglorecommender.clusterer.treepartition.ShardCoordinator;
+import ch.uzh.agglorecommender.clusterer.treesearch.MinHashCandidateMaxCUSearcher;
 import ch.uzh.agglorecommender.clusterer.treeupdate.INodeUpdater;
 import ch.uzh.agglorecommender.clusterer.treeupdate.SimpleNodeUpdater;
 
 import com.beust.jcommander.Parameter;
+import com.beust.jcommander.converters.FileConverter;
+import com.beust.jcommander.validators.PositiveInteger;
 
 public class CommandLineArgs {
 	
@@ -84,5 +93,104 @@ public class CommandLineArgs {
 			arity = 1)
 	protected INodeUpdater nodeUpdater = new SimpleNodeUpdater();
 	
+	@Parameter(names = { "-mergeSelection", "-ms" },
+			description = "Strategy to select the merge of each cycle. Allowed Values: Greedy, NearestNeighbourChain or GreedySubsets. NearestNeighbourChain doesn't store all combinations but may diverge from the greedy order. GreedySubsets merges up to maxSubsetSize nodes found by a beam search. Default: Greedy",
+			validateWith = MergeSelectionConverterValidator.class,
+			converter = MergeSelectionConverterValidator.class,
+			arity = 1)
+	protected EMergeSelection mergeSelection = EMergeSelection.Greedy;
+	
+	@Parameter(names = { "-maxSubsetSize", "-mss" },
+			description = "Max number of nodes merged into one new node. Only used by GreedySubsets merge selection. Default: 3",
+			validateWith = PositiveInteger.class,
+			arity = 1)
+	protected int maxSubsetSize = BeamSubsetMergeSelector.DEFAULT_MAX_SUBSET_SIZE;
+	
+	@Parameter(names = { "-mergesPerBarrier", "-mpb" },
+			description = "Number of merges per tree between two synchronisation barriers. If greater than 0 the user and content trees are clustered concurrently and exchange their new nodes at the barriers, if 0 they are clustered alternately. Default: 0",
+			validateWith = PositiveInteger.class,
+			arity = 1)
+	protected int mergesPerBarrier = 0;
+	
+	@Parameter(names = { "-mergesPerCycle", "-mpc" },
+			description = "Max number of disjoint merges per tree and cycle. The new nodes of a cycle are created in parallel and the other tree is updated once per cycle. Only Greedy merge selection selects more than one merge. Default: 1",
+			validateWith = PositiveInteger.class,
+			arity = 1)
+	protected int mergesPerCycle = 1;
+	
+	@Parameter(names = { "-mergeTolerance", "-mt" },
+			description = "Max difference of the category utility of a merge to the best merge of its cycle if more than one merge per cycle is allowed. Default: 0.0",
+			arity = 1)
+	protected double mergeTolerance = 0.0;
+	
+	@Parameter(names = { "-cobwebRatings", "-cr" },
+			description = "If set the Cobweb category utility includes the ratings of a node, else only its meta data. Only used by the Cobweb tree component factory.",
+			arity = 0)
+	protected boolean cobwebRatings = false;
+	
+	@Parameter(names = { "-userLshBands", "-lshb" },
+			description = "Number of MinHash LSH bands used to select the candidate merges of the user tree. Only combinations of users in a common bucket are evaluated, the others are deferred to periodic full scans. Only used by Greedy merge selection. 0 evaluates all combinations. Default: 0",
+			validateWith = PositiveInteger.class,
+			arity = 1)
+	protected int userLshBands = 0;
+	
+	@Parameter(names = { "-userLshRows", "-lshr" },
+			description = "Number of MinHash values per LSH band of the user tree. Bands times rows must not exceed 128. Default: 4",
+			validateWith = PositiveInteger.class,
+			arity = 1)
+	protected int userLshRows = MinHashCandidateMaxCUSearcher.DEFAULT_ROWS;
+	
+	@Parameter(names = { "-userLshFullScanInterval", "-lshf" },
+			description = "Number of evaluations of the user tree between two full scans of all deferred combinations. 0 never scans all combinations. Default: 100",
+			validateWith = PositiveInteger.class,
+			arity = 1)
+	protected int userLshFullScanInterval = MinHashCandidateMaxCUSearcher.DEFAULT_FULL_SCAN_INTERVAL;
+	
+	@Parameter(names = { "-shards", "-sh" },
+			description = "Number of shards of the user leaves. If greater than 1 each shard is clustered to sub-roots in a separate worker process and a final pass clusters the sub-roots and the content tree. Default: 0",
+			validateWith = PositiveInteger.class,
+			arity = 1)
+	protected int shards = 0;
+	
+	@Parameter(names = { "-subRootsPerShard", "-srps" },
+			description = "Number of sub-roots to which the users of a shard are clustered. Default: 100",
+			validateWith = PositiveInteger.class,
+			arity = 1)
+	protected int subRootsPerShard = 100;
+	
+	@Parameter(names = { "-shardPartitioning", "-shp" },
+			description = "Strategy to split the user leaves into shards. Allowed Values: Random or MinHash. MinHash assigns users with similar rated content to the same shard. Default: Random",
+			validateWith = ShardPartitioningConverterValidator.class,
+			converter = ShardPartitioningConverterValidator.class,
+			arity = 1)
+	protected EShardPartitioning shardPartitioning = EShardPartitioning.Random;
+	
+	@Parameter(names = { "-shardProcesses", "-shpr" },
+			description = "Max number of concurrent worker processes. 0 starts the workers of all shards at once. Default: 0",
+			validateWith = PositiveInteger.class,
+			arity = 1)
+	protected int shardProcesses = 0;
+	
+	@Parameter(names = { "-shardDirectory", "-shd" },
+			description = "Directory of the user, result and log files of the shards. A temporary directory is used if not specified. Example: /path/to/shards",
+			converter = FileConverter.class,
+			arity = 1)
+	protected File shardDirectory = null;
+	
+	@Parameter(names = { ShardCoordinator.USERS_OPTION },
+			description = "File of the users of the shard to cluster. Set by the coordinator of the shards, the process runs as worker.",
+			validateWith = FileReadValidatorConverter.class,
+			converter = FileReadValidatorConverter.class,
+			hidden = true,
+			arity = 1)
+	protected File shardUsersFile = null;
+	
+	@Parameter(names = { ShardCoordinator.RESULT_OPTION },
+			description = "File of the sub-roots of the shard to cluster. Set by the coordinator of the shards.",
+			converter = FileConverter.class,
+			hidden = true,
+			arity = 1)
+	protected File shardResultFile = null;
+	
 
 }
\ No newline at end of file
@@ -0,0 +1,288 @@
+package ch.uzh.agglorecommender.client;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import ch.uzh.agglorecommender.util.TBLogger;
+
+/**
+ *
+ * A binary cache of the parsed contents of a data set file, stored next to the file.
+ * <br>
+ * The cache is written when a data set file is parsed for the first time and memory mapped
+ * on later loads, the rating columns are read directly from the mapping. It is valid as long
+ * as the source file has the length and modification time of the parsed file. If only the
+ * modification time differs, the checksum of the source file decides and the modification
+ * time in the cache is updated, thus the checksum is calculated once per change. The format is:
+ * <br>
+ * <pre>
+ *  int magic, int version, int number of UTF-8 bytes and the bytes of the data set class name,
+ *  long source length, long source modification time, long source CRC32,
+ *  int number of ratings, int user ids[], int content ids[], float ratings[], long time stamps[]
+ * </pre>
+ * <br>
+ * The number of ratings of a meta set is -1 and is followed by its {@link MetadataStore},
+ * which is read directly from the mapping as well.
+ *
+ */
+public final class DatasetCache {
+
+	/**
+	 * Identifies a file of this format.
+	 */
+	private static final int MAGIC = 0x54424443;
+
+	/**
+	 * The version of the format, caches of other versions are replaced.
+	 */
+	private static final int VERSION = 2;
+
+	private static final String SUFFIX = ".cache";
+
+	/**
+	 * The ratings of the data set, {@code null} if the data set consists of meta items.
+	 */
+	private final RatingColumns columns;
+
+	/**
+	 * The meta data of the data set, {@code null} if the data set consists of ratings.
+	 */
+	private final MetadataStore metadata;
+
+	private DatasetCache(RatingColumns columns, MetadataStore metadata) {
+		this.columns = columns;
+		this.metadata = metadata;
+	}
+
+	/**
+	 * Gets the parsed ratings.
+	 *
+	 * @return the ratings or {@code null} if the data set consists of meta items.
+	 */
+	public RatingColumns getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Gets the parsed meta data.
+	 *
+	 * @return the meta data or {@code null} if the data set consists of ratings.
+	 */
+	public MetadataStore getMetadata() {
+		return metadata;
+	}
+
+	/**
+	 * Gets the cache file of the passed source file. The file name contains the data set
+	 * class, different parsers of the same source file don't replace each others caches.
+	 *
+	 * @param source the data set file
+	 * @param datasetType the class which parses the source file
+	 * @return the cache file in the directory of the source file
+	 */
+	static File getCacheFile(File source, Class<?> datasetType) {
+		return new File(source.getAbsoluteFile().getParentFile(),
+				source.getName() + "." + datasetType.getSimpleName() + SUFFIX);
+	}
+
+	/**
+	 * Loads the cache of the passed source file.
+	 *
+	 * @param source the data set file
+	 * @param datasetType the class which parses the source file
+	 * @return the cached contents or {@code null} if there is no valid cache.
+	 */
+	public static DatasetCache load(File source, Class<?> datasetType) {
+		File cacheFile = getCacheFile(source, datasetType);
+		if (! cacheFile.isFile()) return null;
+		Logger log = TBLogger.getLogger(DatasetCache.class.getName());
+		try {
+			RandomAccessFile file = new RandomAccessFile(cacheFile, "r");
+			ByteBuffer buffer;
+			try {
+				buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+			} finally {
+				file.close();
+			}
+
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+					|| ! datasetType.getName().equals(readString(buffer))) {
+				log.info("Dataset cache " + cacheFile + " has another format, it is replaced");
+				return null;
+			}
+			long length = buffer.getLong();
+			int lastModifiedPosition = buffer.position();
+			long lastModified = buffer.getLong();
+			long checksum = buffer.getLong();
+			if (length != source.length()) {
+				log.info("Dataset cache " + cacheFile + " is outdated, it is replaced");
+				return null;
+			}
+			if (lastModified != source.lastModified()) {
+				if (checksum != checksum(source)) {
+					log.info("Dataset cache " + cacheFile + " is outdated, it is replaced");
+					return null;
+				}
+				updateLastModified(cacheFile, lastModifiedPosition, source.lastModified());
+			}
+
+			RatingColumns columns = null;
+			MetadataStore metadata = null;
+			int numberOfRatings = buffer.getInt();
+			if (numberOfRatings < 0) {
+				metadata = MetadataStore.map(buffer);
+			} else {
+				// the columns are views of the mapping, the mapping lives as long as they are referenced
+				columns = new RatingColumns(
+						next(buffer, 4L * numberOfRatings).asIntBuffer(),
+						next(buffer, 4L * numberOfRatings).asIntBuffer(),
+						next(buffer, 4L * numberOfRatings).asFloatBuffer(),
+						next(buffer, 8L * numberOfRatings).asLongBuffer());
+			}
+			log.info("Dataset " + source + " loaded from cache " + cacheFile);
+			return new DatasetCache(columns, metadata);
+		} catch (IOException | RuntimeException e) {
+			log.info("Dataset cache " + cacheFile + " can't be read, it is replaced: " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the parsed contents of the passed source file. The cache is an optimization,
+	 * if it can't be written, e.g. in a read-only directory, only a warning is logged.
+	 *
+	 * @param source the data set file
+	 * @param datasetType the class which parsed the source file
+	 * @param columns the parsed ratings, {@code null} if the data set consists of meta data.
+	 * @param metadata the parsed meta data, only stored if {@code columns} is {@code null}.
+	 */
+	public static void store(File source, Class<?> datasetType, RatingColumns columns, MetadataStore metadata) {
+		File cacheFile = getCacheFile(source, datasetType);
+		Logger log = TBLogger.getLogger(DatasetCache.class.getName());
+		File tempFile = null;
+		long lastModified = source.lastModified();
+		try {
+			// concurrent processes loading the same data set must not read a partial cache
+			tempFile = File.createTempFile(cacheFile.getName(), ".tmp", cacheFile.getParentFile());
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				writeString(out, datasetType.getName());
+				out.writeLong(source.length());
+				out.writeLong(lastModified);
+				out.writeLong(checksum(source));
+
+				if (columns == null) {
+					out.writeInt(-1);
+					metadata.write(out);
+				} else {
+					int size = columns.size();
+					out.writeInt(size);
+					for (int i = 0; i < size; i++) out.writeInt(columns.getUserId(i));
+					for (int i = 0; i < size; i++) out.writeInt(columns.getContentId(i));
+					for (int i = 0; i < size; i++) out.writeFloat(columns.getRating(i));
+					for (int i = 0; i < size; i++) out.writeLong(columns.getTimestamp(i));
+				}
+			} finally {
+				out.close();
+			}
+			if (source.lastModified() != lastModified) {
+				throw new IOException("source file changed while caching");
+			}
+
+			try {
+				Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			log.info("Dataset " + source + " cached in " + cacheFile);
+		} catch (IOException e) {
+			log.warning("Dataset cache " + cacheFile + " can't be written: " + e.getMessage());
+			if (tempFile != null) tempFile.delete();
+		}
+	}
+
+	/**
+	 * Gets the next {@code length} bytes of the passed buffer as a new buffer
+	 * and advances the position of the passed buffer behind them.
+	 *
+	 * @throws BufferUnderflowException if the buffer has less than {@code length} remaining bytes,
+	 * e.g. if the number of ratings of a truncated cache doesn't fit into it.
+	 */
+	private static ByteBuffer next(ByteBuffer buffer, long length) {
+		if (length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		ByteBuffer bytes = buffer.slice();
+		bytes.limit((int) length);
+		buffer.position(buffer.position() + (int) length);
+		return bytes;
+	}
+
+	/**
+	 * Writes the modification time of an unchanged source file into its cache,
+	 * thus the checksum of the source file is not calculated again on the next load.
+	 * If the cache is read-only the checksum is calculated on each load.
+	 */
+	private static void updateLastModified(File cacheFile, int position, long lastModified) {
+		Logger log = TBLogger.getLogger(DatasetCache.class.getName());
+		try {
+			RandomAccessFile file = new RandomAccessFile(cacheFile, "rw");
+			try {
+				file.seek(position);
+				file.writeLong(lastModified);
+			} finally {
+				file.close();
+			}
+		} catch (IOException e) {
+			log.info("Modification time of dataset cache " + cacheFile + " can't be updated: " + e.getMessage());
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Calculates the CRC32 checksum of the contents of the passed file.
+	 */
+	private static long checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[1 << 16];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				crc.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return crc.getValue();
+	}
+
+}
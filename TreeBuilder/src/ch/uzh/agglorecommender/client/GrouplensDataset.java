@@ -1,6 +1,7 @@
 package ch.uzh.agglorecommender.client;
 
 import java.io.File;
+import java.io.InputStream;
 import java.util.logging.Logger;
 
 import ch.uzh.agglorecommender.util.TBLogger;
@@ -44,6 +45,25 @@ public class GrouplensDataset extends AbstractDataset<Integer> {
 		
 	}
 	
+	/**
+	 * Parses the tab separated user id, content id, rating and time stamp
+	 * lines directly into primitive columns.
+	 */
+	@Override
+	void parseDataset(InputStream input) {
+		parseColumns(input);
+	}
+	
+	@Override
+	Integer createRating(float rating) {
+		return Integer.valueOf(Math.round(rating));
+	}
+	
+	@Override
+	double normalizeColumnRating(float rating) {
+		return ((IntegerNormalizer) getNormalizer()).normalize(Math.round(rating));
+	}
+	
 	/**
 	 * Splits a single line of the input stream into tokens.
 	 * The tokens represent user id, content id and ratings.
@@ -0,0 +1,19 @@
+package ch.uzh.agglorecommender.client;
+
+/**
+ *
+ * A forward-only cursor over the ratings of a data set,
+ * which passes the ratings in batches of primitive values.
+ *
+ */
+public interface IRatingCursor {
+
+	/**
+	 * Replaces the ratings of the passed batch by the next ratings of the data set.
+	 *
+	 * @param batch the batch to fill, is cleared.
+	 * @return false if the data set has no more ratings, the batch is empty in this case.
+	 */
+	public boolean nextBatch(RatingBatch batch);
+
+}
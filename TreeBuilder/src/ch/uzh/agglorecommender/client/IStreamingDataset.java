@@ -0,0 +1,20 @@
+package ch.uzh.agglorecommender.client;
+
+/**
+ *
+ * A data set whose ratings can be read without creating an
+ * {@link IDatasetItem} object per rating.
+ *
+ * @param <T> the data type of the rating
+ */
+public interface IStreamingDataset<T extends Number> extends IDataset<T> {
+
+	/**
+	 * Opens a new cursor over all ratings of the data set. The ratings
+	 * are normalized by the normalizer of the data set.
+	 *
+	 * @return a cursor positioned before the first rating
+	 */
+	public IRatingCursor openRatingCursor();
+
+}
@@ -1,12 +1,16 @@
 package ch.uzh.agglorecommender.client;
 
-import java.util.ArrayList;
+import gnu.trove.impl.Constants;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Logger;
 
 import ch.uzh.agglorecommender.clusterer.treecomponent.ClassitTreeComponentFactory;
 import ch.uzh.agglorecommender.clusterer.treecomponent.ENodeType;
@@ -14,6 +18,8 @@ import ch.uzh.agglorecommender.clusterer.treecomponent.IAttribute;
 import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
 import ch.uzh.agglorecommender.clusterer.treecomponent.Node;
 import ch.uzh.agglorecommender.clusterer.treecomponent.TreeComponentFactory;
+import ch.uzh.agglorecommender.util.TBForkJoinPool;
+import ch.uzh.agglorecommender.util.TBLogger;
 
 import com.google.common.collect.ImmutableMap;
 
@@ -25,6 +31,17 @@ import com.google.common.collect.ImmutableMap;
  */
 public class InitialNodesCreator {
 	
+	/**
+	 * Ranges with at most this number of leaves are created without further splitting.
+	 */
+	private static final int SEQUENTIAL_THRESHOLD = 64;
+	
+	/**
+	 * A range is split only if the current worker has at most this number of queued tasks,
+	 * which are not yet stolen by other workers.
+	 */
+	private static final int MAX_SURPLUS_QUEUED_TASKS = 2;
+	
 	TreeComponentFactory metaTreeComponentFactory = ClassitTreeComponentFactory.getInstance();
 
 	/**
@@ -42,6 +59,13 @@ public class InitialNodesCreator {
 	 * and creates the leaf nodes of the passed data set.
 	 * This object is needed to start a new clustering process or
 	 * as the input to the recommendation generation engine.
+	 * <br>
+	 * The ratings are read twice with an {@link IRatingCursor}, the first pass counts
+	 * the ratings of each user and content, the second pass fills them into primitive
+	 * columns. No data set items are retained, and the columns of each node type are
+	 * released as soon as the attributes of its leaves are created. The attributes
+	 * of the leaves are created concurrently in the shared {@link ForkJoinPool}
+	 * of the {@link TBForkJoinPool}.
 	 * 
 	 * @param dataset the data set which shall be clustered (training) 
 	 * or for which recommendations shall be generated (test).
@@ -56,77 +80,291 @@ public class InitialNodesCreator {
 			IDataset<?> userMetaset, 
 			TreeComponentFactory contentTreeComponentFactory,
 			TreeComponentFactory userTreeComponentFactory) {
+		
+		this(dataset, MetadataStore.of(contentMetaset), MetadataStore.of(userMetaset),
+				contentTreeComponentFactory, userTreeComponentFactory);
+	}
+	
+	/**
+	 * Instantiates a new InitialNodesCreator object with the meta data
+	 * of the content and the users in stores, e.g. mapped from files.
+	 * 
+	 * @param dataset the data set which shall be clustered (training) 
+	 * or for which recommendations shall be generated (test).
+	 * @param contentMetadata the meta data of the content
+	 * @param userMetadata the meta data of the users
+	 * @param contentTreeComponentFactory the initially specified factory
+	 * @param userTreeComponentFactory the initially specified factory
+	 */
+	public InitialNodesCreator(IDataset<?> dataset,
+			MetadataStore contentMetadata, 
+			MetadataStore userMetadata, 
+			TreeComponentFactory contentTreeComponentFactory,
+			TreeComponentFactory userTreeComponentFactory) {
 
 		// Create nominal nodes for users & content
-		List<INode> userNominalNodes = createNominalNodes(userMetaset);
-		List<INode> contentNominalNodes = createNominalNodes(contentMetaset);
-		
-		// Sort data items according to user id and content id
-		Map<Integer, List<IDatasetItem<?>>> userDatasetItems = new HashMap<Integer, List<IDatasetItem<?>>>();
-		Map<Integer, List<IDatasetItem<?>>> contentDatasetItems = new HashMap<Integer, List<IDatasetItem<?>>>();
-		
-		Iterator<?> it = dataset.iterateOverDatasetItems();
-		while(it.hasNext()) {
-			IDatasetItem<?> datasetItem = (IDatasetItem<?>) it.next();
-			
-			// Add every datasetItem to the user map
-			if (userDatasetItems.containsKey(datasetItem.getUserId())) {
-				userDatasetItems.get(datasetItem.getUserId()).add(datasetItem);
-			} else {
-				List<IDatasetItem<?>> li = new ArrayList<IDatasetItem<?>>();
-				li.add(datasetItem);
-				userDatasetItems.put(datasetItem.getUserId(), li);
+		List<INode> userNominalNodes = createNominalNodes(userMetadata);
+		List<INode> contentNominalNodes = createNominalNodes(contentMetadata);
+		
+		// First pass: count the ratings of each user and content
+		RatingBatch batch = new RatingBatch(RatingBatch.DEFAULT_CAPACITY);
+		TIntIntHashMap userCounts = new TIntIntHashMap();
+		TIntIntHashMap contentCounts = new TIntIntHashMap();
+		IRatingCursor cursor = ItemRatingCursor.open(dataset);
+		while (cursor.nextBatch(batch)) {
+			for (int i = 0; i < batch.size(); i++) {
+				userCounts.adjustOrPutValue(batch.getUserId(i), 1, 1);
+				contentCounts.adjustOrPutValue(batch.getContentId(i), 1, 1);
 			}
-			
-			// Add every datasetItem to the content map
-			if (contentDatasetItems.containsKey(datasetItem.getContentId())) {
-				contentDatasetItems.get(datasetItem.getContentId()).add(datasetItem);
-			} else {
-				List<IDatasetItem<?>> li = new ArrayList<IDatasetItem<?>>();
-				li.add(datasetItem);
-				contentDatasetItems.put(datasetItem.getContentId(), li);
+		}
+		LeafRatings userRatings = new LeafRatings(userCounts);
+		LeafRatings contentRatings = new LeafRatings(contentCounts);
+		userCounts = null;
+		contentCounts = null;
+		
+		// Second pass: fill the ratings of each leaf
+		cursor = ItemRatingCursor.open(dataset);
+		while (cursor.nextBatch(batch)) {
+			for (int i = 0; i < batch.size(); i++) {
+				int userIndex = userRatings.indexOf(batch.getUserId(i));
+				int contentIndex = contentRatings.indexOf(batch.getContentId(i));
+				if (userIndex < 0 || contentIndex < 0
+						|| ! userRatings.add(userIndex, contentIndex, batch.getRating(i))
+						|| ! contentRatings.add(contentIndex, userIndex, batch.getRating(i))) {
+					Logger log = TBLogger.getLogger(getClass().getName());
+					log.severe("Err: the ratings of the data set changed between two passes; in: " + getClass().getSimpleName());
+					System.exit(-1);
+				}
 			}
 		}
 		
-		// Create Leaf Nodes for content and user
-		Map<Integer, INode> userLeafNodes = createLeafNodes(userDatasetItems,userTreeComponentFactory,ENodeType.User,userMetaset);
-		Map<Integer, INode> contentLeafNodes = createLeafNodes(contentDatasetItems,contentTreeComponentFactory,ENodeType.Content,contentMetaset);
+		// Create Leaf Nodes for content and user, their node ids ascend with their indexes
+		INode[] userLeafNodes = createLeafNodes(userRatings, userTreeComponentFactory, ENodeType.User, userMetadata);
+		INode[] contentLeafNodes = createLeafNodes(contentRatings, contentTreeComponentFactory, ENodeType.Content, contentMetadata);
 		
 		// Add attribute map to user nodes
-		addAttributes(userDatasetItems,dataset,userLeafNodes,userNominalNodes,contentLeafNodes,contentTreeComponentFactory);
-		addAttributes(contentDatasetItems,dataset,contentLeafNodes,contentNominalNodes,userLeafNodes,userTreeComponentFactory);
+		addAttributes(userRatings, userLeafNodes, userNominalNodes, contentLeafNodes, contentTreeComponentFactory);
+		userRatings.releaseRatings();
+		addAttributes(contentRatings, contentLeafNodes, contentNominalNodes, userLeafNodes, userTreeComponentFactory);
+		contentRatings.releaseRatings();
+		
+		userLeavesMap = createLeavesMap(userRatings, userLeafNodes);
+		contentLeavesMap = createLeavesMap(contentRatings, contentLeafNodes);
+	}
+	
+	/**
+	 * The ratings of the leaves of one node type in compressed rows: the ratings of
+	 * the leaf with index {@code i} are stored from {@code offsets[i]} to {@code offsets[i + 1]}
+	 * of the primitive columns. The leaves are indexed in ascending order of their data set ids.
+	 */
+	private static final class LeafRatings {
+		
+		/**
+		 * The data set ids of the leaves in ascending order.
+		 */
+		private final int[] datasetIds;
+		
+		/**
+		 * Maps the data set id of each leaf to its index.
+		 */
+		private final TIntIntHashMap indexes;
+		
+		private final int[] offsets;
+		
+		/**
+		 * The index of the next rating to fill of each leaf.
+		 */
+		private int[] ends;
 		
-		userLeavesMap = ImmutableMap.copyOf(userLeafNodes);
-		contentLeavesMap = ImmutableMap.copyOf(contentLeafNodes);
+		/**
+		 * The index of the opposite leaf of each rating.
+		 */
+		private int[] oppositeIndexes;
+		
+		/**
+		 * The normalized value of each rating.
+		 */
+		private double[] ratings;
+		
+		/**
+		 * Allocates the columns for the counted ratings.
+		 * 
+		 * @param counts the number of ratings of each data set id
+		 */
+		private LeafRatings(TIntIntHashMap counts) {
+			datasetIds = counts.keys();
+			Arrays.sort(datasetIds);
+			indexes = new TIntIntHashMap(datasetIds.length, Constants.DEFAULT_LOAD_FACTOR, -1, -1);
+			offsets = new int[datasetIds.length + 1];
+			for (int i = 0; i < datasetIds.length; i++) {
+				indexes.put(datasetIds[i], i);
+				offsets[i + 1] = offsets[i] + counts.get(datasetIds[i]);
+			}
+			ends = Arrays.copyOf(offsets, datasetIds.length);
+			oppositeIndexes = new int[offsets[datasetIds.length]];
+			ratings = new double[offsets[datasetIds.length]];
+		}
+		
+		/**
+		 * @return the index of the leaf or -1 if the data set id has no ratings.
+		 */
+		private int indexOf(int datasetId) {
+			return indexes.get(datasetId);
+		}
+		
+		/**
+		 * Adds a rating of a leaf.
+		 * 
+		 * @return false if the leaf has more ratings than counted.
+		 */
+		private boolean add(int index, int oppositeIndex, double rating) {
+			int end = ends[index];
+			if (end == offsets[index + 1]) return false;
+			oppositeIndexes[end] = oppositeIndex;
+			ratings[end] = rating;
+			ends[index] = end + 1;
+			return true;
+		}
+		
+		/**
+		 * Releases the columns of the ratings as soon as the attributes are created.
+		 */
+		private void releaseRatings() {
+			ends = null;
+			oppositeIndexes = null;
+			ratings = null;
+		}
 	}
 	
-	private void addAttributes(Map<Integer, List<IDatasetItem<?>>> datasetItems, 
-			IDataset<?> dataset, 
-			Map<Integer, INode> leafNodes, 
+	/**
+	 * Creates the attributes of the passed leaves concurrently.
+	 */
+	private void addAttributes(LeafRatings leafRatings, 
+			INode[] leafNodes, 
 			List<INode> nominalNodes, 
-			Map<Integer, INode> oppositeLeafNodes, 
+			INode[] oppositeLeafNodes, 
 			TreeComponentFactory oppositeTreeComponentFactory) {
 		
-		for (Map.Entry<Integer, List<IDatasetItem<?>>> user : datasetItems.entrySet()) {
-			
-			// Create numerical attributes
-			Map<INode,IAttribute> numAttributes = buildNumericalAttributes(user, dataset, oppositeLeafNodes, oppositeTreeComponentFactory);
-			leafNodes.get(user.getKey()).setNumericalAttributes(numAttributes);
-			
-			// Create nominal attributes
-			Map<Object,IAttribute> nomAttributes = buildNominalAttributes(user, leafNodes, nominalNodes, oppositeTreeComponentFactory);
-			leafNodes.get(user.getKey()).setNominalAttributes(nomAttributes);
+		AttributesTask task = new AttributesTask(
+				new LeafAttributes(leafRatings, leafNodes, nominalNodes, oppositeLeafNodes, oppositeTreeComponentFactory),
+				0, leafNodes.length);
+		if (leafNodes.length <= SEQUENTIAL_THRESHOLD) {
+			// not worth the hand over to the pool
+			task.compute();
+		} else {
+			TBForkJoinPool.getPool().invoke(task);
+		}
+	}
+	
+	/**
+	 * The state shared by all tasks of one call to {@code addAttributes}.
+	 */
+	private static final class LeafAttributes {
+		
+		private final LeafRatings leafRatings;
+		
+		private final INode[] leafNodes;
+		
+		private final List<INode> nominalNodes;
+		
+		/**
+		 * The opposite leaves in ascending order of their ids.
+		 */
+		private final INode[] oppositeLeafNodes;
+		
+		private final TreeComponentFactory oppositeTreeComponentFactory;
+		
+		private LeafAttributes(LeafRatings leafRatings, INode[] leafNodes, List<INode> nominalNodes,
+				INode[] oppositeLeafNodes, TreeComponentFactory oppositeTreeComponentFactory) {
+			this.leafRatings = leafRatings;
+			this.leafNodes = leafNodes;
+			this.nominalNodes = nominalNodes;
+			this.oppositeLeafNodes = oppositeLeafNodes;
+			this.oppositeTreeComponentFactory = oppositeTreeComponentFactory;
+		}
+	}
+	
+	/**
+	 * Creates the attributes of the leaves of the range [from, to).
+	 */
+	private static final class AttributesTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final LeafAttributes leafAttributes;
+		
+		private final int from;
+		
+		private final int to;
+		
+		private AttributesTask(LeafAttributes leafAttributes, int from, int to) {
+			this.leafAttributes = leafAttributes;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from > SEQUENTIAL_THRESHOLD
+					&& getPool() != null && getSurplusQueuedTaskCount() <= MAX_SURPLUS_QUEUED_TASKS) {
+				int middle = (from + to) >>> 1;
+				AttributesTask right = new AttributesTask(leafAttributes, middle, to);
+				right.fork();
+				new AttributesTask(leafAttributes, from, middle).compute();
+				right.join();
+				return;
+			}
+			computeSequentially();
+		}
+		
+		private void computeSequentially() {
+			LeafRatings leafRatings = leafAttributes.leafRatings;
+			long[] order = new long[0];
+			INode[] keys = new INode[0];
+			double[] ratings = new double[0];
+			for (int i = from; i < to; i++) {
+				int offset = leafRatings.offsets[i];
+				int length = leafRatings.offsets[i + 1] - offset;
+				if (order.length < length) {
+					order = new long[length];
+					keys = new INode[length];
+					ratings = new double[length];
+				}
+				
+				// sort the ratings by the index of the opposite leaf, i.e. by its node id,
+				// the position in the low bits keeps repeated ratings in their order
+				for (int j = 0; j < length; j++) {
+					order[j] = (long) leafRatings.oppositeIndexes[offset + j] << 32 | j;
+				}
+				Arrays.sort(order, 0, length);
+				for (int j = 0; j < length; j++) {
+					keys[j] = leafAttributes.oppositeLeafNodes[(int) (order[j] >>> 32)];
+					ratings[j] = leafRatings.ratings[offset + (int) order[j]];
+				}
+				
+				// Create numerical attributes
+				INode leafNode = leafAttributes.leafNodes[i];
+				leafNode.setNumericalAttributes(
+						leafAttributes.oppositeTreeComponentFactory.createLeafAttributeMap(keys, ratings, length));
+				Arrays.fill(keys, 0, length, null);
+				
+				// Create nominal attributes
+				leafNode.setNominalAttributes(buildNominalAttributes(
+						leafNode, leafAttributes.nominalNodes, leafAttributes.oppositeTreeComponentFactory));
+			}
 		}
 	}
 
-	private Map<Object, IAttribute> buildNominalAttributes(
-			Entry<Integer, List<IDatasetItem<?>>> datasetItems, 
-			Map<Integer, INode> leafNodes, 
+	private static Map<Object, IAttribute> buildNominalAttributes(
+			INode leafNode, 
 			List<INode> nominalNodes, 
 			TreeComponentFactory oppositeTreeComponentFactory) {
 		
 		Map<Object, IAttribute> attributes = new HashMap<Object, IAttribute>();
-		Map<Object, Object> metaData = leafNodes.get(datasetItems.getKey()).getMeta(); // Meta Info from User Node
+		Map<Object, Object> metaData = leafNode.getMeta(); // Meta Info from User Node
+		if (metaData == null) {
+			return attributes;
+		}
 		int i = 0;
 		for(Object metaKey : metaData.keySet()){
 			attributes.put(nominalNodes.get(i), 
@@ -136,43 +374,38 @@ public class InitialNodesCreator {
 		return attributes;
 	}
 
-	private Map<INode, IAttribute> buildNumericalAttributes(
-			Entry<Integer, List<IDatasetItem<?>>> datasetItems, 
-			IDataset<?> dataset, 
-			Map<Integer, INode> oppositeLeafNodes, 
-			TreeComponentFactory oppositeTreeComponentFactory) {
-		
-		Map<INode, IAttribute> attributes = new HashMap<INode, IAttribute>();
-		for (IDatasetItem<?> contentItem : datasetItems.getValue()) {
-			
-			double normalizedRating = ((INormalizer<Number>) dataset.getNormalizer()).normalizeRating( (Number) contentItem.getValue());
-			attributes.put(oppositeLeafNodes.get(contentItem.getContentId()), oppositeTreeComponentFactory.createNumericAttribute(normalizedRating));
-		}
-		return attributes;
-	}
-
-	private Map<Integer, INode> createLeafNodes(
-			Map<Integer, List<IDatasetItem<?>>> datasetItems,
+	private INode[] createLeafNodes(
+			LeafRatings leafRatings,
 			TreeComponentFactory treeComponentFactory, ENodeType type,
-			IDataset<?> metaset) {
+			MetadataStore metadata) {
 	
-		Map<Integer, INode> usersNodeMap = new HashMap<Integer, INode>();
-		for (Integer datasetId : datasetItems.keySet()) {	
-			usersNodeMap.put(datasetId, treeComponentFactory.createLeafNode(type, datasetId, metaset));
+		INode[] leafNodes = new INode[leafRatings.datasetIds.length];
+		for (int i = 0; i < leafNodes.length; i++) {	
+			leafNodes[i] = treeComponentFactory.createLeafNode(type, leafRatings.datasetIds[i], metadata);
 		}		
 		
-		return usersNodeMap;
+		return leafNodes;
+	}
+	
+	private ImmutableMap<Integer, INode> createLeavesMap(LeafRatings leafRatings, INode[] leafNodes) {
+		ImmutableMap.Builder<Integer, INode> builder = ImmutableMap.builder();
+		for (int i = 0; i < leafNodes.length; i++) {
+			builder.put(leafRatings.datasetIds[i], leafNodes[i]);
+		}
+		return builder.build();
 	}
 
-	private List<INode>  createNominalNodes(IDataset<?> metaset) {
+	/**
+	 * Creates a nominal node for each entry of the first record of the passed meta data.
+	 */
+	private List<INode>  createNominalNodes(MetadataStore metadata) {
 		List<INode> nominalNodes = new LinkedList<INode>();
-		Iterator<?> userIt = metaset.iterateOverDatasetItems();
-		MetaDatasetItem userItem = (MetaDatasetItem) userIt.next();
-		Map<String,String> userInfos = userItem.getValue();
+		if (metadata.size() == 0) {
+			return nominalNodes;
+		}
+		Map<Object,Object> infos = metadata.get(metadata.getDatasetId(0));
 		
-		for(String infoKey : userInfos.keySet()){
-			Map<String,String> attributeInfo = new HashMap<String,String>();
-			attributeInfo.put(userInfos.get(infoKey),null);
+		for (int i = 0; i < infos.size(); i++) {
 			INode info = new Node(ENodeType.Nominal, 0, null);
 			nominalNodes.add(info);	
 		}
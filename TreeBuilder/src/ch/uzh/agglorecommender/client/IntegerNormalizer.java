@@ -37,7 +37,17 @@ public class IntegerNormalizer implements INormalizer<Integer> {
 	
 	@Override
 	public double normalizeRating(Integer rating) {
-		return ((rating.doubleValue() - (double)minValue) / range) * 10.0;
+		return normalize(rating.intValue());
+	}
+	
+	/**
+	 * Normalizes a rating without boxing.
+	 * 
+	 * @param rating The rating as it appeared in the data set.
+	 * @return the normalized rating: [0.0, 10.0].
+	 */
+	public double normalize(int rating) {
+		return (((double) rating - (double)minValue) / range) * 10.0;
 	}
 
 }
@@ -0,0 +1,51 @@
+package ch.uzh.agglorecommender.client;
+
+import java.util.Iterator;
+
+/**
+ *
+ * A rating cursor over the data set items of any data set.
+ * The items are created by the data set, but not retained.
+ *
+ */
+class ItemRatingCursor implements IRatingCursor {
+
+	private final Iterator<? extends IDatasetItem<?>> items;
+
+	private final INormalizer<Number> normalizer;
+
+	/**
+	 * Instantiates a new cursor over the items of the passed data set.
+	 *
+	 * @param dataset the data set to read
+	 */
+	@SuppressWarnings("unchecked")
+	ItemRatingCursor(IDataset<?> dataset) {
+		this.items = dataset.iterateOverDatasetItems();
+		this.normalizer = (INormalizer<Number>) dataset.getNormalizer();
+	}
+
+	/**
+	 * Opens a cursor over the passed data set, without items if it is an {@link IStreamingDataset}.
+	 *
+	 * @param dataset the data set to read
+	 * @return a new cursor
+	 */
+	static IRatingCursor open(IDataset<?> dataset) {
+		if (dataset instanceof IStreamingDataset) {
+			return ((IStreamingDataset<?>) dataset).openRatingCursor();
+		}
+		return new ItemRatingCursor(dataset);
+	}
+
+	@Override
+	public boolean nextBatch(RatingBatch batch) {
+		batch.clear();
+		while (! batch.isFull() && items.hasNext()) {
+			IDatasetItem<?> item = items.next();
+			batch.add(item.getUserId(), item.getContentId(), normalizer.normalizeRating((Number) item.getValue()));
+		}
+		return batch.size() > 0;
+	}
+
+}
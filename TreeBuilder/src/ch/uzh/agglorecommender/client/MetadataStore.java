@@ -0,0 +1,301 @@
+package ch.uzh.agglorecommender.client;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * The meta data of the users or the content of a data set, indexed by their data set ids.
+ * <br>
+ * Each record is a map of strings, e.g. the value of a field to the name of the field.
+ * The strings are dictionary encoded, every distinct string is stored once and the records
+ * store the dictionary indexes of their entries. A store either holds its columns on the heap
+ * or reads them from a buffer written by {@link #write(DataOutputStream)}, e.g. the mapped
+ * {@link DatasetCache} of a meta set. The format is:
+ * <br>
+ * <pre>
+ *  int magic, int version, int number of records, int number of entry ints, int number of strings,
+ *  int data set ids[records], int entry offsets[records + 1], int entries[],
+ *  int string offsets[strings + 1], the UTF-8 bytes of the strings
+ * </pre>
+ * <br>
+ * An entry is the dictionary index of its key followed by the index of its value, -1 for {@code null}.
+ * Lookups take constant time. A store is immutable, thus it can be read concurrently.
+ *
+ */
+public final class MetadataStore {
+
+	/**
+	 * Identifies a file of this format.
+	 */
+	private static final int MAGIC = 0x4d455441;
+
+	private static final int VERSION = 1;
+
+	/**
+	 * The number of ints of the header.
+	 */
+	private static final int HEADER_INTS = 5;
+
+	/**
+	 * Maps the data set id of each record to its index.
+	 */
+	private final TIntIntHashMap indexes;
+
+	private final IntBuffer datasetIds;
+
+	/**
+	 * The start of the entries of each record in {@code entries}, followed by the end of the last record.
+	 */
+	private final IntBuffer entryOffsets;
+
+	private final IntBuffer entries;
+
+	/**
+	 * The start of each string in {@code stringBytes}, followed by the end of the last string.
+	 * Is null if the strings are stored on the heap.
+	 */
+	private final IntBuffer stringOffsets;
+
+	private final ByteBuffer stringBytes;
+
+	/**
+	 * The strings of the dictionary. Mapped strings are decoded on their first access,
+	 * concurrent decodings of the same string are harmless.
+	 */
+	private final String[] strings;
+
+	private MetadataStore(IntBuffer datasetIds, IntBuffer entryOffsets, IntBuffer entries,
+			IntBuffer stringOffsets, ByteBuffer stringBytes, String[] strings) {
+		this.datasetIds = datasetIds;
+		this.entryOffsets = entryOffsets;
+		this.entries = entries;
+		this.stringOffsets = stringOffsets;
+		this.stringBytes = stringBytes;
+		this.strings = strings;
+		int size = datasetIds.limit();
+		indexes = new TIntIntHashMap(Math.max(size, 1), Constants.DEFAULT_LOAD_FACTOR, -1, -1);
+		for (int i = 0; i < size; i++) {
+			// the first record of an id is found, as by a scan of the meta set
+			indexes.putIfAbsent(datasetIds.get(i), i);
+		}
+	}
+
+	/**
+	 * Gets the store of the items of a meta set, see {@link MetaDatasetItem}.
+	 * An item is indexed by its content id, which is its data set id. The store of
+	 * a meta set parsed by an {@link AbstractDataset} is returned without a copy,
+	 * the store of another meta set is created on the heap.
+	 *
+	 * @param metaset the meta set, {@code null} for an empty store.
+	 * @return the store of the meta data
+	 */
+	public static MetadataStore of(IDataset<?> metaset) {
+		if (metaset instanceof AbstractDataset) {
+			MetadataStore store = ((AbstractDataset<?>) metaset).getMetadata();
+			if (store != null) return store;
+		}
+		return create(metaset == null ? null : metaset.iterateOverDatasetItems());
+	}
+
+	/**
+	 * Creates a store on the heap from meta items.
+	 *
+	 * @param items the {@link MetaDatasetItem}s, {@code null} for an empty store.
+	 * @return the store of the meta data
+	 */
+	static MetadataStore create(Iterator<?> items) {
+		TIntArrayList datasetIds = new TIntArrayList();
+		TIntArrayList entryOffsets = new TIntArrayList();
+		TIntArrayList entries = new TIntArrayList();
+		TObjectIntHashMap<String> dictionary = new TObjectIntHashMap<String>(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, -1);
+		List<String> strings = new ArrayList<String>();
+		entryOffsets.add(0);
+
+		if (items != null) {
+			while (items.hasNext()) {
+				MetaDatasetItem<?> item = (MetaDatasetItem<?>) items.next();
+				datasetIds.add(item.getContentId());
+				for (Map.Entry<?, ?> entry : item.getValue().entrySet()) {
+					entries.add(encode((String) entry.getKey(), dictionary, strings));
+					entries.add(encode((String) entry.getValue(), dictionary, strings));
+				}
+				entryOffsets.add(entries.size());
+			}
+		}
+		return new MetadataStore(IntBuffer.wrap(datasetIds.toArray()), IntBuffer.wrap(entryOffsets.toArray()),
+				IntBuffer.wrap(entries.toArray()), null, null, strings.toArray(new String[strings.size()]));
+	}
+
+	private static int encode(String string, TObjectIntHashMap<String> dictionary, List<String> strings) {
+		if (string == null) return -1;
+		int index = dictionary.get(string);
+		if (index < 0) {
+			index = strings.size();
+			dictionary.put(string, index);
+			strings.add(string);
+		}
+		return index;
+	}
+
+	/**
+	 * Reads a store written by {@link #write(DataOutputStream)} from the position of the passed
+	 * buffer without copying it, only the index of the data set ids is created on the heap.
+	 * The position of the buffer is advanced behind the store.
+	 *
+	 * @param buffer the buffer of the store, e.g. a mapped file.
+	 * @return the store backed by the buffer
+	 * @throws IOException if the buffer holds no store of this version.
+	 */
+	static MetadataStore map(ByteBuffer buffer) throws IOException {
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			throw new IOException("not a meta data store of version " + VERSION);
+		}
+		int numberOfRecords = buffer.getInt();
+		int numberOfEntryInts = buffer.getInt();
+		int numberOfStrings = buffer.getInt();
+
+		IntBuffer datasetIds = nextInts(buffer, numberOfRecords);
+		IntBuffer entryOffsets = nextInts(buffer, numberOfRecords + 1);
+		IntBuffer entries = nextInts(buffer, numberOfEntryInts);
+		IntBuffer stringOffsets = nextInts(buffer, numberOfStrings + 1);
+		ByteBuffer stringBytes = buffer.slice();
+		stringBytes.limit(stringOffsets.get(numberOfStrings));
+		buffer.position(buffer.position() + stringBytes.limit());
+
+		return new MetadataStore(datasetIds, entryOffsets, entries, stringOffsets, stringBytes, new String[numberOfStrings]);
+	}
+
+	/**
+	 * Gets the next {@code length} ints of the passed buffer and advances its position behind them.
+	 */
+	private static IntBuffer nextInts(ByteBuffer buffer, int length) {
+		ByteBuffer bytes = buffer.slice();
+		bytes.limit(length * 4);
+		buffer.position(buffer.position() + length * 4);
+		return bytes.asIntBuffer();
+	}
+
+	/**
+	 * Writes this store to the passed stream, it can be read by {@link #map(ByteBuffer)}.
+	 *
+	 * @param out the stream to write to, is not closed.
+	 * @throws IOException if the stream can't be written.
+	 */
+	void write(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(size());
+		out.writeInt(entries.limit());
+		out.writeInt(strings.length);
+		writeInts(out, datasetIds);
+		writeInts(out, entryOffsets);
+		writeInts(out, entries);
+
+		List<byte[]> encoded = new ArrayList<byte[]>(strings.length);
+		int offset = 0;
+		out.writeInt(offset);
+		for (int i = 0; i < strings.length; i++) {
+			byte[] bytes = getString(i).getBytes(StandardCharsets.UTF_8);
+			encoded.add(bytes);
+			offset += bytes.length;
+			out.writeInt(offset);
+		}
+		for (byte[] bytes : encoded) {
+			out.write(bytes);
+		}
+	}
+
+	private static void writeInts(DataOutputStream out, IntBuffer ints) throws IOException {
+		for (int i = 0; i < ints.limit(); i++) {
+			out.writeInt(ints.get(i));
+		}
+	}
+
+	/**
+	 * Gets the meta data of a user or content.
+	 *
+	 * @param datasetId the data set id of the user or content
+	 * @return a new map of the entries of the record, {@code null} if the store has no record of the id.
+	 */
+	public Map<Object, Object> get(int datasetId) {
+		int index = indexes.get(datasetId);
+		if (index < 0) return null;
+		return getRecord(index);
+	}
+
+	/**
+	 * Gets the meta data of a record.
+	 *
+	 * @param index the index of the record in the order of the meta set, from 0 to {@link #size()}
+	 * @return a new map of the entries of the record
+	 */
+	Map<Object, Object> getRecord(int index) {
+		int from = entryOffsets.get(index);
+		int to = entryOffsets.get(index + 1);
+		Map<Object, Object> record = new HashMap<Object, Object>();
+		for (int i = from; i < to; i += 2) {
+			record.put(getString(entries.get(i)), getString(entries.get(i + 1)));
+		}
+		return record;
+	}
+
+	/**
+	 * Checks whether the store has a record of a user or content.
+	 *
+	 * @param datasetId the data set id of the user or content
+	 * @return true if the store has a record of the id
+	 */
+	public boolean contains(int datasetId) {
+		return indexes.containsKey(datasetId);
+	}
+
+	/**
+	 * Gets the data set id of a record.
+	 *
+	 * @param index the index of the record in the order of the meta set, from 0 to {@link #size()}
+	 * @return the data set id of the record
+	 */
+	public int getDatasetId(int index) {
+		return datasetIds.get(index);
+	}
+
+	/**
+	 * Gets the number of records.
+	 *
+	 * @return the number of users or content with meta data
+	 */
+	public int size() {
+		return datasetIds.limit();
+	}
+
+	private String getString(int index) {
+		if (index < 0) return null;
+		String string = strings[index];
+		if (string == null) {
+			// each reader needs its own position in the mapped bytes
+			ByteBuffer bytes = stringBytes.duplicate();
+			int from = stringOffsets.get(index);
+			byte[] encoded = new byte[stringOffsets.get(index + 1) - from];
+			bytes.position(from);
+			bytes.get(encoded);
+			string = new String(encoded, StandardCharsets.UTF_8);
+			strings[index] = string;
+		}
+		return string;
+	}
+
+}
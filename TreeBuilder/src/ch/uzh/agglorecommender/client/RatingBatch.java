@@ -0,0 +1,83 @@
+package ch.uzh.agglorecommender.client;
+
+/**
+ *
+ * A reusable batch of ratings in primitive arrays, filled by an {@link IRatingCursor}.
+ * <br>
+ * The ratings are normalized by the normalizer of their data set.
+ *
+ */
+public final class RatingBatch {
+
+	/**
+	 * The default number of ratings of a batch.
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	private final int[] userIds;
+
+	private final int[] contentIds;
+
+	private final double[] ratings;
+
+	private int size = 0;
+
+	/**
+	 * Instantiates a new empty batch.
+	 *
+	 * @param capacity the max number of ratings of the batch
+	 */
+	public RatingBatch(int capacity) {
+		this.userIds = new int[capacity];
+		this.contentIds = new int[capacity];
+		this.ratings = new double[capacity];
+	}
+
+	/**
+	 * Adds a rating to this batch.
+	 *
+	 * @param userId the data set id of the user
+	 * @param contentId the data set id of the content
+	 * @param normalizedRating the normalized rating
+	 */
+	public void add(int userId, int contentId, double normalizedRating) {
+		userIds[size] = userId;
+		contentIds[size] = contentId;
+		ratings[size] = normalizedRating;
+		size++;
+	}
+
+	/**
+	 * Removes all ratings of this batch.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	public boolean isFull() {
+		return size == userIds.length;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getUserId(int index) {
+		return userIds[index];
+	}
+
+	public int getContentId(int index) {
+		return contentIds[index];
+	}
+
+	/**
+	 * Gets a normalized rating.
+	 *
+	 * @param index the index of the rating in this batch
+	 * @return the rating normalized by the normalizer of its data set
+	 */
+	public double getRating(int index) {
+		return ratings[index];
+	}
+
+}
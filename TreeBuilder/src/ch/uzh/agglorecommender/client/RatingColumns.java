@@ -0,0 +1,248 @@
+package ch.uzh.agglorecommender.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ *
+ * The ratings of a data set in primitive columns: user id, content id, rating and time stamp.
+ * <br>
+ * The ratings are parsed directly from the bytes of the input, without a String per line.
+ * Files are memory mapped. Each line holds the numeric fields user id, content id, rating
+ * and an optional time stamp, separated by tabs, commas, colons or spaces, thus the
+ * Grouplens formats {@code u.data}, {@code ratings.dat} and {@code ratings.csv} are supported.
+ * The rating may be a decimal number. Lines with fewer fields or with other
+ * characters, e.g. a header line, are skipped.
+ * <br>
+ * The columns are buffers, parsed ratings are backed by arrays and the ratings of
+ * a {@link DatasetCache} by the memory mapped cache file.
+ *
+ */
+public final class RatingColumns {
+
+	/**
+	 * The max size of a mapped region of a file, the lines of larger files are parsed in several regions.
+	 */
+	private static final int MAX_MAPPED_SIZE = 1 << 30;
+
+	/**
+	 * The assumed min number of bytes per line, used to estimate the number of ratings.
+	 */
+	private static final int MIN_BYTES_PER_LINE = 16;
+
+	private IntBuffer userIds;
+
+	private IntBuffer contentIds;
+
+	private FloatBuffer ratings;
+
+	/**
+	 * The time stamps, 0 if a line has none.
+	 */
+	private LongBuffer timestamps;
+
+	private int size = 0;
+
+	private RatingColumns(int capacity) {
+		capacity = Math.max(16, capacity);
+		userIds = IntBuffer.allocate(capacity);
+		contentIds = IntBuffer.allocate(capacity);
+		ratings = FloatBuffer.allocate(capacity);
+		timestamps = LongBuffer.allocate(capacity);
+	}
+
+	/**
+	 * Instantiates columns of already parsed ratings, e.g. the mapped columns of a {@link DatasetCache}.
+	 * The buffers must have the same number of remaining elements, they are not copied
+	 * and are read with absolute indexes from their current position.
+	 */
+	RatingColumns(IntBuffer userIds, IntBuffer contentIds, FloatBuffer ratings, LongBuffer timestamps) {
+		this.userIds = userIds.slice();
+		this.contentIds = contentIds.slice();
+		this.ratings = ratings.slice();
+		this.timestamps = timestamps.slice();
+		this.size = this.userIds.capacity();
+	}
+
+	/**
+	 * Parses the ratings of the passed input. A {@link FileInputStream} is
+	 * memory mapped, other streams are read into memory first. The stream is closed.
+	 *
+	 * @param input the input to parse
+	 * @return the parsed ratings
+	 * @throws IOException if the input can't be read
+	 */
+	public static RatingColumns load(InputStream input) throws IOException {
+		try {
+			if (input instanceof FileInputStream) {
+				return load(((FileInputStream) input).getChannel());
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+			byte[] buffer = new byte[1 << 16];
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
+			}
+			RatingColumns columns = new RatingColumns(bytes.size() / MIN_BYTES_PER_LINE);
+			columns.parse(ByteBuffer.wrap(bytes.toByteArray()), true);
+			columns.trim();
+			return columns;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Parses the ratings of the passed file channel from its current position, region by region.
+	 */
+	private static RatingColumns load(FileChannel channel) throws IOException {
+		long position = channel.position();
+		long end = channel.size();
+		RatingColumns columns = new RatingColumns((int) Math.min(Integer.MAX_VALUE - 8, (end - position) / MIN_BYTES_PER_LINE));
+		while (position < end) {
+			long regionSize = Math.min(MAX_MAPPED_SIZE, end - position);
+			boolean last = position + regionSize == end;
+			ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+			int parsed = columns.parse(region, last);
+			if (parsed == 0) {
+				throw new IOException("line longer than " + MAX_MAPPED_SIZE + " bytes at position " + position);
+			}
+			position += parsed;
+		}
+		columns.trim();
+		return columns;
+	}
+
+	/**
+	 * Parses the complete lines of the passed buffer.
+	 *
+	 * @param buffer the bytes to parse, from 0 to its limit
+	 * @param last true if the buffer ends with the last line of the input,
+	 * it is parsed even without a line break.
+	 * @return the number of parsed bytes, i.e. the end of the last parsed line
+	 */
+	private int parse(ByteBuffer buffer, boolean last) {
+		int limit = buffer.limit();
+		int end = limit;
+		if (! last) {
+			// an incomplete last line is parsed with the next region
+			while (end > 0 && buffer.get(end - 1) != '\n') end--;
+		}
+
+		long[] fields = new long[4];
+		int position = 0;
+		while (position < end) {
+			int numberOfFields = 0;
+			boolean valid = true;
+			float rating = 0.0f;
+			while (position < end) {
+				byte b = buffer.get(position);
+				if (b == '\n') {
+					position++;
+					break;
+				}
+				if (b == '\t' || b == ',' || b == ':' || b == ' ' || b == '\r') {
+					position++;
+					continue;
+				}
+				if (! valid || numberOfFields == fields.length || ! (b >= '0' && b <= '9' || b == '-' || b == '.')) {
+					valid = false;
+					position++;
+					continue;
+				}
+
+				boolean negative = b == '-';
+				if (negative) position++;
+				long integer = 0;
+				while (position < end && (b = buffer.get(position)) >= '0' && b <= '9') {
+					integer = integer * 10 + (b - '0');
+					position++;
+				}
+				double fraction = 0.0;
+				if (position < end && buffer.get(position) == '.') {
+					position++;
+					double scale = 0.1;
+					while (position < end && (b = buffer.get(position)) >= '0' && b <= '9') {
+						fraction += (b - '0') * scale;
+						scale *= 0.1;
+						position++;
+					}
+				}
+				if (numberOfFields == 2) {
+					rating = (float) (negative ? - (integer + fraction) : integer + fraction);
+				}
+				fields[numberOfFields++] = negative ? - integer : integer;
+			}
+			if (valid && numberOfFields >= 3) {
+				add((int) fields[0], (int) fields[1], rating, numberOfFields > 3 ? fields[3] : 0L);
+			}
+		}
+		return end;
+	}
+
+	private void add(int userId, int contentId, float rating, long timestamp) {
+		if (size == userIds.capacity()) {
+			resize(size + (size >> 1) + 16);
+		}
+		userIds.put(size, userId);
+		contentIds.put(size, contentId);
+		ratings.put(size, rating);
+		timestamps.put(size, timestamp);
+		size++;
+	}
+
+	private void trim() {
+		if (size == userIds.capacity()) return;
+		resize(size);
+	}
+
+	/**
+	 * Copies the parsed ratings into arrays of the passed capacity.
+	 */
+	private void resize(int capacity) {
+		userIds = IntBuffer.wrap(Arrays.copyOf(userIds.array(), capacity));
+		contentIds = IntBuffer.wrap(Arrays.copyOf(contentIds.array(), capacity));
+		ratings = FloatBuffer.wrap(Arrays.copyOf(ratings.array(), capacity));
+		timestamps = LongBuffer.wrap(Arrays.copyOf(timestamps.array(), capacity));
+	}
+
+	/**
+	 * Gets the number of ratings.
+	 *
+	 * @return the number of parsed lines
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getUserId(int index) {
+		return userIds.get(index);
+	}
+
+	public int getContentId(int index) {
+		return contentIds.get(index);
+	}
+
+	public float getRating(int index) {
+		return ratings.get(index);
+	}
+
+	/**
+	 * Gets the time stamp of a rating.
+	 *
+	 * @param index the index of the rating
+	 * @return the time stamp or 0 if the line of the rating has none
+	 */
+	public long getTimestamp(int index) {
+		return timestamps.get(index);
+	}
+
+}
@@ -1,14 +1,19 @@
 package ch.uzh.agglorecommender.client;
 
+import gnu.trove.set.TIntSet;
+
 import java.io.File;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.logging.Logger;
 
 import ch.uzh.agglorecommender.client.IDataset.DataSetSplit;
+import ch.uzh.agglorecommender.clusterer.ClusteringSettings;
 import ch.uzh.agglorecommender.clusterer.TreeBuilder;
 import ch.uzh.agglorecommender.clusterer.treecomponent.ClassitTreeComponentFactory;
 import ch.uzh.agglorecommender.clusterer.treecomponent.CobwebTreeComponentFactory;
@@ -16,9 +21,13 @@ import ch.uzh.agglorecommender.clusterer.treecomponent.IAttribute;
 import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
 import ch.uzh.agglorecommender.clusterer.treecomponent.SharedTreeComponentFactory;
 import ch.uzh.agglorecommender.clusterer.treecomponent.TreeComponentFactory;
+import ch.uzh.agglorecommender.clusterer.treepartition.ShardCoordinator;
+import ch.uzh.agglorecommender.clusterer.treepartition.SubRootForest;
 import ch.uzh.agglorecommender.clusterer.treesearch.ClassitMaxCategoryUtilitySearcher;
 import ch.uzh.agglorecommender.clusterer.treesearch.CobwebMaxCategoryUtilitySearcher;
+import ch.uzh.agglorecommender.clusterer.treesearch.EMergeSelection;
 import ch.uzh.agglorecommender.clusterer.treesearch.IMaxCategoryUtilitySearcher;
+import ch.uzh.agglorecommender.clusterer.treesearch.MinHashCandidateMaxCUSearcher;
 import ch.uzh.agglorecommender.clusterer.treesearch.SharedMaxCategoryUtilitySearcher;
 import ch.uzh.agglorecommender.recommender.RecommendationBuilder;
 import ch.uzh.agglorecommender.recommender.evaluator.EvaluationBuilder;
@@ -33,6 +42,11 @@ public class TestDriver {
 	protected static CommandLineArgs cla = new CommandLineArgs();
 	private static JCommander jc;
 	
+	/**
+	 * The passed arguments, passed on to the workers of a partitioned clustering.
+	 */
+	private static String[] args;
+	
 	// Create Logger
 	private static Logger log = TBLogger.getLogger(TestDriver.class.toString());
 	
@@ -45,7 +59,12 @@ public class TestDriver {
 		jc.setProgramName("TreeBuilder");
 		
 		log.info("Passed CommandLineArgs: " + Arrays.asList(args).toString());
+		TestDriver.args = args;
 		
+		if (cla.shardUsersFile != null) {
+			clusterShard();
+			return;
+		}
 		test(training());
 //		insert(training(), cla.userTreeComponentFactory, new Node(ENodeType.User, 0));
 	}
@@ -57,8 +76,11 @@ public class TestDriver {
 		if (cla.resumePrevRun != null) {
 			log.info("Start loading serailized run at: " + cla.resumePrevRun);
 			tb = (TreeBuilder) ToFileSerializer.deserialize(cla.resumePrevRun);
+			tb.attachMetadata(MetadataStore.of(getContentMetaDataset()), MetadataStore.of(getUserMetaDataset()));
 			log.info("Resume clustering ...");
 			clusterResult = tb.resumeClustering(cla.serializeRun);
+		} else if (cla.shards > 1) {
+			clusterResult = trainingPartitioned();
 		} else {
 			tb = createNewTreeBuilder();
 			InitialNodesCreator in = new InitialNodesCreator(
@@ -71,6 +93,51 @@ public class TestDriver {
 		return clusterResult;
 	}	
 	
+	/**
+	 * Clusters the users of each shard to sub-roots in a worker process, rebuilds the sub-trees
+	 * from the leaves of the complete data set and clusters the sub-roots and the content leaves
+	 * to the final trees.
+	 * 
+	 * @return the result of the final pass
+	 */
+	private static ClusterResult trainingPartitioned() {
+		InitialNodesCreator in = new InitialNodesCreator(
+				getTrainingDataset(),getContentMetaDataset(),getUserMetaDataset(),
+				cla.contentTreeComponentFactory,
+				cla.userTreeComponentFactory);
+		List<List<INode>> shards = cla.shardPartitioning.partition(in.getUserLeaves().values(), cla.shards);
+		log.info("Starting partitioned run with " + shards.size() + " shards ...");
+		List<SubRootForest> forests = new ShardCoordinator(cla.shardDirectory, cla.shardProcesses)
+				.clusterShards(shards, TestDriver.class, Arrays.asList(args));
+		
+		List<INode> subRoots = new ArrayList<INode>();
+		for (SubRootForest forest : forests) {
+			subRoots.addAll(forest.rebuild(in.getUserLeaves(), cla.userTreeComponentFactory,
+					cla.nodeUpdater, in.getContentLeaves().values()));
+		}
+		log.info("Starting final pass with " + subRoots.size() + " user sub-roots ...");
+		return createNewTreeBuilder().startClustering(cla.serializeRun, in, subRoots);
+	}
+	
+	/**
+	 * Clusters the users of the shard of this worker process to sub-roots
+	 * and writes the sub-roots to the result file of the shard.
+	 */
+	private static void clusterShard() {
+		TIntSet userIds = ShardCoordinator.readUserIds(cla.shardUsersFile);
+		InitialNodesCreator in = new InitialNodesCreator(
+				createUserFilteredDataset(getTrainingDataset(), userIds),getContentMetaDataset(),getUserMetaDataset(),
+				cla.contentTreeComponentFactory,
+				cla.userTreeComponentFactory);
+		log.info("Clustering shard with " + in.getUserLeaves().size() + " users ...");
+		List<INode> subRoots = createNewTreeBuilder().clusterUserSubRoots(in, cla.subRootsPerShard);
+		SubRootForest.of(subRoots).write(cla.shardResultFile);
+	}
+	
+	private static <T extends Number> IDataset<T> createUserFilteredDataset(IDataset<T> dataset, TIntSet userIds) {
+		return new UserFilteredDataset<T>(dataset, userIds);
+	}
+	
 	/**
 	 * Allows the Evaluation of the quality of recommendations given by the system
 	 * Recommendation Type 1 delivers quantitative information (RSME/AME)
@@ -144,12 +211,24 @@ public class TestDriver {
 		// initialize the RapidMiner operator description
 		SerializableRMOperatorDescription.setOperatorDescription("groupKey", "key", "iconName");
 		
+		IMaxCategoryUtilitySearcher userSearcher = getSearcher(cla.userTreeComponentFactory);
+		if (cla.userLshBands > 0 && cla.mergeSelection == EMergeSelection.Greedy) {
+			userSearcher = new MinHashCandidateMaxCUSearcher(userSearcher,
+					cla.userLshBands, cla.userLshRows, cla.userLshFullScanInterval);
+		}
+		
 		return new TreeBuilder(
 				getSearcher(cla.contentTreeComponentFactory),
-				getSearcher(cla.userTreeComponentFactory),
+				userSearcher,
 				cla.contentTreeComponentFactory,
 				cla.userTreeComponentFactory,
-				cla.nodeUpdater);		
+				cla.nodeUpdater,
+				new ClusteringSettings()
+						.setMergeSelection(cla.mergeSelection)
+						.setMergesPerBarrier(cla.mergesPerBarrier)
+						.setMergesPerCycle(cla.mergesPerCycle)
+						.setMergeTolerance(cla.mergeTolerance)
+						.setMaxSubsetSize(cla.maxSubsetSize));		
 	}
 	
 	private static IDataset<?> getTestDataset() {
@@ -234,7 +313,7 @@ public class TestDriver {
 			return new ClassitMaxCategoryUtilitySearcher();
 		}
 		if (factory instanceof CobwebTreeComponentFactory) {
-			return new CobwebMaxCategoryUtilitySearcher();
+			return new CobwebMaxCategoryUtilitySearcher(cla.cobwebRatings);
 		}
 		if (factory instanceof SharedTreeComponentFactory) {
 			return new SharedMaxCategoryUtilitySearcher();
@@ -252,4 +331,4 @@ public class TestDriver {
 	 */
 	private TestDriver() { }
 
-}
+}
@@ -0,0 +1,88 @@
+package ch.uzh.agglorecommender.client;
+
+import gnu.trove.set.TIntSet;
+
+import java.util.Iterator;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterators;
+
+/**
+ *
+ * A view of the data set items of a subset of the users of another data set,
+ * e.g. of the users of a shard.
+ *
+ * @param <T> the data type of the rating
+ */
+public class UserFilteredDataset<T extends Number> implements IStreamingDataset<T> {
+
+	private final IDataset<T> dataset;
+
+	/**
+	 * The data set ids of the users whose items are retained.
+	 */
+	private final TIntSet userIds;
+
+	/**
+	 * Instantiates a new view.
+	 *
+	 * @param dataset the complete data set
+	 * @param userIds the data set ids of the users whose items are retained
+	 */
+	public UserFilteredDataset(IDataset<T> dataset, TIntSet userIds) {
+		this.dataset = dataset;
+		this.userIds = userIds;
+	}
+
+	@Override
+	public Iterator<IDatasetItem<T>> iterateOverDatasetItems() {
+		return Iterators.filter(dataset.iterateOverDatasetItems(), new Predicate<IDatasetItem<T>>() {
+
+			@Override
+			public boolean apply(IDatasetItem<T> item) {
+				return userIds.contains(item.getUserId());
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * Filters the batches of the complete data set.
+	 */
+	@Override
+	public IRatingCursor openRatingCursor() {
+		final IRatingCursor cursor = ItemRatingCursor.open(dataset);
+		return new IRatingCursor() {
+			
+			private final RatingBatch unfiltered = new RatingBatch(RatingBatch.DEFAULT_CAPACITY);
+
+			/**
+			 * The index of the next rating of {@code unfiltered} to filter.
+			 */
+			private int position = 0;
+
+			@Override
+			public boolean nextBatch(RatingBatch batch) {
+				batch.clear();
+				while (! batch.isFull()) {
+					if (position == unfiltered.size()) {
+						position = 0;
+						if (! cursor.nextBatch(unfiltered)) break;
+					}
+					int i = position++;
+					if (userIds.contains(unfiltered.getUserId(i))) {
+						batch.add(unfiltered.getUserId(i), unfiltered.getContentId(i), unfiltered.getRating(i));
+					}
+				}
+				return batch.size() > 0;
+			}
+		};
+	}
+
+	@Override
+	public INormalizer<T> getNormalizer() {
+		return dataset.getNormalizer();
+	}
+
+}
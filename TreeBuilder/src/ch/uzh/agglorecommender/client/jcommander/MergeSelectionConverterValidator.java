@@ -0,0 +1,32 @@
+package ch.uzh.agglorecommender.client.jcommander;
+
+import ch.uzh.agglorecommender.clusterer.treesearch.EMergeSelection;
+
+import com.beust.jcommander.IParameterValidator;
+import com.beust.jcommander.IStringConverter;
+import com.beust.jcommander.ParameterException;
+
+/**
+ * Checks if the specified merge selection strategy is known and references the corresponding EMergeSelection.
+ *
+ */
+public class MergeSelectionConverterValidator implements IStringConverter<EMergeSelection>, IParameterValidator {
+	@Override
+	public EMergeSelection convert(String value) {
+		for (EMergeSelection mergeSelection : EMergeSelection.values()) {
+			if (mergeSelection.name().equalsIgnoreCase(value)) {
+				return mergeSelection;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void validate(String name, String value)
+			throws ParameterException {
+		if (convert(value) == null) {
+			throw new ParameterException("Parameter " + name + " should be \"greedy\", \"nearestNeighbourChain\" or \"greedySubsets\" (found " + value +")");
+		}
+	}
+
+}
@@ -0,0 +1,32 @@
+package ch.uzh.agglorecommender.client.jcommander;
+
+import ch.uzh.agglorecommender.clusterer.treepartition.EShardPartitioning;
+
+import com.beust.jcommander.IParameterValidator;
+import com.beust.jcommander.IStringConverter;
+import com.beust.jcommander.ParameterException;
+
+/**
+ * Checks if the specified shard partitioning is known and references the corresponding EShardPartitioning.
+ *
+ */
+public class ShardPartitioningConverterValidator implements IStringConverter<EShardPartitioning>, IParameterValidator {
+	@Override
+	public EShardPartitioning convert(String value) {
+		for (EShardPartitioning partitioning : EShardPartitioning.values()) {
+			if (partitioning.name().equalsIgnoreCase(value)) {
+				return partitioning;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void validate(String name, String value)
+			throws ParameterException {
+		if (convert(value) == null) {
+			throw new ParameterException("Parameter " + name + " should be \"random\" or \"minHash\" (found " + value +")");
+		}
+	}
+
+}
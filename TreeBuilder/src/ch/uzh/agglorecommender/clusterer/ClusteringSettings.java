@@ -0,0 +1,197 @@
+package ch.uzh.agglorecommender.clusterer;
+
+import java.io.Serializable;
+
+import ch.uzh.agglorecommender.clusterer.treesearch.BeamSubsetMergeSelector;
+import ch.uzh.agglorecommender.clusterer.treesearch.EMergeSelection;
+
+/**
+ *
+ * Parameter object that stores the settings of the clustering process of a {@link TreeBuilder}.
+ * <br>
+ * The default settings select one greedy merge per cycle and cluster
+ * the two trees alternately with visualization. The setters return this
+ * object, thus the settings can be chained.
+ *
+ */
+public class ClusteringSettings implements Serializable {
+
+	/**
+	 * Determines if a de-serialized file is compatible with this class.
+	 * <br>
+	 * <br>
+	 * Maintainers must change this value if and only if the new version
+	 * of this class is not compatible with old versions.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The strategy used to select the merges.
+	 */
+	private EMergeSelection mergeSelection = EMergeSelection.Greedy;
+
+	/**
+	 * The number of merges per tree between two synchronisation barriers of the
+	 * pipelined clustering. If 0 the two trees are clustered alternately.
+	 */
+	private int mergesPerBarrier = 0;
+
+	/**
+	 * The max number of disjoint merges per tree performed in one cycle.
+	 */
+	private int mergesPerCycle = 1;
+
+	/**
+	 * The max difference of the category utility of a merge to the best merge
+	 * of its cycle if more than one merge is performed per cycle.
+	 */
+	private double mergeTolerance = 0.0;
+
+	/**
+	 * The max number of nodes merged into one new node, only used by
+	 * merge selections which merge more than two nodes.
+	 */
+	private int maxSubsetSize = BeamSubsetMergeSelector.DEFAULT_MAX_SUBSET_SIZE;
+
+	/**
+	 * The max number of bytes of the category utility cache of each merge selector,
+	 * only used by merge selections which evaluate the same combinations repeatedly.
+	 */
+	private long cacheBytes = Runtime.getRuntime().maxMemory() / 8;
+
+	/**
+	 * Whether the trees are shown by the tree visualizer during the clustering process.
+	 */
+	private boolean visualization = true;
+
+	public EMergeSelection getMergeSelection() {
+		return mergeSelection;
+	}
+
+	/**
+	 * Sets the strategy used to select the merge of each cycle.
+	 *
+	 * @param mergeSelection the merge selection strategy
+	 * @return this settings object
+	 */
+	public ClusteringSettings setMergeSelection(EMergeSelection mergeSelection) {
+		this.mergeSelection = mergeSelection;
+		return this;
+	}
+
+	public int getMergesPerBarrier() {
+		return mergesPerBarrier;
+	}
+
+	/**
+	 * Sets the number of merges per tree between two synchronisation barriers.
+	 * <br>
+	 * If {@code mergesPerBarrier} is greater than 0 the user tree and the content tree are
+	 * clustered concurrently, each on its own thread. The updates of the other tree are
+	 * deferred to a synchronisation barrier after each round of {@code mergesPerBarrier} merges
+	 * (fewer for the smaller tree). Within a round the merges of a tree don't see the merges
+	 * of the other tree. The result only depends on {@code mergesPerBarrier}, not on the
+	 * scheduling of the threads.
+	 *
+	 * @param mergesPerBarrier the number of merges per tree between two synchronisation
+	 * barriers or 0 to cluster the two trees alternately.
+	 * @return this settings object
+	 */
+	public ClusteringSettings setMergesPerBarrier(int mergesPerBarrier) {
+		this.mergesPerBarrier = mergesPerBarrier;
+		return this;
+	}
+
+	public int getMergesPerCycle() {
+		return mergesPerCycle;
+	}
+
+	/**
+	 * Sets the max number of merges per tree and cycle.
+	 * <br>
+	 * If {@code mergesPerCycle} is greater than 1 each cycle performs up to {@code mergesPerCycle}
+	 * pairwise disjoint merges of a tree whose category utility is at most {@code mergeTolerance}
+	 * below the best merge of the cycle. The new nodes are created in parallel and the other
+	 * tree is updated once per cycle. The merges after the first one of a cycle may deviate from
+	 * the greedy order, the deviation is reported in the merge selection statistics.
+	 *
+	 * @param mergesPerCycle the max number of merges per tree and cycle.
+	 * @return this settings object
+	 */
+	public ClusteringSettings setMergesPerCycle(int mergesPerCycle) {
+		this.mergesPerCycle = mergesPerCycle;
+		return this;
+	}
+
+	public double getMergeTolerance() {
+		return mergeTolerance;
+	}
+
+	/**
+	 * Sets the max difference of the category utility of a merge to the best merge of its cycle.
+	 *
+	 * @param mergeTolerance the max category utility difference
+	 * @return this settings object
+	 */
+	public ClusteringSettings setMergeTolerance(double mergeTolerance) {
+		this.mergeTolerance = mergeTolerance;
+		return this;
+	}
+
+	public int getMaxSubsetSize() {
+		return maxSubsetSize;
+	}
+
+	/**
+	 * Sets the max number of nodes merged into one new node,
+	 * it is only used by merge selections which merge more than two nodes.
+	 *
+	 * @param maxSubsetSize the max number of nodes of a merge.
+	 * @return this settings object
+	 */
+	public ClusteringSettings setMaxSubsetSize(int maxSubsetSize) {
+		this.maxSubsetSize = maxSubsetSize;
+		return this;
+	}
+
+	public long getCacheBytes() {
+		return cacheBytes;
+	}
+
+	/**
+	 * Sets the byte budget of the category utility cache of each merge selector.
+	 * If the cache exceeds its budget, its oldest entries are evicted.
+	 * It is only used by merge selections which evaluate the same combinations
+	 * repeatedly, e.g. the nearest neighbour chain.
+	 *
+	 * @param cacheBytes the max number of bytes of the cache of each tree.
+	 * @return this settings object
+	 */
+	public ClusteringSettings setCacheBytes(long cacheBytes) {
+		this.cacheBytes = cacheBytes;
+		return this;
+	}
+
+	public boolean isVisualization() {
+		return visualization;
+	}
+
+	/**
+	 * Sets whether the trees are shown by the tree visualizer during the clustering process.
+	 *
+	 * @param visualization false to cluster without a window, e.g. in tests.
+	 * @return this settings object
+	 */
+	public ClusteringSettings setVisualization(boolean visualization) {
+		this.visualization = visualization;
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "merge selection: " + mergeSelection + ", merges per barrier: " + mergesPerBarrier
+				+ ", merges per cycle: " + mergesPerCycle + ", merge tolerance: " + mergeTolerance
+				+ ", max subset size: " + maxSubsetSize + ", cache bytes: " + cacheBytes + ", visualization: " + visualization;
+	}
+
+}
@@ -1,33 +1,42 @@
 package ch.uzh.agglorecommender.clusterer;
-import gnu.trove.iterator.TIntDoubleIterator;
-import gnu.trove.map.TIntDoubleMap;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import ch.uzh.agglorecommender.client.ClusterResult;
 import ch.uzh.agglorecommender.client.InitialNodesCreator;
+import ch.uzh.agglorecommender.client.MetadataStore;
 import ch.uzh.agglorecommender.client.SerializableRMOperatorDescription;
 import ch.uzh.agglorecommender.clusterer.treecomponent.ENodeType;
 import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.Node;
 import ch.uzh.agglorecommender.clusterer.treecomponent.TreeComponentFactory;
-import ch.uzh.agglorecommender.clusterer.treesearch.CachedMaxCUSearcher;
-import ch.uzh.agglorecommender.clusterer.treesearch.ClusterSetIndexed;
+import ch.uzh.agglorecommender.clusterer.treesearch.AttributeIndexedClusterSet;
 import ch.uzh.agglorecommender.clusterer.treesearch.IClusterSet;
 import ch.uzh.agglorecommender.clusterer.treesearch.IClusterSetIndexed;
 import ch.uzh.agglorecommender.clusterer.treesearch.IMaxCategoryUtilitySearcher;
 import ch.uzh.agglorecommender.clusterer.treesearch.IMergeResult;
-import ch.uzh.agglorecommender.clusterer.treesearch.MergeResult;
-import ch.uzh.agglorecommender.clusterer.treesearch.NoCommonAttributeSkipMaxCUSearcher;
+import ch.uzh.agglorecommender.clusterer.treesearch.IMergeSelector;
+import ch.uzh.agglorecommender.clusterer.treeupdate.IAttributeChangeListener;
 import ch.uzh.agglorecommender.clusterer.treeupdate.INodeUpdater;
 import ch.uzh.agglorecommender.util.DBHandler;
 import ch.uzh.agglorecommender.util.TBLogger;
 import ch.uzh.agglorecommender.util.ToFileSerializer;
 import ch.uzh.agglorecommender.visu.TreeVisualizer;
 
+import com.google.common.collect.ImmutableList;
+
 /**
  * 
  * Implementation of COBWEB inspired hierarchical
@@ -44,7 +53,7 @@ public final class TreeBuilder extends DummyRMOperator implements Serializable {
 	 * Maintainers must change this value if and only if the new version
 	 * of this class is not compatible with old versions.
 	 */
-	private static final long serialVersionUID = 1L;
+	private static final long serialVersionUID = 2L;
 	
 //	/**
 //	 * The data set to cluster.
@@ -88,14 +97,25 @@ public final class TreeBuilder extends DummyRMOperator implements Serializable {
 	private INodeUpdater nodeUpdater;
 		
 	/**
-	 * The searcher for the best user nodes merge.
+	 * Selects the user nodes merge of each cycle.
+	 */
+	private IMergeSelector userMergeSelector;
+	
+	/**
+	 * Selects the content nodes merge of each cycle.
 	 */
-	private IMaxCategoryUtilitySearcher userMCUSearcher;
+	private IMergeSelector contentMergeSelector;
 	
 	/**
-	 * The searcher for the best content nodes merge.
+	 * The settings of the clustering process.
 	 */
-	private IMaxCategoryUtilitySearcher contentMCUSearcher;
+	private ClusteringSettings settings;
+	
+	/**
+	 * Creates the new nodes of the cycles with more than one merge in parallel.
+	 * Created on demand.
+	 */
+	private transient ExecutorService mergeExecutor;
 	
 	/**
 	 * Handles storing of nodes to db
@@ -126,10 +146,8 @@ public final class TreeBuilder extends DummyRMOperator implements Serializable {
 	
 	/**
 	 * Instantiates a new tree builder which can create a cluster tree based on the passed data set.
+	 * The default {@link ClusteringSettings} are used.
 	 * 
-	 * @param rapidminerOperatorDescription Data container for name, class, short name,
-	 * path and the description of an operator. 
-	 * @param dataset the data set to cluster.
 	 * @param searcherUsers the best merge searcher for nodes of type user.
 	 * @param searcherContent the best merge searcher for nodes of type content.
 	 * @param nodeUpdater the node updater used in the clustering process.
@@ -141,16 +159,46 @@ public final class TreeBuilder extends DummyRMOperator implements Serializable {
 			TreeComponentFactory userTreeComponentFactory,
 			INodeUpdater nodeUpdater) {
 		
+		this(searcherContent, searcherUsers, contentTreeComponentFactory,
+				userTreeComponentFactory, nodeUpdater, new ClusteringSettings());
+	}
+	
+	/**
+	 * Instantiates a new tree builder which can create a cluster tree based on the passed data set.
+	 * 
+	 * @param searcherUsers the best merge searcher for nodes of type user.
+	 * @param searcherContent the best merge searcher for nodes of type content.
+	 * @param nodeUpdater the node updater used in the clustering process.
+	 * @param settings the merge selection, the parallelism and the visualization of the clustering process.
+	 */
+	public TreeBuilder(
+			IMaxCategoryUtilitySearcher searcherContent,
+			IMaxCategoryUtilitySearcher searcherUsers,
+			TreeComponentFactory contentTreeComponentFactory,
+			TreeComponentFactory userTreeComponentFactory,
+			INodeUpdater nodeUpdater,
+			ClusteringSettings settings) {
+		
 		super(SerializableRMOperatorDescription.getOperatorDescription());
 
 		this.nodeUpdater = nodeUpdater;
-//		this.userMCUSearcher = new CachedMaxCUSearcher(searcherUsers);
-//		this.contentMCUSearcher = new CachedMaxCUSearcher(searcherContent);
-		this.userMCUSearcher = new NoCommonAttributeSkipMaxCUSearcher(new CachedMaxCUSearcher(searcherUsers));
-		this.contentMCUSearcher = new NoCommonAttributeSkipMaxCUSearcher(new CachedMaxCUSearcher(searcherContent));
+		this.settings = settings;
+		this.userMergeSelector = settings.getMergeSelection().createMergeSelector(
+				searcherUsers, settings.getMaxSubsetSize(), settings.getCacheBytes());
+		this.contentMergeSelector = settings.getMergeSelection().createMergeSelector(
+				searcherContent, settings.getMaxSubsetSize(), settings.getCacheBytes());
 		this.contentTreeComponentFactory = contentTreeComponentFactory;
 		this.userTreeComponentFactory = userTreeComponentFactory;
-		this.treeVisualizer = new TreeVisualizer();	
+		this.treeVisualizer = createTreeVisualizer();
+	}
+	
+	/**
+	 * Creates the tree visualizer if the visualization is enabled.
+	 * 
+	 * @return the tree visualizer or null if the visualization is disabled
+	 */
+	private TreeVisualizer createTreeVisualizer() {
+		return settings.isVisualization() ? new TreeVisualizer() : null;
 	}
 		
 	/**
@@ -162,10 +210,26 @@ public final class TreeBuilder extends DummyRMOperator implements Serializable {
 	 */
 	public ClusterResult resumeClustering(String pathToWriteSerializedObject) {
 		log = TBLogger.getLogger(getClass().getName());
-		treeVisualizer = new TreeVisualizer();
+		treeVisualizer = createTreeVisualizer();
 		return cluster(pathToWriteSerializedObject);
 	}
 	
+	/**
+	 * Attaches the meta data to the leaves of a de-serialized tree builder,
+	 * the meta data of the leaves are not serialized.
+	 * 
+	 * @param contentMetadata the meta data of the content leaves, may be null.
+	 * @param userMetadata the meta data of the user leaves, may be null.
+	 */
+	public void attachMetadata(MetadataStore contentMetadata, MetadataStore userMetadata) {
+		for (INode leaf : result.getContentTreeLeavesMap().values()) {
+			leaf.setMetadata(contentMetadata);
+		}
+		for (INode leaf : result.getUserTreeLeavesMap().values()) {
+			leaf.setMetadata(userMetadata);
+		}
+	}
+	
 	/**
 	 * Starts a new clustering process from scratch.
 	 * 
@@ -182,14 +246,68 @@ public final class TreeBuilder extends DummyRMOperator implements Serializable {
 		return cluster(pathToWriteSerializedObject);
 	}
 	
+	/**
+	 * Starts a new clustering process whose user tree continues from the passed sub-roots,
+	 * e.g. the sub-roots of the shards of a partitioned clustering. The content tree is
+	 * clustered from its leaves, which must already contain the internal nodes of the sub-trees
+	 * as attributes.
+	 * 
+	 * @param pathToWriteSerializedObject location for the serialization file.
+	 * If null no file is created.
+	 * @param leafNodes the leaf nodes of the data set
+	 * @param userSubRoots the roots of disjoint trees of all user leaves
+	 * @return the result of the clustering process
+	 */
+	public ClusterResult startClustering(String pathToWriteSerializedObject, InitialNodesCreator leafNodes,
+			Collection<INode> userSubRoots) {
+		log = TBLogger.getLogger(getClass().getName());
+		this.result = new ClusterResult(
+				leafNodes.getUserLeaves(), leafNodes.getContentLeaves(),
+				null, null, builderId);
+		contentNodes = new AttributeIndexedClusterSet(leafNodes.getContentLeaves().values());
+		userNodes = new AttributeIndexedClusterSet(ImmutableList.copyOf(userSubRoots));
+		return cluster(pathToWriteSerializedObject);
+	}
+	
+	/**
+	 * Clusters the user leaves of the passed data set to the passed number of sub-roots,
+	 * the first phase of a partitioned clustering. The content nodes are not clustered,
+	 * thus the users are compared by their ratings of the content leaves only.
+	 * 
+	 * @param leafNodes the leaf nodes of the data set, e.g. of the users of a shard
+	 * @param numberOfSubRoots the number of open user nodes at which the clustering stops
+	 * @return the open user nodes, more than {@code numberOfSubRoots} if no further merge was found.
+	 */
+	public List<INode> clusterUserSubRoots(InitialNodesCreator leafNodes, int numberOfSubRoots) {
+		log = TBLogger.getLogger(getClass().getName());
+		this.result = new ClusterResult(
+				leafNodes.getUserLeaves(), leafNodes.getContentLeaves(),
+				null, null, builderId);
+		initNodeSets(leafNodes);
+		monitor.initMonitoring(userNodes.size(), contentNodes.size());
+		
+		try {
+			while (userNodes.size() > Math.max(1, numberOfSubRoots)) {
+				List<INode> newUserNodes = selectAndMerge((IClusterSetIndexed<INode>) userNodes, userMergeSelector,
+						Math.min(getMergesPerCycle(), userNodes.size() - Math.max(1, numberOfSubRoots)));
+				if (newUserNodes.isEmpty()) break;
+				monitor.update(userNodes.size(), contentNodes.size());
+			}
+		} finally {
+			shutdownMergeExecutor();
+		}
+		log.info("User leaves clustered to " + userNodes.size() + " sub-roots");
+		return new ArrayList<INode>(userNodes.getUnmodifiableView());
+	}
+	
 	/**
 	 * Creates references to the leaf nodes in the set of nodes to cluster.
 	 * 
 	 * @param leafNodes the initial leaf nodes 
 	 */
 	private void initNodeSets(InitialNodesCreator leafNodes) {
-		contentNodes = new ClusterSetIndexed<INode>(leafNodes.getContentLeaves().values());
-		userNodes = new ClusterSetIndexed<INode>(leafNodes.getUserLeaves().values());
+		contentNodes = new AttributeIndexedClusterSet(leafNodes.getContentLeaves().values());
+		userNodes = new AttributeIndexedClusterSet(leafNodes.getUserLeaves().values());
 //		for (INode n : leafNodes.getContentLeaves().values()) {
 //			contentNodes.add(n);
 //		}	
@@ -212,11 +330,54 @@ public final class TreeBuilder extends DummyRMOperator implements Serializable {
 	private ClusterResult cluster(String pathToWriteSerializedObject) {
 				
 		// Initialize Visualizer
-		treeVisualizer.initVisualization(userNodes.getUnmodifiableView(), contentNodes.getUnmodifiableView());
+		if (treeVisualizer != null) {
+			treeVisualizer.initVisualization(userNodes.getUnmodifiableView(), contentNodes.getUnmodifiableView());
+		}
 		
 		// Initialize Monitor
 		monitor.initMonitoring(userNodes.size(), contentNodes.size());
 		
+		try {
+			if (settings.getMergesPerBarrier() > 0) {
+				clusterPipelined(pathToWriteSerializedObject);
+			} else {
+				clusterAlternately(pathToWriteSerializedObject);
+			}
+		} finally {
+			shutdownMergeExecutor();
+		}
+				
+		log.info("Clustering terminated! Serializing TreeBuilder...");
+		// serialize this TreeBuilder if clustering is completed.
+		ToFileSerializer.serialize(this, pathToWriteSerializedObject, builderId);
+		
+		// Create/Update Visualization
+		if (treeVisualizer != null) treeVisualizer.visualize();
+		
+		if (contentNodes.size() == 1 && userNodes.size() == 1) {
+			log.info("User merge selection: " + userMergeSelector.getStatistics()
+					+ "; content merge selection: " + contentMergeSelector.getStatistics());
+			result = new ClusterResult(
+					result.getUserTreeLeavesMap(), result.getContentTreeLeavesMap(), 
+					userNodes.getRoot(), contentNodes.getRoot(), builderId,
+					userMergeSelector.getStatistics(), contentMergeSelector.getStatistics());
+		} else {
+			log.severe("clustering terminated before the user or content cluster forests converged to trees");
+			System.exit(-1);
+		}
+		return result;
+		
+	}
+	
+	/**
+	 * Clusters the two trees alternately, one merge per cycle.
+	 * The tree of each cycle is chosen by a {@link ClusteringBalancer}.
+	 * 
+	 * @param pathToWriteSerializedObject location for the serialization file.
+	 * If null no file is created.
+	 */
+	private void clusterAlternately(String pathToWriteSerializedObject) {
+		
 		// Initialize the balancer for the clustering process.
 		ClusteringBalancer<INode> balancer = new ClusteringBalancer<INode>(userNodes, contentNodes);
 
@@ -231,7 +392,7 @@ public final class TreeBuilder extends DummyRMOperator implements Serializable {
 			performClusterCycle(balancer.getNextClusterSet());
 
 			// Create/Update Visualization
-			treeVisualizer.visualize();
+			if (treeVisualizer != null) treeVisualizer.visualize();
 			
 			// Update Monitor
 			monitor.update(userNodes.size(),contentNodes.size());
@@ -244,29 +405,185 @@ public final class TreeBuilder extends DummyRMOperator implements Serializable {
 			ToFileSerializer.serializeConditionally(this, pathToWriteSerializedObject, builderId);
 			log.info("---------------------- cycle completed (" + ( (double)(System.nanoTime() - time) / 1000000000.0) + " s) -------------------------");
 		} 
+	}
+	
+	/**
+	 * Clusters the two trees concurrently in rounds. In each round both trees perform
+	 * their merges on their own executor, the updates of the other tree are published at the
+	 * synchronisation barrier at the end of the round.
+	 * <br>
+	 * The barrier reproduces the state of clustering all user merges of the round
+	 * before all content merges of the round: the new user nodes are introduced in the content
+	 * nodes which were open at the beginning of the round, the attributes of the new
+	 * content nodes are recalculated from their updated children and the new content
+	 * nodes are introduced in the open user nodes.
+	 * 
+	 * @param pathToWriteSerializedObject location for the serialization file.
+	 * If null no file is created.
+	 * @throws IllegalStateException if the merge selectors of both trees select no merge
+	 * in a round before the clustering is done.
+	 */
+	private void clusterPipelined(String pathToWriteSerializedObject) {
+		ExecutorService userExecutor = Executors.newSingleThreadExecutor();
+		ExecutorService contentExecutor = Executors.newSingleThreadExecutor();
+		try {
+			while (! userNodes.clusteringDone() || ! contentNodes.clusteringDone()) {
+				long time = System.nanoTime();
+				log.info("------------------------------- start round ---------------------------------");
 				
-		log.info("Clustering terminated! Serializing TreeBuilder...");
-		// serialize this TreeBuilder if clustering is completed.
-		ToFileSerializer.serialize(this, pathToWriteSerializedObject, builderId);
+				// check if clustering is interrupted
+				interrupt();
+				
+				// the merges of a round are distributed such that both trees converge in the same round
+				int maxSize = Math.max(userNodes.size(), contentNodes.size());
+				Set<INode> contentNodesOfRound = new HashSet<INode>(contentNodes.getUnmodifiableView());
+				Future<List<INode>> userMerges = userExecutor.submit(createMergeTask(
+						(IClusterSetIndexed<INode>) userNodes, userMergeSelector, getNumberOfMerges(userNodes, maxSize)));
+				Future<List<INode>> contentMerges = contentExecutor.submit(createMergeTask(
+						(IClusterSetIndexed<INode>) contentNodes, contentMergeSelector, getNumberOfMerges(contentNodes, maxSize)));
+				
+				List<INode> newUserNodes = null;
+				List<INode> newContentNodes = null;
+				try {
+					newUserNodes = userMerges.get();
+					newContentNodes = contentMerges.get();
+				} catch (InterruptedException | ExecutionException e) {
+					log.severe("InterruptedException or ExecutionException while waiting for the merges of the round: " + e);
+					System.exit(-1);
+				}
+				if (newUserNodes.isEmpty() && newContentNodes.isEmpty()) {
+					// the next round would start from the same state and select no merge again
+					log.severe("No merge selected in round with " + userNodes.size() + " open user nodes and "
+							+ contentNodes.size() + " open content nodes, clustering can't proceed");
+					throw new IllegalStateException("no merge selected in a round of the pipelined clustering");
+				}
+				
+				publishUpdates(newUserNodes, newContentNodes, contentNodesOfRound);
+				
+				// Create/Update Visualization
+				if (treeVisualizer != null) treeVisualizer.visualize();
+				
+				// Update Monitor
+				monitor.update(userNodes.size(),contentNodes.size());
+				
+				// serialize this TreeBuilder if necessary according to specified interval.
+				ToFileSerializer.serializeConditionally(this, pathToWriteSerializedObject, builderId);
+				log.info("---------------------- round completed (" + newUserNodes.size() + " user merges, "
+						+ newContentNodes.size() + " content merges, " + ( (double)(System.nanoTime() - time) / 1000000000.0) + " s) -------------------------");
+			}
+		} finally {
+			userExecutor.shutdown();
+			contentExecutor.shutdown();
+		}
+	}
+	
+	/**
+	 * Gets the number of merges of the passed set in the next round, proportional
+	 * to its number of remaining merges.
+	 * 
+	 * @param openSet the set to cluster
+	 * @param maxSize the size of the larger of the two sets
+	 * @return the number of merges, 0 if clustering of the set is done
+	 */
+	private int getNumberOfMerges(IClusterSet<INode> openSet, int maxSize) {
+		if (openSet.clusteringDone()) return 0;
+		long merges = (long) settings.getMergesPerBarrier() * (openSet.size() - 1) / (maxSize - 1);
+		return (int) Math.max(1, merges);
+	}
+	
+	/**
+	 * Creates a task which performs the passed number of merges in the passed set
+	 * without updating the other set.
+	 * 
+	 * @param openSet the set to cluster
+	 * @param selector the merge selector of the set
+	 * @param numberOfMerges the number of merges to perform
+	 * @return the task, it returns the new nodes in the order of their creation
+	 */
+	private Callable<List<INode>> createMergeTask(
+			final IClusterSetIndexed<INode> openSet, final IMergeSelector selector, final int numberOfMerges) {
+		return new Callable<List<INode>>() {
+			
+			@Override
+			public List<INode> call() {
+				List<INode> newNodes = new ArrayList<INode>(numberOfMerges);
+				while (newNodes.size() < numberOfMerges) {
+					List<INode> newNodesOfCycle = selectAndMerge(
+							openSet, selector, Math.min(getMergesPerCycle(), numberOfMerges - newNodes.size()));
+					if (newNodesOfCycle.isEmpty()) break;
+					newNodes.addAll(newNodesOfCycle);
+				}
+				return newNodes;
+			}
+		};
+	}
+	
+	/**
+	 * Publishes the new nodes of a round to the other tree, as if all user merges
+	 * were performed before the content merges of the round.
+	 * 
+	 * @param newUserNodes the new user nodes in the order of their creation
+	 * @param newContentNodes the new content nodes in the order of their creation
+	 * @param contentNodesOfRound the content nodes which were open at the beginning of the round
+	 */
+	private void publishUpdates(List<INode> newUserNodes, List<INode> newContentNodes, Set<INode> contentNodesOfRound) {
 		
-		// Create/Update Visualization
-		treeVisualizer.visualize();
+		// the ids depend on the scheduling of the threads, reassign them in the order of the round
+		for (INode newNode : newUserNodes) {
+			newNode.setId(Node.createId());
+		}
+		for (INode newNode : newContentNodes) {
+			newNode.setId(Node.createId());
+		}
 		
-		if (contentNodes.size() == 1 && userNodes.size() == 1) {
-			result = new ClusterResult(
-					result.getUserTreeLeavesMap(), result.getContentTreeLeavesMap(), 
-					userNodes.getRoot(), contentNodes.getRoot(), builderId);
-		} else {
-			log.severe("clustering terminated before the user or content cluster forests converged to trees");
-			System.exit(-1);
+		IAttributeChangeListener contentListener = getAttributeChangeListener(contentNodes);
+		for (INode newUserNode : newUserNodes) {
+			nodeUpdater.updateNodes(newUserNode, contentNodesOfRound, contentListener);
 		}
-		return result;
 		
+		// the new content nodes were created from children without the new user nodes
+		if (! newUserNodes.isEmpty()) {
+			for (INode newContentNode : newContentNodes) {
+				recalculateAttributes(newContentNode, contentTreeComponentFactory, contentListener);
+			}
+		}
+		
+		IAttributeChangeListener userListener = getAttributeChangeListener(userNodes);
+		for (INode newContentNode : newContentNodes) {
+			nodeUpdater.updateNodes(newContentNode, userNodes.getUnmodifiableView(), userListener);
+		}
+	}
+	
+	/**
+	 * Recalculates the attributes of the passed node from its children and reports
+	 * the changed attribute keys to the passed listener.
+	 * 
+	 * @param node the internal node to update
+	 * @param factory the factory which created the node
+	 * @param listener the listener of the set of the node, may be null
+	 */
+	private static void recalculateAttributes(INode node, TreeComponentFactory factory, IAttributeChangeListener listener) {
+		Set<Object> formerKeys = getAttributeKeys(node);
+		factory.recalculateAttributes(node);
+		if (listener == null) return;
+		Set<Object> keys = getAttributeKeys(node);
+		for (Object key : formerKeys) {
+			if (! keys.contains(key)) listener.attributeRemoved(node, key);
+		}
+		for (Object key : keys) {
+			if (! formerKeys.contains(key)) listener.attributeAdded(node, key);
+		}
+	}
+	
+	private static Set<Object> getAttributeKeys(INode node) {
+		Set<Object> keys = new HashSet<Object>(node.getNumericalAttributeKeys());
+		keys.addAll(node.getNominalAttributeKeys());
+		return keys;
 	}
 	
 	
 	/**
-	 * Searches and performs the best merge in the passed set and updates the other set with the new node.
+	 * Searches and performs the best merges in the passed set and updates the other set with the new nodes.
 	 * 
 	 * @param openSet the set to cluster
 	 */
@@ -274,122 +591,151 @@ public final class TreeBuilder extends DummyRMOperator implements Serializable {
 		
 		if (openSet == userNodes) {
 			log.info("Get closest user nodes & merge them");
-			INode newUserNode = merge(searchBestMergeResultIndexed((IClusterSetIndexed<INode>)userNodes, userMCUSearcher), userNodes);
+			List<INode> newUserNodes = selectAndMerge((IClusterSetIndexed<INode>)userNodes, userMergeSelector, getMergesPerCycle());
 
 			// Update Trees with info from other tree on current level - only if nodes merged
-			if(newUserNode != null) {
-				nodeUpdater.updateNodes(newUserNode, contentNodes.getUnmodifiableView()); 
+			IAttributeChangeListener contentListener = getAttributeChangeListener(contentNodes);
+			for (INode newUserNode : newUserNodes) {
+				nodeUpdater.updateNodes(newUserNode, contentNodes.getUnmodifiableView(), contentListener); 
 			}
 		}
 		
 		if (openSet == contentNodes) {
 			log.info("Get closest content nodes & merge them");
-			INode newContentNode = merge(searchBestMergeResultIndexed((IClusterSetIndexed<INode>)contentNodes, contentMCUSearcher), contentNodes);		
+			List<INode> newContentNodes = selectAndMerge((IClusterSetIndexed<INode>)contentNodes, contentMergeSelector, getMergesPerCycle());
 			
 			// Update Trees with info from other tree on current level - only if nodes merged
-			if(newContentNode != null) {
-				nodeUpdater.updateNodes(newContentNode, userNodes.getUnmodifiableView()); 
+			IAttributeChangeListener userListener = getAttributeChangeListener(userNodes);
+			for (INode newContentNode : newContentNodes) {
+				nodeUpdater.updateNodes(newContentNode, userNodes.getUnmodifiableView(), userListener); 
 			}
 		}
 	}
 		
 	/**
-	 * Gets the best merge from the passed set and returns the resulting new node.
+	 * Gets the listener of the passed set for the attribute changes of the node updater.
 	 * 
-	 * @param nodes the set of nodes in which the best merge is searched.
-	 * @param mcus the max category searcher to use
-	 * @return the merge result or null if no possible merge was found.
+	 * @param openSet the set whose nodes are updated
+	 * @return the set itself if it indexes the attributes of its nodes, else null.
 	 */
-	private IMergeResult searchBestMergeResult(IClusterSet<INode> nodes, IMaxCategoryUtilitySearcher mcus) {
-
-		if(nodes.size() < 2) return null;
-
-		// get the IMergeResult with the highest utility value
-		// from the obtained IMergeResults
-		IMergeResult best = null;
-		Set<IMergeResult> shortList = mcus.getMaxCategoryUtilityMerges(nodes.getCombinations(), nodes);
-		System.gc();
-		double max = -Double.MAX_VALUE; // initialized with the smallest possible double value
-		for (IMergeResult r : shortList) {
-			double cUt = r.getCategoryUtility();
-			if (max < cUt) {
-				best = r;
-				max = cUt;
-			}
-		}
-		if (best == null) {
-			log.severe("Err: Best merge is == null; in: " + getClass().getSimpleName() );
-			System.exit(-1);
+	private static IAttributeChangeListener getAttributeChangeListener(IClusterSet<INode> openSet) {
+		return openSet instanceof IAttributeChangeListener ? (IAttributeChangeListener) openSet : null;
+	}
+	
+	/**
+	 * Gets the max number of merges per cycle, at least 1.
+	 * 
+	 * @return the max number of merges per cycle
+	 */
+	private int getMergesPerCycle() {
+		return Math.max(1, settings.getMergesPerCycle());
+	}
+	
+	/**
+	 * Selects up to {@code maxMerges} disjoint merges of the passed set with the passed selector,
+	 * performs the merges and reports them back to the selector.
+	 * <br>
+	 * The selector is notified after all merges of the cycle were applied to the set,
+	 * thus the combinations of the new nodes with each other are evaluated as well.
+	 * 
+	 * @param openSet the indexed set of nodes to cluster
+	 * @param selector the merge selector of the set
+	 * @param maxMerges the max number of merges to perform
+	 * @return the new nodes in descending order of the category utility of their merge,
+	 * empty if no possible merge was found.
+	 */
+	private List<INode> selectAndMerge(IClusterSetIndexed<INode> openSet, IMergeSelector selector, int maxMerges) {
+		List<IMergeResult> merges = selector.selectBestMerges(openSet, maxMerges, settings.getMergeTolerance());
+		if (merges.isEmpty()) return new ArrayList<INode>();
+		
+		for (IMergeResult merge : merges) {
+			log.info("Best node merge has category utility of "
+					+merge.getCategoryUtility() +" and includes: " + merge.getNodes());
 		}
-
-		log.info("Best node merge has category utility of "
-				+best.getCategoryUtility() +" and includes: " + best.getNodes());
-
-		Monitor counter = Monitor.getInstance();
-
 		log.info("cycle "+ monitor.getCycleCount() + "| number of open nodes: " + 
-				nodes.size() + "\t elapsed time [s]: "+ counter.getElapsedTime());
-		//			treeVisualizer.printAllOpenUserNodes();
-		return best;
+				openSet.size() + "\t number of merges: " + merges.size() + "\t elapsed time [s]: "+ monitor.getElapsedTime());
+		
+		List<INode> newNodes = createNodes(merges);
+		for (int i = 0; i < merges.size(); i++) {
+			merge(newNodes.get(i), merges.get(i).getNodes(), openSet);
+		}
+		for (int i = 0; i < merges.size(); i++) {
+			selector.mergePerformed(merges.get(i), newNodes.get(i), openSet);
+		}
+		return newNodes;
 	}
 	
-	
 	/**
-	 * Gets the best merge from the passed set and returns the resulting new node.
+	 * Creates the new nodes of the passed merges, in parallel if there is more than one merge.
+	 * The merges are disjoint, thus the creation of a node only reads the attributes
+	 * of its own children.
 	 * 
-	 * @param nodes the indexed set of nodes in which the best merge is searched.
-	 * @param mcus the max category searcher to use
-	 * @return the merge result or null if no possible merge was found.
+	 * @param merges the merges of a cycle
+	 * @return the new nodes in the order of the merges
 	 */
-	private IMergeResult searchBestMergeResultIndexed(IClusterSetIndexed<INode> nodes, IMaxCategoryUtilitySearcher mcus) {
-
-		if(nodes.size() < 2) return null;
-
-		// get the IMergeResult with the highest utility value
-		// from the obtained IMergeResults
-		int bestCobinationId = -1;
-		TIntDoubleMap shortList = mcus.getMaxCategoryUtilityMerges(nodes.getCombinationsIds(), nodes);
-		double max = -Double.MAX_VALUE; // initialized with the smallest possible double value
-		TIntDoubleIterator iterator = shortList.iterator();
-		for ( int i = shortList.size(); i-- > 0; ) { // faster iteration by avoiding hasNext()
-			iterator.advance();
-			if (iterator.value() > max) {
-				max = iterator.value();
-				bestCobinationId = iterator.key();
-			}
+	private List<INode> createNodes(List<IMergeResult> merges) {
+		List<INode> newNodes = new ArrayList<INode>(merges.size());
+		if (merges.size() == 1) {
+			newNodes.add(createNode(merges.get(0)));
+			return newNodes;
+		}
+		
+		ExecutorService executor = getMergeExecutor();
+		List<Future<INode>> futures = new ArrayList<Future<INode>>(merges.size());
+		for (final IMergeResult merge : merges) {
+			futures.add(executor.submit(new Callable<INode>() {
+				
+				@Override
+				public INode call() {
+					return createNode(merge);
+				}
+			}));
 		}
-		if (bestCobinationId == -1) {
-			log.severe("Err: Best merge is == null; in: " + getClass().getSimpleName() );
+		try {
+			for (Future<INode> future : futures) {
+				INode newNode = future.get();
+				
+				// the ids depend on the scheduling of the threads, reassign them in the order of the merges
+				newNode.setId(Node.createId());
+				newNodes.add(newNode);
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			log.severe("InterruptedException or ExecutionException while creating the new nodes of the cycle: " + e);
 			System.exit(-1);
 		}
-		
-		IMergeResult best = new MergeResult(max, nodes.getCombination(bestCobinationId));
-
-		log.info("Best node merge has category utility of "
-				+best.getCategoryUtility() +" and includes: " + best.getNodes() + ", combination id: " + bestCobinationId);
-
-		Monitor counter = Monitor.getInstance();
-
-		log.info("cycle "+ monitor.getCycleCount() + "| number of open nodes: " + 
-				nodes.size() + "\t elapsed time [s]: "+ counter.getElapsedTime());
-		//			treeVisualizer.printAllOpenUserNodes();
-		return best;
+		return newNodes;
+	}
+	
+	/**
+	 * Gets the executor which creates the new nodes of a cycle, it is shared by the
+	 * merge tasks of both trees of the pipelined clustering.
+	 * 
+	 * @return the executor
+	 */
+	private synchronized ExecutorService getMergeExecutor() {
+		if (mergeExecutor == null) {
+			mergeExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		}
+		return mergeExecutor;
+	}
+	
+	private synchronized void shutdownMergeExecutor() {
+		if (mergeExecutor != null) {
+			mergeExecutor.shutdown();
+			mergeExecutor = null;
+		}
 	}
 	
 	/**
 	 * Creates a new node and initializes the nodes attributes based on a list of close nodes.
 	 * The list of close nodes become the children of the new node.
 	 * 
-	 * @param nodesToMerge close nodes which are
+	 * @param mergeResult the merge whose nodes are
 	 * used to initialize a new node and will form the new nodes children. 
-	 * These nodes are removed from the open set.
 	 * 
-	 * @param openSet the set of nodes to which the new node is added
-	 * and from which the merged nodes are removed. 
-	 * 
-	 * @return a new node which has the {@code nodesToMerge} as children. 
+	 * @return a new node which has the nodes of the merge as children. 
 	 */
-	private INode merge(IMergeResult mergeResult, IClusterSet<INode> openSet) {
+	private INode createNode(IMergeResult mergeResult) {
 		Collection<INode> nodesToMerge = mergeResult.getNodes();
 		if (nodesToMerge.size() > 1) {
 			
@@ -414,21 +760,6 @@ public final class TreeBuilder extends DummyRMOperator implements Serializable {
 				System.exit(-1);
 				break;
 			}
-			
-			// Add new node to open set
-			openSet.add(newNode);
-			log.fine("New node added to open set: " + newNode);
-			
-			// Updating relationships and remove
-			for (INode nodeToMerge : nodesToMerge) {	
-				
-				// Remove merged Nodes
-				if (!openSet.remove(nodeToMerge)) {
-					log.severe("Err: Removal of merged node (" + nodeToMerge + ") from " +openSet +" failed, in: " + getClass().getSimpleName());
-					System.exit(-1);
-				}
-			}
-		
 			return newNode;
 			
 		} 
@@ -439,12 +770,39 @@ public final class TreeBuilder extends DummyRMOperator implements Serializable {
 		return null;
 	}
 	
+	/**
+	 * Adds a new node to the open set and removes its children.
+	 * 
+	 * @param newNode the new node
+	 * @param nodesToMerge the children of the new node.
+	 * These nodes are removed from the open set.
+	 * 
+	 * @param openSet the set of nodes to which the new node is added
+	 * and from which the merged nodes are removed. 
+	 */
+	private void merge(INode newNode, Collection<INode> nodesToMerge, IClusterSet<INode> openSet) {
+			
+		// Add new node to open set
+		openSet.add(newNode);
+		log.fine("New node added to open set: " + newNode);
+		
+		// Updating relationships and remove
+		for (INode nodeToMerge : nodesToMerge) {	
+			
+			// Remove merged Nodes
+			if (!openSet.remove(nodeToMerge)) {
+				log.severe("Err: Removal of merged node (" + nodeToMerge + ") from " +openSet +" failed, in: " + getClass().getSimpleName());
+				System.exit(-1);
+			}
+		}
+	}
+	
 	/**
 	 * Checks TreeVisualizer if clustering process is interrupted. If true 
 	 * the TreeVisualizer is polled every 0.5 s to check for status change.
 	 */
 	private void interrupt() {
-		while (treeVisualizer.isPaused()) {
+		while (treeVisualizer != null && treeVisualizer.isPaused()) {
 			log.info("clustering is interrupted!");
 			try {
 				synchronized(this) {
@@ -0,0 +1,102 @@
+package ch.uzh.agglorecommender.clusterer.treecomponent;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ *
+ * Maps the ids of attribute nodes to the nodes, thus a {@link ClassitAttributeMap}
+ * stores only the id of an attribute node instead of a reference to it in each map.
+ * <br>
+ * An id is owned by the first node registered with it. Node ids are not unique
+ * after de-serialization, thus a node whose id is owned by another node can't be
+ * registered and must be stored by reference.
+ * <br>
+ * Each map references the index of its attribute nodes, the index references the
+ * registered nodes. Maps share the index returned by {@link #current()} as long as
+ * one of them is referenced. When the maps of the finished clustering processes
+ * are released, the index with all its nodes is released as well and the next map
+ * starts a new, empty index, thus the ids are owned again by the nodes registered first.
+ * Registration and look-ups are thread safe.
+ *
+ */
+final class AttributeNodeIndex {
+
+	/**
+	 * The number of ids per page is 2^PAGE_BITS.
+	 */
+	private static final int PAGE_BITS = 12;
+
+	private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
+	/**
+	 * The index shared by the referenced maps, is cleared when no map references it anymore.
+	 */
+	private static WeakReference<AttributeNodeIndex> current = new WeakReference<AttributeNodeIndex>(null);
+
+	/**
+	 * The nodes in pages of 2^PAGE_BITS ids, pages are created on demand.
+	 */
+	@SuppressWarnings("unchecked")
+	private volatile AtomicReferenceArray<INode>[] pages = new AtomicReferenceArray[16];
+
+	private AttributeNodeIndex() {
+		// use current()
+	}
+
+	/**
+	 * Gets the index of the referenced maps or a new index if there is no such map.
+	 *
+	 * @return the index to use for a new map
+	 */
+	static synchronized AttributeNodeIndex current() {
+		AttributeNodeIndex index = current.get();
+		if (index == null) {
+			index = new AttributeNodeIndex();
+			current = new WeakReference<AttributeNodeIndex>(index);
+		}
+		return index;
+	}
+
+	/**
+	 * Registers a node with the passed id if the id is not owned by another node.
+	 *
+	 * @param id the id of the node, must not be negative
+	 * @param node the attribute node
+	 * @return true if the id is owned by the passed node, false if it is owned by another node.
+	 */
+	boolean register(int id, INode node) {
+		AtomicReferenceArray<INode> page = getPage(id >>> PAGE_BITS);
+		int offset = id & PAGE_MASK;
+		return page.compareAndSet(offset, null, node) || page.get(offset) == node;
+	}
+
+	/**
+	 * Gets the node which owns the passed id.
+	 *
+	 * @param id the id of a registered node
+	 * @return the node or null if no node was registered with the id
+	 */
+	INode get(int id) {
+		AtomicReferenceArray<INode>[] current = pages;
+		int pageNumber = id >>> PAGE_BITS;
+		if (pageNumber >= current.length || current[pageNumber] == null) return null;
+		return current[pageNumber].get(id & PAGE_MASK);
+	}
+
+	private AtomicReferenceArray<INode> getPage(int pageNumber) {
+		AtomicReferenceArray<INode>[] current = pages;
+		if (pageNumber < current.length && current[pageNumber] != null) return current[pageNumber];
+		synchronized (this) {
+			current = pages;
+			if (pageNumber < current.length && current[pageNumber] != null) return current[pageNumber];
+			// copy on write, readers see either the old or the new array
+			current = Arrays.copyOf(current, pageNumber < current.length ? current.length : Math.max(pageNumber + 1, current.length * 2));
+			current[pageNumber] = new AtomicReferenceArray<INode>(1 << PAGE_BITS);
+			pages = current;
+			return current[pageNumber];
+		}
+	}
+
+}
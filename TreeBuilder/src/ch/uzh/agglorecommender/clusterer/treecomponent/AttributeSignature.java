@@ -0,0 +1,229 @@
+package ch.uzh.agglorecommender.clusterer.treecomponent;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ *
+ * Compressed bitmap of the ids of the numerical attribute nodes of a node.
+ * <br>
+ * Only the non-zero 64 bit words of the bitmap are stored, together with their
+ * word index in ascending order. Thus the shared attributes of two nodes are counted
+ * with a merge-join over the word indices and an AND with a popcount per common word,
+ * instead of probing the attribute map of one node for each attribute of the other node.
+ * Attribute nodes are created in sequence, therefore their ids are dense and the words well filled.
+ * <br>
+ * A signature is exact if each attribute has its own non-negative id. The ids are not
+ * unique after de-serialization or after {@link INode#setId(long)}, signatures of such
+ * nodes are not exact and must not be used to count shared attributes.
+ * Attributes with an id outside of [0, Integer.MAX_VALUE] have no bit, a signature with such
+ * attributes may intersect any other signature.
+ * <br>
+ * Is immutable.
+ *
+ */
+public final class AttributeSignature {
+
+	/**
+	 * The indices of the non-zero words in ascending order.
+	 */
+	private final int[] wordIndices;
+
+	/**
+	 * The non-zero words of the bitmap, parallel to {@code wordIndices}.
+	 */
+	private final long[] words;
+
+	/**
+	 * The number of set bits.
+	 */
+	private final int cardinality;
+
+	/**
+	 * True if each attribute sets its own bit.
+	 */
+	private final boolean exact;
+
+	/**
+	 * True if an attribute has no bit, i.e. its id is outside of [0, Integer.MAX_VALUE].
+	 */
+	private final boolean unmapped;
+
+	/**
+	 * The attribute version of the node at the time the signature was created.
+	 */
+	final long version;
+
+	private AttributeSignature(int[] wordIndices, long[] words, int cardinality, boolean exact, boolean unmapped, long version) {
+		this.wordIndices = wordIndices;
+		this.words = words;
+		this.cardinality = cardinality;
+		this.exact = exact;
+		this.unmapped = unmapped;
+		this.version = version;
+	}
+
+	/**
+	 * Gets the signature of the numerical attributes of a node.
+	 * The signatures of {@link Node}s are cached until their attributes change.
+	 *
+	 * @param node the node
+	 * @return the signature of the numerical attribute keys of {@code node}.
+	 */
+	public static AttributeSignature of(INode node) {
+		if (node instanceof Node) {
+			return ((Node) node).getAttributeSignature();
+		}
+		return create(node.getNumericalAttributeKeys(), 0);
+	}
+
+	/**
+	 * Creates the signature of a collection of attribute nodes.
+	 *
+	 * @param attributes the attribute nodes
+	 * @param version the attribute version of the node of the attributes
+	 * @return a new signature
+	 */
+	static AttributeSignature create(Collection<INode> attributes, long version) {
+		int[] ids = new int[attributes.size()];
+		int size = 0;
+		boolean unmapped = false;
+		for (INode attribute : attributes) {
+			long id = attribute.getId();
+			if (id < 0 || id > Integer.MAX_VALUE) {
+				unmapped = true;
+				continue;
+			}
+			ids[size++] = (int) id;
+		}
+		Arrays.sort(ids, 0, size);
+		return create(ids, size, ! unmapped, unmapped, version);
+	}
+
+	/**
+	 * Creates the signature of the attributes in the columns of a map.
+	 *
+	 * @param columns an attribute map without overflow, its ids are sorted and unique
+	 * @param version the attribute version of the node of the map
+	 * @return a new signature
+	 */
+	static AttributeSignature create(ClassitAttributeMap columns, long version) {
+		int size = columns.getNumberOfColumnEntries();
+		int[] ids = new int[size];
+		for (int i = 0; i < size; i++) {
+			ids[i] = columns.getAttributeId(i);
+		}
+		return create(ids, size, true, false, version);
+	}
+
+	/**
+	 * Creates the signature of the first {@code size} sorted ids.
+	 */
+	private static AttributeSignature create(int[] ids, int size, boolean exact, boolean unmapped, long version) {
+		int numberOfWords = 0;
+		int lastWordIndex = -1;
+		for (int i = 0; i < size; i++) {
+			int wordIndex = ids[i] >>> 6;
+			if (wordIndex != lastWordIndex) {
+				numberOfWords++;
+				lastWordIndex = wordIndex;
+			}
+		}
+		int[] wordIndices = new int[numberOfWords];
+		long[] words = new long[numberOfWords];
+		int word = -1;
+		lastWordIndex = -1;
+		for (int i = 0; i < size; i++) {
+			int wordIndex = ids[i] >>> 6;
+			if (wordIndex != lastWordIndex) {
+				word++;
+				wordIndices[word] = wordIndex;
+				lastWordIndex = wordIndex;
+			}
+			long bit = 1L << (ids[i] & 63);
+			if ((words[word] & bit) != 0) {
+				// two attribute nodes with the same id
+				exact = false;
+			}
+			words[word] |= bit;
+		}
+		int cardinality = 0;
+		for (long w : words) {
+			cardinality += Long.bitCount(w);
+		}
+		return new AttributeSignature(wordIndices, words, cardinality, exact, unmapped, version);
+	}
+
+	/**
+	 * Gets the number of distinct attribute ids.
+	 *
+	 * @return the number of set bits.
+	 */
+	public int cardinality() {
+		return cardinality;
+	}
+
+	/**
+	 * Checks if each attribute has its own bit in this signature.
+	 *
+	 * @return true if the shared attributes can be counted with this signature.
+	 */
+	public boolean isExact() {
+		return exact;
+	}
+
+	/**
+	 * Checks if this and the passed signature may have a common attribute.
+	 *
+	 * @param other another signature
+	 * @return true if a bit is set in both signatures or if one of them has an attribute without a bit,
+	 * false if the signatures have no common attribute.
+	 */
+	public boolean intersects(AttributeSignature other) {
+		if (unmapped || other.unmapped) return true;
+		int i = 0;
+		int j = 0;
+		while (i < wordIndices.length && j < other.wordIndices.length) {
+			int first = wordIndices[i];
+			int second = other.wordIndices[j];
+			if (first < second) {
+				i++;
+			} else if (first > second) {
+				j++;
+			} else {
+				if ((words[i] & other.words[j]) != 0) return true;
+				i++;
+				j++;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Counts the attribute ids of this and the passed signature.
+	 * Equals the number of shared attributes if both signatures are exact.
+	 *
+	 * @param other another signature
+	 * @return the number of bits set in both signatures
+	 */
+	public int intersectionCardinality(AttributeSignature other) {
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while (i < wordIndices.length && j < other.wordIndices.length) {
+			int first = wordIndices[i];
+			int second = other.wordIndices[j];
+			if (first < second) {
+				i++;
+			} else if (first > second) {
+				j++;
+			} else {
+				count += Long.bitCount(words[i] & other.words[j]);
+				i++;
+				j++;
+			}
+		}
+		return count;
+	}
+
+}
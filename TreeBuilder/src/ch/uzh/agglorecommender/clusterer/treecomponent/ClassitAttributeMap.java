@@ -0,0 +1,630 @@
+package ch.uzh.agglorecommender.clusterer.treecomponent;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import ch.uzh.agglorecommender.util.TBForkJoinPool;
+import ch.uzh.agglorecommender.util.TBLogger;
+
+/**
+ *
+ * Numerical attribute map of a node, which stores {@link ClassitAttribute}
+ * values in columns of primitive arrays instead of one object per attribute.
+ * <br>
+ * The attributes are sorted by the id of the attribute node. The columns
+ * hold the attribute node id, the support, the sum of ratings and the sum of squared ratings.
+ * The attribute nodes are resolved through the {@link AttributeNodeIndex} referenced by the map,
+ * which keeps them alive as long as the map is referenced. Maps share the index, thus equal ids
+ * in the columns of two maps refer to the same attribute node and the attributes of two maps
+ * can be compared with a merge-join over the sorted ids without hashing and without allocation.
+ * <br>
+ * Values which are no {@code ClassitAttribute} and attribute nodes whose id does not fit
+ * into an int or is owned by another attribute node are stored in an overflow map.
+ * <br>
+ * {@link #get(Object)} and the entries create a new {@code ClassitAttribute} for each call,
+ * the key set and the column accessors don't allocate attributes.
+ * The map is not thread safe for modifications, concurrent reads are safe.
+ *
+ */
+public final class ClassitAttributeMap extends AbstractMap<INode, IAttribute> implements Serializable {
+
+	/**
+	 * Determines if a de-serialized file is compatible with this class.
+	 * <br>
+	 * <br>
+	 * Maintainers must change this value if and only if the new version
+	 * of this class is not compatible with old versions.
+	 */
+	private static final long serialVersionUID = 2L;
+
+	/**
+	 * Merges of maps with at least this total number of attributes are split
+	 * and merged concurrently.
+	 */
+	public static final int PARALLEL_MERGE_THRESHOLD = 10000;
+
+	/**
+	 * Merges the attributes of a range of attribute ids.
+	 */
+	private static final class RangeMerge implements Callable<ClassitAttributeMap> {
+
+		private final ClassitAttributeMap[] columns;
+
+		private final long from;
+
+		private final long to;
+
+		private RangeMerge(ClassitAttributeMap[] columns, long from, long to) {
+			this.columns = columns;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public ClassitAttributeMap call() {
+			ClassitAttributeMap merged = new ClassitAttributeMap(16, columns[0].index);
+			mergeRange(columns, from, to, merged);
+			return merged;
+		}
+	}
+
+	/**
+	 * The number of attributes stored in the columns.
+	 */
+	private int size = 0;
+
+	/**
+	 * The ids of the attribute nodes in ascending order.
+	 */
+	private int[] ids;
+
+	/**
+	 * The support of the attributes, parallel to {@code ids}.
+	 */
+	private int[] support;
+
+	/**
+	 * The sum of ratings of the attributes, parallel to {@code ids}.
+	 */
+	private double[] sumOfRatings;
+
+	/**
+	 * The sum of squared ratings of the attributes, parallel to {@code ids}.
+	 */
+	private double[] sumOfSquaredRatings;
+
+	/**
+	 * Attributes which can't be stored in the columns. Is null as long as there is no such attribute.
+	 */
+	private Map<INode, IAttribute> overflow = null;
+
+	/**
+	 * Resolves the ids of the columns. Is not serialized, the nodes are registered again when the map is read.
+	 */
+	private transient AttributeNodeIndex index;
+
+	/**
+	 * Instantiates a new empty map.
+	 *
+	 * @param initialCapacity the number of attributes the map can hold before it grows.
+	 */
+	public ClassitAttributeMap(int initialCapacity) {
+		this(initialCapacity, AttributeNodeIndex.current());
+	}
+
+	/**
+	 * Instantiates a new empty map, which resolves its ids through the passed index.
+	 */
+	private ClassitAttributeMap(int initialCapacity, AttributeNodeIndex index) {
+		this.index = index;
+		int capacity = Math.max(initialCapacity, 4);
+		this.ids = new int[capacity];
+		this.support = new int[capacity];
+		this.sumOfRatings = new double[capacity];
+		this.sumOfSquaredRatings = new double[capacity];
+	}
+
+	/**
+	 * Instantiates a new map with the attributes of the passed map.
+	 *
+	 * @param attributes the attributes to copy
+	 */
+	public ClassitAttributeMap(Map<INode, IAttribute> attributes) {
+		this(attributes.size());
+		putAll(attributes);
+	}
+
+	/**
+	 * Creates the attribute map of a node resulting of a merge, i.e. sums up the support,
+	 * the sum of ratings and the sum of squared ratings of each attribute over the passed maps.
+	 * <br>
+	 * The sorted columns of the maps are merged in a single pass, the values of an attribute
+	 * are added in the order of the passed maps. Merges with at least {@link #PARALLEL_MERGE_THRESHOLD}
+	 * attributes are split into ranges of attribute ids, which are merged concurrently.
+	 *
+	 * @param maps the columnar attribute maps of the merged nodes
+	 * @return the merged map
+	 */
+	public static ClassitAttributeMap merge(List<ClassitAttributeMap> maps) {
+		ClassitAttributeMap[] columns = maps.toArray(new ClassitAttributeMap[maps.size()]);
+		int capacity = 0;
+		ClassitAttributeMap largest = columns[0];
+		for (ClassitAttributeMap map : columns) {
+			capacity += map.size;
+			if (map.size > largest.size) largest = map;
+		}
+		int numberOfRanges = Math.min(TBForkJoinPool.getPool().getParallelism() * 4, capacity / PARALLEL_MERGE_THRESHOLD * 4);
+		if (numberOfRanges < 2) {
+			ClassitAttributeMap merged = new ClassitAttributeMap(capacity, columns[0].index);
+			mergeRange(columns, Long.MIN_VALUE, Long.MAX_VALUE, merged);
+			return merged;
+		}
+
+		// split at the ids of the largest map, thus each range has about the same size
+		List<Callable<ClassitAttributeMap>> ranges = new ArrayList<Callable<ClassitAttributeMap>>(numberOfRanges);
+		long from = Long.MIN_VALUE;
+		for (int r = 1; r <= numberOfRanges; r++) {
+			long to = r == numberOfRanges ? Long.MAX_VALUE : largest.ids[(int) ((long) largest.size * r / numberOfRanges)];
+			if (to > from) {
+				ranges.add(new RangeMerge(columns, from, to));
+				from = to;
+			}
+		}
+		ClassitAttributeMap merged = null;
+		try {
+			List<ClassitAttributeMap> results = new ArrayList<ClassitAttributeMap>(ranges.size());
+			for (Future<ClassitAttributeMap> future : TBForkJoinPool.getPool().invokeAll(ranges)) {
+				results.add(future.get());
+			}
+			int size = 0;
+			for (ClassitAttributeMap result : results) {
+				size += result.size;
+			}
+			merged = new ClassitAttributeMap(size, columns[0].index);
+			for (ClassitAttributeMap result : results) {
+				merged.append(result);
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			TBLogger.getLogger(ClassitAttributeMap.class.getName()).severe("Merge of attribute maps failed: " + e.getMessage());
+			System.exit(-1);
+		}
+		return merged;
+	}
+
+	/**
+	 * Merges the attributes with ids in [from, to) of the passed maps and appends them to {@code merged}.
+	 */
+	private static void mergeRange(ClassitAttributeMap[] columns, long from, long to, ClassitAttributeMap merged) {
+		int[] positions = new int[columns.length];
+		for (int m = 0; m < columns.length; m++) {
+			positions[m] = lowerBound(columns[m], from);
+		}
+		while (true) {
+			// find the smallest id not yet merged
+			long id = to;
+			for (int m = 0; m < columns.length; m++) {
+				if (positions[m] < columns[m].size && columns[m].ids[positions[m]] < id) {
+					id = columns[m].ids[positions[m]];
+				}
+			}
+			if (id >= to) return;
+
+			int support = 0;
+			double sumOfRatings = 0.0;
+			double sumOfSquaredRatings = 0.0;
+			for (int m = 0; m < columns.length; m++) {
+				ClassitAttributeMap map = columns[m];
+				int position = positions[m];
+				if (position < map.size && map.ids[position] == id) {
+					support += map.support[position];
+					sumOfRatings += map.sumOfRatings[position];
+					sumOfSquaredRatings += map.sumOfSquaredRatings[position];
+					positions[m]++;
+				}
+			}
+			merged.ensureCapacity(merged.size + 1);
+			merged.ids[merged.size] = (int) id;
+			merged.support[merged.size] = support;
+			merged.sumOfRatings[merged.size] = sumOfRatings;
+			merged.sumOfSquaredRatings[merged.size] = sumOfSquaredRatings;
+			merged.size++;
+		}
+	}
+
+	/**
+	 * Gets the index of the first attribute with an id of at least {@code id}.
+	 */
+	private static int lowerBound(ClassitAttributeMap map, long id) {
+		if (id <= Integer.MIN_VALUE) return 0;
+		if (id > Integer.MAX_VALUE) return map.size;
+		int index = Arrays.binarySearch(map.ids, 0, map.size, (int) id);
+		return index >= 0 ? index : -(index + 1);
+	}
+
+	/**
+	 * Appends the columns of a map whose ids are greater than all ids of this map.
+	 */
+	private void append(ClassitAttributeMap map) {
+		ensureCapacity(size + map.size);
+		System.arraycopy(map.ids, 0, ids, size, map.size);
+		System.arraycopy(map.support, 0, support, size, map.size);
+		System.arraycopy(map.sumOfRatings, 0, sumOfRatings, size, map.size);
+		System.arraycopy(map.sumOfSquaredRatings, 0, sumOfSquaredRatings, size, map.size);
+		size += map.size;
+	}
+
+	/**
+	 * Gets the number of attributes in the columns. The attribute columns
+	 * are accessed by an index between 0 (inclusive) and this number (exclusive).
+	 *
+	 * @return the number of attributes in the columns.
+	 */
+	public int getNumberOfColumnEntries() {
+		return size;
+	}
+
+	/**
+	 * Checks if all attributes of this map are stored in the columns.
+	 *
+	 * @return true if there are no attributes in the overflow map, else false.
+	 */
+	public boolean isColumnar() {
+		return overflow == null || overflow.isEmpty();
+	}
+
+	public int getAttributeId(int index) {
+		return ids[index];
+	}
+
+	public INode getAttributeKey(int index) {
+		return this.index.get(ids[index]);
+	}
+
+	public int getSupport(int index) {
+		return support[index];
+	}
+
+	public double getSumOfRatings(int index) {
+		return sumOfRatings[index];
+	}
+
+	public double getSumOfSquaredRatings(int index) {
+		return sumOfSquaredRatings[index];
+	}
+
+	@Override
+	public int size() {
+		return overflow == null ? size : size + overflow.size();
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		if (indexOf(key) >= 0) return true;
+		return overflow != null && overflow.containsKey(key);
+	}
+
+	@Override
+	public IAttribute get(Object key) {
+		int index = indexOf(key);
+		if (index >= 0) return attributeAt(index);
+		return overflow == null ? null : overflow.get(key);
+	}
+
+	@Override
+	public IAttribute put(INode key, IAttribute value) {
+		int index = indexOf(key);
+		if (index >= 0) {
+			IAttribute previous = attributeAt(index);
+			if (value instanceof ClassitAttribute) {
+				setColumns(index, value);
+			} else {
+				removeAt(index);
+				putOverflow(key, value);
+			}
+			return previous;
+		}
+
+		IAttribute previous = overflow == null ? null : overflow.remove(key);
+		long id = key.getId();
+		if (! (value instanceof ClassitAttribute) || id < 0 || id > Integer.MAX_VALUE) {
+			putOverflow(key, value);
+			return previous;
+		}
+		if (! this.index.register((int) id, key)) {
+			// id is owned by another attribute node (ids are not unique after de-serialization)
+			putOverflow(key, value);
+			return previous;
+		}
+		int insertion = -(Arrays.binarySearch(ids, 0, size, (int) id) + 1);
+		ensureCapacity(size + 1);
+		int moved = size - insertion;
+		if (moved > 0) {
+			System.arraycopy(ids, insertion, ids, insertion + 1, moved);
+			System.arraycopy(support, insertion, support, insertion + 1, moved);
+			System.arraycopy(sumOfRatings, insertion, sumOfRatings, insertion + 1, moved);
+			System.arraycopy(sumOfSquaredRatings, insertion, sumOfSquaredRatings, insertion + 1, moved);
+		}
+		ids[insertion] = (int) id;
+		setColumns(insertion, value);
+		size++;
+		return previous;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * The attributes are inserted in ascending order of their ids, which
+	 * appends them to the columns if this map is empty.
+	 */
+	@Override
+	public void putAll(Map<? extends INode, ? extends IAttribute> m) {
+		List<INode> sortedKeys = new ArrayList<INode>(m.keySet());
+		Collections.sort(sortedKeys, new Comparator<INode>() {
+			@Override
+			public int compare(INode o1, INode o2) {
+				return Long.compare(o1.getId(), o2.getId());
+			}
+		});
+		ensureCapacity(size + sortedKeys.size());
+		for (INode key : sortedKeys) {
+			put(key, m.get(key));
+		}
+	}
+
+	@Override
+	public IAttribute remove(Object key) {
+		int index = indexOf(key);
+		if (index >= 0) {
+			IAttribute previous = attributeAt(index);
+			removeAt(index);
+			return previous;
+		}
+		return overflow == null ? null : overflow.remove(key);
+	}
+
+	@Override
+	public void clear() {
+		size = 0;
+		overflow = null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * Iterates over the columns without creating attributes.
+	 */
+	@Override
+	public Set<INode> keySet() {
+		return new AbstractSet<INode>() {
+			@Override
+			public Iterator<INode> iterator() {
+				final Iterator<Entry<INode, IAttribute>> overflowIterator = overflow == null ? null : overflow.entrySet().iterator();
+				return new ColumnIterator<INode>(overflowIterator) {
+					@Override
+					INode column(int index) {
+						return getAttributeKey(index);
+					}
+
+					@Override
+					INode overflow(Entry<INode, IAttribute> entry) {
+						return entry.getKey();
+					}
+				};
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return containsKey(o);
+			}
+
+			@Override
+			public int size() {
+				return ClassitAttributeMap.this.size();
+			}
+		};
+	}
+
+	@Override
+	public Set<Entry<INode, IAttribute>> entrySet() {
+		return new AbstractSet<Entry<INode, IAttribute>>() {
+			@Override
+			public Iterator<Entry<INode, IAttribute>> iterator() {
+				final Iterator<Entry<INode, IAttribute>> overflowIterator = overflow == null ? null : overflow.entrySet().iterator();
+				return new ColumnIterator<Entry<INode, IAttribute>>(overflowIterator) {
+					@Override
+					Entry<INode, IAttribute> column(int index) {
+						return new SimpleImmutableEntry<INode, IAttribute>(getAttributeKey(index), attributeAt(index));
+					}
+
+					@Override
+					Entry<INode, IAttribute> overflow(Entry<INode, IAttribute> entry) {
+						return entry;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return ClassitAttributeMap.this.size();
+			}
+		};
+	}
+
+	/**
+	 * Gets the column index of the passed attribute node.
+	 *
+	 * @return the index or a negative value if {@code key} is not stored in the columns.
+	 */
+	private int indexOf(Object key) {
+		if (! (key instanceof INode)) return -1;
+		long id = ((INode) key).getId();
+		if (id < 0 || id > Integer.MAX_VALUE) return -1;
+		int index = Arrays.binarySearch(ids, 0, size, (int) id);
+		if (index >= 0 && this.index.get((int) id) != key) return -1;
+		return index;
+	}
+
+	private IAttribute attributeAt(int index) {
+		return new ClassitAttribute(support[index], sumOfRatings[index], sumOfSquaredRatings[index]);
+	}
+
+	private void setColumns(int index, IAttribute value) {
+		support[index] = value.getSupport();
+		sumOfRatings[index] = value.getSumOfRatings();
+		sumOfSquaredRatings[index] = value.getSumOfSquaredRatings();
+	}
+
+	private void putOverflow(INode key, IAttribute value) {
+		if (overflow == null) {
+			overflow = new HashMap<INode, IAttribute>();
+		}
+		overflow.put(key, value);
+	}
+
+	private void removeAt(int index) {
+		int moved = size - index - 1;
+		if (moved > 0) {
+			System.arraycopy(ids, index + 1, ids, index, moved);
+			System.arraycopy(support, index + 1, support, index, moved);
+			System.arraycopy(sumOfRatings, index + 1, sumOfRatings, index, moved);
+			System.arraycopy(sumOfSquaredRatings, index + 1, sumOfSquaredRatings, index, moved);
+		}
+		size--;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= ids.length) return;
+		int newCapacity = Math.max(capacity, ids.length + (ids.length >>> 1));
+		ids = Arrays.copyOf(ids, newCapacity);
+		support = Arrays.copyOf(support, newCapacity);
+		sumOfRatings = Arrays.copyOf(sumOfRatings, newCapacity);
+		sumOfSquaredRatings = Arrays.copyOf(sumOfSquaredRatings, newCapacity);
+	}
+
+	/**
+	 * Writes the columns without the unused capacity, followed by the attribute nodes,
+	 * which are registered again when the map is read.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			out.writeInt(ids[i]);
+			out.writeInt(support[i]);
+			out.writeDouble(sumOfRatings[i]);
+			out.writeDouble(sumOfSquaredRatings[i]);
+		}
+		for (int i = 0; i < size; i++) {
+			out.writeObject(getAttributeKey(i));
+		}
+		out.writeObject(overflow);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		int numberOfColumnEntries = in.readInt();
+		int capacity = Math.max(numberOfColumnEntries, 4);
+		ids = new int[capacity];
+		support = new int[capacity];
+		sumOfRatings = new double[capacity];
+		sumOfSquaredRatings = new double[capacity];
+		for (int i = 0; i < numberOfColumnEntries; i++) {
+			ids[i] = in.readInt();
+			support[i] = in.readInt();
+			sumOfRatings[i] = in.readDouble();
+			sumOfSquaredRatings[i] = in.readDouble();
+		}
+		size = numberOfColumnEntries;
+		INode[] keys = new INode[numberOfColumnEntries];
+		for (int i = 0; i < numberOfColumnEntries; i++) {
+			keys[i] = (INode) in.readObject();
+		}
+		overflow = (Map<INode, IAttribute>) in.readObject();
+		index = AttributeNodeIndex.current();
+
+		// the id of a read node may be owned by a node of this process, these nodes move to the overflow map
+		for (int i = numberOfColumnEntries - 1; i >= 0; i--) {
+			if (! index.register(ids[i], keys[i])) {
+				IAttribute attribute = attributeAt(i);
+				removeAt(i);
+				putOverflow(keys[i], attribute);
+			}
+		}
+	}
+
+	/**
+	 * Iterates over the columns in ascending id order and afterwards over the overflow map.
+	 */
+	private abstract class ColumnIterator<E> implements Iterator<E> {
+
+		private int next = 0;
+
+		private int last = -1;
+
+		private boolean lastFromOverflow = false;
+
+		private final Iterator<Entry<INode, IAttribute>> overflowIterator;
+
+		private ColumnIterator(Iterator<Entry<INode, IAttribute>> overflowIterator) {
+			this.overflowIterator = overflowIterator;
+		}
+
+		/**
+		 * Gets the element of a column index.
+		 */
+		abstract E column(int index);
+
+		/**
+		 * Gets the element of an entry of the overflow map.
+		 */
+		abstract E overflow(Entry<INode, IAttribute> entry);
+
+		@Override
+		public boolean hasNext() {
+			return next < size || (overflowIterator != null && overflowIterator.hasNext());
+		}
+
+		@Override
+		public E next() {
+			if (next < size) {
+				last = next++;
+				lastFromOverflow = false;
+				return column(last);
+			}
+			if (! hasNext()) throw new NoSuchElementException();
+			last = -1;
+			lastFromOverflow = true;
+			return overflow(overflowIterator.next());
+		}
+
+		@Override
+		public void remove() {
+			if (lastFromOverflow) {
+				overflowIterator.remove();
+				lastFromOverflow = false;
+				return;
+			}
+			if (last < 0) throw new IllegalStateException();
+			removeAt(last);
+			next = last;
+			last = -1;
+		}
+	}
+
+}
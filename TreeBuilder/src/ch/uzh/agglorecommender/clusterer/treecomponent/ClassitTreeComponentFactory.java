@@ -1,9 +1,11 @@
 package ch.uzh.agglorecommender.clusterer.treecomponent;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
-import ch.uzh.agglorecommender.clusterer.treesearch.ClassitMaxCategoryUtilitySearcher;
 import ch.uzh.agglorecommender.util.TBLogger;
 
 public class ClassitTreeComponentFactory extends TreeComponentFactory implements Serializable {
@@ -47,6 +49,44 @@ public class ClassitTreeComponentFactory extends TreeComponentFactory implements
 		return null;
 	}
 
+	/**
+	 * Stores the attributes in the columns of a {@code ClassitAttributeMap}.
+	 */
+	@Override
+	public Map<INode, IAttribute> createNumericalAttributeMap(Map<INode, IAttribute> attributes) {
+		return new ClassitAttributeMap(attributes);
+	}
+
+	/**
+	 * Appends the ratings to the columns of a new map without an intermediate map,
+	 * keys in ascending order of their ids are inserted at the end of the columns.
+	 */
+	@Override
+	public Map<INode, IAttribute> createLeafAttributeMap(INode[] keys, double[] ratings, int length) {
+		ClassitAttributeMap attributes = new ClassitAttributeMap(length);
+		for (int i = 0; i < length; i++) {
+			attributes.put(keys[i], createNumericAttribute(ratings[i]));
+		}
+		return attributes;
+	}
+
+	/**
+	 * Merges the columns of the attribute maps of the merged nodes in a single pass
+	 * if all nodes store their attributes in columns.
+	 */
+	@Override
+	protected Map<INode, IAttribute> createNumericalAttMap(Collection<INode> nodesToMerge) {
+		List<ClassitAttributeMap> columns = new ArrayList<ClassitAttributeMap>(nodesToMerge.size());
+		for (INode node : nodesToMerge) {
+			ClassitAttributeMap nodeColumns = node instanceof Node ? ((Node) node).getColumnarNumericalAttributes() : null;
+			if (nodeColumns == null) {
+				return super.createNumericalAttMap(nodesToMerge);
+			}
+			columns.add(nodeColumns);
+		}
+		return ClassitAttributeMap.merge(columns);
+	}
+
 	/**
 	 * Used to calculate new nodes in the merging process
 	 */
@@ -55,15 +95,22 @@ public class ClassitTreeComponentFactory extends TreeComponentFactory implements
 		
 		INode attributeKey = (INode) object;
 		
-		int support = ClassitMaxCategoryUtilitySearcher.calcSupportOfAttribute(attributeKey, nodesToMerge);
+		// single pass over the merge instead of one pass per aggregated value
+		int support = 0;
+		double sumOfRatings = 0.0;
+		double sumOfSquaredRatings = 0.0;
+		for (INode node : nodesToMerge) {
+			IAttribute att = node.getNumericalAttributeValue(attributeKey);
+			if (att != null) {
+				support += att.getSupport();
+				sumOfRatings += att.getSumOfRatings();
+				sumOfSquaredRatings += att.getSumOfSquaredRatings();
+			}
+		}
 		if (support < 1) {
 			TBLogger.getLogger(getClass().getName()).severe("Attempt to initialize attribute object with support smaller 1." );
 			System.exit(-1);
 		}
-		double sumOfRatings = ClassitMaxCategoryUtilitySearcher.calcSumOfRatingsOfAttribute(attributeKey, nodesToMerge);
-//		double average = sumOfRatings / (double) support;
-		double sumOfSquaredRatings = ClassitMaxCategoryUtilitySearcher.calcSumOfSquaredRatingsOfAttribute(attributeKey, nodesToMerge);
-//		double stdDev = ClassitMaxCategoryUtilitySearcher.calcStdDevOfAttribute(attributeKey, merge);
 
 		return new ClassitAttribute(support, sumOfRatings, sumOfSquaredRatings);
 	}
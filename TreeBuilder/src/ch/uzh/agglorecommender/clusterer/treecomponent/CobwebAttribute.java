@@ -1,15 +1,26 @@
 package ch.uzh.agglorecommender.clusterer.treecomponent;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 
 /**
  * 
  * A simple parameter object, which stores attribute value probabilities of
  * of a particular key in the attribute map of a node.
  * <br>
+ * The values are encoded by the {@link CobwebValueDictionary} and stored
+ * as sorted codes with a parallel array of probabilities, thus the values of
+ * two attributes can be compared with a merge-join over the codes
+ * without hashing and without boxing.
+ * <br>
  * Is immutable.
  *
  */
@@ -22,10 +33,17 @@ public final class CobwebAttribute implements IAttribute, Serializable {
 	 * Maintainers must change this value if and only if the new version
 	 * of this class is not compatible with old versions.
 	 */
-	private static final long serialVersionUID = 1L;
-		
+	private static final long serialVersionUID = 2L;
+	
+	/**
+	 * The dictionary codes of the attribute values in ascending order.
+	 * <br>
+	 * Codes are only valid within a run, thus the values are serialized instead.
+	 */
+	private transient int[] valueCodes;
+	
 	/**
-	 * Attribute value - probability pairs.
+	 * Attribute value probabilities, parallel to {@code valueCodes}.
 	 * <br>
 	 * e.g.:
 	 * <br>
@@ -40,22 +58,153 @@ public final class CobwebAttribute implements IAttribute, Serializable {
 	 * the user-content-rating matrix.
 	 * </pre>
 	 */
-	private final Map<Object, Double> attributeProbabilities;
+	private transient float[] probabilities;
 	
 	/**
 	 * Instantiates a new {@code CobwebAttribute} with a 
 	 * attribute-value probability map.
 	 * <br>
-	 * @param meta 
 	 * @param attribute-value probability map of this attribute.
 	 */
 	public CobwebAttribute(Map<?, Double> probabilityMap) {
-		this.attributeProbabilities = (Map<Object, Double>) probabilityMap;
+		int[] codes = new int[probabilityMap.size()];
+		float[] values = new float[probabilityMap.size()];
+		int i = 0;
+		for (Map.Entry<?, Double> entry : probabilityMap.entrySet()) {
+			codes[i] = CobwebValueDictionary.encode(entry.getKey());
+			values[i] = entry.getValue().floatValue();
+			i++;
+		}
+		sortByCode(codes, values, codes.length);
+		this.valueCodes = codes;
+		this.probabilities = values;
+	}
+	
+	/**
+	 * Instantiates a new {@code CobwebAttribute} with sorted codes.
+	 * The arrays are not copied.
+	 */
+	private CobwebAttribute(int[] valueCodes, float[] probabilities) {
+		this.valueCodes = valueCodes;
+		this.probabilities = probabilities;
+	}
+	
+	/**
+	 * Creates the attribute of a merged node from the attributes of the merged nodes.
+	 * The probability of a value is the sum of the weighted probabilities of the value
+	 * in the passed attributes, added in the order of the passed attributes.
+	 * <br>
+	 * The value codes of all attributes are merged in a single pass.
+	 *
+	 * @param attributes the attributes of the merged nodes, null for nodes without the attribute.
+	 * @param weights the weights of the attributes, i.e. the fraction of leaves of the merged node
+	 * in the subtree of a merged node.
+	 * @return the attribute of the merged node.
+	 */
+	public static CobwebAttribute merge(CobwebAttribute[] attributes, double[] weights) {
+		int capacity = 0;
+		for (CobwebAttribute attribute : attributes) {
+			if (attribute != null) capacity += attribute.valueCodes.length;
+		}
+		int[] codes = new int[capacity];
+		float[] values = new float[capacity];
+		int[] positions = new int[attributes.length];
+		int size = 0;
+		while (true) {
+			// find the smallest code not yet merged
+			int code = Integer.MAX_VALUE;
+			boolean found = false;
+			for (int a = 0; a < attributes.length; a++) {
+				CobwebAttribute attribute = attributes[a];
+				if (attribute != null && positions[a] < attribute.valueCodes.length
+						&& (! found || attribute.valueCodes[positions[a]] < code)) {
+					code = attribute.valueCodes[positions[a]];
+					found = true;
+				}
+			}
+			if (! found) break;
+			
+			double probability = 0.0;
+			boolean first = true;
+			for (int a = 0; a < attributes.length; a++) {
+				CobwebAttribute attribute = attributes[a];
+				if (attribute != null && positions[a] < attribute.valueCodes.length
+						&& attribute.valueCodes[positions[a]] == code) {
+					double weighted = attribute.probabilities[positions[a]] * weights[a];
+					probability = first ? weighted : probability + weighted;
+					first = false;
+					positions[a]++;
+				}
+			}
+			codes[size] = code;
+			values[size] = (float) probability;
+			size++;
+		}
+		if (size < capacity) {
+			codes = Arrays.copyOf(codes, size);
+			values = Arrays.copyOf(values, size);
+		}
+		return new CobwebAttribute(codes, values);
+	}
+	
+	/**
+	 * Gets the number of values of this attribute. The values are accessed
+	 * by an index between 0 (inclusive) and this number (exclusive).
+	 *
+	 * @return the number of values with a probability.
+	 */
+	public int getNumberOfValues() {
+		return valueCodes.length;
 	}
 	
+	/**
+	 * Gets the dictionary code of a value. Codes are in ascending order of the index.
+	 *
+	 * @param index the index of the value
+	 * @return the code of the value.
+	 */
+	public int getValueCode(int index) {
+		return valueCodes[index];
+	}
+	
+	/**
+	 * Gets the probability of a value.
+	 *
+	 * @param index the index of the value
+	 * @return the probability of the value.
+	 */
+	public float getProbability(int index) {
+		return probabilities[index];
+	}
+	
+	/**
+	 * Creates a new entry with the decoded value for each call.
+	 */
 	@Override
 	public Iterator<Entry<Object, Double>> getProbabilities() {
-		return attributeProbabilities.entrySet().iterator();
+		return new Iterator<Entry<Object, Double>>() {
+			
+			private int index = 0;
+			
+			@Override
+			public boolean hasNext() {
+				return index < valueCodes.length;
+			}
+
+			@Override
+			public Entry<Object, Double> next() {
+				if (! hasNext()) throw new NoSuchElementException();
+				Entry<Object, Double> entry = new AbstractMap.SimpleImmutableEntry<Object, Double>(
+						CobwebValueDictionary.decode(valueCodes[index]), (double) probabilities[index]);
+				index++;
+				return entry;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("CobwebAttribute is immutable");
+			}
+		};
 	}
 
 	@Override
@@ -104,4 +253,45 @@ public final class CobwebAttribute implements IAttribute, Serializable {
 //				"Method of ClassitAttribute object called on CobwebAttribute object");
 //	}
 	
+	/**
+	 * Sorts the first {@code size} codes ascending together with their probabilities.
+	 * Attributes have only a few values, thus insertion sort is used.
+	 */
+	private static void sortByCode(int[] codes, float[] values, int size) {
+		for (int i = 1; i < size; i++) {
+			int code = codes[i];
+			float value = values[i];
+			int j = i - 1;
+			while (j >= 0 && codes[j] > code) {
+				codes[j + 1] = codes[j];
+				values[j + 1] = values[j];
+				j--;
+			}
+			codes[j + 1] = code;
+			values[j + 1] = value;
+		}
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(valueCodes.length);
+		for (int i = 0; i < valueCodes.length; i++) {
+			out.writeObject(CobwebValueDictionary.decode(valueCodes[i]));
+			out.writeFloat(probabilities[i]);
+		}
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		int size = in.readInt();
+		valueCodes = new int[size];
+		probabilities = new float[size];
+		for (int i = 0; i < size; i++) {
+			valueCodes[i] = CobwebValueDictionary.encode(in.readObject());
+			probabilities[i] = in.readFloat();
+		}
+		// the codes of this run may have a different order
+		sortByCode(valueCodes, probabilities, size);
+	}
+	
 }
@@ -50,13 +50,6 @@ public class CobwebTreeComponentFactory extends TreeComponentFactory implements
 		for (INode node : nodesToMerge) {
 			totalLeafCount += node.getNumberOfLeafNodes();
 		}
-		Map<Object, Double> attMap = ImmutableMap.copyOf(
-				CobwebMaxCategoryUtilitySearcher
-					.calculateAttributeProbabilities(
-							(INode)object, nodesToMerge, totalLeafCount
-					)
-				);
-		
-		return new CobwebAttribute(attMap);
+		return CobwebMaxCategoryUtilitySearcher.calculateMergedAttribute(object, nodesToMerge, totalLeafCount);
 	}
 }
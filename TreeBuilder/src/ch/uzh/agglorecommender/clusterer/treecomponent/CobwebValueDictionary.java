@@ -0,0 +1,91 @@
+package ch.uzh.agglorecommender.clusterer.treecomponent;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ *
+ * Global dictionary of the attribute values of {@link CobwebAttribute} objects,
+ * e.g. rating values and nominal meta data values.
+ * <br>
+ * Each distinct value is mapped to a small int code, codes are assigned in the order
+ * of the first occurrence of a value and never change. Thus the attributes of all nodes
+ * can be compared by their codes without hashing or boxing the values.
+ * <br>
+ * Values are compared by {@code equals}, e.g. the Integer 4 and the Double 4.0 get
+ * different codes as they were different keys in a probability map.
+ * <br>
+ * Encoding is synchronized, decoding is safe without locking.
+ *
+ */
+final class CobwebValueDictionary {
+
+	/**
+	 * Maps the values to their codes.
+	 */
+	private static final TObjectIntHashMap<Object> codes = new TObjectIntHashMap<Object>(16, 0.5f, -1);
+
+	/**
+	 * The values indexed by their codes.
+	 */
+	private static volatile Object[] values = new Object[16];
+
+	/**
+	 * The number of codes assigned.
+	 */
+	private static int size = 0;
+
+	/*
+	 * Must not be instantiated.
+	 */
+	private CobwebValueDictionary() {
+		// static
+	}
+
+	/**
+	 * Gets the code of a value, assigns a new code if the value is not known yet.
+	 *
+	 * @param value the attribute value, must not be null.
+	 * @return the code of the value.
+	 */
+	static synchronized int encode(Object value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Attribute values must not be null");
+		}
+		int code = codes.get(value);
+		if (code != -1) {
+			return code;
+		}
+		code = size;
+		Object[] newValues = values;
+		if (code == newValues.length) {
+			newValues = Arrays.copyOf(newValues, code * 2);
+		}
+		newValues[code] = value;
+		values = newValues;
+		codes.put(value, code);
+		size++;
+		return code;
+	}
+
+	/**
+	 * Gets the value of a code.
+	 *
+	 * @param code a code returned by {@link #encode(Object)}
+	 * @return the value of the code.
+	 */
+	static Object decode(int code) {
+		return values[code];
+	}
+
+	/**
+	 * Gets the number of distinct values known to the dictionary.
+	 *
+	 * @return the number of codes.
+	 */
+	static synchronized int size() {
+		return size;
+	}
+
+}
@@ -5,6 +5,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import ch.uzh.agglorecommender.client.MetadataStore;
+
 public interface INode {
 		
 	/**
@@ -271,18 +273,24 @@ public interface INode {
 	public double getCategoryUtility();
 	
 	/**
-	 * Queries for recent node attributes change.
-	 * @return true if node attributes were changed recently, else false.
+	 * Gets the version of the attributes of this node. The version is increased
+	 * with each change of the attributes, versions of different nodes are comparable.
+	 * A category utility calculated after reading version v is stale as soon as one of
+	 * its nodes has a version greater than v.
+	 * @return the version of the last change of the attributes
 	 */
-	public boolean isDirty();
+	public long getAttributeVersion();
 	
 	/**
-	 * Invalidates the dirty flag (sets the flag to false).
+	 * Finds the meta data in the metaset
 	 */
-	public void setClean();
+	public Map<Object,Object> getMeta();
 	
 	/**
-	 * Finds the meta data in the metaset
+	 * Sets the meta data of the leaves of the node type. The meta data are
+	 * not serialized, they are set again after the de-serialization of a leaf.
+	 * 
+	 * @param metadata the meta data of the leaves of the node type, may be null.
 	 */
-	public Map<Object,Object> getMeta();
+	public void setMetadata(MetadataStore metadata);
 }
\ No newline at end of file
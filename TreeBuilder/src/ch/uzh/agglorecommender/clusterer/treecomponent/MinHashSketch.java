@@ -0,0 +1,184 @@
+package ch.uzh.agglorecommender.clusterer.treecomponent;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+/**
+ *
+ * MinHash sketch of the ids of the numerical attribute nodes of a node,
+ * e.g. of the items rated by a user cluster.
+ * <br>
+ * Each value of the sketch is the minimum of a hash function over all attribute ids.
+ * Two sketches have an equal value with the probability of the Jaccard similarity
+ * of their attribute sets. Locality sensitive hashing groups the values in bands,
+ * nodes with equal values in all rows of a band are in the same bucket of the band.
+ * <br>
+ * The sketch of a merged node is the element wise minimum of the sketches of the
+ * merged nodes, because the attributes of a merged node are the union of their attributes.
+ * <br>
+ * Is immutable.
+ *
+ */
+public final class MinHashSketch {
+
+	/**
+	 * The number of hash functions and values of a sketch.
+	 */
+	public static final int LENGTH = 128;
+
+	/**
+	 * The odd multipliers of the hash functions.
+	 */
+	private static final long[] MULTIPLIERS = new long[LENGTH];
+
+	/**
+	 * The offsets of the hash functions.
+	 */
+	private static final long[] OFFSETS = new long[LENGTH];
+
+	static {
+		// fixed seed, the sketches must not change between runs
+		Random random = new Random(0x5eed);
+		for (int i = 0; i < LENGTH; i++) {
+			MULTIPLIERS[i] = random.nextLong() | 1L;
+			OFFSETS[i] = random.nextLong();
+		}
+	}
+
+	/**
+	 * The min hash values.
+	 */
+	private final int[] values;
+
+	/**
+	 * The attribute version of the node at the time the sketch was created.
+	 */
+	final long version;
+
+	private MinHashSketch(int[] values, long version) {
+		this.values = values;
+		this.version = version;
+	}
+
+	/**
+	 * Gets the sketch of the numerical attributes of a node.
+	 * The sketches of {@link Node}s are cached until their attributes change.
+	 *
+	 * @param node the node
+	 * @return the sketch of the numerical attribute keys of {@code node}.
+	 */
+	public static MinHashSketch of(INode node) {
+		if (node instanceof Node) {
+			return ((Node) node).getMinHashSketch();
+		}
+		return create(node.getNumericalAttributeKeys(), 0);
+	}
+
+	/**
+	 * Creates the sketch of a collection of attribute nodes.
+	 *
+	 * @param attributes the attribute nodes
+	 * @param version the attribute version of the node of the attributes
+	 * @return a new sketch
+	 */
+	static MinHashSketch create(Collection<INode> attributes, long version) {
+		int[] values = new int[LENGTH];
+		Arrays.fill(values, Integer.MAX_VALUE);
+		for (INode attribute : attributes) {
+			long id = attribute.getId();
+			for (int i = 0; i < LENGTH; i++) {
+				int hash = (int) ((MULTIPLIERS[i] * id + OFFSETS[i]) >>> 32);
+				if (hash < values[i]) values[i] = hash;
+			}
+		}
+		return new MinHashSketch(values, version);
+	}
+
+	/**
+	 * Sets the sketch of a merged node to the union of the sketches of the merged nodes.
+	 * Nothing is set if a merged node has no current sketch, the sketch of the
+	 * new node is then created from its attributes on demand.
+	 *
+	 * @param newNode the merged node, its attributes are the union of the attributes of {@code mergedNodes}.
+	 * @param mergedNodes the children of {@code newNode}
+	 */
+	static void setMergedSketch(Node newNode, Collection<INode> mergedNodes) {
+		int[] values = null;
+		for (INode node : mergedNodes) {
+			MinHashSketch sketch = node instanceof Node ? ((Node) node).getCurrentMinHashSketch() : null;
+			if (sketch == null) return;
+			if (values == null) {
+				values = sketch.values.clone();
+			} else {
+				for (int i = 0; i < LENGTH; i++) {
+					if (sketch.values[i] < values[i]) values[i] = sketch.values[i];
+				}
+			}
+		}
+		if (values != null) {
+			newNode.setMinHashSketch(new MinHashSketch(values, newNode.getAttributeVersion()));
+		}
+	}
+
+	/**
+	 * Checks if this and the passed sketch are in the same bucket of at least one band.
+	 *
+	 * @param other another sketch
+	 * @param bands the number of bands
+	 * @param rows the number of values per band, {@code bands * rows} must not exceed {@link #LENGTH}.
+	 * @return true if all values of a band are equal in both sketches
+	 */
+	public boolean sharesBucket(MinHashSketch other, int bands, int rows) {
+		for (int band = 0; band < bands; band++) {
+			int start = band * rows;
+			int row = 0;
+			while (row < rows && values[start + row] == other.values[start + row]) {
+				row++;
+			}
+			if (row == rows) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the bucket of this sketch in a band. Sketches which share the bucket
+	 * of a band have equal values in this band, up to hash collisions.
+	 *
+	 * @param band the index of the band
+	 * @param rows the number of values per band, {@code (band + 1) * rows} must not exceed {@link #LENGTH}.
+	 * @return the hash of the values of the band
+	 */
+	public int getBucket(int band, int rows) {
+		int hash = 1;
+		for (int i = band * rows; i < (band + 1) * rows; i++) {
+			hash = 31 * hash + values[i];
+		}
+		return hash;
+	}
+
+	/**
+	 * Estimates the Jaccard similarity of the attribute sets of this and the passed sketch.
+	 *
+	 * @param other another sketch
+	 * @return the fraction of equal values
+	 */
+	public double estimateJaccardSimilarity(MinHashSketch other) {
+		int equal = 0;
+		for (int i = 0; i < LENGTH; i++) {
+			if (values[i] == other.values[i]) equal++;
+		}
+		return (double) equal / LENGTH;
+	}
+
+	/**
+	 * Checks if the sketch of a node is equal to this sketch.
+	 *
+	 * @param other another sketch
+	 * @return true if all values are equal
+	 */
+	boolean hasEqualValues(MinHashSketch other) {
+		return Arrays.equals(values, other.values);
+	}
+
+}
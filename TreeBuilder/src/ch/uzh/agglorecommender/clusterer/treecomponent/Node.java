@@ -1,22 +1,28 @@
 package ch.uzh.agglorecommender.clusterer.treecomponent;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.text.DecimalFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
-import ch.uzh.agglorecommender.client.IDataset;
-import ch.uzh.agglorecommender.client.MetaDatasetItem;
+import ch.uzh.agglorecommender.client.MetadataStore;
 import ch.uzh.agglorecommender.clusterer.treesearch.ClassitMaxCategoryUtilitySearcher;
 
+import com.google.common.primitives.Ints;
+
 
 public class Node implements INode, Comparable<Node>, Serializable {
 
@@ -27,17 +33,17 @@ public class Node implements INode, Comparable<Node>, Serializable {
 	 * Maintainers must change this value if and only if the new version
 	 * of this class is not compatible with old versions.
 	 */
-	private static final long serialVersionUID = 1L;
+	private static final long serialVersionUID = 2L;
 
 	/**
-	 * Node id counter.
+	 * Node id counter. Nodes of the two trees may be created concurrently.
 	 */
-	private static long idCounter = 0;
+	private static final AtomicLong idCounter = new AtomicLong();
 		
 	/**
 	 * The unique id of this node.
 	 */
-	private long id = idCounter++;
+	private long id = createId();
 
 	/**
 	 * The node type.
@@ -71,6 +77,37 @@ public class Node implements INode, Comparable<Node>, Serializable {
 	 */
 	private INode parent = null;
 	
+	/**
+	 * The number of leaves in the subtree of this node, 1 for leaves.
+	 * Is updated by each change of the children of this node or of a descendant.
+	 */
+	private int numberOfLeafNodes = 1;
+	
+	/**
+	 * The number of nodes in the subtree of this node without this node, 0 for leaves.
+	 * Is updated by each change of the children of this node or of a descendant.
+	 */
+	private int numberOfNodesInSubtree = 0;
+	
+	/**
+	 * The data set ids of the leaves of the tree in depth first order.
+	 * Is only set on the root and is null as long as the leaves were not numbered
+	 * since the last change of the tree.
+	 */
+	private transient volatile int[] leafNumbering = null;
+	
+	/**
+	 * The leaf numbering of the tree in which {@code firstLeaf} was assigned.
+	 */
+	private transient int[] numberedIn = null;
+	
+	/**
+	 * The index of the first leaf of the subtree of this node in the leaf numbering,
+	 * the leaves of the subtree have the indices from {@code firstLeaf} to
+	 * {@code firstLeaf + numberOfLeafNodes} (exclusive).
+	 */
+	private transient int firstLeaf;
+	
 	/**
 	 * The id of the represented data item in the data set.
 	 * Is null if the size of this cluster is > 1.
@@ -83,22 +120,43 @@ public class Node implements INode, Comparable<Node>, Serializable {
 	private double categoryUtility;
 
 	/**
-	 * All nodes with recently changed attributes.
+	 * The last attribute version given to a node. Is increased with each change
+	 * of the attributes of any node, thus versions are unique and monotonically increasing.
 	 */
-	private static Set<INode> dirtySet = new HashSet<INode>();
+	private static final AtomicLong attributeVersionClock = new AtomicLong();
 	
 	/**
-	 * The metaset of the node
+	 * The attribute version of the last change of the attributes of this node.
 	 */
-	private static IDataset<?> metaset;
+	private volatile long attributeVersion = attributeVersionClock.incrementAndGet();
+	
+	/**
+	 * The signature of the numerical attributes, is created on demand and
+	 * replaced if it was created for an older attribute version.
+	 */
+	private transient volatile AttributeSignature attributeSignature = null;
+	
+	/**
+	 * The MinHash sketch of the numerical attributes, is created on demand or from the
+	 * sketches of the merged nodes and replaced if it was created for an older attribute version.
+	 */
+	private transient volatile MinHashSketch minHashSketch = null;
+	
+	/**
+	 * The meta data of the leaves of this node type, is null for internal nodes. Is not serialized,
+	 * see {@link #setMetadata(MetadataStore)}.
+	 */
+	private transient MetadataStore metadata;
 	
 	/**
 	 * Constructor of node
+	 * 
+	 * @param metadata the meta data of the leaves of the node type, may be null.
 	 */
-	public Node(ENodeType nodeType, int dataSetId, IDataset<?> metaset) {
+	public Node(ENodeType nodeType, int dataSetId, MetadataStore metadata) {
 		this.nodeType = nodeType;
 		this.dataSetId = dataSetId;
-		this.metaset = metaset;
+		this.metadata = metadata;
 		categoryUtility = 1.0;
 	}
 	
@@ -120,6 +178,7 @@ public class Node implements INode, Comparable<Node>, Serializable {
 				child.setParent(this);
 			}	
 		}
+		updateSubtreeStatistics();
 		this.numericalAttributes = numericalAttributes;
 		this.nominalAttributes = nominalAttributes;
 		this.dataSetId = null;
@@ -181,14 +240,16 @@ public class Node implements INode, Comparable<Node>, Serializable {
 
 	@Override
 	public void addChild(INode child) {
-		this.children.add(child);
+		boolean added = this.children.add(child);
 		child.setParent(this);
+		if (added) updateSubtreeStatistics();
 	}
 
 	@Override
 	public boolean removeChild(INode child) {
 		if (children.remove(child)) {
 			child.setParent(null);
+			updateSubtreeStatistics();
 			return true;
 		}
 		return false;
@@ -198,6 +259,10 @@ public class Node implements INode, Comparable<Node>, Serializable {
 	public INode setParent(INode parent) {
 		INode prevP = this.parent;
 		this.parent = parent;
+		if (parent != null) {
+			// only the root keeps the numbering of the tree
+			leafNumbering = null;
+		}
 		return prevP;
 	}
 
@@ -215,14 +280,14 @@ public class Node implements INode, Comparable<Node>, Serializable {
 
 	@Override
 	public void setNumericalAttributes(Map<INode, IAttribute> attributes) {
-		dirtySet.add(this);
 		this.numericalAttributes = attributes;
+		attributesChanged();
 	}
 	
 	@Override
 	public void setNominalAttributes(Map<Object, IAttribute> attributes) {
-		dirtySet.add(this);
 		this.nominalAttributes = attributes;
+		attributesChanged();
 	}
 
 	@Override
@@ -257,14 +322,14 @@ public class Node implements INode, Comparable<Node>, Serializable {
 
 	@Override
 	public void addNominalAttribute(Object key, IAttribute value) {
-		dirtySet.add(this);
-		nominalAttributes.put(key, value);		
+		nominalAttributes.put(key, value);
+		attributesChanged();
 	}
 	
 	@Override
 	public void addNumericalAttribute(INode node, IAttribute attribute) {
-		dirtySet.add(this);
-		numericalAttributes.put(node, attribute);		
+		numericalAttributes.put(node, attribute);
+		attributesChanged();
 	}
 
 	@Override
@@ -283,14 +348,16 @@ public class Node implements INode, Comparable<Node>, Serializable {
 
 	@Override
 	public IAttribute removeNumericalAttribute(INode attribute) {
-		dirtySet.add(this);
-		return numericalAttributes.remove(attribute);
+		IAttribute removed = numericalAttributes.remove(attribute);
+		attributesChanged();
+		return removed;
 	}
 	
 	@Override
 	public IAttribute removeNominalAttribute(Object attribute) {
-		dirtySet.add(this);
-		return nominalAttributes.remove(attribute);
+		IAttribute removed = nominalAttributes.remove(attribute);
+		attributesChanged();
+		return removed;
 	}	
 
 	@Override
@@ -301,21 +368,38 @@ public class Node implements INode, Comparable<Node>, Serializable {
 
 	@Override
 	public int getNumberOfNodesInSubtree() {
-		int res = children.size();
-		for (INode child : children) {
-			res += child.getNumberOfNodesInSubtree();
-		}
-		return res;
+		return numberOfNodesInSubtree;
 	}
 
 	@Override
 	public int getNumberOfLeafNodes() {
-		if (isLeaf()) return 1;
-		int sum = 0;
+		return numberOfLeafNodes;
+	}
+	
+	/**
+	 * Recalculates the subtree statistics of this node from its children,
+	 * adds the differences to all ancestors and invalidates the leaf numbering of the tree.
+	 * Must be called after each change of the children.
+	 */
+	private void updateSubtreeStatistics() {
+		int leaves = children.isEmpty() ? 1 : 0;
+		int nodes = children.size();
 		for (INode child : children) {
-			sum += child.getNumberOfLeafNodes();
+			leaves += child.getNumberOfLeafNodes();
+			nodes += child.getNumberOfNodesInSubtree();
 		}
-		return sum;
+		int leafDelta = leaves - numberOfLeafNodes;
+		int nodeDelta = nodes - numberOfNodesInSubtree;
+		numberOfLeafNodes = leaves;
+		numberOfNodesInSubtree = nodes;
+		
+		Node root = this;
+		while (root.parent instanceof Node) {
+			root = (Node) root.parent;
+			root.numberOfLeafNodes += leafDelta;
+			root.numberOfNodesInSubtree += nodeDelta;
+		}
+		root.leafNumbering = null;
 	}
 	
 	@Override
@@ -416,26 +500,72 @@ public class Node implements INode, Comparable<Node>, Serializable {
 		return dataSetIdsString;
 	}
 	
+	/**
+	 * Creates a new unique node id.
+	 * 
+	 * @return an id which is greater than all ids created before
+	 */
+	public static long createId() {
+		return idCounter.getAndIncrement();
+	}
+	
 	@Override
 	public void setId(long id) {
 		this.id = id;
 	}
 	
+	/**
+	 * Gets the data set ids of the leaves of this node as a range of
+	 * the depth first leaf numbering of the tree. The numbering is created
+	 * at the first call after a change of the tree.
+	 */
 	@Override
 	public List<Integer> getDataSetIds() {
-		List<Integer> li = new ArrayList<Integer>();
-		return getDataSetIds(li);
+		if (isLeaf()) {
+			return Collections.singletonList(dataSetId);
+		}
+		Node root = this;
+		while (root.parent instanceof Node) {
+			root = (Node) root.parent;
+		}
+		synchronized (root) {
+			int[] numbering = root.leafNumbering;
+			if (numbering == null || numberedIn != numbering) {
+				numbering = root.numberLeaves();
+			}
+			return Collections.unmodifiableList(Ints.asList(numbering).subList(firstLeaf, firstLeaf + numberOfLeafNodes));
+		}
 	}
 	
-	private List<Integer> getDataSetIds(List<Integer> li) {
-		if (isLeaf()) {
-			li.add(dataSetId);
-		} else {
-			for (INode child : children) {
-				((Node)child).getDataSetIds(li);
+	/**
+	 * Numbers the leaves of the subtree of this node in depth first order.
+	 * Each node gets the index of its first leaf, thus the leaves of a node
+	 * are a contiguous range of the numbering.
+	 * 
+	 * @return the data set ids of the leaves in depth first order
+	 */
+	private int[] numberLeaves() {
+		int[] numbering = new int[numberOfLeafNodes];
+		Deque<Node> stack = new ArrayDeque<Node>();
+		firstLeaf = 0;
+		stack.push(this);
+		while (! stack.isEmpty()) {
+			Node node = stack.pop();
+			node.numberedIn = numbering;
+			if (node.isLeaf()) {
+				numbering[node.firstLeaf] = node.dataSetId;
+				continue;
+			}
+			int offset = node.firstLeaf;
+			for (INode child : node.children) {
+				Node childNode = (Node) child;
+				childNode.firstLeaf = offset;
+				offset += childNode.numberOfLeafNodes;
+				stack.push(childNode);
 			}
 		}
-		return li;
+		leafNumbering = numbering;
+		return numbering;
 	}
 	
 	@Override
@@ -444,24 +574,113 @@ public class Node implements INode, Comparable<Node>, Serializable {
 	}
 	
 	@Override
-	public boolean isDirty() {
-		return dirtySet.contains(this);
+	public long getAttributeVersion() {
+		return attributeVersion;
 	}
 	
-	@Override
-	public void setClean() {
-		dirtySet.remove(this);
-		
+	/**
+	 * Assigns a new version to the attributes, must be called after each change.
+	 * A category utility calculated concurrently thus gets stale even if it
+	 * read the attributes before the change.
+	 */
+	private void attributesChanged() {
+		attributeVersion = attributeVersionClock.incrementAndGet();
 	}
 	
 	/**
-	 * Gets the set of dirty nodes.
-	 * @return all nodes with recently changed attributes.
+	 * Gets the current attribute version. Nodes whose attributes change
+	 * after this call get a greater version.
+	 * 
+	 * @return the attribute version of the last change of any node
 	 */
-	public static Set<INode> getAllDirtyNodes() {
-		return dirtySet;
+	public static long getCurrentAttributeVersion() {
+		return attributeVersionClock.get();
 	}
-
+	
+	/**
+	 * Advances the current attribute version to at least the passed version.
+	 * Must be called with the versions stored by de-serialized objects,
+	 * because the current version is not serialized.
+	 * 
+	 * @param version a version obtained before the serialization
+	 */
+	public static void advanceAttributeVersion(long version) {
+		long current = attributeVersionClock.get();
+		while (current < version && ! attributeVersionClock.compareAndSet(current, version)) {
+			current = attributeVersionClock.get();
+		}
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		advanceAttributeVersion(attributeVersion);
+	}
+	
+	/**
+	 * Gets the numerical attributes of this node as columns.
+	 * 
+	 * @return the numerical attribute map if it is a {@code ClassitAttributeMap}
+	 * which stores all attributes in its columns, else null.
+	 */
+	public ClassitAttributeMap getColumnarNumericalAttributes() {
+		if (numericalAttributes instanceof ClassitAttributeMap) {
+			ClassitAttributeMap columns = (ClassitAttributeMap) numericalAttributes;
+			if (columns.isColumnar()) return columns;
+		}
+		return null;
+	}
+	
+	/**
+	 * Gets the signature of the numerical attributes of this node.
+	 * The signature is cached until the attributes change.
+	 * 
+	 * @return the signature of the numerical attribute keys
+	 */
+	public AttributeSignature getAttributeSignature() {
+		AttributeSignature signature = attributeSignature;
+		long version = attributeVersion;
+		if (signature == null || signature.version != version) {
+			ClassitAttributeMap columns = getColumnarNumericalAttributes();
+			if (columns != null) {
+				signature = AttributeSignature.create(columns, version);
+			} else {
+				signature = AttributeSignature.create(numericalAttributes.keySet(), version);
+			}
+			attributeSignature = signature;
+		}
+		return signature;
+	}
+	
+	/**
+	 * Gets the MinHash sketch of the numerical attributes of this node.
+	 * The sketch is cached until the attributes change.
+	 * 
+	 * @return the sketch of the numerical attribute keys
+	 */
+	public MinHashSketch getMinHashSketch() {
+		MinHashSketch sketch = minHashSketch;
+		long version = attributeVersion;
+		if (sketch == null || sketch.version != version) {
+			sketch = MinHashSketch.create(numericalAttributes.keySet(), version);
+			minHashSketch = sketch;
+		}
+		return sketch;
+	}
+	
+	/**
+	 * Gets the cached MinHash sketch if it was created for the current attributes.
+	 * 
+	 * @return the current sketch or null
+	 */
+	MinHashSketch getCurrentMinHashSketch() {
+		MinHashSketch sketch = minHashSketch;
+		return sketch != null && sketch.version == attributeVersion ? sketch : null;
+	}
+	
+	void setMinHashSketch(MinHashSketch sketch) {
+		minHashSketch = sketch;
+	}
+	
 	@Override
 	public long getDatasetId() {
 		return dataSetId;
@@ -469,22 +688,21 @@ public class Node implements INode, Comparable<Node>, Serializable {
 	
 	/**
 	 * Finds the corresponding metadata of a content or user node
+	 * by its data set id in the meta data store of the node.
 	 * 
-	 * @ id is the id of the node element
-	 * @ metaset is the dataset where the metadata is searched for
-	 * 
-	 * @return map of meta information with value and description
+	 * @return map of meta information with value and description,
+	 * null if there is no meta data of the node.
 	 */
 	@Override
 	public Map<Object,Object> getMeta() {
-		Iterator<?> it = metaset.iterateOverDatasetItems();
-		while(it.hasNext()){
-			MetaDatasetItem metadata = (MetaDatasetItem) it.next();
-			if(metadata.getContentId() == id){
-				Map<Object,Object> metaMap = metadata.getValue();
-				return metaMap;
-			}
+		if (metadata == null) {
+			return null;
 		}
-		return null;
+		return metadata.get(dataSetId);
+	}
+	
+	@Override
+	public void setMetadata(MetadataStore metadata) {
+		this.metadata = metadata;
 	}
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package ch.uzh.agglorecommender.clusterer.treecomponent;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -88,6 +89,10 @@ public final class SharedAttribute implements IAttribute, Serializable {
 
 	@Override
 	public Iterator<Entry<Object, Double>> getProbabilities() {
+		if (attributeProbabilities == null) {
+			// numerical attribute without nominal values
+			return Collections.<Entry<Object, Double>>emptyIterator();
+		}
 		return attributeProbabilities.entrySet().iterator();
 	}
 	
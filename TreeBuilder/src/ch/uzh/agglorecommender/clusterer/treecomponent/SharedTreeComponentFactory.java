@@ -41,7 +41,9 @@ public class SharedTreeComponentFactory extends TreeComponentFactory implements
 		Map<INode,IAttribute> numericMap = createNumericalAttMap(nodesToMerge);
 		Map<Object,IAttribute> nominalMap = createNominalAttMap(nodesToMerge);
 		
-		return new Node(typeOfNewNode, nodesToMerge, numericMap, nominalMap, categoryUtility);
+		Node newNode = new Node(typeOfNewNode, nodesToMerge, numericMap, nominalMap, categoryUtility);
+		MinHashSketch.setMergedSketch(newNode, nodesToMerge);
+		return newNode;
 	}
 	
 	/**
@@ -1,11 +1,14 @@
 package ch.uzh.agglorecommender.clusterer.treecomponent;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
-import ch.uzh.agglorecommender.client.IDataset;
+import ch.uzh.agglorecommender.client.MetadataStore;
 import ch.uzh.agglorecommender.util.TBLogger;
 
 
@@ -29,10 +32,11 @@ public abstract class TreeComponentFactory implements Serializable {
 	 * @param typeOfNewNode the type of new node.
 	 * @param dataSetId the id of the corresponding
 	 * instance in the data set.
+	 * @param metadata the meta data of the leaves of the node type, may be null.
 	 * @return a new node instance.
 	 */
-	public final INode createLeafNode(ENodeType typeOfNewNode, int dataSetId, IDataset<?> metaset) {
-		return new Node(typeOfNewNode, dataSetId, metaset);
+	public final INode createLeafNode(ENodeType typeOfNewNode, int dataSetId, MetadataStore metadata) {
+		return new Node(typeOfNewNode, dataSetId, metadata);
 	}
 
 	/**
@@ -69,51 +73,95 @@ public abstract class TreeComponentFactory implements Serializable {
 		Map<INode, IAttribute> numericalMap = createNumericalAttMap(nodesToMerge);
 		Map<Object, IAttribute> nominalMap = createNominalAttMap(nodesToMerge);
 		
-		INode newNode = new Node(typeOfNewNode, nodesToMerge, numericalMap, nominalMap, categoryUtility);
+		Node newNode = new Node(typeOfNewNode, nodesToMerge, numericalMap, nominalMap, categoryUtility);
+		MinHashSketch.setMergedSketch(newNode, nodesToMerge);
 
 		return newNode;
 	}
 	
+	/**
+	 * Recalculates the attributes of an internal node from the current attributes of its children,
+	 * e.g. if the children were updated with nodes of the other tree after the node was created.
+	 * 
+	 * @param node an internal node created by this factory
+	 */
+	public void recalculateAttributes(INode node) {
+		List<INode> children = new ArrayList<INode>(node.getChildrenCount());
+		Iterator<INode> it = node.getChildren();
+		while (it.hasNext()) {
+			children.add(it.next());
+		}
+		if (children.size() < 2) {
+			TBLogger.getLogger(getClass().getName()).severe("Recalculation of attributes of node with number of children < 2, in: "+getClass().getSimpleName());
+			System.exit(-1);
+		}
+		node.setNumericalAttributes(createNumericalAttMap(children));
+		node.setNominalAttributes(createNominalAttMap(children));
+	}
+	
 	protected Map<Object, IAttribute> createNominalAttMap(Collection<INode> nodesToMerge) {
+		// Create merged attributes of all attributes of the merged nodes
 		Map<Object, IAttribute> allAttributes = new HashMap<Object, IAttribute>();
 		for (INode node : nodesToMerge) {
 			for (Object attNodes : node.getNominalAttributeKeys()) {
-				allAttributes.put(attNodes, null);
+				if (allAttributes.containsKey(attNodes)) continue;
+				allAttributes.put(attNodes, checkMergedAttribute(createMergedAttribute(attNodes, nodesToMerge)));
 			}			
 		}
-		
-		// Create merged attributes of all attributes with multiple instances
-		for (Map.Entry<Object, IAttribute> entry : allAttributes .entrySet()) {
-			IAttribute newAtt = createMergedAttribute(entry.getKey(), nodesToMerge);
-			entry.setValue(newAtt);
-		}
-		if (allAttributes.containsValue(null)) {
-			TBLogger.getLogger(getClass().getName()).severe("ClassitAttribute map of node resulting of merge contains null" +
-					" as value; in : "+getClass().getSimpleName());
-			System.exit(-1);
-		}
 		return allAttributes;	
 	}
 
 	protected Map<INode, IAttribute> createNumericalAttMap(Collection<INode> nodesToMerge) {
+		// Create merged attributes of all attributes of the merged nodes
 		Map<INode, IAttribute> allAttributes = new HashMap<INode, IAttribute>();
 		for (INode node : nodesToMerge) {
 			for (INode attNodes : node.getNumericalAttributeKeys()) {
-				allAttributes.put(attNodes, null);
+				if (allAttributes.containsKey(attNodes)) continue;
+				allAttributes.put(attNodes, checkMergedAttribute(createMergedAttribute(attNodes, nodesToMerge)));
 			}			
 		}
-		
-		// Create merged attributes of all attributes with multiple instances
-		for (Map.Entry<INode, IAttribute> entry : allAttributes .entrySet()) {
-			IAttribute newAtt = createMergedAttribute(entry.getKey(), nodesToMerge);
-			entry.setValue(newAtt);
-		}
-		if (allAttributes.containsValue(null)) {
+		return createNumericalAttributeMap(allAttributes);	
+	}
+	
+	private IAttribute checkMergedAttribute(IAttribute attribute) {
+		if (attribute == null) {
 			TBLogger.getLogger(getClass().getName()).severe("ClassitAttribute map of node resulting of merge contains null" +
 					" as value; in : "+getClass().getSimpleName());
 			System.exit(-1);
 		}
-		return allAttributes;	
+		return attribute;
+	}
+	
+	/**
+	 * Converts a numerical attribute map with attribute objects created by this
+	 * factory to the map implementation used to store them in a node.
+	 * Returns the passed map by default.
+	 * 
+	 * @param attributes the numerical attributes of a node
+	 * @return a map with the same mappings as {@code attributes}.
+	 */
+	public Map<INode, IAttribute> createNumericalAttributeMap(Map<INode, IAttribute> attributes) {
+		return attributes;
+	}
+
+	/**
+	 * Creates the numerical attribute map of a leaf from its ratings.
+	 * <br>
+	 * By default the attributes of {@link #createNumericAttribute(double)} are
+	 * collected in a map, which is converted by {@link #createNumericalAttributeMap(Map)}.
+	 * 
+	 * @param keys the attribute nodes, i.e. the rated leaves, preferably in ascending order of their ids.
+	 * A repeated key is mapped to its last rating.
+	 * @param ratings the normalized ratings, parallel to {@code keys}
+	 * @param length the number of ratings
+	 * @return the numerical attribute map of the leaf
+	 */
+	public Map<INode, IAttribute> createLeafAttributeMap(INode[] keys, double[] ratings, int length) {
+		Map<INode, IAttribute> attributes = new HashMap<INode, IAttribute>((int) (length / 0.75f) + 1);
+		for (int i = 0; i < length; i++) {
+			attributes.put(keys[i], createNumericAttribute(ratings[i]));
+		}
+		return createNumericalAttributeMap(attributes);
 	}
 
 	/**
@@ -0,0 +1,92 @@
+package ch.uzh.agglorecommender.clusterer.treepartition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.MinHashSketch;
+
+/**
+ * The existing strategies to split the user leaves into shards of equal size,
+ * see {@link ShardCoordinator}.
+ *
+ */
+public enum EShardPartitioning {
+
+	/**
+	 * Assigns the users randomly. The assignment only depends on the data set ids of the users.
+	 */
+	Random {
+		@Override
+		protected void sort(List<INode> leaves) {
+			Collections.shuffle(leaves, new java.util.Random(SEED));
+		}
+	},
+
+	/**
+	 * Pre-clusters the users by the bucket of the first band of their {@link MinHashSketch},
+	 * users with similar sets of rated content are likely assigned to the same shard.
+	 */
+	MinHash {
+		@Override
+		protected void sort(List<INode> leaves) {
+			Collections.sort(leaves, new Comparator<INode>() {
+
+				@Override
+				public int compare(INode first, INode second) {
+					return Integer.compare(MinHashSketch.of(first).getBucket(0, ROWS),
+							MinHashSketch.of(second).getBucket(0, ROWS));
+				}
+			});
+		}
+	};
+
+	/**
+	 * The seed of the random assignment, shards must not change between runs.
+	 */
+	private static final long SEED = 0x5eed;
+
+	/**
+	 * The number of sketch values of the pre-clustering band. Few rows result in
+	 * large buckets of loosely similar users.
+	 */
+	private static final int ROWS = 2;
+
+	/**
+	 * Splits the passed leaves into shards whose sizes differ by at most one.
+	 *
+	 * @param leaves the user leaves of the data set
+	 * @param numberOfShards the number of shards, at least 1.
+	 * @return the non-empty shards
+	 */
+	public List<List<INode>> partition(Collection<INode> leaves, int numberOfShards) {
+		List<INode> sorted = new ArrayList<INode>(leaves);
+		Collections.sort(sorted, new Comparator<INode>() {
+
+			@Override
+			public int compare(INode first, INode second) {
+				return Long.compare(first.getDatasetId(), second.getDatasetId());
+			}
+		});
+		sort(sorted);
+
+		List<List<INode>> shards = new ArrayList<List<INode>>(numberOfShards);
+		for (int i = 0; i < numberOfShards; i++) {
+			int from = (int) ((long) sorted.size() * i / numberOfShards);
+			int to = (int) ((long) sorted.size() * (i + 1) / numberOfShards);
+			if (to > from) shards.add(new ArrayList<INode>(sorted.subList(from, to)));
+		}
+		return shards;
+	}
+
+	/**
+	 * Orders the leaves such that consecutive leaves belong to the same shard.
+	 *
+	 * @param leaves the leaves in ascending order of their data set ids, is modified.
+	 */
+	protected abstract void sort(List<INode> leaves);
+
+}
@@ -0,0 +1,212 @@
+package ch.uzh.agglorecommender.clusterer.treepartition;
+
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.util.TBLogger;
+
+/**
+ *
+ * Clusters the users of each shard to sub-roots in a separate worker process.
+ * <br>
+ * The coordinator writes the data set ids of the users of each shard to a file of the work
+ * directory and starts a JVM with the same class path and memory settings for each shard.
+ * A worker is the passed main class, called with the passed arguments followed by
+ * {@link #USERS_OPTION} and {@link #RESULT_OPTION} and the paths of its files. It clusters
+ * the users of its shard and writes the {@link SubRootForest} of its sub-roots to the result file.
+ * The output of a worker is written to a log file of the work directory.
+ * <br>
+ * All coordination uses the work directory, thus workers can be started on other hosts
+ * sharing the directory with the same arguments.
+ *
+ */
+public class ShardCoordinator {
+
+	/**
+	 * The option followed by the path of the users file of a worker.
+	 */
+	public static final String USERS_OPTION = "-shardUsers";
+
+	/**
+	 * The option followed by the path of the result file of a worker.
+	 */
+	public static final String RESULT_OPTION = "-shardResult";
+
+	private final File workDirectory;
+
+	/**
+	 * The max number of concurrent worker processes.
+	 */
+	private final int maxProcesses;
+
+	/**
+	 * Instantiates a new coordinator.
+	 *
+	 * @param workDirectory the directory of the users, result and log files of the shards,
+	 * a new temporary directory if null.
+	 * @param maxProcesses the max number of concurrent worker processes, 0 to start all workers at once.
+	 */
+	public ShardCoordinator(File workDirectory, int maxProcesses) {
+		Logger log = TBLogger.getLogger(getClass().getName());
+		if (workDirectory == null) {
+			try {
+				workDirectory = Files.createTempDirectory("shards").toFile();
+			} catch (IOException e) {
+				log.severe("IOException on creating the work directory of the shards: " + e.getMessage());
+				System.exit(-1);
+			}
+		} else if (! workDirectory.isDirectory() && ! workDirectory.mkdirs()) {
+			log.severe("Err: the work directory of the shards " + workDirectory + " can't be created; in: " + getClass().getSimpleName());
+			System.exit(-1);
+		}
+		this.workDirectory = workDirectory;
+		this.maxProcesses = maxProcesses;
+	}
+
+	/**
+	 * Clusters each shard in a worker process and waits for all workers.
+	 *
+	 * @param shards the user leaves of each shard
+	 * @param workerMainClass the main class of the workers
+	 * @param workerArgs the arguments of each worker, without the shard options
+	 * @return the sub-root forests in the order of the shards
+	 */
+	public List<SubRootForest> clusterShards(List<List<INode>> shards, Class<?> workerMainClass, List<String> workerArgs) {
+		Logger log = TBLogger.getLogger(getClass().getName());
+		long time = System.nanoTime();
+		int numberOfThreads = maxProcesses > 0 ? Math.min(maxProcesses, shards.size()) : shards.size();
+		ExecutorService service = Executors.newFixedThreadPool(Math.max(1, numberOfThreads));
+
+		List<File> resultFiles = new ArrayList<File>(shards.size());
+		List<Future<Integer>> exitValues = new ArrayList<Future<Integer>>(shards.size());
+		for (int i = 0; i < shards.size(); i++) {
+			File usersFile = new File(workDirectory, "shard-" + i + ".users");
+			File resultFile = new File(workDirectory, "shard-" + i + ".forest");
+			File logFile = new File(workDirectory, "shard-" + i + ".log");
+			writeUserIds(shards.get(i), usersFile);
+			resultFiles.add(resultFile);
+
+			final ProcessBuilder builder = new ProcessBuilder(
+					createCommand(workerMainClass, workerArgs, usersFile, resultFile));
+			builder.redirectErrorStream(true);
+			builder.redirectOutput(logFile);
+			exitValues.add(service.submit(new Callable<Integer>() {
+
+				@Override
+				public Integer call() throws IOException, InterruptedException {
+					return builder.start().waitFor();
+				}
+			}));
+			log.info("Shard " + i + " with " + shards.get(i).size() + " users submitted, log file: " + logFile);
+		}
+		service.shutdown();
+
+		List<SubRootForest> forests = new ArrayList<SubRootForest>(shards.size());
+		for (int i = 0; i < shards.size(); i++) {
+			int exitValue = -1;
+			try {
+				exitValue = exitValues.get(i).get();
+			} catch (InterruptedException | ExecutionException e) {
+				log.severe("Exception while waiting for the worker of shard " + i + ": " + e);
+				System.exit(-1);
+			}
+			if (exitValue != 0) {
+				log.severe("Err: the worker of shard " + i + " terminated with exit value " + exitValue
+						+ ", see " + new File(workDirectory, "shard-" + i + ".log"));
+				System.exit(-1);
+			}
+			SubRootForest forest = SubRootForest.read(resultFiles.get(i));
+			log.info("Shard " + i + " clustered to " + forest.getNumberOfSubRoots() + " sub-roots");
+			forests.add(forest);
+		}
+		log.info("Time to cluster " + shards.size() + " shards: " + (double)(System.nanoTime() - time) / 1000000000.0 + " s");
+		return forests;
+	}
+
+	/**
+	 * Creates the command of a worker, the JVM settings of this process are passed on.
+	 */
+	private static List<String> createCommand(Class<?> workerMainClass, List<String> workerArgs, File usersFile, File resultFile) {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		for (String jvmArg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			if (jvmArg.startsWith("-X") || jvmArg.startsWith("-D")) command.add(jvmArg);
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(workerMainClass.getName());
+		command.addAll(workerArgs);
+		command.add(USERS_OPTION);
+		command.add(usersFile.getAbsolutePath());
+		command.add(RESULT_OPTION);
+		command.add(resultFile.getAbsolutePath());
+		return command;
+	}
+
+	/**
+	 * Writes the data set ids of the passed users, as int count followed by the ids.
+	 *
+	 * @param users the user leaves of a shard
+	 * @param file the file to write, is overwritten.
+	 */
+	public static void writeUserIds(Collection<INode> users, File file) {
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			out.writeInt(users.size());
+			for (INode user : users) {
+				out.writeInt((int) user.getDatasetId());
+			}
+			out.close();
+		} catch (IOException e) {
+			Logger log = TBLogger.getLogger(ShardCoordinator.class.getName());
+			log.severe("IOException on writing the users of a shard to " + file + ": " + e.getMessage());
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Reads the data set ids written by {@link #writeUserIds(Collection, File)}.
+	 *
+	 * @param file the users file of a shard
+	 * @return the data set ids of the users of the shard
+	 */
+	public static TIntSet readUserIds(File file) {
+		TIntSet ids = null;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			int size = in.readInt();
+			ids = new TIntHashSet(size);
+			for (int i = 0; i < size; i++) {
+				ids.add(in.readInt());
+			}
+			in.close();
+		} catch (IOException e) {
+			Logger log = TBLogger.getLogger(ShardCoordinator.class.getName());
+			log.severe("IOException on reading the users of a shard from " + file + ": " + e.getMessage());
+			System.exit(-1);
+		}
+		return ids;
+	}
+
+}
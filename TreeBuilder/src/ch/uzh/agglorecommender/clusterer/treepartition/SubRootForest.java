@@ -0,0 +1,242 @@
+package ch.uzh.agglorecommender.clusterer.treepartition;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.ENodeType;
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.TreeComponentFactory;
+import ch.uzh.agglorecommender.clusterer.treeupdate.INodeUpdater;
+import ch.uzh.agglorecommender.util.TBLogger;
+
+/**
+ *
+ * The topology of the user sub-trees of a shard, i.e. the merges which created the sub-roots.
+ * <br>
+ * The attributes of the internal nodes are not stored, they are recalculated from the leaves
+ * of the coordinating process when the sub-trees are rebuilt. The binary format is:
+ * <br>
+ * <pre>
+ *  int magic, int number of merges,
+ *  per merge, children before parents: double category utility, int number of children, int child references,
+ *  int number of sub-roots, int sub-root references
+ * </pre>
+ * <br>
+ * A non-negative reference is the index of a merge, a negative reference {@code r}
+ * is the leaf with data set id {@code ~r}.
+ *
+ */
+public class SubRootForest {
+
+	/**
+	 * Identifies a file of this format.
+	 */
+	private static final int MAGIC = 0x53524631;
+
+	/**
+	 * The category utilities of the merges, children before their parents.
+	 */
+	private final TDoubleArrayList categoryUtilities = new TDoubleArrayList();
+
+	/**
+	 * The start of the child references of each merge in {@link #childReferences},
+	 * followed by the end of the last merge.
+	 */
+	private final TIntArrayList childOffsets = new TIntArrayList();
+
+	private final TIntArrayList childReferences = new TIntArrayList();
+
+	private final TIntArrayList rootReferences = new TIntArrayList();
+
+	private SubRootForest() {
+		childOffsets.add(0);
+	}
+
+	/**
+	 * Gets the topology of the trees of the passed nodes.
+	 *
+	 * @param subRoots the roots of disjoint user trees, their leaves must have data set ids.
+	 * @return the forest of the passed trees
+	 */
+	public static SubRootForest of(Collection<INode> subRoots) {
+		SubRootForest forest = new SubRootForest();
+		for (INode subRoot : subRoots) {
+			forest.rootReferences.add(forest.addMerges(subRoot));
+		}
+		return forest;
+	}
+
+	/**
+	 * Adds the merges of the subtree of the passed node, children before their parent.
+	 *
+	 * @return the reference of the passed node
+	 */
+	private int addMerges(INode node) {
+		if (node.isLeaf()) {
+			long datasetId = node.getDatasetId();
+			if (datasetId < 0 || datasetId > Integer.MAX_VALUE) {
+				Logger log = TBLogger.getLogger(getClass().getName());
+				log.severe("Err: data set id " + datasetId + " of a leaf can't be referenced; in: " + getClass().getSimpleName());
+				System.exit(-1);
+			}
+			return ~ (int) datasetId;
+		}
+		TIntArrayList children = new TIntArrayList(node.getChildrenCount());
+		Iterator<INode> it = node.getChildren();
+		while (it.hasNext()) {
+			children.add(addMerges(it.next()));
+		}
+		int index = categoryUtilities.size();
+		categoryUtilities.add(node.getCategoryUtility());
+		childReferences.addAll(children);
+		childOffsets.add(childReferences.size());
+		return index;
+	}
+
+	/**
+	 * Reads a forest written by {@link #write(File)}.
+	 *
+	 * @param file the file to read
+	 * @return the forest
+	 */
+	public static SubRootForest read(File file) {
+		SubRootForest forest = new SubRootForest();
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != MAGIC) {
+				in.close();
+				throw new IOException("not a sub-root forest");
+			}
+			int numberOfMerges = in.readInt();
+			for (int i = 0; i < numberOfMerges; i++) {
+				forest.categoryUtilities.add(in.readDouble());
+				int numberOfChildren = in.readInt();
+				for (int j = 0; j < numberOfChildren; j++) {
+					forest.childReferences.add(in.readInt());
+				}
+				forest.childOffsets.add(forest.childReferences.size());
+			}
+			int numberOfRoots = in.readInt();
+			for (int i = 0; i < numberOfRoots; i++) {
+				forest.rootReferences.add(in.readInt());
+			}
+			in.close();
+		} catch (IOException e) {
+			Logger log = TBLogger.getLogger(SubRootForest.class.getName());
+			log.severe("IOException on reading the sub-root forest " + file + ": " + e.getMessage());
+			System.exit(-1);
+		}
+		return forest;
+	}
+
+	/**
+	 * Writes this forest to the passed file.
+	 *
+	 * @param file the file to write, is overwritten.
+	 */
+	public void write(File file) {
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			out.writeInt(MAGIC);
+			out.writeInt(getNumberOfMerges());
+			for (int i = 0; i < getNumberOfMerges(); i++) {
+				out.writeDouble(categoryUtilities.get(i));
+				int from = childOffsets.get(i);
+				int to = childOffsets.get(i + 1);
+				out.writeInt(to - from);
+				for (int j = from; j < to; j++) {
+					out.writeInt(childReferences.get(j));
+				}
+			}
+			out.writeInt(rootReferences.size());
+			for (int i = 0; i < rootReferences.size(); i++) {
+				out.writeInt(rootReferences.get(i));
+			}
+			out.close();
+		} catch (IOException e) {
+			Logger log = TBLogger.getLogger(getClass().getName());
+			log.severe("IOException on writing the sub-root forest " + file + ": " + e.getMessage());
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Rebuilds the user sub-trees from the passed leaves and introduces
+	 * each new node in the passed content nodes, children before their parents.
+	 *
+	 * @param userLeaves the map of the data set ids to the user leaves,
+	 * must contain the leaves of this forest.
+	 * @param factory the factory of the user tree
+	 * @param nodeUpdater the node updater of the clustering process
+	 * @param contentNodes the content nodes to update with the new user nodes
+	 * @return the sub-roots
+	 */
+	public List<INode> rebuild(Map<Integer, INode> userLeaves, TreeComponentFactory factory,
+			INodeUpdater nodeUpdater, Collection<INode> contentNodes) {
+		// the node updater probes the nodes to update for each attribute of a new node
+		Set<INode> nodesToUpdate = new HashSet<INode>(contentNodes);
+		List<INode> newNodes = new ArrayList<INode>(getNumberOfMerges());
+		for (int i = 0; i < getNumberOfMerges(); i++) {
+			List<INode> children = new ArrayList<INode>(childOffsets.get(i + 1) - childOffsets.get(i));
+			for (int j = childOffsets.get(i); j < childOffsets.get(i + 1); j++) {
+				children.add(resolve(childReferences.get(j), newNodes, userLeaves));
+			}
+			INode newNode = factory.createInternalNode(ENodeType.User, children, categoryUtilities.get(i));
+			nodeUpdater.updateNodes(newNode, nodesToUpdate);
+			newNodes.add(newNode);
+		}
+
+		List<INode> subRoots = new ArrayList<INode>(rootReferences.size());
+		for (int i = 0; i < rootReferences.size(); i++) {
+			subRoots.add(resolve(rootReferences.get(i), newNodes, userLeaves));
+		}
+		return subRoots;
+	}
+
+	private INode resolve(int reference, List<INode> newNodes, Map<Integer, INode> userLeaves) {
+		if (reference >= 0) return newNodes.get(reference);
+		INode leaf = userLeaves.get(~reference);
+		if (leaf == null) {
+			Logger log = TBLogger.getLogger(getClass().getName());
+			log.severe("Err: no user leaf with data set id " + ~reference + "; in: " + getClass().getSimpleName());
+			System.exit(-1);
+		}
+		return leaf;
+	}
+
+	/**
+	 * Gets the number of merges of all sub-trees.
+	 *
+	 * @return the number of internal nodes
+	 */
+	public int getNumberOfMerges() {
+		return categoryUtilities.size();
+	}
+
+	/**
+	 * Gets the number of sub-roots.
+	 *
+	 * @return the number of sub-roots, including leaves which were not merged.
+	 */
+	public int getNumberOfSubRoots() {
+		return rootReferences.size();
+	}
+
+}
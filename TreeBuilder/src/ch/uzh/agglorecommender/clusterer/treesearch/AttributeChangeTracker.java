@@ -0,0 +1,72 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.Node;
+
+/**
+ *
+ * Finds the nodes of a cluster set whose attributes changed since the last poll.
+ * <br>
+ * The changes are reported by the node updater to the {@link AttributeIndexedClusterSet},
+ * which enqueues the changed open nodes. The tracker drains this queue, thus the cost
+ * of a poll is proportional to the number of changed nodes instead of the number of
+ * open nodes. Each cluster set has one merge selector, which is the only consumer of its queue.
+ * <br>
+ * The nodes of sets which don't listen to the attribute changes are checked one by one:
+ * a node changed if its attribute version is greater than the version read at the last poll.
+ *
+ */
+final class AttributeChangeTracker implements Serializable {
+
+	/**
+	 * Determines if a de-serialized file is compatible with this class.
+	 * <br>
+	 * <br>
+	 * Maintainers must change this value if and only if the new version
+	 * of this class is not compatible with old versions.
+	 */
+	private static final long serialVersionUID = 3L;
+
+	/**
+	 * The attribute version read at the beginning of the last poll.
+	 */
+	private long validatedVersion = Long.MIN_VALUE;
+
+	/**
+	 * Marks all nodes of the passed set as validated, i.e. discards the queued changes.
+	 *
+	 * @param clusterSet the set of open nodes
+	 */
+	void validateAll(IClusterSet<INode> clusterSet) {
+		pollChangedNodes(clusterSet);
+	}
+
+	/**
+	 * Gets the nodes of the passed set whose attributes changed since the last poll
+	 * and marks all nodes as validated.
+	 *
+	 * @param clusterSet the set of open nodes
+	 * @return the changed open nodes
+	 */
+	Set<INode> pollChangedNodes(IClusterSet<INode> clusterSet) {
+		long version = Node.getCurrentAttributeVersion();
+		Set<INode> changedNodes;
+		if (clusterSet instanceof AttributeIndexedClusterSet) {
+			changedNodes = ((AttributeIndexedClusterSet) clusterSet).pollChangedNodes();
+		} else {
+			changedNodes = new HashSet<INode>();
+			for (INode node : clusterSet.getUnmodifiableView()) {
+				if (node.getAttributeVersion() > validatedVersion) {
+					changedNodes.add(node);
+				}
+			}
+		}
+		validatedVersion = version;
+		return changedNodes;
+	}
+
+}
@@ -0,0 +1,279 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treeupdate.IAttributeChangeListener;
+
+import com.google.common.collect.ImmutableCollection;
+
+/**
+ *
+ * Indexed cluster set which only returns the combinations of nodes sharing an attribute.
+ * <br>
+ * An inverted index maps each numerical and nominal attribute key to the indices of
+ * the open nodes carrying it. Candidate combinations are produced from the co-occurrence
+ * of nodes in these posting lists, thus combinations of nodes without a shared attribute
+ * are neither stored nor passed to a searcher.
+ * The index is updated when nodes are added or removed and when a node updater
+ * reports a changed attribute to this set as its {@link IAttributeChangeListener}.
+ * The open nodes with reported changes are queued until they are polled by the merge selector.
+ *
+ */
+public class AttributeIndexedClusterSet extends ClusterSetIndexed<INode> implements IAttributeChangeListener, Serializable {
+
+	/**
+	 * Determines if a de-serialized file is compatible with this class.
+	 * <br>
+	 * <br>
+	 * Maintainers must change this value if and only if the new version
+	 * of this class is not compatible with old versions.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The indices of the open nodes carrying an attribute, keyed by the attribute key.
+	 */
+	private final Map<Object, TIntSet> postings = new HashMap<Object, TIntSet>();
+
+	/**
+	 * The open nodes whose attributes changed since the last poll.
+	 */
+	private Set<INode> changedNodes = new HashSet<INode>();
+
+	/**
+	 * Instantiates a new attribute indexed cluster set.
+	 *
+	 * @param leafNodes the initial elements of the set
+	 */
+	public AttributeIndexedClusterSet(ImmutableCollection<INode> leafNodes) {
+		super(leafNodes, false);
+		TIntObjectIterator<INode> it = openIndexElementMap.iterator();
+		for ( int i = openIndexElementMap.size(); i-- > 0; ) { // faster iteration by avoiding hasNext()
+			it.advance();
+			index(it.value(), it.key());
+		}
+	}
+
+	@Override
+	public boolean add(INode e) {
+		if (! super.add(e)) {
+			return false;
+		}
+		index(e, openElementIndexMap.get(e));
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (! contains(o)) {
+			return false;
+		}
+		int index = openElementIndexMap.get(o);
+
+		// the removal listeners get the combinations of the still indexed node
+		super.remove(o);
+		INode node = (INode) o;
+		changedNodes.remove(node);
+		for (Object attributeKey : node.getNumericalAttributeKeys()) {
+			removePosting(attributeKey, index);
+		}
+		for (Object attributeKey : node.getNominalAttributeKeys()) {
+			removePosting(attributeKey, index);
+		}
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * Contains only the combinations of nodes sharing an attribute.
+	 */
+	@Override
+	public TLongSet getCombinationsIds() {
+		TLongSet res = new TLongHashSet();
+		TIntObjectIterator<INode> it = openIndexElementMap.iterator();
+		for ( int i = openIndexElementMap.size(); i-- > 0; ) { // faster iteration by avoiding hasNext()
+			it.advance();
+			addCombinationIds(it.key(), it.value(), true, res);
+		}
+		return res;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * The combinations aren't stored, they are computed from the posting lists
+	 * node by node, thus only the combinations of one node are held at once.
+	 */
+	@Override
+	public TLongIterator combinationsIdsIterator() {
+		return new CombinationIdsIterator();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * Contains only the combinations with nodes sharing an attribute with the passed node.
+	 */
+	@Override
+	public TLongSet getCombinationsIds(INode e) {
+		TLongSet res = new TLongHashSet();
+		if (contains(e)) {
+			addCombinationIds(openElementIndexMap.get(e), e, false, res);
+		}
+		return res;
+	}
+
+	@Override
+	public void attributeAdded(INode node, Object attributeKey) {
+		if (! contains(node)) return;
+		addPosting(attributeKey, openElementIndexMap.get(node));
+		changedNodes.add(node);
+	}
+
+	@Override
+	public void attributeRemoved(INode node, Object attributeKey) {
+		if (! contains(node)) return;
+		removePosting(attributeKey, openElementIndexMap.get(node));
+		changedNodes.add(node);
+	}
+
+	/**
+	 * Gets the open nodes whose attributes changed since the last call and clears the queue.
+	 *
+	 * @return the changed open nodes
+	 */
+	public Set<INode> pollChangedNodes() {
+		Set<INode> polled = changedNodes;
+		changedNodes = new HashSet<INode>();
+		return polled;
+	}
+
+	/**
+	 * Gets the number of attribute keys carried by at least one open node.
+	 *
+	 * @return the number of posting lists of the index
+	 */
+	public int getNumberOfIndexedAttributes() {
+		return postings.size();
+	}
+
+	private void index(INode node, int index) {
+		for (Object attributeKey : node.getNumericalAttributeKeys()) {
+			addPosting(attributeKey, index);
+		}
+		for (Object attributeKey : node.getNominalAttributeKeys()) {
+			addPosting(attributeKey, index);
+		}
+	}
+
+	private void addPosting(Object attributeKey, int index) {
+		TIntSet posting = postings.get(attributeKey);
+		if (posting == null) {
+			posting = new TIntHashSet(4);
+			postings.put(attributeKey, posting);
+		}
+		posting.add(index);
+	}
+
+	private void removePosting(Object attributeKey, int index) {
+		TIntSet posting = postings.get(attributeKey);
+		if (posting == null) return;
+		posting.remove(index);
+		if (posting.isEmpty()) {
+			postings.remove(attributeKey);
+		}
+	}
+
+	/**
+	 * Adds the combination ids of the passed node with all nodes sharing one of its attributes.
+	 *
+	 * @param x the index of the node
+	 * @param node the node
+	 * @param onlyGreaterIndices if true only combinations with nodes of a greater
+	 * index are added, thus each combination of the set is added by only one of its nodes.
+	 * @param res receives the combination ids
+	 */
+	private void addCombinationIds(int x, INode node, boolean onlyGreaterIndices, TLongSet res) {
+		for (Object attributeKey : node.getNumericalAttributeKeys()) {
+			addCombinationIds(x, postings.get(attributeKey), onlyGreaterIndices, res);
+		}
+		for (Object attributeKey : node.getNominalAttributeKeys()) {
+			addCombinationIds(x, postings.get(attributeKey), onlyGreaterIndices, res);
+		}
+	}
+
+	private void addCombinationIds(int x, TIntSet posting, boolean onlyGreaterIndices, TLongSet res) {
+		if (posting == null) return;
+		TIntIterator it = posting.iterator();
+		for ( int i = posting.size(); i-- > 0; ) { // faster iteration by avoiding hasNext()
+			int y = it.next();
+			// skip nodes removed after an attribute change which wasn't reported,
+			// if the slot was reused the combination is a superfluous but valid candidate
+			if (! openIndexElementMap.containsKey(y)) continue;
+			// sorting needed to prevent of duplicates
+			if (y > x) {
+				res.add(Pairing.compute(x, y));
+			} else if (y < x && ! onlyGreaterIndices) {
+				res.add(Pairing.compute(y, x));
+			}
+		}
+	}
+
+	/**
+	 * Iterates over the open nodes and returns the combinations of each node with the nodes
+	 * of a greater index sharing an attribute, thus each combination is returned once.
+	 * The combinations of the current node are the only ones held by the iterator.
+	 */
+	private final class CombinationIdsIterator implements TLongIterator {
+
+		private final TIntObjectIterator<INode> nodeIterator = openIndexElementMap.iterator();
+
+		private int remainingNodes = openIndexElementMap.size();
+
+		private final TLongSet combinationIdsOfNode = new TLongHashSet();
+
+		private TLongIterator combinationIdIterator = combinationIdsOfNode.iterator();
+
+		@Override
+		public boolean hasNext() {
+			while (! combinationIdIterator.hasNext()) {
+				if (remainingNodes == 0) return false;
+				remainingNodes--;
+				nodeIterator.advance();
+				combinationIdsOfNode.clear();
+				addCombinationIds(nodeIterator.key(), nodeIterator.value(), true, combinationIdsOfNode);
+				combinationIdIterator = combinationIdsOfNode.iterator();
+			}
+			return true;
+		}
+
+		@Override
+		public long next() {
+			if (! hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return combinationIdIterator.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("combinations are computed from the posting lists");
+		}
+	}
+
+}
@@ -0,0 +1,254 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import gnu.trove.iterator.TLongDoubleIterator;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TLongDoubleMap;
+import gnu.trove.map.hash.TLongDoubleHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.apache.commons.math3.util.ArithmeticUtils;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.util.TBLogger;
+
+/**
+ *
+ * Selects the best merge of up to {@code maxSubsetSize} open nodes without enumerating all subsets.
+ * <br>
+ * The best pairs of a {@link HeapMergeSelector} seed a beam search. Their nodes form the pool
+ * of the cycle, a subset of the pool is encoded as a bit mask. The subsets of size s + 1 are
+ * the subsets of the beam of size s extended by one node of the pool, if all subsets of the
+ * pool of size s + 1 are at most as many they are enumerated with {@link KSubsets#nextMask(long)}
+ * instead. The {@code beamWidth} best subsets of each size are extended further.
+ * The merge with the highest category utility of all sizes is selected.
+ * <br>
+ * The pair heap is kept up to date incrementally, the evaluated subsets of a cycle are discarded.
+ *
+ */
+public class BeamSubsetMergeSelector implements IMergeSelector, Serializable {
+
+	/**
+	 * Determines if a de-serialized file is compatible with this class.
+	 * <br>
+	 * <br>
+	 * Maintainers must change this value if and only if the new version
+	 * of this class is not compatible with old versions.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The default max number of nodes of a merge.
+	 */
+	public static final int DEFAULT_MAX_SUBSET_SIZE = 3;
+
+	/**
+	 * The default number of subsets of each size which are extended.
+	 */
+	public static final int DEFAULT_BEAM_WIDTH = 16;
+
+	/**
+	 * The max number of nodes of the pool, one bit of a mask per node
+	 * and a positive limit of the enumerated masks.
+	 */
+	private static final int MAX_POOL_SIZE = 62;
+
+	/**
+	 * Calculates the category utilities of the subsets with more than two nodes.
+	 */
+	private final IMaxCategoryUtilitySearcher searcher;
+
+	/**
+	 * Keeps the category utilities of all open pairs.
+	 */
+	private final HeapMergeSelector pairSelector;
+
+	private final int maxSubsetSize;
+
+	private final int beamWidth;
+
+	/**
+	 * Instantiates a new selector with the default subset size and beam width.
+	 *
+	 * @param searcher the searcher used to calculate category utilities.
+	 * Must not cache category utilities itself.
+	 */
+	public BeamSubsetMergeSelector(IMaxCategoryUtilitySearcher searcher) {
+		this(searcher, DEFAULT_MAX_SUBSET_SIZE, DEFAULT_BEAM_WIDTH);
+	}
+
+	/**
+	 * Instantiates a new selector.
+	 *
+	 * @param searcher the searcher used to calculate category utilities.
+	 * Must not cache category utilities itself.
+	 * @param maxSubsetSize the max number of nodes of a merge, at least 2.
+	 * @param beamWidth the number of seed pairs and of subsets of each size which are extended, at least 1.
+	 */
+	public BeamSubsetMergeSelector(IMaxCategoryUtilitySearcher searcher, int maxSubsetSize, int beamWidth) {
+		if (maxSubsetSize < 2 || beamWidth < 1) {
+			Logger log = TBLogger.getLogger(getClass().getName());
+			log.severe("Err: invalid max subset size " + maxSubsetSize + " or beam width " + beamWidth
+					+ "; in: " + getClass().getSimpleName());
+			System.exit(-1);
+		}
+		this.searcher = searcher;
+		this.pairSelector = new HeapMergeSelector(searcher);
+		this.maxSubsetSize = maxSubsetSize;
+		this.beamWidth = beamWidth;
+	}
+
+	@Override
+	public IMergeResult selectBestMerge(IClusterSetIndexed<INode> clusterSet) {
+		List<IMergeResult> merges = selectBestMerges(clusterSet, 1, 0.0);
+		return merges.isEmpty() ? null : merges.get(0);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * The merges are taken from the evaluated subsets in descending order
+	 * of their category utility, subsets with a node of an already selected merge are skipped.
+	 */
+	@Override
+	public List<IMergeResult> selectBestMerges(IClusterSetIndexed<INode> clusterSet, int maxMerges, double tolerance) {
+		Logger log = TBLogger.getLogger(getClass().getName());
+		long time = System.nanoTime();
+		List<IMergeResult> seeds = pairSelector.getBestMerges(clusterSet, beamWidth);
+		if (seeds.isEmpty()) return seeds;
+
+		// the nodes of the seeds in the order of their best pair
+		List<INode> pool = new ArrayList<INode>();
+		Map<INode, Integer> poolIndices = new HashMap<INode, Integer>();
+		for (IMergeResult seed : seeds) {
+			for (INode node : seed.getNodes()) {
+				if (pool.size() < MAX_POOL_SIZE && ! poolIndices.containsKey(node)) {
+					poolIndices.put(node, pool.size());
+					pool.add(node);
+				}
+			}
+		}
+
+		TLongDoubleMap evaluated = new TLongDoubleHashMap();
+		TLongArrayList beam = new TLongArrayList(beamWidth);
+		for (IMergeResult seed : seeds) {
+			long mask = toMask(seed.getNodes(), poolIndices);
+			if (mask != 0) {
+				evaluated.put(mask, seed.getCategoryUtility());
+				beam.add(mask);
+			}
+		}
+
+		for (int size = 3; size <= maxSubsetSize && size <= pool.size() && ! beam.isEmpty(); size++) {
+			Set<Collection<INode>> candidates = new HashSet<Collection<INode>>();
+			if (ArithmeticUtils.binomialCoefficientDouble(pool.size(), size) <= (double) beam.size() * pool.size()) {
+				long limit = 1L << pool.size();
+				for (long mask = (1L << size) - 1; mask < limit; mask = KSubsets.nextMask(mask)) {
+					candidates.add(toNodes(mask, pool));
+				}
+			} else {
+				TLongSet extensions = new TLongHashSet();
+				for (int b = 0; b < beam.size(); b++) {
+					long mask = beam.get(b);
+					for (int i = 0; i < pool.size(); i++) {
+						long extension = mask | (1L << i);
+						if (extension != mask && extensions.add(extension)) {
+							candidates.add(toNodes(extension, pool));
+						}
+					}
+				}
+			}
+
+			IndexedMaxHeap best = new IndexedMaxHeap(candidates.size());
+			for (IMergeResult result : searcher.getMaxCategoryUtilityMerges(candidates, clusterSet)) {
+				long mask = toMask(result.getNodes(), poolIndices);
+				evaluated.put(mask, result.getCategoryUtility());
+				best.put(mask, result.getCategoryUtility());
+			}
+			beam.clear();
+			while (beam.size() < beamWidth && ! best.isEmpty()) {
+				beam.add(best.pollKey());
+			}
+		}
+
+		List<IMergeResult> merges = selectDisjointMerges(evaluated, pool, maxMerges, tolerance);
+		log.info("Time in beam subset merge selector: " + (double)(System.nanoTime() - time) / 1000000000.0
+				+ " s, pool size: " + pool.size() + ", number of evaluated subsets: " + evaluated.size()
+				+ ", size of best merge: " + merges.get(0).getNodes().size());
+		return merges;
+	}
+
+	@Override
+	public void mergePerformed(IMergeResult mergeResult, INode newNode, IClusterSetIndexed<INode> clusterSet) {
+		pairSelector.mergePerformed(mergeResult, newNode, clusterSet);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * Each performed merge is reported to the pair selector, thus its statistics are returned.
+	 */
+	@Override
+	public MergeSelectionStatistics getStatistics() {
+		return pairSelector.getStatistics();
+	}
+
+	/**
+	 * Takes the evaluated subsets in descending order of their category utility
+	 * and skips subsets with a node of an already selected merge.
+	 */
+	private static List<IMergeResult> selectDisjointMerges(TLongDoubleMap evaluated, List<INode> pool,
+			int maxMerges, double tolerance) {
+		IndexedMaxHeap sorted = new IndexedMaxHeap(evaluated.size());
+		TLongDoubleIterator it = evaluated.iterator();
+		for ( int i = evaluated.size(); i-- > 0; ) { // faster iteration by avoiding hasNext()
+			it.advance();
+			sorted.put(it.key(), it.value());
+		}
+		List<IMergeResult> merges = new ArrayList<IMergeResult>(maxMerges);
+		double max = sorted.peekValue();
+		long mergedNodes = 0;
+		while (merges.size() < maxMerges && ! sorted.isEmpty() && sorted.peekValue() >= max - tolerance) {
+			double utility = sorted.peekValue();
+			long mask = sorted.pollKey();
+			if ((mask & mergedNodes) != 0) continue;
+			mergedNodes |= mask;
+			merges.add(new MergeResult(utility, toNodes(mask, pool)));
+		}
+		return merges;
+	}
+
+	/**
+	 * Gets the bit mask of nodes of the pool.
+	 *
+	 * @return the mask or 0 if a node is not in the pool
+	 */
+	private static long toMask(Collection<INode> nodes, Map<INode, Integer> poolIndices) {
+		long mask = 0;
+		for (INode node : nodes) {
+			Integer index = poolIndices.get(node);
+			if (index == null) return 0;
+			mask |= 1L << index;
+		}
+		return mask;
+	}
+
+	private static List<INode> toNodes(long mask, List<INode> pool) {
+		List<INode> nodes = new ArrayList<INode>(Long.bitCount(mask));
+		for (long bits = mask; bits != 0; bits &= bits - 1) {
+			nodes.add(pool.get(Long.numberOfTrailingZeros(bits)));
+		}
+		return nodes;
+	}
+
+}
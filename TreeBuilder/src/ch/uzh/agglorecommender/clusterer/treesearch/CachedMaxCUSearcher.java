@@ -1,32 +1,35 @@
 package ch.uzh.agglorecommender.clusterer.treesearch;
 
-import gnu.trove.impl.Constants;
-import gnu.trove.iterator.TIntIterator;
-import gnu.trove.map.TIntDoubleMap;
-import gnu.trove.map.hash.TIntDoubleHashMap;
-import gnu.trove.set.TIntSet;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.map.TLongDoubleMap;
+import gnu.trove.set.TLongSet;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
 import ch.uzh.agglorecommender.clusterer.treecomponent.Node;
 import ch.uzh.agglorecommender.util.TBLogger;
 
-public class CachedMaxCUSearcher extends MaxCategoryUtilitySearcherDecorator implements Serializable {
+/**
+ *
+ * Caches the category utilities calculated by the decorated searcher.
+ * <br>
+ * The category utilities of combination ids are kept in a {@link CategoryUtilityCache}
+ * with a fixed byte budget. Each entry remembers the attribute version read before its
+ * calculation, an entry is used only if none of its nodes changed afterwards
+ * (see {@link INode#getAttributeVersion()}). Thus no entries have to be invalidated
+ * after a merge. The entries of nodes removed from an indexed cluster set are purged,
+ * because their combination ids are reused for the combinations of added nodes.
+ *
+ */
+public class CachedMaxCUSearcher extends MaxCategoryUtilitySearcherDecorator implements ICombinationRemovalListener, Serializable {
 
 	/**
 	 * Determines if a de-serialized file is compatible with this class.
@@ -38,90 +41,130 @@ public class CachedMaxCUSearcher extends MaxCategoryUtilitySearcherDecorator imp
 	private static final long serialVersionUID = 1L;
 	
 	/**
-	 * Default value in cache map.
+	 * The estimated number of bytes of an entry of the cache of node collections:
+	 * the map entry, the list of nodes and the merge result.
 	 */
-	private static final double NO_CACHE_ENTRY_VALUE = -1;
+	private static final int BYTES_PER_COLLECTION_ENTRY = 160;
 		
 	/**
 	 * Maps combination ids to its category utility calculated in a previous cycle.
 	 */
-	private TIntDoubleMap numberCache = new TIntDoubleHashMap(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, -1, NO_CACHE_ENTRY_VALUE);
+	private final CategoryUtilityCache numberCache;
 	
-	private static Map<Collection<INode>, IMergeResult> cache = new HashMap<Collection<INode>,IMergeResult>();
+	/**
+	 * Maps node collections to its merge result calculated in a previous cycle.
+	 * The least recently used entry is evicted if the cache is full.
+	 */
+	private final Map<Collection<INode>, CachedMergeResult> cache;
 	
+	/**
+	 * The cluster set which reports its removed combinations to this searcher.
+	 */
+	private IClusterSetIndexed<INode> observedClusterSet = null;
+	
+	/**
+	 * Instantiates a new cache decorator which uses at most an eighth of the max heap size.
+	 * 
+	 * @param decoratedSearcher the searcher which calculates category utilities not found in the cache.
+	 */
 	public CachedMaxCUSearcher(IMaxCategoryUtilitySearcher decoratedSearcher) {
+		this(decoratedSearcher, Runtime.getRuntime().maxMemory() / 8);
+	}
+	
+	/**
+	 * Instantiates a new cache decorator.
+	 * 
+	 * @param decoratedSearcher the searcher which calculates category utilities not found in the cache.
+	 * @param maxBytes the max number of bytes of each cache of this decorator.
+	 */
+	public CachedMaxCUSearcher(IMaxCategoryUtilitySearcher decoratedSearcher, long maxBytes) {
 		super(decoratedSearcher);
+		this.numberCache = new CategoryUtilityCache(maxBytes);
+		final long maxCollectionEntries = Math.max(1, maxBytes / BYTES_PER_COLLECTION_ENTRY);
+		this.cache = new LinkedHashMap<Collection<INode>, CachedMergeResult>(16, 0.75f, true) {
+			
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Collection<INode>, CachedMergeResult> eldest) {
+				return size() > maxCollectionEntries;
+			}
+		};
+	}
+	
+	/**
+	 * Gets the cache of the category utilities of combination ids with its hit, miss, stale and eviction counters.
+	 * 
+	 * @return the cache of combination ids
+	 */
+	public CategoryUtilityCache getCache() {
+		return numberCache;
 	}
 	
 	@Override
-	public TIntDoubleMap getMaxCategoryUtilityMerges(
-			TIntSet combinationIds, IClusterSetIndexed<INode> clusterSet) {
+	public void combinationsRemoved(TLongSet combinationIds) {
+		numberCache.removeAll(combinationIds);
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public TLongDoubleMap getMaxCategoryUtilityMerges(
+			TLongSet combinationIds, IClusterSetIndexed<INode> clusterSet) {
 		Logger log = TBLogger.getLogger(getClass().getName());
 		long time1 = System.nanoTime();
-			
-		// iterate over all invalid node combinations
-		Set<INode> dirtyNodes = Node.getAllDirtyNodes();
-		log.info("Number of dirty nodes: " + dirtyNodes.size());
-		Iterator<INode> dirtyNodesIterator = dirtyNodes.iterator();		
-		for ( int i = dirtyNodes.size(); i-- > 0; ) { // faster iteration by avoiding hasNext()
-			TIntSet dirtyCombs = clusterSet.getCombinationsIds(dirtyNodesIterator.next());
-			TIntIterator dirtyCombsIterator = dirtyCombs.iterator();
-			for ( int j = dirtyCombs.size(); j-- > 0; ) {
-				// add invalid combinations to cache with default category utility value
-				numberCache.put(dirtyCombsIterator.next(), NO_CACHE_ENTRY_VALUE);
-			}
-			// set the dirty node to clean (which means removing it from the dirty set)
-			dirtyNodesIterator.remove();
+		
+		// purge the entries of removed nodes from now on
+		if (clusterSet != observedClusterSet && clusterSet instanceof ClusterSetIndexed) {
+			((ClusterSetIndexed<INode>) clusterSet).addCombinationRemovalListener(this);
+			observedClusterSet = clusterSet;
 		}
 		
+		// read the version before any calculation, changes during the calculation make the new entries stale
+		long version = Node.getCurrentAttributeVersion();
+		
 		// initialize some performance indicators
 		int initialNumberOfComparisons = combinationIds.size();
-		int numberOfInvalidCacheEntries = 0;
+		long initialNumberOfStaleEntries = numberCache.getStaleEntries();
 		int numberOfUsedCacheEntries = 0;
 		
 		// initialize variables to store best cache entry of the sought combinations
-		double maxCachedCU = -1.0;
-		int bestCombinationId = -1;
+		double maxCachedCU = -Double.MAX_VALUE;
+		long bestCombinationId = -1;
 		
-		// reduce the combinations to calculate by fetching (now valid) cache entries
+		// reduce the combinations to calculate by fetching valid cache entries
 		// at the same time we lookup the entry with the highest utility in the cache of the sought combinations.
-		TIntIterator it = combinationIds.iterator();
+		TLongIterator it = combinationIds.iterator();
 		for ( int j = combinationIds.size(); j-- > 0; ) {
-			int i = it.next();
+			long i = it.next();
+			
+			double cacheValue = numberCache.get(i, getAttributeVersion(clusterSet.getCombination(i)));
+			if (cacheValue != cacheValue) continue; // not cached or stale
 			
-			// no need to continue if combination id is unknown
-			if (! numberCache.containsKey(i)) continue;
+			// cache entry is valid, 
+			// thus we remove the combination from the set of combinations
+			// for which category utility will be calculated
+			it.remove(); 
+			numberOfUsedCacheEntries++;
 			
-			double cacheValue = numberCache.get(i);
-			if(cacheValue == NO_CACHE_ENTRY_VALUE) {
-				numberOfInvalidCacheEntries++;
-			} else {
-				// cache entry is valid, 
-				// thus we remove the combination from the set of combinations
-				// for which category utility will be calculated
-				it.remove(); 
-				numberOfUsedCacheEntries++;
-				
-				// store the cached entry if it is a new best category utility
-				if (cacheValue > maxCachedCU) {
-					maxCachedCU = cacheValue;
-					bestCombinationId = i;
-				}
+			// store the cached entry if it is a new best category utility, ties as the smaller combination id
+			if (cacheValue > maxCachedCU || (cacheValue == maxCachedCU && i < bestCombinationId)) {
+				maxCachedCU = cacheValue;
+				bestCombinationId = i;
 			}
 		}
 		
-		log.info("Initial number of comparisons: "+ initialNumberOfComparisons + ". Number of invalidated cache entries: "
-						+ numberOfInvalidCacheEntries + ". Number of used cache entries: "+ numberOfUsedCacheEntries
+		log.info("Initial number of comparisons: "+ initialNumberOfComparisons + ". Number of stale cache entries: "
+						+ (numberCache.getStaleEntries() - initialNumberOfStaleEntries) + ". Number of used cache entries: "+ numberOfUsedCacheEntries
 						+ ". Number of remaining category utility calculations: " + combinationIds.size());				
 		time1 = System.nanoTime() - time1;
 		
-		TIntDoubleMap newMerges = decoratedSearcher.getMaxCategoryUtilityMerges(combinationIds, clusterSet);
+		TLongDoubleMap newMerges = decoratedSearcher.getMaxCategoryUtilityMerges(combinationIds, clusterSet);
 		
 		long time2 = System.nanoTime();
 		log.info("Number of new merge results to add to the cache: " + newMerges.size());
 		
 		// add the calculated combinations to the cache
-		numberCache.putAll(newMerges);
+		numberCache.putAll(newMerges, version);
 		
 		// add the best cached category utility for the sought combinations to the result map if one was found.
 		if (bestCombinationId > -1) {
@@ -129,49 +172,42 @@ public class CachedMaxCUSearcher extends MaxCategoryUtilitySearcherDecorator imp
 		}
 
 		time2 = System.nanoTime() - time2;
-		log.info("Time in cache decorator: " + (double)(time1 + time2) / 1000000000.0 + " s");
+		log.info("Time in cache decorator: " + (double)(time1 + time2) / 1000000000.0 + " s, cache entries: "
+				+ numberCache.size() + " of " + numberCache.getMaxEntries() + ", hits: " + numberCache.getHits()
+				+ ", misses: " + numberCache.getMisses() + ", evictions: " + numberCache.getEvictions());
 		return newMerges;
 	}
 	
 	/**
-	 * Removes combinations list that contain dirty nodes
-	 * (nodes whit recently changed attributes) from the cache.
-	 * The dirty flags of all nodes contained in the passed 
-	 * cluster set are set to false and valid results are
-	 * fetched from the cache.
+	 * Fetches the valid results from the cache and removes their
+	 * combinations from the passed set. Stale entries, i.e. entries with a node
+	 * whose attributes changed after the calculation, are removed from the cache.
 	 * 
 	 * @param combinationsToCheck the node combinations to check
-	 * @param clusterSet the set of the nodes to cluster
 	 * @return a set with IMergeResults obtained from the cache 
 	 */
-	private Set<IMergeResult> revalidateAndFetchCache(Set<Collection<INode>> combinationsToCheck, IClusterSet<INode> clusterSet) {
+	private Set<IMergeResult> fetchCache(Set<Collection<INode>> combinationsToCheck) {
 		long time = System.nanoTime();
 		Logger log = TBLogger.getLogger(getClass().getName());
-		int invalidLists = cache.keySet().size();
+		int staleLists = 0;
 		Set<IMergeResult> result = new HashSet<IMergeResult>(combinationsToCheck.size());
-		Set<INode> dirty = Node.getAllDirtyNodes();
-		int dirtyNodes = dirty.size();
-		Iterator<INode> i = dirty.iterator();
-		long step = System.nanoTime();
-		while (i.hasNext()) {
-			INode n = i.next();
-			if (clusterSet.contains(n)){
-				cache.keySet().removeAll(clusterSet.getCombinations(n));
-				i.remove();
+		Iterator<Collection<INode>> it = combinationsToCheck.iterator();
+		while (it.hasNext()) {
+			Collection<INode> l = it.next();
+			CachedMergeResult cached = cache.get(l);
+			if (cached == null) continue;
+			if (cached.version < getAttributeVersion(l)) {
+				cache.remove(l);
+				staleLists++;
+				continue;
 			}
+			result.add(cached.mergeResult);
+			it.remove();
 		}
-//		System.err.println("remove from cahce and dirty set: " + ((double) (System.nanoTime() - step) / 1000000000.0 + " s"));
-		step = System.nanoTime();
-		for (Collection<INode> l : combinationsToCheck) {
-			result.add(cache.get(l));
-		}
-		result.remove(null);
-//		System.err.println("add to result set: " + ((double) (System.nanoTime() - step) / 1000000000.0 + " s"));
 		
 		time = System.nanoTime() - time;
-		log.info("Number of invalidated lists: " + (invalidLists - cache.keySet().size())
-				+ ", number of cleaned dirty nodes: " + (dirtyNodes - dirty.size())
-				+", time for cache update: "+(double)time / 1000000000.0 + " s");
+		log.info("Number of stale lists: " + staleLists
+				+", time for cache lookup: "+(double)time / 1000000000.0 + " s");
 		return result;
 	}
 	
@@ -183,30 +219,13 @@ public class CachedMaxCUSearcher extends MaxCategoryUtilitySearcherDecorator imp
 		int initialNumberOfCombinationsToCheck = combinationsToCheck.size();
 		
 		long step = System.nanoTime();
-//		// (re)validate cache
-//		revalidateCache();
-//		System.err.println("reval: " + ((double) (System.nanoTime() - step) / 1000000000.0 + " s"));
-//		step = System.nanoTime();
-//		
-//		// new result set
-//		Set<IMergeResult> result = new HashSet<IMergeResult>(combinationsToCheck);
-//		
-//		// fetch cached valid results and add to results
-//		Set<List<INode>> kS = Sets.intersection(cache.keySet(), combinationsToCheck);
-//		for (List<INode> l : kS) {
-//			result.add(cache.get(l));
-//		}
+		long version = Node.getCurrentAttributeVersion();
 		
-		// revalidate the cache and fetch valid cache values into results
-		Set<IMergeResult> result = revalidateAndFetchCache(combinationsToCheck, clusterSet);
+		// fetch valid cache values into results and remove cached lists from combinationsToCheck
+		Set<IMergeResult> result = fetchCache(combinationsToCheck);
 		
-//		System.err.println("reval / fetch cache: " + ((double) (System.nanoTime() - step) / 1000000000.0 + " s"));
+//		System.err.println("fetch cache: " + ((double) (System.nanoTime() - step) / 1000000000.0 + " s"));
 		step = System.nanoTime();
-		
-		// remove cached lists from combinationsToCheck
-		combinationsToCheck.removeAll(cache.keySet());
-//		System.err.println("rmv cached lists: " + ((double) (System.nanoTime() - step) / 1000000000.0 + " s"));
-
 	
 		log.info(result.size() + " of " + initialNumberOfCombinationsToCheck + " IMergeResults were found in cache");
 		time1 = System.nanoTime() - time1;
@@ -220,7 +239,7 @@ public class CachedMaxCUSearcher extends MaxCategoryUtilitySearcherDecorator imp
 		
 		// add new merge results to cache
 		for (IMergeResult nM : newMerges) {
-			cache.put(nM.getNodes(), nM);
+			cache.put(nM.getNodes(), new CachedMergeResult(nM, version));
 		}
 		
 //		System.err.println("increase cache: " + ((double) (System.nanoTime() - step) / 1000000000.0 + " s"));
@@ -238,60 +257,35 @@ public class CachedMaxCUSearcher extends MaxCategoryUtilitySearcherDecorator imp
 	}
 	
 	/**
-	 * Removes combinations list that contain dirty nodes
-	 * (nodes whit recently changed attributes) from the cache.
-	 * The dirty flags of all nodes contained in the cache are 
-	 * reset to false.
-	 * <br>
-	 * <br>
-	 * NOT USED CURRENTLY DUE TO LACK OF PERFORMANCE
+	 * Gets the latest attribute version of the passed nodes.
+	 * 
+	 * @param nodes the nodes of a combination
+	 * @return the greatest attribute version or {@code Long.MAX_VALUE} if a node is not open anymore
 	 */
-	private void revalidateCache() {
-		long time = System.nanoTime();
-		Logger log = TBLogger.getLogger(getClass().getName());
-
-		final Set<INode> dirtyNodes = Collections.synchronizedSet(new HashSet<INode>()) ;
-		final Set<Collection<INode>> invalidLists = Collections.synchronizedSet(new HashSet<Collection<INode>>());
-		
-		ExecutorService es = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-		List<Future<?>> futures = new ArrayList<Future<?>>();
-		for (final Collection<INode> l : cache.keySet()) {
-			futures.add(es.submit(new Runnable() {
-				
-				@Override
-				public void run() {
-					for (INode n : l) {
-						if(n.isDirty()) {				
-							invalidLists.add(l);
-							dirtyNodes.add(n);
-							break;
-						}
-					}					
-				}
-			}));
-		}
-		es.shutdown();
-		for (Future<?> future : futures) {
-			try {
-				future.get();
-			} catch (InterruptedException | ExecutionException e) {
-				log.severe("InterruptedException or ExecutionException while waiting for termination.");
-				System.exit(-1);
-			}
+	private static long getAttributeVersion(Collection<INode> nodes) {
+		long version = Long.MIN_VALUE;
+		for (INode node : nodes) {
+			if (node == null) return Long.MAX_VALUE;
+			version = Math.max(version, node.getAttributeVersion());
 		}
-				
-		// remove list with dirty node(s) from cache
-		cache.keySet().removeAll(invalidLists);
+		return version;
+	}
+	
+	/**
+	 * A cached merge result with the attribute version read before its calculation.
+	 */
+	private static final class CachedMergeResult implements Serializable {
 		
-		// reset dirty flags of nodes
-		for (INode n : dirtyNodes) {
-			n.setClean();
-		}
+		private static final long serialVersionUID = 1L;
 		
-		time = System.nanoTime() - time;
-		log.info("Number of invalidated lists: " + invalidLists.size()
-				+ ", number of dirty nodes: " + dirtyNodes.size()
-				+", time for cache update: "+(double)time / 1000000000.0 + " s");
+		private final IMergeResult mergeResult;
+		
+		private final long version;
+		
+		private CachedMergeResult(IMergeResult mergeResult, long version) {
+			this.mergeResult = mergeResult;
+			this.version = version;
+		}
 	}
 
 }
@@ -0,0 +1,329 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import gnu.trove.iterator.TLongDoubleIterator;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.map.TLongDoubleMap;
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.hash.TLongDoubleHashMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.set.TLongSet;
+
+import java.io.Serializable;
+
+/**
+ *
+ * Memory bounded cache of category utilities, keyed by combination id.
+ * <br>
+ * The entries are distributed over striped segments, each with its own lock,
+ * thus parallel evaluators can read and write without a global lock.
+ * Each segment holds at most its share of the configured byte budget. If a segment
+ * is full, its oldest entry is evicted (first in, first out). Entries of combinations
+ * which aren't valid anymore are expected to be removed actively, see {@link #removeAll(TLongSet)}.
+ * <br>
+ * Each entry stores the attribute version at which its category utility was calculated.
+ * A lookup passes the latest attribute version of the nodes of the combination,
+ * an older entry is stale and is dropped lazily instead of sweeping the cache after each merge.
+ *
+ */
+public class CategoryUtilityCache implements Serializable {
+
+	/**
+	 * Determines if a de-serialized file is compatible with this class.
+	 * <br>
+	 * <br>
+	 * Maintainers must change this value if and only if the new version
+	 * of this class is not compatible with old versions.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Returned by {@link #get(int, long)} if the combination is not cached.
+	 */
+	public static final double NO_ENTRY_VALUE = Double.NaN;
+
+	/**
+	 * The estimated number of bytes per entry: key, value, version and states of two
+	 * open addressing maps with load factor 0.5 and the key in the eviction queue.
+	 */
+	static final int BYTES_PER_ENTRY = 2 * (8 + 8 + 1) + 2 * (8 + 8 + 1) + 8;
+
+	/**
+	 * The number of segments, a power of two.
+	 */
+	private static final int NUMBER_OF_SEGMENTS = 16;
+
+	private final Segment[] segments = new Segment[NUMBER_OF_SEGMENTS];
+
+	private final long maxBytes;
+
+	/**
+	 * Instantiates a new cache.
+	 *
+	 * @param maxBytes the max number of bytes used by the entries of the cache.
+	 */
+	public CategoryUtilityCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+		int maxEntriesPerSegment = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 2,
+				maxBytes / BYTES_PER_ENTRY / NUMBER_OF_SEGMENTS));
+		for (int i = 0; i < NUMBER_OF_SEGMENTS; i++) {
+			segments[i] = new Segment(maxEntriesPerSegment);
+		}
+	}
+
+	/**
+	 * Gets the cached category utility of a combination.
+	 * An entry calculated before the passed version is stale, it is removed and
+	 * treated as not cached.
+	 *
+	 * @param combinationId the combination
+	 * @param minVersion the greatest attribute version of the nodes of the combination
+	 * @return the category utility or {@link #NO_ENTRY_VALUE} if the combination is not cached.
+	 */
+	public double get(long combinationId, long minVersion) {
+		return segmentFor(combinationId).get(combinationId, minVersion);
+	}
+
+	/**
+	 * Caches the category utility of a combination, an existing entry is replaced.
+	 *
+	 * @param combinationId the combination
+	 * @param categoryUtility the category utility of the combination
+	 * @param version the attribute version read before the category utility was calculated
+	 */
+	public void put(long combinationId, double categoryUtility, long version) {
+		segmentFor(combinationId).put(combinationId, categoryUtility, version);
+	}
+
+	/**
+	 * Caches all category utilities of the passed map.
+	 *
+	 * @param categoryUtilities the category utilities keyed by combination id
+	 * @param version the attribute version read before the category utilities were calculated
+	 */
+	public void putAll(TLongDoubleMap categoryUtilities, long version) {
+		TLongDoubleIterator it = categoryUtilities.iterator();
+		for ( int i = categoryUtilities.size(); i-- > 0; ) { // faster iteration by avoiding hasNext()
+			it.advance();
+			put(it.key(), it.value(), version);
+		}
+	}
+
+	/**
+	 * Removes the entries of the passed combinations.
+	 *
+	 * @param combinationIds the combinations to remove
+	 * @return the number of removed entries
+	 */
+	public int removeAll(TLongSet combinationIds) {
+		int removed = 0;
+		TLongIterator it = combinationIds.iterator();
+		for ( int i = combinationIds.size(); i-- > 0; ) { // faster iteration by avoiding hasNext()
+			long combinationId = it.next();
+			if (segmentFor(combinationId).remove(combinationId)) removed++;
+		}
+		return removed;
+	}
+
+	/**
+	 * @return the number of cached entries
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.entries.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return the configured max number of bytes of the cache
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @return the max number of entries of the cache
+	 */
+	public long getMaxEntries() {
+		return (long) segments[0].maxEntries * NUMBER_OF_SEGMENTS;
+	}
+
+	/**
+	 * @return the number of lookups which found an entry
+	 */
+	public long getHits() {
+		long hits = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				hits += segment.hits;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * @return the number of lookups which found no entry, including stale entries
+	 */
+	public long getMisses() {
+		long misses = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				misses += segment.misses;
+			}
+		}
+		return misses;
+	}
+
+	/**
+	 * @return the number of entries which were dropped on lookup because they were stale
+	 */
+	public long getStaleEntries() {
+		long stale = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				stale += segment.stale;
+			}
+		}
+		return stale;
+	}
+
+	/**
+	 * @return the number of entries which were evicted because their segment was full
+	 */
+	public long getEvictions() {
+		long evictions = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				evictions += segment.evictions;
+			}
+		}
+		return evictions;
+	}
+
+	private Segment segmentFor(long combinationId) {
+		// spread the bits, consecutive combination ids differ mainly in the low bits
+		long h = combinationId * 0x9E3779B97F4A7C15L;
+		return segments[(int) (h >>> 48) & (NUMBER_OF_SEGMENTS - 1)];
+	}
+
+	/**
+	 * A part of the cache with its own lock and a queue of its keys in insertion order.
+	 * The queue may contain keys which were removed, they are skipped on eviction
+	 * and dropped if they occupy more than half of the queue.
+	 */
+	private static final class Segment implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private static final int INITIAL_QUEUE_CAPACITY = 64;
+
+		private final int maxEntries;
+
+		private final TLongDoubleMap entries = new TLongDoubleHashMap(INITIAL_QUEUE_CAPACITY, 0.5f, -1, NO_ENTRY_VALUE);
+
+		/**
+		 * The attribute versions of the entries.
+		 */
+		private final TLongLongMap versions = new TLongLongHashMap(INITIAL_QUEUE_CAPACITY, 0.5f, -1, -1);
+
+		/**
+		 * Circular queue of the keys in insertion order.
+		 */
+		private long[] queue = new long[INITIAL_QUEUE_CAPACITY];
+
+		private int head = 0;
+
+		private int queueSize = 0;
+
+		private long hits = 0;
+
+		private long misses = 0;
+
+		private long evictions = 0;
+
+		private long stale = 0;
+
+		private Segment(int maxEntries) {
+			this.maxEntries = maxEntries;
+		}
+
+		private synchronized double get(long key, long minVersion) {
+			double value = entries.get(key);
+			if (value != value) { // NaN
+				misses++;
+				return NO_ENTRY_VALUE;
+			}
+			if (versions.get(key) < minVersion) {
+				// a node changed after the calculation, the queued key is dropped on compaction
+				entries.remove(key);
+				versions.remove(key);
+				stale++;
+				misses++;
+				return NO_ENTRY_VALUE;
+			}
+			hits++;
+			return value;
+		}
+
+		private synchronized void put(long key, double value, long version) {
+			if (entries.containsKey(key)) {
+				entries.put(key, value);
+				versions.put(key, version);
+				return;
+			}
+			if (queueSize == maxEntries && entries.size() <= maxEntries / 2) {
+				// most queued keys were removed, drop them instead of evicting live entries
+				compactQueue();
+			}
+			if (queueSize == maxEntries) {
+				// evict the oldest key, the queue holds at least all keys of the segment
+				long oldest = queue[head];
+				head = (head + 1) % queue.length;
+				queueSize--;
+				if (entries.containsKey(oldest)) {
+					entries.remove(oldest);
+					versions.remove(oldest);
+					evictions++;
+				}
+			} else if (queueSize == queue.length) {
+				growQueue();
+			}
+			queue[(head + queueSize) % queue.length] = key;
+			queueSize++;
+			entries.put(key, value);
+			versions.put(key, version);
+		}
+
+		private synchronized boolean remove(long key) {
+			if (! entries.containsKey(key)) return false;
+			entries.remove(key);
+			versions.remove(key);
+			return true;
+		}
+
+		private void compactQueue() {
+			int size = 0;
+			for (int i = 0; i < queueSize; i++) {
+				long key = queue[(head + i) % queue.length];
+				if (entries.containsKey(key)) {
+					queue[(head + size) % queue.length] = key;
+					size++;
+				}
+			}
+			queueSize = size;
+		}
+
+		private void growQueue() {
+			long[] grown = new long[(int) Math.min(maxEntries, 2L * queue.length)];
+			for (int i = 0; i < queueSize; i++) {
+				grown[i] = queue[(head + i) % queue.length];
+			}
+			queue = grown;
+			head = 0;
+		}
+	}
+
+}
@@ -3,11 +3,16 @@ package ch.uzh.agglorecommender.clusterer.treesearch;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import ch.uzh.agglorecommender.clusterer.treecomponent.AttributeSignature;
+import ch.uzh.agglorecommender.clusterer.treecomponent.ClassitAttributeMap;
 import ch.uzh.agglorecommender.clusterer.treecomponent.IAttribute;
 import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.Node;
 import ch.uzh.agglorecommender.util.TBLogger;
 
 public class ClassitMaxCategoryUtilitySearcher extends BasicMaxCategoryUtilitySearcher implements Serializable {
@@ -36,6 +41,11 @@ public class ClassitMaxCategoryUtilitySearcher extends BasicMaxCategoryUtilitySe
 	 **/
 	public double calculateCategoryUtility(Collection<INode> possibleMerge) {
 
+		if (possibleMerge.size() == 2) {
+			Iterator<INode> it = possibleMerge.iterator();
+			return calculateCategoryUtility(it.next(), it.next());
+		}
+
 		Set<INode> allAttributes = new HashSet<INode>();
 
 		for (INode node : possibleMerge) {
@@ -63,6 +73,137 @@ public class ClassitMaxCategoryUtilitySearcher extends BasicMaxCategoryUtilitySe
 		return utility;
 	}
 
+	/**
+	 * Calculates the utility of merging two nodes in a single pass over the attributes
+	 * of the node with fewer attributes, without creating the set of all attributes.
+	 * Nodes with columnar attributes are compared with
+	 * {@link #calculateCategoryUtility(ClassitAttributeMap, ClassitAttributeMap)}.
+	 * Equals {@link #calculateCategoryUtility(Collection)} up to the summation order.
+	 * 
+	 * @param first the first node of the merge
+	 * @param second the second node of the merge
+	 * @return the utility of merging the two nodes
+	 */
+	public static double calculateCategoryUtility(INode first, INode second) {
+		if (first instanceof Node && second instanceof Node) {
+			ClassitAttributeMap firstColumns = ((Node) first).getColumnarNumericalAttributes();
+			ClassitAttributeMap secondColumns = ((Node) second).getColumnarNumericalAttributes();
+			if (firstColumns != null && secondColumns != null) {
+				return calculateCategoryUtility(firstColumns, secondColumns);
+			}
+		}
+
+		Set<INode> firstKeys = first.getNumericalAttributeKeys();
+		Set<INode> secondKeys = second.getNumericalAttributeKeys();
+		boolean firstIsSmaller = firstKeys.size() <= secondKeys.size();
+		INode iterated = firstIsSmaller ? first : second;
+		INode probed = firstIsSmaller ? second : first;
+		int numberOfAttributes = firstKeys.size() + secondKeys.size();
+		double utility = 0.0;
+		for (INode attribute : iterated.getNumericalAttributeKeys()) {
+			IAttribute probedAttribute = probed.getNumericalAttributeValue(attribute);
+			if (probedAttribute == null) continue;
+			IAttribute iteratedAttribute = iterated.getNumericalAttributeValue(attribute);
+			IAttribute firstAttribute = firstIsSmaller ? iteratedAttribute : probedAttribute;
+			IAttribute secondAttribute = firstIsSmaller ? probedAttribute : iteratedAttribute;
+
+			// sum in the order of the merge as calcStdDevOfAttribute does
+			utility += 1.0 / calcStdDev(
+					firstAttribute.getSupport() + secondAttribute.getSupport(),
+					firstAttribute.getSumOfRatings() + secondAttribute.getSumOfRatings(),
+					firstAttribute.getSumOfSquaredRatings() + secondAttribute.getSumOfSquaredRatings());
+			numberOfAttributes--;
+		}
+
+		// Normalize sum with the number of attributes
+		utility /= (double) numberOfAttributes;
+
+		if (log.isLoggable(Level.FINEST)) {
+			log.finest("Classit category utility is " + utility);
+		}
+		return utility;
+	}
+
+	/**
+	 * Calculates the utility of merging two nodes with columnar attributes
+	 * by a merge-join over the sorted attribute ids. Equals
+	 * {@link #calculateCategoryUtility(Collection)} up to the summation order.
+	 * 
+	 * @param first the attributes of the first node
+	 * @param second the attributes of the second node
+	 * @return the utility of merging the two nodes
+	 */
+	public static double calculateCategoryUtility(ClassitAttributeMap first, ClassitAttributeMap second) {
+		int firstSize = first.getNumberOfColumnEntries();
+		int secondSize = second.getNumberOfColumnEntries();
+		int i = 0;
+		int j = 0;
+		int numberOfAttributes = firstSize + secondSize;
+		double utility = 0.0;
+		while (i < firstSize && j < secondSize) {
+			int firstId = first.getAttributeId(i);
+			int secondId = second.getAttributeId(j);
+			if (firstId < secondId) {
+				i++;
+			} else if (firstId > secondId) {
+				j++;
+			} else {
+				// equal ids in the columns refer to the same attribute node
+				utility += 1.0 / calcStdDev(
+						first.getSupport(i) + second.getSupport(j),
+						first.getSumOfRatings(i) + second.getSumOfRatings(j),
+						first.getSumOfSquaredRatings(i) + second.getSumOfSquaredRatings(j));
+				numberOfAttributes--;
+				i++;
+				j++;
+			}
+		}
+
+		// Normalize sum with the number of attributes
+		utility /= (double) numberOfAttributes;
+
+		if (log.isLoggable(Level.FINEST)) {
+			log.finest("Classit category utility is " + utility);
+		}
+		return utility;
+	}
+
+	/**
+	 * Calculates an upper bound of the utility of merging two nodes without
+	 * calculating any standard deviation. The standard deviation of a shared attribute
+	 * is at least the acuity, thus the utility is at most the number of shared attributes
+	 * divided by the number of all attributes and the acuity.
+	 * 
+	 * @param first the first node of the merge
+	 * @param second the second node of the merge
+	 * @return an upper bound of {@link #calculateCategoryUtility(INode, INode)}
+	 */
+	public static double calculateUpperBoundOfCategoryUtility(INode first, INode second) {
+		int numberOfSharedAttributes = 0;
+		int numberOfAttributes;
+		AttributeSignature firstSignature = first instanceof Node ? ((Node) first).getAttributeSignature() : null;
+		AttributeSignature secondSignature = second instanceof Node ? ((Node) second).getAttributeSignature() : null;
+		if (firstSignature != null && secondSignature != null && firstSignature.isExact() && secondSignature.isExact()) {
+			// attributes with equal ids but different keys are counted as shared, the bound gets only weaker
+			numberOfSharedAttributes = firstSignature.intersectionCardinality(secondSignature);
+			numberOfAttributes = firstSignature.cardinality() + secondSignature.cardinality() - numberOfSharedAttributes;
+		} else {
+			Set<INode> firstKeys = first.getNumericalAttributeKeys();
+			Set<INode> secondKeys = second.getNumericalAttributeKeys();
+			Set<INode> iterated = firstKeys.size() <= secondKeys.size() ? firstKeys : secondKeys;
+			Set<INode> probed = iterated == firstKeys ? secondKeys : firstKeys;
+			for (INode attribute : iterated) {
+				if (probed.contains(attribute)) numberOfSharedAttributes++;
+			}
+			numberOfAttributes = firstKeys.size() + secondKeys.size() - numberOfSharedAttributes;
+		}
+		if (numberOfAttributes == 0) {
+			// the utility is not defined, don't prune the merge
+			return maxThoereticalPossibleCategoryUtility;
+		}
+		return ((double) numberOfSharedAttributes / (double) numberOfAttributes) * maxThoereticalPossibleCategoryUtility;
+	}
+
 	/**
 	 * Checks if the passed attribute is an attribute of all nodes in the passed merge candidate.
 	 * 
@@ -93,7 +234,9 @@ public class ClassitMaxCategoryUtilitySearcher extends BasicMaxCategoryUtilitySe
 				res += att.getSupport();
 			}
 		}
-		log.finest("support: "+res);
+		if (log.isLoggable(Level.FINEST)) {
+			log.finest("support: "+res);
+		}
 		return res;
 	}
 
@@ -113,7 +256,9 @@ public class ClassitMaxCategoryUtilitySearcher extends BasicMaxCategoryUtilitySe
 				res += att.getSumOfRatings();
 			}
 		}
-		log.finest("sum of ratings: "+res);
+		if (log.isLoggable(Level.FINEST)) {
+			log.finest("sum of ratings: "+res);
+		}
 		return res;
 	}
 
@@ -133,7 +278,9 @@ public class ClassitMaxCategoryUtilitySearcher extends BasicMaxCategoryUtilitySe
 				res += att.getSumOfSquaredRatings();
 			}
 		}
-		log.finest("sum of squared ratings: " + res);
+		if (log.isLoggable(Level.FINEST)) {
+			log.finest("sum of squared ratings: " + res);
+		}
 		return res;
 	}
 
@@ -145,10 +292,29 @@ public class ClassitMaxCategoryUtilitySearcher extends BasicMaxCategoryUtilitySe
 	 * possibleMerge contains the attribute.
 	 */
 	public static double calcStdDevOfAttribute(INode attribute, Collection<INode> possibleMerge) {
-		int support = calcSupportOfAttribute(attribute, possibleMerge);
-		double sumOfRatings = calcSumOfRatingsOfAttribute(attribute, possibleMerge);
-		double sumOfSquaredRatings = calcSumOfSquaredRatingsOfAttribute(attribute, possibleMerge);
+		// single pass over the merge instead of one pass per aggregated value
+		int support = 0;
+		double sumOfRatings = 0.0;
+		double sumOfSquaredRatings = 0.0;
+		for (INode node : possibleMerge) {
+			IAttribute att = node.getNumericalAttributeValue(attribute);
+			if (att != null) {
+				support += att.getSupport();
+				sumOfRatings += att.getSumOfRatings();
+				sumOfSquaredRatings += att.getSumOfSquaredRatings();
+			}
+		}
+		return calcStdDev(support, sumOfRatings, sumOfSquaredRatings);
+	}
 
+	/**
+	 * Calculates the standard deviation of an attribute from its aggregated values.
+	 * @param support the support of the attribute
+	 * @param sumOfRatings the sum of ratings of the attribute
+	 * @param sumOfSquaredRatings the sum of squared ratings of the attribute
+	 * @return The standard deviation of the attribute, at least acuity.
+	 */
+	public static double calcStdDev(int support, double sumOfRatings, double sumOfSquaredRatings) {
 		if (support < 1) {
 			log.severe("Attempt to calculate standard deviation with support smaller 1." );
 			System.exit(-1);
@@ -161,14 +327,12 @@ public class ClassitMaxCategoryUtilitySearcher extends BasicMaxCategoryUtilitySe
 
 		// calculate the standard deviation incrementally, according to
 		/// http://de.wikipedia.org/wiki/Standardabweichung#Berechnung_f.C3.BCr_auflaufende_Messwerte 
-		double stdDev = Math.sqrt( (1.0/((double) (support - 1))) * (sumOfSquaredRatings - (1.0 / (double) support) * Math.pow(sumOfRatings, 2.0)) );
-		log.finest("standard deviation: "+stdDev);
+		double stdDev = Math.sqrt( (1.0/((double) (support - 1))) * (sumOfSquaredRatings - (1.0 / (double) support) * (sumOfRatings * sumOfRatings)) );
 
 		// check if the calculated standard dev is smaller than the specified acuity
 		// if true use assign acuity to stddev.
 		if (stdDev < acuity) {
 			stdDev = acuity;
-			log.finest("standard deviation is smaller than acuity. Acuity ("+acuity+") is returned as standard deviation.");
 		}
 
 		return stdDev;
@@ -1,25 +1,26 @@
 package ch.uzh.agglorecommender.clusterer.treesearch;
 
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 
 import org.apache.commons.math3.util.ArithmeticUtils;
 
-import scala.collection.immutable.$colon$colon;
-import scala.collection.immutable.List$;
 import ch.uzh.agglorecommender.util.TBLogger;
 
-import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableCollection;
-import com.google.common.collect.Sets;
 import com.google.common.primitives.Ints;
 
 /**
@@ -39,7 +40,7 @@ public class ClusterSet<E> implements Serializable, IClusterSet<E> {
 	 * Maintainers must change this value if and only if the new version
 	 * of this class is not compatible with old versions.
 	 */
-	private static final long serialVersionUID = 1L;
+	private static final long serialVersionUID = 2L;
 	
 	/**
 	 * All generated subsets have size <= MAX_SUBSET_SIZE.
@@ -68,6 +69,9 @@ public class ClusterSet<E> implements Serializable, IClusterSet<E> {
 	 * also known as a combination or combinatorial number. 
 	 * <br>
 	 * (Calculating the complete power set would result in generating 2^n subsets.)
+	 * <br>
+	 * Multi-way merges of large sets are searched by the {@link BeamSubsetMergeSelector}
+	 * without enumerating all subsets.
 	 * 
 	 */
 	private final int MAX_SUBSET_SIZE = 2;
@@ -78,19 +82,16 @@ public class ClusterSet<E> implements Serializable, IClusterSet<E> {
 	private IndexAwareSet<E> openNodes = new IndexAwareSet<E>();
 	
 	/**
-	 * A list of all currently valid comparisons indices. Used to
-	 * generate a the set of valid node comparisons.
+	 * The combinadic ranks of all currently valid combinations of indices of the
+	 * openNodes set, one set per subset size starting with size 2. See {@link KSubsets}.
 	 */
-	private Set<scala.collection.immutable.List<Short>> combinationIndices;
+	private List<TLongSet> combinationRanks = new ArrayList<TLongSet>();
 	
 	/**
-	 * Maps to each currently valid comparison index all possible comparisons (multimap).
-	 * Used for keeping the combinationIndices set in sync with the cluster set.
+	 * Maps to each currently valid index the ranks of all its combinations, one map per subset size.
+	 * Used for keeping the combinationRanks sets in sync with the cluster set.
 	 */
-	private HashMultimap<Short, scala.collection.immutable.List<Short>> combinationsMap;
-	
-	private Map<scala.collection.immutable.List<Short>, List<E>> cachedNodeLists
-			= new HashMap<scala.collection.immutable.List<Short>, List<E>>();
+	private List<TIntObjectMap<TLongSet>> combinationsOfIndex = new ArrayList<TIntObjectMap<TLongSet>>();
 	
 	/**
 	 * Instantiates a new cluster set.
@@ -100,10 +101,11 @@ public class ClusterSet<E> implements Serializable, IClusterSet<E> {
 		
 		this.openNodes.addAll(leafNodes);
 		int numOfInitCombs = calcNumberOfInitialCombinations();
-		this.combinationIndices = new HashSet<scala.collection.immutable.List<Short>>(numOfInitCombs);
+		for (int sublistLength = 2; sublistLength <= MAX_SUBSET_SIZE; sublistLength++) {
+			combinationRanks.add(new TLongHashSet());
+			combinationsOfIndex.add(new TIntObjectHashMap<TLongSet>());
+		}
 		initializeCombinationIndices(numOfInitCombs);
-		this.combinationsMap = HashMultimap.create() ;
-		initializeCombinationsMap();
 	}
 	
 	/**
@@ -120,122 +122,99 @@ public class ClusterSet<E> implements Serializable, IClusterSet<E> {
 		}
 		return res;
 	}
-	
-	/**
-	 * Adds a mapping of each index to all the combinations that involves this index. 
-	 */
-	private void initializeCombinationsMap() {
-		for (scala.collection.immutable.List<Short> l : combinationIndices) {
-			scala.collection.Iterator<Short> i = l.iterator();
-			while(i.hasNext()) {
-				Short n = i.next();
-				combinationsMap.put(n, l);
-			}			
-		}
-	}
-	
 
 	/**
-	 * Calculates all possible combinations,limited to subset size <= MAX_SUBSET_SIZE,
+	 * Calculates all possible combinations, limited to subset size <= MAX_SUBSET_SIZE,
 	 * of the indices of the openNodes set (IndexAwareSet).
-	 * The resulting index lists are stored in combinationIndices.
+	 * The ranks of the index lists are stored in combinationRanks.
 	 */
 	private void initializeCombinationIndices(int initialNumberOfCombinations) {
 		Logger log = TBLogger.getLogger(this.getClass().getName());
-		if (MAX_SUBSET_SIZE == 2) {
-			initializeDualCombinationIndices(initialNumberOfCombinations);
-		} else {
-			for (int sublistLength = 2; sublistLength <= MAX_SUBSET_SIZE; sublistLength++) {
-				if (openNodes.size() < sublistLength) break;
-				scala.collection.Iterator<scala.collection.immutable.List<Object>> it
-							= SubsetsGenerator.subsets(openNodes.size(), sublistLength);
-				int c = 0;
-				while (it.hasNext()) {
-					scala.collection.immutable.List<Short> sublist =
-							(scala.collection.immutable.List<Short>) (scala.collection.immutable.List<?>) it.next();
-					combinationIndices.add(sublist);
-					if (c % 100000 == 0){
-						log.info(c + " of " + initialNumberOfCombinations + " combination indice lists fetched. most recent list: " + sublist);
-					}
-					c++;
-				}
-			}			
-		}
-	}
-	
-	private void initializeDualCombinationIndices(int initialNumberOfCombinations) {
-		Logger log = TBLogger.getLogger(this.getClass().getName());
+		checkRankable(openNodes.size());
 		int c = 0;
-		scala.collection.immutable.List sublist = null;
-		for (short i = 0; i < openNodes.size(); i++) {
-			for (short j = (short) (i + 1); j < openNodes.size(); j++) {
-				sublist = newScalaList(i, j);
-				combinationIndices.add(sublist);
+		for (int sublistLength = 2; sublistLength <= MAX_SUBSET_SIZE; sublistLength++) {
+			if (openNodes.size() < sublistLength) break;
+			int[] sublist = new int[sublistLength];
+			for (int i = 0; i < sublistLength; i++) {
+				sublist[i] = i;
+			}
+			do {
+				addCombination(sublist);
 				c++;
 				if (c % 100000 == 0){
-					log.info(c + " of " + initialNumberOfCombinations + " combination indice lists created. most recent list: " + sublist);
+					log.info(c + " of " + initialNumberOfCombinations + " combination indice lists created. most recent list: " + Arrays.toString(sublist));
 				}
-			}
+			} while (KSubsets.next(sublist, openNodes.size()));
 		}
-		log.info(c + " initial combination indices list created. Expected: " + initialNumberOfCombinations + ", most recent list: " + sublist);
+		log.info(c + " initial combination indices list created. Expected: " + initialNumberOfCombinations);
 	}
 	
-    private static <T> scala.collection.immutable.List<T> newScalaList(T ... ts) {
-    	scala.collection.immutable.List<T> result = List$.MODULE$.empty();
-        for(int i = ts.length; i > 0; i--) {
-            result = new $colon$colon(ts[i - 1], result);
-        }
-        return result;
-    }
-    
-    private static scala.collection.immutable.List<Short> newScalaList(scala.collection.immutable.List<Integer> li) {
-    	scala.collection.immutable.List<Short> result = List$.MODULE$.empty();
-    	scala.collection.Iterator<Integer> it = li.reverseIterator();
-    	while (it.hasNext()) {
-			short s = it.next().shortValue();
-			result = new $colon$colon(s, result);
-		}
-        return result;
-    }
-	
 	/**
-	 * Is called upon addition of a node to the openSet and updates 
-	 * combinationsMap and combinationIndices with the new combination
-	 * indices lists (limited to sublist length <= MAX_SUBSET_SIZE).
+	 * Is called upon addition of a node to the openSet and adds the
+	 * combinations of the new index with the indices of all open nodes
+	 * (limited to sublist length <= MAX_SUBSET_SIZE).
 	 *
 	 */
-	private void updateCombinationIndices(short newIndex) {
-		Logger log = TBLogger.getLogger(getClass().getName());
-
+	private void updateCombinationIndices(int newIndex) {
+		checkRankable(newIndex + 1);
+		
+		// the indices of the other open nodes in ascending order
+		int[] openIndices = new int[openNodes.size() - 1];
+		int numberOfOpenIndices = 0;
+		for (int index = 0; index < newIndex; index++) {
+			if (openNodes.getByIndex(index) != null) {
+				openIndices[numberOfOpenIndices++] = index;
+			}
+		}
+		
 		for (int sublistLength = 2; sublistLength <= MAX_SUBSET_SIZE; sublistLength++) {
-			scala.collection.Iterator<scala.collection.immutable.List<Object>> it 
-					= SubsetsGenerator.remainingSubsets(newIndex, sublistLength);
-			while (it.hasNext()) {
-				scala.collection.immutable.List<Integer> sublist =
-						(scala.collection.immutable.List<Integer>) (scala.collection.immutable.List<?>) it.next();
-				
-				// check if new sublist is valid
-				boolean isValidList = true;
-				scala.collection.Iterator<Integer> i = sublist.iterator();
-				while(i.hasNext()) {
-					short n = i.next().shortValue();
-					if (! combinationsMap.containsKey(n) && n != newIndex) {
-						isValidList = false;
-					}
-				}
-				if (! isValidList) continue;
-				
-				// update combinationIndicesMap if sublist is valid
-				i = sublist.iterator();
-				while(i.hasNext()) {
-					short n = i.next().shortValue();
-					if (combinationsMap.containsKey(n) || n == newIndex) {
-						combinationsMap.put(n, newScalaList(sublist));	
-					}
+			if (numberOfOpenIndices < sublistLength - 1) break;
+			
+			// enumerate the positions of the other indices, the new index is the largest one
+			int[] positions = new int[sublistLength - 1];
+			for (int i = 0; i < positions.length; i++) {
+				positions[i] = i;
+			}
+			int[] sublist = new int[sublistLength];
+			sublist[sublistLength - 1] = newIndex;
+			do {
+				for (int i = 0; i < positions.length; i++) {
+					sublist[i] = openIndices[positions[i]];
 				}
-				
+				addCombination(sublist);
+			} while (KSubsets.next(positions, numberOfOpenIndices));
+		}
+	}
+	
+	/**
+	 * Stores the rank of a combination and maps each of its indices to it.
+	 * 
+	 * @param sublist the indices of the combination in ascending order
+	 */
+	private void addCombination(int[] sublist) {
+		long rank = KSubsets.rank(sublist);
+		combinationRanks.get(sublist.length - 2).add(rank);
+		TIntObjectMap<TLongSet> ranksOfIndex = combinationsOfIndex.get(sublist.length - 2);
+		for (int index : sublist) {
+			TLongSet ranks = ranksOfIndex.get(index);
+			if (ranks == null) {
+				ranks = new TLongHashSet();
+				ranksOfIndex.put(index, ranks);
 			}
-			combinationIndices.addAll(combinationsMap.get(newIndex));
+			ranks.add(rank);
+		}
+	}
+	
+	/**
+	 * Stops the clustering if the ranks of the combinations of the passed number
+	 * of indices don't fit into a long.
+	 */
+	private void checkRankable(int numberOfIndices) {
+		if (! KSubsets.isRankable(numberOfIndices, MAX_SUBSET_SIZE)) {
+			Logger log = TBLogger.getLogger(getClass().getName());
+			log.severe("Err: The combinations of " + numberOfIndices + " indices of size " + MAX_SUBSET_SIZE
+					+ " can't be ranked with a long; in: " + getClass().getSimpleName());
+			System.exit(-1);
 		}
 	}
 	
@@ -255,9 +234,26 @@ public class ClusterSet<E> implements Serializable, IClusterSet<E> {
 
 		if (! openNodes.contains(o)) return false;
 
-		short elementIndex = (short)openNodes.indexOf(o);
-		Collection<scala.collection.immutable.List<Short>> c = combinationsMap.removeAll(elementIndex);
-		combinationIndices.removeAll(c);
+		int elementIndex = openNodes.indexOf(o);
+		for (int sublistLength = 2; sublistLength <= MAX_SUBSET_SIZE; sublistLength++) {
+			TIntObjectMap<TLongSet> ranksOfIndex = combinationsOfIndex.get(sublistLength - 2);
+			TLongSet ranks = ranksOfIndex.remove(elementIndex);
+			if (ranks == null) continue;
+			combinationRanks.get(sublistLength - 2).removeAll(ranks);
+			
+			// remove the combinations from the other indices too
+			int[] indices = new int[sublistLength];
+			TLongIterator it = ranks.iterator();
+			for ( int i = ranks.size(); i-- > 0; ) { // faster iteration by avoiding hasNext()
+				long rank = it.next();
+				KSubsets.unrank(rank, indices);
+				for (int index : indices) {
+					if (index == elementIndex) continue;
+					TLongSet ranksOfOther = ranksOfIndex.get(index);
+					if (ranksOfOther != null) ranksOfOther.remove(rank);
+				}
+			}
+		}
 		return openNodes.remove(o);
 	}
 	
@@ -268,7 +264,7 @@ public class ClusterSet<E> implements Serializable, IClusterSet<E> {
 	public boolean add(E e) {
 		if (openNodes.contains(e)) return false;
 		boolean b = openNodes.add(e);
-		updateCombinationIndices((short)openNodes.getLastIndex());
+		updateCombinationIndices(openNodes.getLastIndex());
 		return b;
 
 	}
@@ -325,31 +321,43 @@ public class ClusterSet<E> implements Serializable, IClusterSet<E> {
 	 */
 	@Override
 	public Set<Collection<E>> getCombinations() {
-		Set<Collection<E>> combinations = new HashSet<Collection<E>>(combinationIndices.size());
-		for (scala.collection.immutable.List<Short> l : combinationIndices) {
-			combinations.add(convertIndexListToElementList(l));
+		int numberOfCombinations = 0;
+		for (TLongSet ranks : combinationRanks) {
+			numberOfCombinations += ranks.size();
+		}
+		Set<Collection<E>> combinations = new HashSet<Collection<E>>(numberOfCombinations);
+		for (int sublistLength = 2; sublistLength <= MAX_SUBSET_SIZE; sublistLength++) {
+			addCombinations(combinationRanks.get(sublistLength - 2), sublistLength, combinations);
 		}
 		return combinations;
 	}
 	
-	private List<E> convertIndexListToElementList(scala.collection.immutable.List<Short> l) {
-		if (cachedNodeLists.containsKey(l)) {
-			return cachedNodeLists.get(l);
-		} else {
-			List<E> eL = new ArrayList<E>(l.size());
-			scala.collection.Iterator<Short> i = l.iterator();
-			while(i.hasNext()) {
-				E e = openNodes.getByIndex(i.next());
-				if (e == null) {
-					Logger log = TBLogger.getLogger(getClass().getName());
-					log.severe("Error in ClusterSet: Invalid index queried from IndexAwareSet!");
-					System.exit(-1);
-				}
-				eL.add(e);			
+	/**
+	 * Converts the passed ranks to lists of elements and adds them to the passed set.
+	 * The element lists are created on demand and not cached, thus the memory
+	 * doesn't grow with the number of combinations ever created.
+	 */
+	private void addCombinations(TLongSet ranks, int sublistLength, Set<Collection<E>> combinations) {
+		int[] sublist = new int[sublistLength];
+		TLongIterator it = ranks.iterator();
+		for ( int i = ranks.size(); i-- > 0; ) { // faster iteration by avoiding hasNext()
+			KSubsets.unrank(it.next(), sublist);
+			combinations.add(convertIndexListToElementList(sublist));
+		}
+	}
+	
+	private List<E> convertIndexListToElementList(int[] sublist) {
+		List<E> eL = new ArrayList<E>(sublist.length);
+		for (int index : sublist) {
+			E e = openNodes.getByIndex(index);
+			if (e == null) {
+				Logger log = TBLogger.getLogger(getClass().getName());
+				log.severe("Error in ClusterSet: Invalid index queried from IndexAwareSet!");
+				System.exit(-1);
 			}
-			cachedNodeLists.put(l, eL);
-			return eL;
+			eL.add(e);
 		}
+		return eL;
 	}
 	
 	/* (non-Javadoc)
@@ -357,13 +365,13 @@ public class ClusterSet<E> implements Serializable, IClusterSet<E> {
 	 */
 	@Override
 	public Set<Collection<E>> getCombinations(E element) {
-		short elIndex = (short)openNodes.indexOf(element);
+		int elIndex = openNodes.indexOf(element);
 		if (elIndex == -1) return null;
-		Set<scala.collection.immutable.List<Short>> intersection = Sets.intersection(combinationsMap.get(elIndex), combinationIndices);
 		
-		Set<Collection<E>> combinations = new HashSet<Collection<E>>(intersection.size());
-		for (scala.collection.immutable.List<Short> l : intersection) {
-			combinations.add(convertIndexListToElementList(l));
+		Set<Collection<E>> combinations = new HashSet<Collection<E>>();
+		for (int sublistLength = 2; sublistLength <= MAX_SUBSET_SIZE; sublistLength++) {
+			TLongSet ranks = combinationsOfIndex.get(sublistLength - 2).get(elIndex);
+			if (ranks != null) addCombinations(ranks, sublistLength, combinations);
 		}
 		return combinations;
 	}
@@ -1,81 +1,166 @@
 package ch.uzh.agglorecommender.clusterer.treesearch;
 
+import gnu.trove.TCollections;
 import gnu.trove.iterator.TIntIterator;
-import gnu.trove.iterator.TShortIterator;
-import gnu.trove.map.TShortObjectMap;
-import gnu.trove.map.hash.TObjectShortHashMap;
-import gnu.trove.map.hash.TShortObjectHashMap;
-import gnu.trove.set.TIntSet;
-import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.iterator.TObjectLongIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.map.hash.TObjectLongHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
 
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
-import java.util.TreeMap;
-
-import org.apache.commons.math3.util.ArithmeticUtils;
-
-import scala.actors.threadpool.Arrays;
 
 import com.google.common.collect.ImmutableCollection;
-import com.google.common.collect.ImmutableList;
-import com.google.common.primitives.Ints;
 
+/**
+ * 
+ * Cluster set which identifies the combinations of its elements by ids.
+ * <br>
+ * Each open element occupies an int slot, the slots of removed elements are reused by
+ * added elements. Thus the slots are bounded by the max number of open elements
+ * instead of the number of elements ever added. The combination id of the slots x &lt; y
+ * is the 64-bit value with x in the upper and y in the lower 32 bits, see {@link Pairing}.
+ * <br>
+ * Each add and remove starts a new epoch and is recorded, thus consumers can fetch the
+ * combinations added and removed since an epoch instead of the whole set of combinations.
+ * The record takes constant memory per add and remove, the changes before the smallest
+ * epoch retained by a consumer are released.
+ *
+ */
 public class ClusterSetIndexed<E> implements IClusterSetIndexed<E>, Serializable {
 
+	/**
+	 * Determines if a de-serialized file is compatible with this class.
+	 * <br>
+	 * <br>
+	 * Maintainers must change this value if and only if the new version
+	 * of this class is not compatible with old versions.
+	 */
+	private static final long serialVersionUID = 1L;
+
 	private static final int SUBSET_SIZE = 2;
-	
-	private static final short NO_ENTRY_CONST = -1;
 
-	TShortObjectMap<E> openIndexElementMap;
+	/**
+	 * The max initial capacity of the set of combination ids.
+	 * The capacity of the underlying array is twice this value at a load factor of 0.5.
+	 */
+	private static final int MAX_INITIAL_CAPACITY = 1 << 29;
 	
-	TObjectShortHashMap<E> openElementIndexMap;
+	private static final int NO_ENTRY_CONST = -1;
+	
+	/**
+	 * Marks a recorded change as the addition of an element.
+	 */
+	private static final long NOT_REMOVED = -1;
 
-//	TIntShortMap combinationIdXNodeIdMap;
+	TIntObjectMap<E> openIndexElementMap;
 	
-	TIntSet combinationIds;
+	TObjectIntHashMap<E> openElementIndexMap;
 
-	short nodeCount = 0;
+	TLongSet combinationIds;
+
+	/**
+	 * The number of slots used so far, the next slot if no slot is free.
+	 */
+	int slotCount = 0;
+	
+	/**
+	 * The slots of removed elements, reused last in first out.
+	 */
+	private final TIntArrayList freeSlots = new TIntArrayList();
+	
+	/**
+	 * The epoch at which each open element was added, 0 for the initial elements.
+	 */
+	private final TObjectLongHashMap<E> openElementEpochMap;
+	
+	/**
+	 * The adds and removes in the order of their epochs, the change of epoch
+	 * e at position e - 1 - {@code firstRecordedEpoch}.
+	 */
+	private final List<Change<E>> changes = new ArrayList<Change<E>>();
+	
+	/**
+	 * The epoch before the first recorded change, the changes up to this epoch are released.
+	 */
+	private long firstRecordedEpoch = 0;
+	
+	/**
+	 * The epoch retained by each consumer of the changes.
+	 */
+	private final TObjectLongHashMap<Object> retainedEpochs = new TObjectLongHashMap<Object>();
+	
+	/**
+	 * If false, the set of all open combination ids is not kept in memory.
+	 * Combination ids are then only computed on demand per element.
+	 */
+	private final boolean storeCombinationIds;
+	
+	/**
+	 * Are notified about the combinations of removed elements.
+	 */
+	private final List<ICombinationRemovalListener> removalListeners = new ArrayList<ICombinationRemovalListener>();
 
 	public ClusterSetIndexed(ImmutableCollection<E> leafNodes) {
-		openIndexElementMap = new TShortObjectHashMap<>(2 * leafNodes.size(), 0.5f, NO_ENTRY_CONST);
-		openElementIndexMap = new TObjectShortHashMap<>(2 * leafNodes.size(), 0.5f, NO_ENTRY_CONST);
-//		combinationIdXNodeIdMap = new TIntShortHashMap(calcNumberOfCombinations(leafNodes.size()), 0.5f, -1, (short) -1);
-		combinationIds = new TIntHashSet(calcNumberOfCombinations(leafNodes.size()), 0.5f, NO_ENTRY_CONST);
+		this(leafNodes, true);
+	}
+	
+	/**
+	 * Instantiates a new indexed cluster set.
+	 * 
+	 * @param leafNodes the initial elements of the set
+	 * @param storeCombinationIds if false the combination ids of all open combinations
+	 * are not materialized and {@code getCombinationsIds()} is not supported.
+	 * This saves the memory of C(n,2) combination ids for merge selectors,
+	 * which only query the combinations of single elements.
+	 */
+	public ClusterSetIndexed(ImmutableCollection<E> leafNodes, boolean storeCombinationIds) {
+		this.storeCombinationIds = storeCombinationIds;
+		openIndexElementMap = new TIntObjectHashMap<>(2 * leafNodes.size(), 0.5f, NO_ENTRY_CONST);
+		openElementIndexMap = new TObjectIntHashMap<>(2 * leafNodes.size(), 0.5f, NO_ENTRY_CONST);
+		openElementEpochMap = new TObjectLongHashMap<>(2 * leafNodes.size(), 0.5f, NO_ENTRY_CONST);
 		
 		for (E e : leafNodes) {
-			openIndexElementMap.put(nodeCount, e);
-			openElementIndexMap.put(e, nodeCount);
-			nodeCount++;
+			openIndexElementMap.put(slotCount, e);
+			openElementIndexMap.put(e, slotCount);
+			openElementEpochMap.put(e, 0);
+			slotCount++;
 		}
-
-		for (short x = 0; x < nodeCount; x++) {
-			for (short y = (short) (x + 1); y < nodeCount; y++) {
+		
+		if (! storeCombinationIds) {
+			combinationIds = new TLongHashSet();
+			return;
+		}
+		
+		combinationIds = new TLongHashSet(calcNumberOfCombinations(leafNodes.size()), 0.5f, NO_ENTRY_CONST);
+		for (int x = 0; x < slotCount; x++) {
+			for (int y = x + 1; y < slotCount; y++) {
 				
 				// y always bigger than x -> no sorting needed to prevent of duplicates
-				combinationIds.add(Cantor.compute(x, y));
+				combinationIds.add(Pairing.compute(x, y));
 			}
 		}
-//		System.out.println(calcNumberOfCombinations(leafNodes.size()));	
 	}
 
 	@Override
-	public Collection<E> getCombination(int combinationId) {
+	public Collection<E> getCombination(long combinationId) {
 		
-		short x = Cantor.computeX(combinationId);
-		short y = Cantor.computeY(combinationId);
-		
-//		System.out.println("combinationId: " + combinationId + ", x: " + x + ", y: " + y);
+		int x = Pairing.computeX(combinationId);
+		int y = Pairing.computeY(combinationId);
 				
-		return Arrays.asList(new Object[] {openIndexElementMap.get(x), openIndexElementMap.get(y)});
+		List<E> combination = new ArrayList<E>(SUBSET_SIZE);
+		combination.add(openIndexElementMap.get(x));
+		combination.add(openIndexElementMap.get(y));
+		return combination;
 	}
 
 	@Override
@@ -88,22 +173,49 @@ public class ClusterSetIndexed<E> implements IClusterSetIndexed<E>, Serializable
 		if (! openElementIndexMap.contains(o)) {
 			return false;
 		}
-		short eId = openElementIndexMap.get(o);
-		combinationIds.removeAll(createCombinationIds(eId));
+		int eId = openElementIndexMap.get(o);
+		if (! removalListeners.isEmpty()) {
+			// all combinations, also those a subclass doesn't return
+			TLongSet removedCombinationIds = createCombinationIds(eId);
+			for (ICombinationRemovalListener listener : removalListeners) {
+				listener.combinationsRemoved(removedCombinationIds);
+			}
+		}
+		if (storeCombinationIds) {
+			combinationIds.removeAll(createCombinationIds(eId));
+		}
 		openElementIndexMap.remove(o);
 		openIndexElementMap.remove(eId);
+		long addedEpoch = openElementEpochMap.remove(o);
+		freeSlots.add(eId);
+		record(new Change<E>(null, eId, addedEpoch, getEpoch() + 1));
 		return true;
 	}
 
+	/**
+	 * Registers a listener which is notified about the combinations of each removed element.
+	 * 
+	 * @param listener the listener to register
+	 */
+	public void addCombinationRemovalListener(ICombinationRemovalListener listener) {
+		if (! removalListeners.contains(listener)) {
+			removalListeners.add(listener);
+		}
+	}
+
 	@Override
 	public boolean add(E e) {
 		if (openElementIndexMap.contains(e)) {
 			return false;
 		}
-		openElementIndexMap.put(e, nodeCount);
-		openIndexElementMap.put(nodeCount, e);
-		combinationIds.addAll(createCombinationIds(nodeCount));
-		nodeCount++;
+		int slot = freeSlots.isEmpty() ? slotCount++ : freeSlots.removeAt(freeSlots.size() - 1);
+		openElementIndexMap.put(e, slot);
+		openIndexElementMap.put(slot, e);
+		openElementEpochMap.put(e, getEpoch() + 1);
+		record(new Change<E>(e, slot, getEpoch() + 1, NOT_REMOVED));
+		if (storeCombinationIds) {
+			combinationIds.addAll(createCombinationIds(slot));
+		}
 		return true;
 	}
 
@@ -149,137 +261,224 @@ public class ClusterSetIndexed<E> implements IClusterSetIndexed<E>, Serializable
 	}
 	
 	@Override
-	public TIntSet getCombinationsIds() {
-		return new TIntHashSet(combinationIds);
+	public TLongSet getCombinationsIds() {
+		if (! storeCombinationIds) {
+			throw new UnsupportedOperationException("combination ids are not stored by this set");
+		}
+		return new TLongHashSet(combinationIds);
+	}
+	
+	@Override
+	public TLongIterator combinationsIdsIterator() {
+		if (! storeCombinationIds) {
+			throw new UnsupportedOperationException("combination ids are not stored by this set");
+		}
+		return TCollections.unmodifiableSet(combinationIds).iterator();
+	}
+	
+	@Override
+	public long getEpoch() {
+		return firstRecordedEpoch + changes.size();
 	}
 	
 	@Override
-	public TIntSet getCombinationsIds(E e) {
-		short s = openElementIndexMap.get(e);		
+	public void retainEpoch(Object consumer, long epoch) {
+		checkEpoch(epoch);
+		retainedEpochs.put(consumer, epoch);
+		long smallestRetainedEpoch = epoch;
+		for (long retainedEpoch : retainedEpochs.values()) {
+			smallestRetainedEpoch = Math.min(smallestRetainedEpoch, retainedEpoch);
+		}
+		
+		// released in bulk, thus the remaining changes are moved at most once per released change
+		int numberOfReleased = (int) (smallestRetainedEpoch - firstRecordedEpoch);
+		if (numberOfReleased > 0 && 2 * numberOfReleased >= changes.size()) {
+			changes.subList(0, numberOfReleased).clear();
+			firstRecordedEpoch = smallestRetainedEpoch;
+		}
+	}
+	
+	/**
+	 * Records a change if a consumer retains an epoch, else only the epoch advances.
+	 */
+	private void record(Change<E> change) {
+		if (retainedEpochs.isEmpty()) {
+			firstRecordedEpoch++;
+		} else {
+			changes.add(change);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * Computes the combinations of the elements added since the passed epoch, which are still open.
+	 */
+	@Override
+	public TLongSet getCombinationsIdsAddedSince(long epoch) {
+		checkEpoch(epoch);
+		TLongSet res = new TLongHashSet();
+		for (int i = (int) (epoch - firstRecordedEpoch); i < changes.size(); i++) {
+			Change<E> change = changes.get(i);
+			if (change.removedEpoch != NOT_REMOVED) continue;
+			if (openElementEpochMap.get(change.element) != change.addedEpoch) continue; // removed since
+			res.addAll(getCombinationsIds(change.element));
+		}
+		return res;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * Reconstructs the combinations of each element removed since the passed epoch
+	 * with the elements open at the moment of its removal, i.e. the open elements and
+	 * the elements removed later, which were added before.
+	 */
+	@Override
+	public TLongSet getCombinationsIdsRemovedSince(long epoch) {
+		checkEpoch(epoch);
+		TLongSet res = new TLongHashSet();
+		for (int i = (int) (epoch - firstRecordedEpoch); i < changes.size(); i++) {
+			Change<E> removal = changes.get(i);
+			if (removal.removedEpoch == NOT_REMOVED) continue;
+			
+			TObjectLongIterator<E> it = openElementEpochMap.iterator();
+			for ( int j = openElementEpochMap.size(); j-- > 0; ) { // faster iteration by avoiding hasNext()
+				it.advance();
+				if (it.value() < removal.removedEpoch) {
+					res.add(combinationId(removal.slot, openElementIndexMap.get(it.key())));
+				}
+			}
+			for (int j = i + 1; j < changes.size(); j++) {
+				Change<E> laterRemoval = changes.get(j);
+				if (laterRemoval.removedEpoch != NOT_REMOVED && laterRemoval.addedEpoch < removal.removedEpoch) {
+					res.add(combinationId(removal.slot, laterRemoval.slot));
+				}
+			}
+		}
+		return res;
+	}
+	
+	private void checkEpoch(long epoch) {
+		if (epoch < firstRecordedEpoch || epoch > getEpoch()) {
+			throw new IllegalArgumentException("unknown or released epoch: " + epoch
+					+ ", first recorded epoch: " + firstRecordedEpoch + ", current epoch: " + getEpoch());
+		}
+	}
+	
+	@Override
+	public TLongSet getCombinationsIds(E e) {
+		int s = openElementIndexMap.get(e);
+		if (s == NO_ENTRY_CONST) {
+			return new TLongHashSet();
+		}
 		return createCombinationIds(s);
 	}
 	
+	@Override
+	public TLongSet getAllCombinationsIds(E e) {
+		int s = openElementIndexMap.get(e);
+		if (s == NO_ENTRY_CONST) {
+			return new TLongHashSet();
+		}
+		return createCombinationIds(s);
+	}
+	
+	@Override
+	public long getCombinationId(E e1, E e2) {
+		int x = openElementIndexMap.get(e1);
+		int y = openElementIndexMap.get(e2);
+		if (x == NO_ENTRY_CONST || y == NO_ENTRY_CONST || x == y) {
+			return NO_ENTRY_CONST;
+		}
+		// sorting needed to prevent of duplicates
+		return x < y ? Pairing.compute(x, y) : Pairing.compute(y, x);
+	}
+	
 	/**
-	 * Calculates the total number of dual node combinations.
-	 * @return number of possible combinations
+	 * Gets the number of slots used so far. The slots of removed
+	 * elements are reused, thus this is the max number of open elements.
+	 * 
+	 * @return the number of slots
+	 */
+	public int getNumberOfSlots() {
+		return slotCount;
+	}
+	
+	/**
+	 * Calculates the initial capacity of the set of combination ids, i.e. the total number
+	 * of dual node combinations. The capacity is capped, a larger set grows on demand.
+	 * @return number of possible combinations, at most {@code MAX_INITIAL_CAPACITY}
 	 */
 	private int calcNumberOfCombinations(int n) {
-		return Ints.checkedCast(ArithmeticUtils.binomialCoefficient(n, SUBSET_SIZE));
+		long combinations = (long) n * (n - 1) / SUBSET_SIZE;
+		return (int) Math.min(combinations, MAX_INITIAL_CAPACITY);
 	}
 	
-	private TIntSet createCombinationIds(short s){
-		TIntSet res = new TIntHashSet(openIndexElementMap.size());
-		TShortIterator it = openIndexElementMap.keySet().iterator();
-		while (it.hasNext()) {
-			short s2 =  it.next();
+	private TLongSet createCombinationIds(int s){
+		TLongSet res = new TLongHashSet(openIndexElementMap.size());
+		TIntIterator it = openIndexElementMap.keySet().iterator();
+		for ( int i = openIndexElementMap.size(); i-- > 0; ) { // faster iteration by avoiding hasNext()
+			int s2 = it.next();
 			// sorting needed to prevent of duplicates
 			if (s2 < s) {
-				res.add(Cantor.compute(s2, s));
+				res.add(Pairing.compute(s2, s));
 			}
 			if (s2 > s) {
-				res.add(Cantor.compute(s, s2));
+				res.add(Pairing.compute(s, s2));
 			}		
 		}
 		return res;
 	}
 	
-	
-	public static class Cantor {
-		public static int compute(short x, short y) {
-			return (x+y)*(x+y+1)/2 + y;
-		}
-		public static short computeX(int z) {
-			int j  = (int) Math.floor(Math.sqrt(0.25 + 2*z) - 0.5);
-			return (short) (j - (z - j*(j+1)/2));
-		}
-		public static short computeY(int z) {
-			int j  = (int) Math.floor(Math.sqrt(0.25 + 2*z) - 0.5);
-			return (short) (z - j*(j+1)/2);
-		}
+	private static long combinationId(int x, int y) {
+		// sorting needed to prevent of duplicates
+		return x < y ? Pairing.compute(x, y) : Pairing.compute(y, x);
 	}
 	
-	public static void main(String[] args) {
+	/**
+	 * A recorded add or remove of an element.
+	 */
+	private static final class Change<E> implements Serializable {
 		
-//		TIntSet lx= new TIntHashSet();
-//		for (int i = 0; i < 11000000; i++) {
-//			lx.add(i);
-//		}
+		private static final long serialVersionUID = 1L;
 		
-		List<Integer> l = new ArrayList<>();
-		for (int i = 0; i < 10000; i++) {
-			l.add(new Integer(i));
-		}
-//		ImmutableCollection<String> c = ImmutableList.of("A", "B", "C", "D", "E", "F", "G", "H", "I", "K");
-		ImmutableList<Integer> c = ImmutableList.copyOf(l);
-		IClusterSetIndexed<Integer> s = new ClusterSetIndexed<>(c);
-//		System.out.println(s.getCombinationsIds());
-		System.out.println(Cantor.compute((short)19999, (short)20000));
-		System.out.println(Integer.MAX_VALUE);
-		printTest(s);
+		/**
+		 * The added element, null for removals.
+		 */
+		private final E element;
 		
-		s.add(new Integer(10300));
-		printTest(s);
+		private final int slot;
 		
-		s.remove(new Integer(5));
-		printTest(s);
+		private final long addedEpoch;
 		
-		s.add(new Integer(10500));
-		printTest(s);
+		/**
+		 * The epoch of the removal or {@link ClusterSetIndexed#NOT_REMOVED} for additions.
+		 */
+		private final long removedEpoch;
 		
-		s.add(new Integer(10600));
-		printTest(s);
-
+		private Change(E element, int slot, long addedEpoch, long removedEpoch) {
+			this.element = element;
+			this.slot = slot;
+			this.addedEpoch = addedEpoch;
+			this.removedEpoch = removedEpoch;
+		}
 	}
 	
-	private static void printTest(IClusterSetIndexed s) {
-		TIntIterator it = s.getCombinationsIds().iterator();
-		Map<Integer, Collection<String>> m = new TreeMap<>();
-		List<Queue<String>> p = new ArrayList<Queue<String>>();
-		while(it.hasNext()) {
-			int i = it.next();
-			Collection<String> tmp = s.getCombination(i);
-			m.put(i, tmp);
-			p.add(new PriorityQueue<String>(tmp));
+	/**
+	 * Encodes two slots x &lt; y in a 64-bit combination id and decodes them exactly.
+	 * Slots are non-negative ints, thus no combination id is negative.
+	 */
+	public static class Pairing {
+		public static long compute(int x, int y) {
+			return ((long) x << 32) | y;
+		}
+		public static int computeX(long z) {
+			return (int) (z >>> 32);
+		}
+		public static int computeY(long z) {
+			return (int) z;
 		}
-		System.out.println(m);
-		System.out.println(m.size());
-		Collections.sort(p, new Comparator<Queue<String>>() {
-			@Override
-			public int compare(Queue<String> o1,
-					Queue<String> o2) {
-				int r = o1.peek().compareTo(o2.peek());
-				if (r != 0) return r;
-
-				Iterator<String> i1 = o1.iterator();
-				i1.next();
-				String s1 = i1.next();
-				Iterator<String> i2 = o2.iterator();
-				i2.next();
-				String s2 = i2.next();
-				return s1.compareTo(s2);
-
-			}
-		});
-		System.out.println(p);
-		System.out.println(p.size());
 	}
-	
-//	public static void main(String[] args) {
-//		Set<int[]> s = new HashSet<>();
-//
-//		s.add(new int[] {1,2});
-//		s.add(new int[] {1,2});
-//		s.add(new int[] {2,1});
-//		s.add(new int[] {2,2});
-//
-//		for (int[] is : s) {
-//			for (int i : is) {
-//				System.out.println(i);
-//			}
-//			System.out.println("---");
-//		}
-//		System.out.println(Integer.MAX_VALUE);
-//
-//	}
 
 }
@@ -2,6 +2,7 @@ package ch.uzh.agglorecommender.clusterer.treesearch;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -10,6 +11,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import ch.uzh.agglorecommender.clusterer.treecomponent.CobwebAttribute;
 import ch.uzh.agglorecommender.clusterer.treecomponent.IAttribute;
 import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
 
@@ -24,20 +26,66 @@ public class CobwebMaxCategoryUtilitySearcher extends BasicMaxCategoryUtilitySea
 	 */
 	private static final long serialVersionUID = 1L;
 	
+	/**
+	 * If true the numerical attributes (i.e. the ratings) are part of the utility,
+	 * else only the nominal attributes.
+	 */
+	private final boolean includeNumericalAttributes;
+	
+	/**
+	 * Instantiates a new searcher which calculates the utility over
+	 * the nominal attributes only.
+	 */
+	public CobwebMaxCategoryUtilitySearcher() {
+		this(false);
+	}
+	
+	/**
+	 * Instantiates a new searcher.
+	 * 
+	 * @param includeNumericalAttributes true if the numerical attributes are part of the utility,
+	 * false if only the nominal attributes are used, e.g. because the numerical attributes
+	 * are evaluated by Classit.
+	 */
+	public CobwebMaxCategoryUtilitySearcher(boolean includeNumericalAttributes) {
+		this.includeNumericalAttributes = includeNumericalAttributes;
+	}
+	
 	/**Calculates utility of merging nodes in possibleMerge based on Cobweb Category Utility formula
 	 * Utility is calulated as follows:
 	 * 1. For each attribute calculate the square probability of having certain value in the merged node
 	 * P(A=V)^2
 	 * This is calculated for each occurring value in the merged node
 	 * 2. Divide the sum by the number of attributes in the merged node
+	 * <br>
+	 * Merges of two nodes are calculated by {@link #calculateCategoryUtility(INode, INode, boolean)}.
 	 * @param possibleMerge The nodes for which to calculate the utility
 	 * @return the utility of merging the nodes in possibleMerge
 	 **/
 	public double calculateCategoryUtility(Collection<INode> possibleMerge) {
+		if (possibleMerge.size() == 2) {
+			Iterator<INode> it = possibleMerge.iterator();
+			return calculateCategoryUtility(it.next(), it.next(), includeNumericalAttributes);
+		}
+		return calculateCategoryUtility(possibleMerge, includeNumericalAttributes);
+	}
+	
+	/**
+	 * Calculates the utility of a merge over the union of the attributes of the merged nodes,
+	 * with a probability map per attribute.
+	 * 
+	 * @param possibleMerge The nodes for which to calculate the utility
+	 * @param includeNumericalAttributes true if the numerical attributes are part of the utility
+	 * @return the utility of merging the nodes in possibleMerge
+	 */
+	public static double calculateCategoryUtility(Collection<INode> possibleMerge, boolean includeNumericalAttributes) {
 				
 		Set<Object> allAttributes = new HashSet<Object>();
 		int totalLeafCount = 0;
 		for (INode node : possibleMerge) {
+			if (includeNumericalAttributes) {
+				allAttributes.addAll(node.getNumericalAttributeKeys());
+			}
 			allAttributes.addAll(node.getNominalAttributeKeys());
 			totalLeafCount += node.getNumberOfLeafNodes();
 		}
@@ -52,7 +100,7 @@ public class CobwebMaxCategoryUtilitySearcher extends BasicMaxCategoryUtilitySea
 		
 		double res = 0.0;
 		for (Double prob : probabilities) {
-			res += Math.pow(prob, 2.0);
+			res += prob * prob;
 		}
 		
 		// Normalize sum with total number of attributes
@@ -60,6 +108,94 @@ public class CobwebMaxCategoryUtilitySearcher extends BasicMaxCategoryUtilitySea
 		
 	}
 	
+	/**
+	 * Calculates the utility of merging two nodes with a merge-join over the sorted
+	 * value codes of each attribute, without boxing and without creating probability maps.
+	 * Attributes which are no {@link CobwebAttribute} are calculated by
+	 * {@link #calculateCategoryUtility(Collection, boolean)}.
+	 * <br>
+	 * The squared probability of each value is computed exactly as by
+	 * {@link #calculateCategoryUtility(Collection, boolean)}, the sum only differs by
+	 * the summation order.
+	 * 
+	 * @param first the first node of the merge
+	 * @param second the second node of the merge
+	 * @param includeNumericalAttributes true if the numerical attributes are part of the utility
+	 * @return the utility of merging the two nodes
+	 */
+	public static double calculateCategoryUtility(INode first, INode second, boolean includeNumericalAttributes) {
+		int firstLeafCount = first.getNumberOfLeafNodes();
+		int secondLeafCount = second.getNumberOfLeafNodes();
+		int totalLeafCount = firstLeafCount + secondLeafCount;
+		double firstWeight = (double) firstLeafCount / (double) totalLeafCount;
+		double secondWeight = (double) secondLeafCount / (double) totalLeafCount;
+		
+		double sum = 0.0;
+		int numberOfAttributes = 0;
+		int numberOfProbabilities = 0;
+		
+		for (int map = includeNumericalAttributes ? 0 : 1; map < 2; map++) {
+			Set<?> firstKeys = map == 0 ? first.getNumericalAttributeKeys() : first.getNominalAttributeKeys();
+			Set<?> secondKeys = map == 0 ? second.getNumericalAttributeKeys() : second.getNominalAttributeKeys();
+			
+			// attributes of the first node, shared or not
+			for (Object key : firstKeys) {
+				IAttribute firstValue = getAttributeValue(first, key, map == 0);
+				IAttribute secondValue = getAttributeValue(second, key, map == 0);
+				if (! (firstValue instanceof CobwebAttribute)
+						|| (secondValue != null && ! (secondValue instanceof CobwebAttribute))) {
+					return calculateCategoryUtility(Arrays.asList(first, second), includeNumericalAttributes);
+				}
+				CobwebAttribute firstAttribute = (CobwebAttribute) firstValue;
+				CobwebAttribute secondAttribute = (CobwebAttribute) secondValue;
+				int firstSize = firstAttribute.getNumberOfValues();
+				int secondSize = secondAttribute == null ? 0 : secondAttribute.getNumberOfValues();
+				int i = 0;
+				int j = 0;
+				while (i < firstSize || j < secondSize) {
+					int firstCode = i < firstSize ? firstAttribute.getValueCode(i) : Integer.MAX_VALUE;
+					int secondCode = j < secondSize ? secondAttribute.getValueCode(j) : Integer.MAX_VALUE;
+					double probability;
+					if (j == secondSize || (i < firstSize && firstCode < secondCode)) {
+						probability = firstAttribute.getProbability(i++) * firstWeight;
+					} else if (i == firstSize || secondCode < firstCode) {
+						probability = secondAttribute.getProbability(j++) * secondWeight;
+					} else {
+						// sum in the order of the merge as calculateAttributeProbabilities does
+						probability = firstAttribute.getProbability(i++) * firstWeight
+								+ secondAttribute.getProbability(j++) * secondWeight;
+					}
+					sum += probability * probability;
+					numberOfProbabilities++;
+				}
+				numberOfAttributes++;
+			}
+			
+			// attributes only of the second node
+			for (Object key : secondKeys) {
+				if (getAttributeValue(first, key, map == 0) != null) continue;
+				IAttribute secondValue = getAttributeValue(second, key, map == 0);
+				if (! (secondValue instanceof CobwebAttribute)) {
+					return calculateCategoryUtility(Arrays.asList(first, second), includeNumericalAttributes);
+				}
+				CobwebAttribute secondAttribute = (CobwebAttribute) secondValue;
+				for (int j = 0; j < secondAttribute.getNumberOfValues(); j++) {
+					double probability = secondAttribute.getProbability(j) * secondWeight;
+					sum += probability * probability;
+					numberOfProbabilities++;
+				}
+				numberOfAttributes++;
+			}
+		}
+		
+		if (numberOfProbabilities == 0) {
+			return -Double.MAX_VALUE;
+		}
+		
+		// Normalize sum with total number of attributes
+		return sum / (double) numberOfAttributes;
+	}
+	
 	/**
 	 * Calculates the probabilities in a merge set for the non-zero attribute values of a single attribute.
 	 * Used in category utility calculation and in creating probability map of a new node.
@@ -72,10 +208,10 @@ public class CobwebMaxCategoryUtilitySearcher extends BasicMaxCategoryUtilitySea
 	public static Map<Object,Double> calculateAttributeProbabilities(INode attribute, Collection<INode> possibleMerge, int leafCount) {
 		Map<Object,Double> probabilities = new HashMap<Object, Double>();
 		for (INode node : possibleMerge) {
-			if (node.hasAttribute(attribute)) {
+			IAttribute aV = getAttributeValue(node, attribute);
+			if (aV != null) {
 				int currLeafCount = node.getNumberOfLeafNodes();
 				
-				IAttribute aV = node.getNominalAttributeValue(attribute);
 				Iterator<Map.Entry<Object, Double>> it = aV.getProbabilities();
 				while (it.hasNext()) {
 					Map.Entry<Object, Double> entry = it.next();
@@ -91,6 +227,55 @@ public class CobwebMaxCategoryUtilitySearcher extends BasicMaxCategoryUtilitySea
 		return probabilities;
 	}
 	
+	/**
+	 * Calculates the attribute of the node resulting of a merge.
+	 * Equals a {@link CobwebAttribute} of {@link #calculateAttributeProbabilities(INode, Collection, int)},
+	 * but merges the sorted value codes of the merged attributes instead of building a probability map.
+	 *
+	 * @param attribute the attribute to merge.
+	 * @param nodesToMerge the nodes of the merge.
+	 * @param leafCount the number of all leaves of the resulting subtree of the merge.
+	 * @return the attribute of the merged node
+	 */
+	public static CobwebAttribute calculateMergedAttribute(Object attribute, Collection<INode> nodesToMerge, int leafCount) {
+		CobwebAttribute[] attributes = new CobwebAttribute[nodesToMerge.size()];
+		double[] weights = new double[nodesToMerge.size()];
+		int i = 0;
+		for (INode node : nodesToMerge) {
+			IAttribute value = getAttributeValue(node, attribute);
+			if (value != null && ! (value instanceof CobwebAttribute)) {
+				return new CobwebAttribute(calculateAttributeProbabilities((INode) attribute, nodesToMerge, leafCount));
+			}
+			attributes[i] = (CobwebAttribute) value;
+			weights[i] = (double) node.getNumberOfLeafNodes() / (double) leafCount;
+			i++;
+		}
+		return CobwebAttribute.merge(attributes, weights);
+	}
+	
+	/**
+	 * Gets the value of an attribute from the numerical or the nominal attributes of a node.
+	 * Rating attributes are stored as numerical attributes, meta data as nominal attributes.
+	 *
+	 * @param node the node
+	 * @param attribute the attribute key
+	 * @return the attribute value or null if the node doesn't have the attribute.
+	 */
+	private static IAttribute getAttributeValue(INode node, Object attribute) {
+		IAttribute value = null;
+		if (attribute instanceof INode) {
+			value = node.getNumericalAttributeValue((INode) attribute);
+		}
+		if (value == null) {
+			value = node.getNominalAttributeValue(attribute);
+		}
+		return value;
+	}
+	
+	private static IAttribute getAttributeValue(INode node, Object attribute, boolean numerical) {
+		return numerical ? node.getNumericalAttributeValue((INode) attribute) : node.getNominalAttributeValue(attribute);
+	}
+	
 	@Override
 	protected double getMaxTheoreticalPossibleCategoryUtility() {
 		// TODO if needed
@@ -0,0 +1,98 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+/**
+ * The existing strategies to select the merge of a clustering cycle.
+ *
+ */
+public enum EMergeSelection {
+
+	/**
+	 * Merges the combination with the highest category utility of all open combinations.
+	 * Combinations without a shared attribute are not filtered by a searcher, an
+	 * {@link AttributeIndexedClusterSet} doesn't produce them.
+	 */
+	Greedy {
+		@Override
+		public IMergeSelector createMergeSelector(IMaxCategoryUtilitySearcher searcher) {
+			return new HeapMergeSelector(searcher);
+		}
+	},
+
+	/**
+	 * Merges reciprocal nearest neighbours found by a nearest neighbour chain.
+	 * Equals the greedy order only if the category utility is reducible.
+	 * The nearest neighbours of Classit nodes are searched with an upper bound
+	 * of the category utility, combinations below the bound of the best one are skipped.
+	 * The chain evaluates the combinations of a node each time it becomes the top of the chain,
+	 * thus the nearest neighbour searches are cached by a {@link CachedMaxCUSearcher}.
+	 */
+	NearestNeighbourChain {
+		@Override
+		public IMergeSelector createMergeSelector(IMaxCategoryUtilitySearcher searcher) {
+			return createMergeSelector(searcher, 2, Runtime.getRuntime().maxMemory() / 8);
+		}
+
+		@Override
+		public IMergeSelector createMergeSelector(IMaxCategoryUtilitySearcher searcher, int maxSubsetSize, long cacheBytes) {
+			IMaxCategoryUtilitySearcher exactSearcher = new NoCommonAttributeSkipMaxCUSearcher(searcher);
+			IMaxCategoryUtilitySearcher nearestNeighbourSearcher = exactSearcher;
+			if (searcher instanceof ClassitMaxCategoryUtilitySearcher) {
+				nearestNeighbourSearcher = new UpperBoundTopKMaxCUSearcher(exactSearcher);
+			}
+			return new NearestNeighbourChainMergeSelector(exactSearcher, new CachedMaxCUSearcher(nearestNeighbourSearcher, cacheBytes));
+		}
+	},
+
+	/**
+	 * Merges the subset of up to {@code maxSubsetSize} open nodes with the highest
+	 * category utility found by a beam search seeded with the best pairs.
+	 */
+	GreedySubsets {
+		@Override
+		public IMergeSelector createMergeSelector(IMaxCategoryUtilitySearcher searcher) {
+			return new BeamSubsetMergeSelector(searcher);
+		}
+
+		@Override
+		public IMergeSelector createMergeSelector(IMaxCategoryUtilitySearcher searcher, int maxSubsetSize) {
+			return new BeamSubsetMergeSelector(searcher, maxSubsetSize, BeamSubsetMergeSelector.DEFAULT_BEAM_WIDTH);
+		}
+	};
+
+	/**
+	 * Creates the merge selector of this strategy.
+	 *
+	 * @param searcher the searcher used to calculate category utilities.
+	 * Must not cache category utilities itself.
+	 * @return a new merge selector
+	 */
+	public abstract IMergeSelector createMergeSelector(IMaxCategoryUtilitySearcher searcher);
+
+	/**
+	 * Creates the merge selector of this strategy. Only strategies which merge
+	 * more than two nodes use the max subset size.
+	 *
+	 * @param searcher the searcher used to calculate category utilities.
+	 * Must not cache category utilities itself.
+	 * @param maxSubsetSize the max number of nodes of a merge.
+	 * @return a new merge selector
+	 */
+	public IMergeSelector createMergeSelector(IMaxCategoryUtilitySearcher searcher, int maxSubsetSize) {
+		return createMergeSelector(searcher);
+	}
+
+	/**
+	 * Creates the merge selector of this strategy. Only strategies which evaluate
+	 * the same combinations repeatedly cache category utilities.
+	 *
+	 * @param searcher the searcher used to calculate category utilities.
+	 * Must not cache category utilities itself.
+	 * @param maxSubsetSize the max number of nodes of a merge.
+	 * @param cacheBytes the max number of bytes of the category utility cache.
+	 * @return a new merge selector
+	 */
+	public IMergeSelector createMergeSelector(IMaxCategoryUtilitySearcher searcher, int maxSubsetSize, long cacheBytes) {
+		return createMergeSelector(searcher, maxSubsetSize);
+	}
+
+}
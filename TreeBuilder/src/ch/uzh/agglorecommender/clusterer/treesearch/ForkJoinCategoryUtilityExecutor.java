@@ -0,0 +1,186 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.util.TBForkJoinPool;
+import ch.uzh.agglorecommender.util.TBLogger;
+
+/**
+ *
+ * Calculates category utilities with the work stealing threads of the {@link ForkJoinPool}
+ * of the {@link TBForkJoinPool}, which lives as long as the application.
+ * <br>
+ * The combinations are split recursively as long as other workers are idle, thus
+ * combinations of nodes with many attributes don't leave other workers without work.
+ * Each task reduces its range to the position of its best combination, the results are
+ * written directly into the passed arrays. If a combination with the max theoretical
+ * category utility is found, the remaining tasks of this evaluation are cancelled.
+ *
+ */
+public class ForkJoinCategoryUtilityExecutor implements ICategoryUtilityExecutor, Serializable {
+
+	/**
+	 * Determines if a de-serialized file is compatible with this class.
+	 * <br>
+	 * <br>
+	 * Maintainers must change this value if and only if the new version
+	 * of this class is not compatible with old versions.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Ranges with at most this number of combinations are calculated without further splitting.
+	 */
+	private static final int SEQUENTIAL_THRESHOLD = 32;
+
+	/**
+	 * A range is split only if the current worker has at most this number of queued tasks,
+	 * which are not yet stolen by other workers.
+	 */
+	private static final int MAX_SURPLUS_QUEUED_TASKS = 2;
+
+	@Override
+	public int evaluate(long[] combinationIds, double[] utilities, boolean[] calculated,
+			BasicMaxCategoryUtilitySearcher searcher, IClusterSetIndexed<INode> clusterSet) {
+		return invoke(new Evaluation(combinationIds, null, utilities, calculated, searcher, clusterSet));
+	}
+
+	@Override
+	public int evaluate(List<Collection<INode>> combinations, double[] utilities, boolean[] calculated,
+			BasicMaxCategoryUtilitySearcher searcher) {
+		return invoke(new Evaluation(null, combinations, utilities, calculated, searcher, null));
+	}
+
+	private static int invoke(Evaluation evaluation) {
+		EvaluationTask task = new EvaluationTask(evaluation, 0, evaluation.length);
+		if (evaluation.length <= SEQUENTIAL_THRESHOLD) {
+			// not worth the hand over to the pool
+			return task.compute();
+		}
+		return TBForkJoinPool.getPool().invoke(task);
+	}
+
+	/**
+	 * The state shared by all tasks of one call to {@code evaluate}. The combinations
+	 * are given either by their ids in the cluster set or as collections of nodes.
+	 */
+	private static final class Evaluation {
+
+		private final long[] combinationIds;
+
+		private final List<Collection<INode>> combinations;
+
+		private final int length;
+
+		private final double[] utilities;
+
+		private final boolean[] calculated;
+
+		private final BasicMaxCategoryUtilitySearcher searcher;
+
+		private final IClusterSetIndexed<INode> clusterSet;
+
+		private final double maxPossibleCU;
+
+		/**
+		 * Is set if a combination with the max theoretical category utility was found.
+		 */
+		private final AtomicBoolean maxCUFound = new AtomicBoolean(false);
+
+		private Evaluation(long[] combinationIds, List<Collection<INode>> combinations, double[] utilities, boolean[] calculated,
+				BasicMaxCategoryUtilitySearcher searcher, IClusterSetIndexed<INode> clusterSet) {
+			this.combinationIds = combinationIds;
+			this.combinations = combinations;
+			this.length = combinationIds != null ? combinationIds.length : combinations.size();
+			this.utilities = utilities;
+			this.calculated = calculated;
+			this.searcher = searcher;
+			this.clusterSet = clusterSet;
+			this.maxPossibleCU = searcher.getMaxTheoreticalPossibleCategoryUtility();
+		}
+
+		private Collection<INode> getCombination(int i) {
+			if (combinations != null) return combinations.get(i);
+			return clusterSet.getCombination(combinationIds[i]);
+		}
+	}
+
+	/**
+	 * Calculates the range [from, to) of the combinations and returns the position of the best one.
+	 */
+	private static final class EvaluationTask extends RecursiveTask<Integer> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Evaluation evaluation;
+
+		private final int from;
+
+		private final int to;
+
+		private EvaluationTask(Evaluation evaluation, int from, int to) {
+			this.evaluation = evaluation;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Integer compute() {
+			if (to - from > SEQUENTIAL_THRESHOLD
+					&& getPool() != null && getSurplusQueuedTaskCount() <= MAX_SURPLUS_QUEUED_TASKS) {
+				int middle = (from + to) >>> 1;
+				EvaluationTask right = new EvaluationTask(evaluation, middle, to);
+				right.fork();
+				int leftBest = new EvaluationTask(evaluation, from, middle).compute();
+				int rightBest = right.join();
+				return better(leftBest, rightBest);
+			}
+			return computeSequentially();
+		}
+
+		private int computeSequentially() {
+			int best = -1;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = from; i < to; i++) {
+				if (evaluation.maxCUFound.get()) break;
+
+				double cu = evaluation.searcher.calculateCategoryUtility(evaluation.getCombination(i));
+				evaluation.utilities[i] = cu;
+				evaluation.calculated[i] = true;
+				if (best == -1 || cu > max) {
+					best = i;
+					max = cu;
+				}
+
+				if (cu >= evaluation.maxPossibleCU) {
+					Logger log = TBLogger.getLogger(getClass().getName());
+					if (cu > evaluation.maxPossibleCU) {
+						// error. shouldn't be possible
+						log.severe("Calculated category utility is greater than theoretical maximum.");
+						log.severe("Exiting application!");
+						System.exit(-1);
+					}
+					log.fine("Merge result with max theoretical category utility was found."
+							+ " Terminating category utility calculation for remaining merges. Found CU: " + cu);
+					evaluation.maxCUFound.set(true);
+					break;
+				}
+			}
+			return best;
+		}
+
+		private int better(int first, int second) {
+			if (first == -1) return second;
+			if (second == -1) return first;
+			return evaluation.utilities[second] > evaluation.utilities[first] ? second : first;
+		}
+	}
+
+}
@@ -0,0 +1,489 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import gnu.trove.iterator.TLongDoubleIterator;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.map.TLongDoubleMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.util.TBLogger;
+
+/**
+ *
+ * Selects the best merge with an {@link IndexedMaxHeap} of the category utilities
+ * of all open combinations, keyed by the combination id of the {@link IClusterSetIndexed}.
+ * <br>
+ * The category utility of a combination is calculated only once and
+ * is recalculated only if the attributes of one of its nodes change. In each cycle only the
+ * combinations removed from the cluster set since the last cycle are removed from the heap
+ * and the added combinations are evaluated, see {@link IClusterSetIndexed#getEpoch()}.
+ * Thus the cost of a cycle is proportional to the number of open nodes instead of the
+ * number of open combinations.
+ * <br>
+ * The heap is bounded by a byte budget. If it exceeds the budget, the combinations with
+ * the smallest category utilities are evicted and the greatest evicted category utility
+ * is kept as bound. Evicted combinations are evaluated again if their nodes change or if
+ * the best combination in the heap falls below the bound.
+ *
+ */
+public class HeapMergeSelector implements IMergeSelector, Serializable {
+
+	/**
+	 * Determines if a de-serialized file is compatible with this class.
+	 * <br>
+	 * <br>
+	 * Maintainers must change this value if and only if the new version
+	 * of this class is not compatible with old versions.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The estimated number of bytes per heap entry: key and value in the heap
+	 * and key, position and state of the position map with load factor 0.5.
+	 */
+	static final int BYTES_PER_ENTRY = 8 + 8 + 2 * (8 + 4 + 1);
+
+	/**
+	 * Calculates the category utilities of the combinations to add to the heap.
+	 */
+	private final IMaxCategoryUtilitySearcher searcher;
+
+	/**
+	 * The category utilities of all evaluated open combinations.
+	 */
+	private final IndexedMaxHeap heap = new IndexedMaxHeap(1024);
+
+	/**
+	 * The max number of entries in the heap.
+	 */
+	private final int maxEntries;
+
+	/**
+	 * The greatest category utility of the combinations evicted from the heap.
+	 * All open combinations which are neither in the heap nor pending have a category utility
+	 * of at most this bound, as long as their nodes don't change.
+	 */
+	private double evictionBound = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * The number of combinations evicted from the heap.
+	 */
+	private long numberOfEvictions = 0;
+
+	/**
+	 * The number of evaluations of all open combinations which were not in the heap.
+	 */
+	private int numberOfRescans = 0;
+
+	/**
+	 * Combinations which were passed to the searcher but were not evaluated,
+	 * because the searcher terminated after finding the max theoretical category utility.
+	 * These combinations are evaluated in the next cycle.
+	 */
+	private final TLongSet pendingCombinationIds = new TLongHashSet();
+
+	/**
+	 * Is false until the combinations of the initial nodes were evaluated.
+	 */
+	private boolean initialized = false;
+
+	/**
+	 * The epoch of the cluster set whose changes were applied to the heap last.
+	 */
+	private long epoch = 0;
+
+	/**
+	 * Finds the open nodes whose attributes changed since their combinations were evaluated.
+	 */
+	private final AttributeChangeTracker changeTracker = new AttributeChangeTracker();
+
+	/**
+	 * Are notified after evaluated combinations were added to the heap.
+	 */
+	private final List<IHeapUpdateListener> heapUpdateListeners = new ArrayList<IHeapUpdateListener>();
+
+	/**
+	 * The number of performed merges.
+	 */
+	private int numberOfMerges = 0;
+
+	/**
+	 * The number of merges which were not the best merge of their cycle.
+	 */
+	private int numberOfNonGreedyMerges = 0;
+
+	/**
+	 * The sum of the differences of the category utilities of the merges
+	 * not in greedy order to the best merge of their cycle.
+	 */
+	private double sumOfUtilityGaps = 0.0;
+
+	/**
+	 * The largest difference of the category utility of a merge not
+	 * in greedy order to the best merge of its cycle.
+	 */
+	private double maxUtilityGap = 0.0;
+
+	/**
+	 * Instantiates a new heap based merge selector
+	 * whose heap uses at most an eighth of the max heap size of the JVM.
+	 *
+	 * @param searcher the searcher used to calculate the category utility of new
+	 * or invalidated combinations. Must not cache category utilities itself.
+	 */
+	public HeapMergeSelector(IMaxCategoryUtilitySearcher searcher) {
+		this(searcher, Runtime.getRuntime().maxMemory() / 8);
+	}
+
+	/**
+	 * Instantiates a new heap based merge selector.
+	 *
+	 * @param searcher the searcher used to calculate the category utility of new
+	 * or invalidated combinations. Must not cache category utilities itself.
+	 * If it is an {@link IHeapUpdateListener} it is notified about the updates of the heap.
+	 * @param maxBytes the max number of bytes used by the entries of the heap.
+	 */
+	public HeapMergeSelector(IMaxCategoryUtilitySearcher searcher, long maxBytes) {
+		this.searcher = searcher;
+		this.maxEntries = (int) Math.max(2, Math.min(Integer.MAX_VALUE / 2, maxBytes / BYTES_PER_ENTRY));
+		if (searcher instanceof IHeapUpdateListener) {
+			addHeapUpdateListener((IHeapUpdateListener) searcher);
+		}
+	}
+
+	/**
+	 * Registers a listener which is notified after evaluated combinations were added to the heap.
+	 *
+	 * @param listener the listener to register
+	 */
+	public void addHeapUpdateListener(IHeapUpdateListener listener) {
+		if (! heapUpdateListeners.contains(listener)) {
+			heapUpdateListeners.add(listener);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * The combination of the returned merge is removed from the heap.
+	 */
+	@Override
+	public IMergeResult selectBestMerge(IClusterSetIndexed<INode> clusterSet) {
+		List<IMergeResult> merges = selectBestMerges(clusterSet, 1, 0.0);
+		return merges.isEmpty() ? null : merges.get(0);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * The combinations are taken from the heap in descending order of their category utility,
+	 * combinations with a node of an already selected merge are skipped.
+	 * The other combinations of the nodes of the returned merges stay in the heap until
+	 * the removals of the merged nodes are applied in the next cycle.
+	 * The category utilities of the merges after the first one were calculated before the
+	 * first merge was performed, the difference to the best merge is counted as deviation
+	 * from the greedy order.
+	 */
+	@Override
+	public List<IMergeResult> selectBestMerges(IClusterSetIndexed<INode> clusterSet, int maxMerges, double tolerance) {
+		Logger log = TBLogger.getLogger(getClass().getName());
+		List<IMergeResult> merges = new ArrayList<IMergeResult>(maxMerges);
+		if (clusterSet.size() < 2) return merges;
+		long time = System.nanoTime();
+
+		update(clusterSet);
+		if (heap.isEmpty()) return merges;
+
+		double max = heap.peekValue();
+		Set<INode> mergedNodes = new HashSet<INode>();
+		// evicted combinations may be better than the combinations below the eviction bound
+		while (merges.size() < maxMerges && ! heap.isEmpty() && heap.peekValue() >= max - tolerance
+				&& heap.peekValue() >= evictionBound) {
+			double utility = heap.peekValue();
+			Collection<INode> nodes = clusterSet.getCombination(heap.pollKey());
+
+			// combinations with a merged node are removed from the heap with the next changes anyway
+			if (! Collections.disjoint(mergedNodes, nodes)) continue;
+			mergedNodes.addAll(nodes);
+			merges.add(new MergeResult(utility, nodes));
+
+			if (merges.size() > 1) {
+				numberOfNonGreedyMerges++;
+				sumOfUtilityGaps += max - utility;
+				maxUtilityGap = Math.max(maxUtilityGap, max - utility);
+			}
+		}
+
+		// the other combinations of the merged nodes are removed from the heap with the next
+		// changes of the cluster set, none of them is selected before
+
+		log.info("Time in heap merge selector: " + (double)(System.nanoTime() - time) / 1000000000.0
+				+ " s, number of combinations in heap: " + heap.size() + ", number of selected merges: " + merges.size()
+				+ ", merges not in greedy order so far: " + numberOfNonGreedyMerges + ", max category utility gap: " + maxUtilityGap);
+		return merges;
+	}
+
+	/**
+	 * Gets the best combinations without removing them from the heap.
+	 *
+	 * @param clusterSet the set of open nodes.
+	 * @param number the max number of returned merges.
+	 * @return the best merges in descending order of their category utility,
+	 * empty if the set has less than two nodes.
+	 */
+	public List<IMergeResult> getBestMerges(IClusterSetIndexed<INode> clusterSet, int number) {
+		List<IMergeResult> merges = new ArrayList<IMergeResult>(number);
+		if (clusterSet.size() < 2) return merges;
+		update(clusterSet);
+
+		long[] keys = new long[Math.min(number, heap.size())];
+		double[] values = new double[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			values[i] = heap.peekValue();
+			keys[i] = heap.pollKey();
+			merges.add(new MergeResult(values[i], clusterSet.getCombination(keys[i])));
+		}
+		for (int i = 0; i < keys.length; i++) {
+			heap.put(keys[i], values[i]);
+		}
+		return merges;
+	}
+
+	/**
+	 * Applies the changes of the cluster set since the last call to the heap.
+	 * If the searcher skipped all open combinations or the cluster set returned none,
+	 * e.g. because the open nodes form components without common attributes, all pairs of
+	 * open nodes are added with category utility 0, thus the clustering converges to one tree.
+	 *
+	 * @param clusterSet the set of open nodes.
+	 */
+	private void update(IClusterSetIndexed<INode> clusterSet) {
+		Logger log = TBLogger.getLogger(getClass().getName());
+		TLongSet addedCombinationIds;
+		if (! initialized) {
+			changeTracker.validateAll(clusterSet);
+			evaluate(clusterSet.getCombinationsIds(), clusterSet);
+			epoch = clusterSet.getEpoch();
+			clusterSet.retainEpoch(this, epoch);
+			addedCombinationIds = new TLongHashSet();
+			initialized = true;
+		} else {
+			addedCombinationIds = applyChanges(clusterSet);
+		}
+
+		revalidateChangedNodes(clusterSet, addedCombinationIds);
+
+		if (! pendingCombinationIds.isEmpty()) {
+			TLongSet pending = new TLongHashSet(pendingCombinationIds);
+			pendingCombinationIds.clear();
+			evaluate(pending, clusterSet);
+		}
+
+		trim();
+		if (heap.isEmpty() || heap.peekValue() < evictionBound) {
+			rescan(clusterSet);
+		}
+
+		if (heap.isEmpty()) {
+			// the searcher skipped all combinations or an attribute indexed set has no candidates,
+			// e.g. of nodes without common attributes
+			log.warning("No evaluated combination left in heap, all pairs of the "
+					+ clusterSet.size() + " open nodes are added with category utility 0");
+			for (INode node : clusterSet.getUnmodifiableView()) {
+				TLongIterator it = clusterSet.getAllCombinationsIds(node).iterator();
+				while (it.hasNext()) {
+					heap.put(it.next(), 0.0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Evicts the combinations with the smallest category utilities if the heap
+	 * exceeds its max number of entries. A quarter of the entries is evicted at once.
+	 */
+	private void trim() {
+		if (heap.size() <= maxEntries) return;
+		Logger log = TBLogger.getLogger(getClass().getName());
+		int size = heap.size();
+		evictionBound = Math.max(evictionBound, heap.trim(maxEntries - maxEntries / 4));
+		numberOfEvictions += size - heap.size();
+		log.info("Evicted " + (size - heap.size()) + " combinations from heap, eviction bound: " + evictionBound);
+	}
+
+	/**
+	 * Evaluates all open combinations which are neither in the heap nor pending,
+	 * i.e. the evicted combinations and the combinations skipped by the searcher.
+	 *
+	 * @param clusterSet the set of open nodes.
+	 */
+	private void rescan(IClusterSetIndexed<INode> clusterSet) {
+		if (evictionBound == Double.NEGATIVE_INFINITY) return;
+		Logger log = TBLogger.getLogger(getClass().getName());
+		TLongSet combinationIds = new TLongHashSet();
+		TLongIterator it = clusterSet.combinationsIdsIterator();
+		while (it.hasNext()) {
+			long combinationId = it.next();
+			if (! heap.contains(combinationId) && ! pendingCombinationIds.contains(combinationId)) {
+				combinationIds.add(combinationId);
+			}
+		}
+		numberOfRescans++;
+		log.info("Best combination in heap below eviction bound " + evictionBound
+				+ ", evaluating " + combinationIds.size() + " combinations again");
+		evictionBound = Double.NEGATIVE_INFINITY;
+		evaluate(combinationIds, clusterSet);
+		trim();
+	}
+
+	/**
+	 * Gets the number of combinations evicted from the heap because it exceeded its byte budget.
+	 *
+	 * @return the number of evictions
+	 */
+	public long getNumberOfEvictions() {
+		return numberOfEvictions;
+	}
+
+	/**
+	 * Gets the number of evaluations of the evicted combinations.
+	 *
+	 * @return the number of rescans
+	 */
+	public int getNumberOfRescans() {
+		return numberOfRescans;
+	}
+
+	/**
+	 * Gets the number of merges which were selected together with a better merge
+	 * by {@link #selectBestMerges}, i.e. which were not the best merge of their cycle.
+	 *
+	 * @return the number of merges not in greedy order
+	 */
+	public int getNumberOfNonGreedyMerges() {
+		return numberOfNonGreedyMerges;
+	}
+
+	/**
+	 * Gets the mean difference of the category utility of the merges not in greedy order
+	 * to the best merge of their cycle.
+	 *
+	 * @return the mean category utility gap or 0 if all merges were in greedy order
+	 */
+	public double getMeanUtilityGap() {
+		return numberOfNonGreedyMerges == 0 ? 0.0 : sumOfUtilityGaps / numberOfNonGreedyMerges;
+	}
+
+	/**
+	 * Gets the largest difference of the category utility of a merge not in greedy order
+	 * to the best merge of its cycle.
+	 *
+	 * @return the max category utility gap or 0 if all merges were in greedy order
+	 */
+	public double getMaxUtilityGap() {
+		return maxUtilityGap;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * The heap always selects the best evaluated merge, thus there are no divergences.
+	 */
+	@Override
+	public MergeSelectionStatistics getStatistics() {
+		return new MergeSelectionStatistics(numberOfMerges, 0, numberOfNonGreedyMerges, getMeanUtilityGap(), maxUtilityGap);
+	}
+
+	@Override
+	public void mergePerformed(IMergeResult mergeResult, INode newNode, IClusterSetIndexed<INode> clusterSet) {
+		// the combinations of the new node are evaluated with the next changes of the cluster set
+		numberOfMerges++;
+	}
+
+	/**
+	 * Removes the combinations removed from the cluster set since the last applied epoch
+	 * from the heap and gets the added combinations.
+	 *
+	 * @param clusterSet the set of open nodes.
+	 * @return the combinations added since the last applied epoch, not yet evaluated.
+	 */
+	private TLongSet applyChanges(IClusterSetIndexed<INode> clusterSet) {
+		// combination ids are reused, thus the removals are applied first
+		removeCombinations(clusterSet.getCombinationsIdsRemovedSince(epoch));
+		TLongSet addedCombinationIds = clusterSet.getCombinationsIdsAddedSince(epoch);
+		epoch = clusterSet.getEpoch();
+		clusterSet.retainEpoch(this, epoch);
+		return addedCombinationIds;
+	}
+
+	/**
+	 * Removes the combinations of all nodes of the passed set whose attributes
+	 * changed since their evaluation from the heap and evaluates them again
+	 * together with the passed added combinations.
+	 *
+	 * @param clusterSet the set of open nodes.
+	 * @param addedCombinationIds the combinations added to the set, not yet evaluated.
+	 */
+	private void revalidateChangedNodes(IClusterSetIndexed<INode> clusterSet, TLongSet addedCombinationIds) {
+		Logger log = TBLogger.getLogger(getClass().getName());
+		TLongSet changedCombinationIds = new TLongHashSet();
+		Set<INode> changedNodes = changeTracker.pollChangedNodes(clusterSet);
+		for (INode changedNode : changedNodes) {
+			changedCombinationIds.addAll(clusterSet.getCombinationsIds(changedNode));
+		}
+		log.info("Number of changed nodes: " + changedNodes.size() + ", number of invalidated combinations: "
+				+ changedCombinationIds.size() + ", number of added combinations: " + addedCombinationIds.size());
+
+		removeCombinations(changedCombinationIds);
+		changedCombinationIds.addAll(addedCombinationIds);
+		evaluate(changedCombinationIds, clusterSet);
+	}
+
+	/**
+	 * Calculates the category utilities of the passed combinations and adds them to the heap.
+	 *
+	 * @param combinationIds the combinations to evaluate. The set is modified by the searcher.
+	 * @param clusterSet the set of open nodes.
+	 */
+	private void evaluate(TLongSet combinationIds, IClusterSetIndexed<INode> clusterSet) {
+		if (combinationIds.isEmpty()) return;
+		TLongDoubleMap calculated = searcher.getMaxCategoryUtilityMerges(combinationIds, clusterSet);
+		TLongDoubleIterator it = calculated.iterator();
+		for ( int i = calculated.size(); i-- > 0; ) { // faster iteration by avoiding hasNext()
+			it.advance();
+			heap.put(it.key(), it.value());
+		}
+		for (IHeapUpdateListener listener : heapUpdateListeners) {
+			listener.heapUpdated(heap);
+		}
+
+		// decorators remove skipped combinations from the passed set,
+		// what remains but was not calculated is left over by an early termination
+		combinationIds.removeAll(calculated.keySet());
+		pendingCombinationIds.addAll(combinationIds);
+	}
+
+	/**
+	 * Removes the passed combinations from the heap and from the pending combinations.
+	 *
+	 * @param combinationIds the combinations to remove
+	 */
+	private void removeCombinations(TLongSet combinationIds) {
+		TLongIterator it = combinationIds.iterator();
+		for ( int i = combinationIds.size(); i-- > 0; ) { // faster iteration by avoiding hasNext()
+			heap.remove(it.next());
+		}
+		pendingCombinationIds.removeAll(combinationIds);
+	}
+
+}
@@ -0,0 +1,46 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import java.util.Collection;
+import java.util.List;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+
+/**
+ *
+ * Executes the category utility calculations of a {@link BasicMaxCategoryUtilitySearcher}.
+ *
+ */
+public interface ICategoryUtilityExecutor {
+
+	/**
+	 * Calculates the category utility of the combinations in {@code combinationIds}
+	 * until all are calculated or a combination with the max theoretical
+	 * category utility of the searcher was found.
+	 *
+	 * @param combinationIds the combinations to calculate.
+	 * @param utilities receives the category utility of {@code combinationIds[i]} at position i.
+	 * @param calculated is set to true at position i if the category utility of {@code combinationIds[i]} was calculated.
+	 * @param searcher the searcher which defines the category utility.
+	 * @param clusterSet the set of open nodes.
+	 * @return the position of the calculated combination with the highest category utility
+	 * or -1 if no combination was calculated.
+	 */
+	public int evaluate(long[] combinationIds, double[] utilities, boolean[] calculated,
+			BasicMaxCategoryUtilitySearcher searcher, IClusterSetIndexed<INode> clusterSet);
+
+	/**
+	 * Calculates the category utility of the passed combinations of nodes, e.g. of subsets
+	 * of more than two nodes which have no combination id, until all are calculated or a
+	 * combination with the max theoretical category utility of the searcher was found.
+	 *
+	 * @param combinations the combinations to calculate.
+	 * @param utilities receives the category utility of {@code combinations.get(i)} at position i.
+	 * @param calculated is set to true at position i if the category utility of {@code combinations.get(i)} was calculated.
+	 * @param searcher the searcher which defines the category utility.
+	 * @return the position of the calculated combination with the highest category utility
+	 * or -1 if no combination was calculated.
+	 */
+	public int evaluate(List<Collection<INode>> combinations, double[] utilities, boolean[] calculated,
+			BasicMaxCategoryUtilitySearcher searcher);
+
+}
@@ -1,14 +1,87 @@
 package ch.uzh.agglorecommender.clusterer.treesearch;
 
-import gnu.trove.set.TIntSet;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.set.TLongSet;
 
 import java.util.Collection;
 
 public interface IClusterSetIndexed<E> extends IClusterSet<E> {
 
-	public Collection<E> getCombination(int combinationId);
+	public Collection<E> getCombination(long combinationId);
 	
-	public TIntSet getCombinationsIds();
+	public TLongSet getCombinationsIds();
 	
-	public TIntSet getCombinationsIds(E e);
+	/**
+	 * Gets the ids of the combinations of the passed element with the other open elements.
+	 * 
+	 * @param e an element of the set
+	 * @return the combination ids, empty if the element is not contained in the set.
+	 */
+	public TLongSet getCombinationsIds(E e);
+	
+	/**
+	 * Gets the ids of the combinations of the passed element with all other open elements,
+	 * also if the set only returns a part of the combinations of its elements otherwise.
+	 * 
+	 * @param e an element of the set
+	 * @return the combination ids, empty if the element is not contained in the set.
+	 */
+	public TLongSet getAllCombinationsIds(E e);
+	
+	/**
+	 * Iterates over the ids of all open combinations without copying them.
+	 * The iterator doesn't support removal and must not be used after the set was modified.
+	 * 
+	 * @return the iterator over the open combination ids
+	 */
+	public TLongIterator combinationsIdsIterator();
+	
+	/**
+	 * Gets the current epoch of the set. Each add and remove starts a new epoch.
+	 * 
+	 * @return the current epoch, 0 if the set was never modified.
+	 */
+	public long getEpoch();
+	
+	/**
+	 * Gets the ids of the open combinations with an element added after the passed epoch.
+	 * 
+	 * @param epoch an epoch returned by {@link #getEpoch()}
+	 * @return the added combination ids
+	 */
+	public TLongSet getCombinationsIdsAddedSince(long epoch);
+	
+	/**
+	 * Gets the ids of the combinations of all elements removed after the passed epoch.
+	 * Combination ids are reused, thus an id may be contained in both the removed and the
+	 * added combinations since an epoch. Consumers must apply the removed combinations first.
+	 * The result may contain ids of combinations which were never returned by this set,
+	 * if the set only returns a part of the combinations of its elements.
+	 * 
+	 * @param epoch an epoch returned by {@link #getEpoch()}
+	 * @return the removed combination ids
+	 */
+	public TLongSet getCombinationsIdsRemovedSince(long epoch);
+	
+	/**
+	 * Declares that the passed consumer fetches the changes since the passed epoch or a later
+	 * epoch only, it replaces the epoch previously retained by the consumer. The set releases
+	 * the changes before the smallest retained epoch. Thus a consumer of the changes retains
+	 * the epoch returned by {@link #getEpoch()} before it applies any changes and its last applied
+	 * epoch after each fetch. Changes made while no consumer retains an epoch are not recorded.
+	 * 
+	 * @param consumer the consumer, e.g. a merge selector
+	 * @param epoch an epoch returned by {@link #getEpoch()}, whose changes are not yet released
+	 */
+	public void retainEpoch(Object consumer, long epoch);
+	
+	/**
+	 * Gets the id of the combination of the two passed elements.
+	 * 
+	 * @param e1 the first element of the combination
+	 * @param e2 the second element of the combination
+	 * @return the combination id or -1 if one of the elements is not
+	 * contained in the set or both elements are equal.
+	 */
+	public long getCombinationId(E e1, E e2);
 }
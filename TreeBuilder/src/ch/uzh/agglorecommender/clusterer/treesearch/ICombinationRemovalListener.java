@@ -0,0 +1,18 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import gnu.trove.set.TLongSet;
+
+/**
+ * Is notified about the combinations of an element which is removed from an {@link IClusterSetIndexed}.
+ */
+public interface ICombinationRemovalListener {
+
+	/**
+	 * Is called before an element is removed from the set. The slot of the removed
+	 * element is reused by the next added element, thus the ids of the passed combinations
+	 * may identify other combinations later and any state kept for them must be dropped.
+	 *
+	 * @param combinationIds the combinations of the removed element with all other open elements
+	 */
+	public void combinationsRemoved(TLongSet combinationIds);
+}
@@ -0,0 +1,16 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+/**
+ * Is notified by a {@link HeapMergeSelector} after it has added evaluated combinations to its heap,
+ * e.g. a searcher which compares its results with the best combinations of the heap.
+ */
+public interface IHeapUpdateListener {
+
+	/**
+	 * Is called after the category utilities calculated by a searcher were added to the heap.
+	 * The heap must not be modified.
+	 *
+	 * @param heap the evaluated open combinations of the merge selector
+	 */
+	public void heapUpdated(IndexedMaxHeap heap);
+}
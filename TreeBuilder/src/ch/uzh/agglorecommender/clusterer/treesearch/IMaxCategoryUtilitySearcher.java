@@ -1,7 +1,7 @@
 package ch.uzh.agglorecommender.clusterer.treesearch;
 
-import gnu.trove.map.TIntDoubleMap;
-import gnu.trove.set.TIntSet;
+import gnu.trove.map.TLongDoubleMap;
+import gnu.trove.set.TLongSet;
 
 import java.util.Collection;
 import java.util.Set;
@@ -28,6 +28,6 @@ public interface IMaxCategoryUtilitySearcher {
 	public Set<IMergeResult> getMaxCategoryUtilityMerges(Set<Collection<INode>> combinationsToCheck, IClusterSet<INode> clusterSet);
 
 	
-	public TIntDoubleMap getMaxCategoryUtilityMerges(TIntSet combinationIds, IClusterSetIndexed<INode> clusterSet);
+	public TLongDoubleMap getMaxCategoryUtilityMerges(TLongSet combinationIds, IClusterSetIndexed<INode> clusterSet);
 	
 }
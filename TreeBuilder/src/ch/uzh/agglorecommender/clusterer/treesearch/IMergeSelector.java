@@ -0,0 +1,60 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import java.util.List;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+
+/**
+ * 
+ * Selects in each cluster cycle the merge of nodes
+ * which is performed next by the clustering process.
+ * <br>
+ * Implementations may keep state between cycles (e.g. the category
+ * utilities of previous cycles). Therefore the clustering process must
+ * perform the selected merge and report it with {@code mergePerformed}
+ * before the next merge is selected.
+ *
+ */
+public interface IMergeSelector {
+	
+	/**
+	 * Selects the merge that should be performed next in the passed set.
+	 * 
+	 * @param clusterSet the set of open nodes.
+	 * @return the selected merge or null if the set contains less than two nodes.
+	 */
+	public IMergeResult selectBestMerge(IClusterSetIndexed<INode> clusterSet);
+	
+	/**
+	 * Selects up to {@code maxMerges} pairwise disjoint merges that should be performed
+	 * next in the passed set. The first merge is the merge returned by {@code selectBestMerge},
+	 * the category utility of the others is at most {@code tolerance} below the first one.
+	 * Each returned merge must be performed and reported with {@code mergePerformed}.
+	 * 
+	 * @param clusterSet the set of open nodes.
+	 * @param maxMerges the max number of merges to select
+	 * @param tolerance the max difference of the category utility of a merge to the best merge
+	 * @return the selected merges in descending order of their category utility,
+	 * empty if the set contains less than two nodes.
+	 */
+	public List<IMergeResult> selectBestMerges(IClusterSetIndexed<INode> clusterSet, int maxMerges, double tolerance);
+	
+	/**
+	 * Notifies the selector about a performed merge.
+	 * Is called after the merged nodes were removed from the cluster set
+	 * and the new node was added.
+	 * 
+	 * @param mergeResult the merge which was selected and performed.
+	 * @param newNode the node resulting from the merge.
+	 * @param clusterSet the set of open nodes.
+	 */
+	public void mergePerformed(IMergeResult mergeResult, INode newNode, IClusterSetIndexed<INode> clusterSet);
+
+	/**
+	 * Gets the statistics of the merges selected so far.
+	 *
+	 * @return the number of performed merges and their deviation from the greedy order.
+	 */
+	public MergeSelectionStatistics getStatistics();
+
+}
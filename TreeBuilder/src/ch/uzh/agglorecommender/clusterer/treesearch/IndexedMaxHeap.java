@@ -0,0 +1,310 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import gnu.trove.map.TLongIntMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ *
+ * Binary max-heap over primitive long keys (i.e. combination ids) prioritized
+ * by a double value (i.e. category utility).
+ * <br>
+ * In contrast to {@link java.util.PriorityQueue} the heap keeps track of the
+ * position of every key, which allows to update or remove arbitrary keys
+ * in O(log n) without boxing.
+ * <br>
+ * Keys with equal values are ordered by ascending key to obtain a
+ * deterministic order.
+ *
+ */
+public class IndexedMaxHeap implements Serializable {
+
+	/**
+	 * Determines if a de-serialized file is compatible with this class.
+	 * <br>
+	 * <br>
+	 * Maintainers must change this value if and only if the new version
+	 * of this class is not compatible with old versions.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Position returned for keys which are not contained in the heap.
+	 */
+	private static final int NO_POSITION = -1;
+
+	/**
+	 * The keys in heap order.
+	 */
+	private long[] keys;
+
+	/**
+	 * The values of the keys, parallel to {@code keys}.
+	 */
+	private double[] values;
+
+	/**
+	 * The number of entries in the heap.
+	 */
+	private int size = 0;
+
+	/**
+	 * Maps each key to its current position in {@code keys}.
+	 */
+	private final TLongIntMap positions;
+
+	/**
+	 * Instantiates a new empty heap.
+	 *
+	 * @param initialCapacity the number of entries the heap can hold before it grows.
+	 */
+	public IndexedMaxHeap(int initialCapacity) {
+		int capacity = Math.max(initialCapacity, 16);
+		this.keys = new long[capacity];
+		this.values = new double[capacity];
+		this.positions = new TLongIntHashMap(capacity, 0.5f, NO_POSITION, NO_POSITION);
+	}
+
+	/**
+	 * Inserts the key with the passed value or updates the value if
+	 * the key is already contained in the heap.
+	 *
+	 * @param key the key to insert or update
+	 * @param value the new value of the key
+	 * @return true if the key was newly inserted, false if it was updated.
+	 */
+	public boolean put(long key, double value) {
+		int pos = positions.get(key);
+		if (pos != NO_POSITION) {
+			double old = values[pos];
+			values[pos] = value;
+			if (value > old) {
+				siftUp(pos);
+			} else {
+				siftDown(pos);
+			}
+			return false;
+		}
+		ensureCapacity(size + 1);
+		keys[size] = key;
+		values[size] = value;
+		positions.put(key, size);
+		siftUp(size);
+		size++;
+		return true;
+	}
+
+	/**
+	 * Removes the key from the heap.
+	 *
+	 * @param key the key to remove
+	 * @return true if the key was contained in the heap, else false.
+	 */
+	public boolean remove(long key) {
+		int pos = positions.remove(key);
+		if (pos == NO_POSITION) return false;
+		size--;
+		if (pos != size) {
+			keys[pos] = keys[size];
+			values[pos] = values[size];
+			positions.put(keys[pos], pos);
+			siftUp(pos);
+			siftDown(positions.get(keys[pos]));
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if the key is contained in the heap.
+	 *
+	 * @param key the key to look up
+	 * @return true if contained, else false.
+	 */
+	public boolean contains(long key) {
+		return positions.containsKey(key);
+	}
+
+	/**
+	 * Gets the value of the passed key.
+	 *
+	 * @param key the key to look up
+	 * @return the value of the key or {@code Double.NaN} if key is not contained.
+	 */
+	public double get(long key) {
+		int pos = positions.get(key);
+		if (pos == NO_POSITION) return Double.NaN;
+		return values[pos];
+	}
+
+	/**
+	 * Gets the key with the greatest value.
+	 *
+	 * @return the key with the greatest value
+	 * @throws IllegalStateException if the heap is empty.
+	 */
+	public long peekKey() {
+		if (size == 0) throw new IllegalStateException("heap is empty");
+		return keys[0];
+	}
+
+	/**
+	 * Gets the greatest value in the heap.
+	 *
+	 * @return the greatest value
+	 * @throws IllegalStateException if the heap is empty.
+	 */
+	public double peekValue() {
+		if (size == 0) throw new IllegalStateException("heap is empty");
+		return values[0];
+	}
+
+	/**
+	 * Removes the key with the greatest value from the heap.
+	 *
+	 * @return the removed key
+	 * @throws IllegalStateException if the heap is empty.
+	 */
+	public long pollKey() {
+		long key = peekKey();
+		remove(key);
+		return key;
+	}
+
+	/**
+	 * Gets the keys with the greatest values without modifying the heap.
+	 * The heap is walked from the root with a heap of the visited positions
+	 * in O(k log k), keys with equal values may be returned in any order.
+	 *
+	 * @param k the max number of keys
+	 * @return the min(k, size) keys with the greatest values in descending order of their values
+	 */
+	public long[] topKeys(int k) {
+		long[] top = new long[Math.max(0, Math.min(k, size))];
+		if (top.length == 0) return top;
+		IndexedMaxHeap frontier = new IndexedMaxHeap(2 * top.length + 1);
+		frontier.put(0, values[0]);
+		for (int i = 0; i < top.length; i++) {
+			int pos = (int) frontier.pollKey();
+			top[i] = keys[pos];
+			for (int child = (pos << 1) + 1; child <= (pos << 1) + 2 && child < size; child++) {
+				frontier.put(child, values[child]);
+			}
+		}
+		return top;
+	}
+
+	/**
+	 * Gets the number of entries in the heap.
+	 *
+	 * @return the size of the heap
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Checks if the heap contains no entries.
+	 *
+	 * @return true if empty, else false.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes all entries from the heap.
+	 */
+	public void clear() {
+		size = 0;
+		positions.clear();
+	}
+
+	/**
+	 * Removes the entries with the smallest values until at most {@code maxSize} entries are left.
+	 * Entries with the same value as the greatest removed value are removed too,
+	 * thus all remaining values are greater than the returned value.
+	 * The heap is rebuilt in O(n log n).
+	 *
+	 * @param maxSize the max number of remaining entries
+	 * @return the greatest removed value or {@code Double.NEGATIVE_INFINITY} if no entry was removed.
+	 */
+	public double trim(int maxSize) {
+		if (size <= maxSize) return Double.NEGATIVE_INFINITY;
+		double[] sorted = Arrays.copyOf(values, size);
+		Arrays.sort(sorted);
+		double bound = sorted[size - Math.max(maxSize, 0) - 1];
+
+		int remaining = 0;
+		for (int i = 0; i < size; i++) {
+			if (values[i] > bound) {
+				keys[remaining] = keys[i];
+				values[remaining] = values[i];
+				remaining++;
+			}
+		}
+		size = remaining;
+		positions.clear();
+		for (int i = 0; i < size; i++) {
+			positions.put(keys[i], i);
+		}
+		for (int i = (size >>> 1) - 1; i >= 0; i--) {
+			siftDown(i);
+		}
+		return bound;
+	}
+
+	private void siftUp(int pos) {
+		long key = keys[pos];
+		double value = values[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (! isBefore(value, key, values[parent], keys[parent])) break;
+			keys[pos] = keys[parent];
+			values[pos] = values[parent];
+			positions.put(keys[pos], pos);
+			pos = parent;
+		}
+		keys[pos] = key;
+		values[pos] = value;
+		positions.put(key, pos);
+	}
+
+	private void siftDown(int pos) {
+		long key = keys[pos];
+		double value = values[pos];
+		int half = size >>> 1;
+		while (pos < half) {
+			int child = (pos << 1) + 1;
+			int right = child + 1;
+			if (right < size && isBefore(values[right], keys[right], values[child], keys[child])) {
+				child = right;
+			}
+			if (! isBefore(values[child], keys[child], value, key)) break;
+			keys[pos] = keys[child];
+			values[pos] = values[child];
+			positions.put(keys[pos], pos);
+			pos = child;
+		}
+		keys[pos] = key;
+		values[pos] = value;
+		positions.put(key, pos);
+	}
+
+	/**
+	 * Defines the heap order: greater values first, ascending keys on equal values.
+	 */
+	private static boolean isBefore(double value1, long key1, double value2, long key2) {
+		if (value1 > value2) return true;
+		if (value1 < value2) return false;
+		return key1 < key2;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= keys.length) return;
+		int newCapacity = Math.max(capacity, keys.length + (keys.length >>> 1));
+		keys = Arrays.copyOf(keys, newCapacity);
+		values = Arrays.copyOf(values, newCapacity);
+	}
+}
@@ -0,0 +1,158 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import org.apache.commons.math3.exception.MathArithmeticException;
+import org.apache.commons.math3.util.ArithmeticUtils;
+
+/**
+ *
+ * Encodes and enumerates k-subsets of non-negative int indices without boxing.
+ * <br>
+ * A subset is a sorted int array and is encoded by its rank in the combinatorial
+ * number system (combinadic):
+ * <br>
+ * <pre>
+ *  rank({c_1 &lt; c_2 &lt; ... &lt; c_k}) = C(c_1, 1) + C(c_2, 2) + ... + C(c_k, k)
+ * </pre>
+ * <br>
+ * The ranks of the k-subsets of {0, ..., n - 1} are exactly 0 to C(n, k) - 1, thus a rank
+ * fits into a long as long as C(n, k) does, see {@link #isRankable(int, int)}.
+ * {@link #next(int[], int)} enumerates the subsets in the order of their ranks.
+ * <br>
+ * Subsets of at most 63 elements are also enumerated as bit masks with Gosper's hack,
+ * see {@link #nextMask(long)}.
+ *
+ */
+public final class KSubsets {
+
+	/*
+	 * Must not be instantiated.
+	 */
+	private KSubsets() {
+		// static
+	}
+
+	/**
+	 * Checks if the ranks of all k-subsets of n indices fit into a long.
+	 *
+	 * @param n the number of indices
+	 * @param k the size of the subsets
+	 * @return true if C(n, k) fits into a long
+	 */
+	public static boolean isRankable(int n, int k) {
+		return n < k || binomial(n, k) != Long.MAX_VALUE;
+	}
+
+	/**
+	 * Gets the rank of a subset.
+	 *
+	 * @param subset distinct indices in ascending order
+	 * @return the combinadic rank of the subset
+	 */
+	public static long rank(int[] subset) {
+		long rank = 0;
+		for (int i = 0; i < subset.length; i++) {
+			rank += binomial(subset[i], i + 1);
+		}
+		return rank;
+	}
+
+	/**
+	 * Gets the subset of a rank.
+	 *
+	 * @param rank a rank returned by {@link #rank(int[])}
+	 * @param subset the array to fill with the indices in ascending order,
+	 * its length is the size of the subset.
+	 */
+	public static void unrank(long rank, int[] subset) {
+		for (int i = subset.length; i > 0; i--) {
+			int c = largestIndex(rank, i);
+			subset[i - 1] = c;
+			rank -= binomial(c, i);
+		}
+	}
+
+	/**
+	 * Advances a subset to the subset with the next higher rank.
+	 * Equals Gosper's hack for subsets of arbitrary many indices.
+	 *
+	 * @param subset distinct indices in ascending order, is modified.
+	 * @param n the number of indices, all indices are below {@code n}.
+	 * @return false if {@code subset} was the last subset of {@code n} indices,
+	 * {@code subset} is then undefined.
+	 */
+	public static boolean next(int[] subset, int n) {
+		int k = subset.length;
+		for (int i = 0; i < k; i++) {
+			int limit = i + 1 < k ? subset[i + 1] : n;
+			if (subset[i] + 1 < limit) {
+				subset[i]++;
+				for (int j = 0; j < i; j++) {
+					subset[j] = j;
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the next larger bit mask with the same number of set bits (Gosper's hack).
+	 *
+	 * @param mask a non-zero bit mask
+	 * @return the next mask, negative or greater than the largest mask of
+	 * the same number of bits in the used range if {@code mask} was the last one.
+	 */
+	public static long nextMask(long mask) {
+		long lowest = mask & -mask;
+		long ripple = mask + lowest;
+		return (((ripple ^ mask) >>> 2) / lowest) | ripple;
+	}
+
+	/**
+	 * Gets the largest index c with C(c, k) &lt;= rank.
+	 */
+	private static int largestIndex(long rank, int k) {
+		if (k == 1) {
+			return (int) rank;
+		}
+		if (k == 2) {
+			// c (c - 1) / 2 <= rank, corrected for the rounding of the square root
+			int c = (int) ((1.0 + Math.sqrt(1.0 + 8.0 * rank)) / 2.0);
+			while (binomial(c, 2) > rank) c--;
+			while (binomial(c + 1, 2) <= rank) c++;
+			return c;
+		}
+		int low = k - 1;
+		int high = k;
+		while (binomial(high, k) <= rank) {
+			low = high;
+			high = high > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : high * 2;
+		}
+		while (high - low > 1) {
+			int middle = (low + high) >>> 1;
+			if (binomial(middle, k) <= rank) {
+				low = middle;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Gets the binomial coefficient C(n, k).
+	 *
+	 * @return C(n, k), 0 if n &lt; k, or Long.MAX_VALUE if it doesn't fit into a long.
+	 */
+	private static long binomial(int n, int k) {
+		if (n < k) return 0;
+		if (k == 1) return n;
+		if (k == 2) return (long) n * (n - 1) / 2;
+		try {
+			return ArithmeticUtils.binomialCoefficient(n, k);
+		} catch (MathArithmeticException e) {
+			return Long.MAX_VALUE;
+		}
+	}
+
+}
@@ -0,0 +1,133 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import java.io.Serializable;
+
+/**
+ *
+ * Parameter object that stores how far the merges selected by an
+ * {@link IMergeSelector} deviate from the greedy merge order.
+ * Is immutable.
+ *
+ */
+public class MergeSelectionStatistics implements Serializable {
+
+	/**
+	 * Determines if a de-serialized file is compatible with this class.
+	 * <br>
+	 * <br>
+	 * Maintainers must change this value if and only if the new version
+	 * of this class is not compatible with old versions.
+	 */
+	private static final long serialVersionUID = 2L;
+
+	/**
+	 * The number of performed merges.
+	 */
+	private final int numberOfMerges;
+
+	/**
+	 * The number of detected divergences from the greedy merge order.
+	 */
+	private final int numberOfDivergences;
+
+	/**
+	 * The number of merges of cycles with more than one merge which were not the best merge of their cycle.
+	 */
+	private final int numberOfNonGreedyMerges;
+
+	/**
+	 * The mean difference of the category utility of the non greedy merges to the best merge of their cycle.
+	 */
+	private final double meanUtilityGap;
+
+	/**
+	 * The largest difference of the category utility of a non greedy merge to the best merge of its cycle.
+	 */
+	private final double maxUtilityGap;
+
+	/**
+	 * Instantiates new immutable merge selection statistics of a selector
+	 * which performs one merge per cycle.
+	 *
+	 * @param numberOfMerges the number of performed merges
+	 * @param numberOfDivergences the number of detected divergences from the greedy merge order
+	 */
+	public MergeSelectionStatistics(int numberOfMerges, int numberOfDivergences) {
+		this(numberOfMerges, numberOfDivergences, 0, 0.0, 0.0);
+	}
+
+	/**
+	 * Instantiates new immutable merge selection statistics.
+	 *
+	 * @param numberOfMerges the number of performed merges
+	 * @param numberOfDivergences the number of detected divergences from the greedy merge order
+	 * @param numberOfNonGreedyMerges the number of merges which were not the best merge of their cycle
+	 * @param meanUtilityGap the mean category utility difference of the non greedy merges to the best merge of their cycle
+	 * @param maxUtilityGap the largest category utility difference of a non greedy merge to the best merge of its cycle
+	 */
+	public MergeSelectionStatistics(int numberOfMerges, int numberOfDivergences,
+			int numberOfNonGreedyMerges, double meanUtilityGap, double maxUtilityGap) {
+		this.numberOfMerges = numberOfMerges;
+		this.numberOfDivergences = numberOfDivergences;
+		this.numberOfNonGreedyMerges = numberOfNonGreedyMerges;
+		this.meanUtilityGap = meanUtilityGap;
+		this.maxUtilityGap = maxUtilityGap;
+	}
+
+	/**
+	 * Gets the number of performed merges.
+	 *
+	 * @return the number of merges reported to the selector
+	 */
+	public int getNumberOfMerges() {
+		return numberOfMerges;
+	}
+
+	/**
+	 * Gets the number of detected divergences from the greedy merge order,
+	 * e.g. of the nearest neighbour chain if the category utility is not reducible.
+	 *
+	 * @return the number of divergences, 0 for selectors which follow the greedy order
+	 */
+	public int getNumberOfDivergences() {
+		return numberOfDivergences;
+	}
+
+	/**
+	 * Gets the number of merges which were not the best merge of their cycle,
+	 * i.e. the merges after the first one of cycles with more than one merge.
+	 *
+	 * @return the number of non greedy merges, 0 if only one merge is performed per cycle
+	 */
+	public int getNumberOfNonGreedyMerges() {
+		return numberOfNonGreedyMerges;
+	}
+
+	/**
+	 * Gets the mean difference of the category utility of the non greedy merges
+	 * to the best merge of their cycle.
+	 *
+	 * @return the mean category utility gap or 0 if there are no non greedy merges
+	 */
+	public double getMeanUtilityGap() {
+		return meanUtilityGap;
+	}
+
+	/**
+	 * Gets the largest difference of the category utility of a non greedy merge
+	 * to the best merge of its cycle.
+	 *
+	 * @return the max category utility gap or 0 if there are no non greedy merges
+	 */
+	public double getMaxUtilityGap() {
+		return maxUtilityGap;
+	}
+
+	@Override
+	public String toString() {
+		return "merges: " + numberOfMerges + ", divergences from greedy order: " + numberOfDivergences
+				+ ", non greedy merges: " + numberOfNonGreedyMerges + ", mean category utility gap: " + meanUtilityGap
+				+ ", max category utility gap: " + maxUtilityGap;
+	}
+
+}
@@ -0,0 +1,377 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import gnu.trove.iterator.TLongDoubleIterator;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.TLongDoubleMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.MinHashSketch;
+import ch.uzh.agglorecommender.clusterer.treesearch.ClusterSetIndexed.Pairing;
+import ch.uzh.agglorecommender.util.TBLogger;
+
+/**
+ *
+ * Passes only the combinations of nodes in a common locality sensitive hashing bucket
+ * to the decorated searcher, i.e. combinations whose attribute sets are likely
+ * to have a high Jaccard similarity, see {@link MinHashSketch}. The candidates are
+ * generated from the buckets of the nodes of the passed combinations, one bucket map per band.
+ * <br>
+ * The other combinations are deferred and removed from the passed set of combination ids.
+ * Every {@code fullScanInterval}-th call the deferred combinations are added to the passed set
+ * and evaluated, thus a deferred combination is merged at the latest after the next full scan.
+ * The merge selector reports its best combinations after a full scan, the fraction of them which
+ * were evaluated without the full scan is the recall of the buckets, see {@link #recordRecall(IndexedMaxHeap)}.
+ * If none of the passed combinations is a candidate they are all evaluated, thus
+ * each node without a bucket partner is still compared with the other nodes.
+ * <br>
+ * Designed for the {@link HeapMergeSelector}, which evaluates each combination only once
+ * and notifies this searcher as its {@link IHeapUpdateListener}.
+ *
+ */
+public class MinHashCandidateMaxCUSearcher extends MaxCategoryUtilitySearcherDecorator implements IHeapUpdateListener, Serializable {
+
+	/**
+	 * Determines if a de-serialized file is compatible with this class.
+	 * <br>
+	 * <br>
+	 * Maintainers must change this value if and only if the new version
+	 * of this class is not compatible with old versions.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The default number of bands. Together with the default number of rows the
+	 * candidate probability is one half at a Jaccard similarity of about 0.4.
+	 */
+	public static final int DEFAULT_BANDS = 32;
+
+	/**
+	 * The default number of rows per band.
+	 */
+	public static final int DEFAULT_ROWS = 4;
+
+	/**
+	 * The default number of calls between two full scans.
+	 */
+	public static final int DEFAULT_FULL_SCAN_INTERVAL = 100;
+
+	/**
+	 * The number of best combinations of a full scan checked to measure the recall.
+	 */
+	private static final int RECALL_TOP_K = 10;
+
+	private final int bands;
+
+	private final int rows;
+
+	/**
+	 * The number of calls between two full scans, 0 if all calls are filtered.
+	 */
+	private final int fullScanInterval;
+
+	/**
+	 * The open combinations which were not passed to the decorated searcher.
+	 */
+	private final TLongSet deferredCombinationIds = new TLongHashSet();
+
+	/**
+	 * The deferred combinations evaluated by the last full scan,
+	 * null if the recall of the last full scan was recorded.
+	 */
+	private TLongSet scannedCombinationIds = null;
+
+	/**
+	 * The cluster set of the deferred combinations.
+	 */
+	private IClusterSetIndexed<INode> observedClusterSet = null;
+
+	/**
+	 * The epoch of the observed cluster set at the last call.
+	 */
+	private long epoch = 0;
+
+	private long numberOfCalls = 0;
+
+	private long numberOfFullScans = 0;
+
+	/**
+	 * The number of best combinations after the full scans which were not deferred.
+	 */
+	private long numberOfFoundBestCombinations = 0;
+
+	/**
+	 * The number of best combinations after the full scans.
+	 */
+	private long numberOfBestCombinations = 0;
+
+	/**
+	 * Instantiates a new decorator with the default bands, rows and full scan interval.
+	 *
+	 * @param decoratedSearcher the searcher used to calculate the category utilities.
+	 */
+	public MinHashCandidateMaxCUSearcher(IMaxCategoryUtilitySearcher decoratedSearcher) {
+		this(decoratedSearcher, DEFAULT_BANDS, DEFAULT_ROWS, DEFAULT_FULL_SCAN_INTERVAL);
+	}
+
+	/**
+	 * Instantiates a new decorator.
+	 *
+	 * @param decoratedSearcher the searcher used to calculate the category utilities.
+	 * @param bands the number of bands, at least 1.
+	 * @param rows the number of sketch values per band, at least 1.
+	 * {@code bands * rows} must not exceed {@link MinHashSketch#LENGTH}.
+	 * @param fullScanInterval the number of calls between two full scans or 0 to never scan all combinations.
+	 */
+	public MinHashCandidateMaxCUSearcher(IMaxCategoryUtilitySearcher decoratedSearcher, int bands, int rows, int fullScanInterval) {
+		super(decoratedSearcher);
+		if (bands < 1 || rows < 1 || bands * rows > MinHashSketch.LENGTH || fullScanInterval < 0) {
+			Logger log = TBLogger.getLogger(getClass().getName());
+			log.severe("Err: invalid LSH parameters, bands: " + bands + ", rows: " + rows
+					+ ", full scan interval: " + fullScanInterval + "; in: " + getClass().getSimpleName());
+			System.exit(-1);
+		}
+		this.bands = bands;
+		this.rows = rows;
+		this.fullScanInterval = fullScanInterval;
+	}
+
+	/**
+	 * Removes the combinations which are not candidates, they are not deferred.
+	 */
+	@Override
+	public Set<IMergeResult> getMaxCategoryUtilityMerges(
+			Set<Collection<INode>> combinationsToCheck, IClusterSet<INode> clusterSet) {
+		Iterator<Collection<INode>> i = combinationsToCheck.iterator();
+		while (i.hasNext()) {
+			Collection<INode> combination = i.next();
+			if (combination.size() != 2) continue;
+			Iterator<INode> it = combination.iterator();
+			if (! isCandidate(it.next(), it.next())) i.remove();
+		}
+		return decoratedSearcher.getMaxCategoryUtilityMerges(combinationsToCheck, clusterSet);
+	}
+
+	@Override
+	public TLongDoubleMap getMaxCategoryUtilityMerges(
+			TLongSet combinationIds, IClusterSetIndexed<INode> clusterSet) {
+		Logger log = TBLogger.getLogger(getClass().getName());
+		long time = System.nanoTime();
+		forgetRemovedCombinations(clusterSet);
+		numberOfCalls++;
+		int initCombinationsSize = combinationIds.size();
+
+		TLongIterator iterator = combinationIds.iterator();
+		for ( int i = combinationIds.size(); i-- > 0; ) {  // faster iteration by avoiding hasNext()
+			// a deferred combination of a changed node is passed again
+			deferredCombinationIds.remove(iterator.next());
+		}
+		TLongSet rejected = new TLongHashSet(combinationIds);
+		rejected.removeAll(selectCandidates(combinationIds, clusterSet));
+
+		boolean fullScan = fullScanInterval > 0 && numberOfCalls % fullScanInterval == 0;
+		if (fullScan) {
+			// the candidates of earlier calls are in the heap of the merge selector
+			scannedCombinationIds = new TLongHashSet(deferredCombinationIds);
+			scannedCombinationIds.addAll(rejected);
+			combinationIds.addAll(deferredCombinationIds);
+			deferredCombinationIds.clear();
+			numberOfFullScans++;
+		} else if (rejected.size() < initCombinationsSize) {
+			combinationIds.removeAll(rejected);
+			deferredCombinationIds.addAll(rejected);
+		}
+		int evaluatedCombinationsSize = combinationIds.size();
+
+		TLongDoubleMap calculated = decoratedSearcher.getMaxCategoryUtilityMerges(combinationIds, clusterSet);
+
+		log.info("Time in MinHashCandidateDecorator: "
+				+ (double)(System.nanoTime() - time) / 1000000000.0 + " seconds, "
+				+ "Number of candidates: " + (initCombinationsSize - rejected.size()) + " of " + initCombinationsSize
+				+ ", number of evaluated combinations: " + evaluatedCombinationsSize
+				+ (fullScan ? " (full scan)" : "")
+				+ ", number of deferred combinations: " + deferredCombinationIds.size()
+				+ ", recall: " + getRecall());
+		return calculated;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * Records the recall of the last full scan, see {@link #recordRecall(IndexedMaxHeap)}.
+	 */
+	@Override
+	public void heapUpdated(IndexedMaxHeap heap) {
+		recordRecall(heap);
+	}
+
+	/**
+	 * Records the recall of the last full scan, i.e. how many of the best combinations
+	 * of the merge selector were evaluated without the full scan. Called after the merge
+	 * selector has added the results of a call to its heap, does nothing if
+	 * the recall of the last full scan was already recorded.
+	 *
+	 * @param heap the evaluated open combinations of the merge selector.
+	 */
+	public void recordRecall(IndexedMaxHeap heap) {
+		if (scannedCombinationIds == null) return;
+		long[] best = heap.topKeys(RECALL_TOP_K);
+		for (long combination : best) {
+			if (! scannedCombinationIds.contains(combination)) numberOfFoundBestCombinations++;
+		}
+		numberOfBestCombinations += best.length;
+		scannedCombinationIds = null;
+	}
+
+	/**
+	 * Calculates the category utility of all passed combinations and measures
+	 * how many of the k best ones are candidates.
+	 *
+	 * @param combinationIds the combinations to evaluate, the set is not modified.
+	 * @param clusterSet the set of open nodes.
+	 * @param k the number of best combinations to check.
+	 * @return the fraction of the k best combinations which are candidates,
+	 * NaN if no combination was evaluated.
+	 */
+	public double measureRecall(TLongSet combinationIds, IClusterSetIndexed<INode> clusterSet, int k) {
+		TLongDoubleMap calculated = decoratedSearcher.getMaxCategoryUtilityMerges(new TLongHashSet(combinationIds), clusterSet);
+		int numberOfBest = Math.min(k, calculated.size());
+		if (numberOfBest == 0) return Double.NaN;
+		return (double) countCandidatesInTopK(calculated, clusterSet, k) / numberOfBest;
+	}
+
+	/**
+	 * Gets the fraction of the best combinations after all full scans
+	 * which were evaluated without the full scan.
+	 *
+	 * @return the recall of the buckets or NaN if no full scan was performed.
+	 */
+	public double getRecall() {
+		if (numberOfBestCombinations == 0) return Double.NaN;
+		return (double) numberOfFoundBestCombinations / numberOfBestCombinations;
+	}
+
+	/**
+	 * Gets the number of full scans since the instantiation of this decorator.
+	 *
+	 * @return the number of full scans
+	 */
+	public long getNumberOfFullScans() {
+		return numberOfFullScans;
+	}
+
+	/**
+	 * Checks if the nodes of a combination share a bucket.
+	 *
+	 * @param combination the id of an open combination
+	 * @param clusterSet the set of open nodes
+	 * @return true if the combination is evaluated without a full scan
+	 */
+	public boolean isCandidate(long combination, IClusterSetIndexed<INode> clusterSet) {
+		Iterator<INode> it = clusterSet.getCombination(combination).iterator();
+		return isCandidate(it.next(), it.next());
+	}
+
+	private boolean isCandidate(INode first, INode second) {
+		return MinHashSketch.of(first).sharesBucket(MinHashSketch.of(second), bands, rows);
+	}
+
+	/**
+	 * Generates the candidates among the passed combinations from the buckets of their nodes.
+	 * For each band the slots of the nodes are grouped by their bucket and the pairs of
+	 * each group are candidates, thus only combinations of nodes with a common bucket are visited.
+	 *
+	 * @param combinationIds the combinations to filter, the set is not modified.
+	 * @param clusterSet the set of open nodes
+	 * @return the passed combinations whose nodes share a bucket
+	 */
+	private TLongSet selectCandidates(TLongSet combinationIds, IClusterSetIndexed<INode> clusterSet) {
+		TIntObjectMap<MinHashSketch> sketches = new TIntObjectHashMap<MinHashSketch>();
+		TLongIterator iterator = combinationIds.iterator();
+		for ( int i = combinationIds.size(); i-- > 0; ) {  // faster iteration by avoiding hasNext()
+			long combination = iterator.next();
+			int x = Pairing.computeX(combination);
+			int y = Pairing.computeY(combination);
+			if (! sketches.containsKey(x) || ! sketches.containsKey(y)) {
+				Iterator<INode> it = clusterSet.getCombination(combination).iterator();
+				sketches.put(x, MinHashSketch.of(it.next()));
+				sketches.put(y, MinHashSketch.of(it.next()));
+			}
+		}
+		// ascending slots, thus the first slot of a pair is the smaller one
+		int[] slots = sketches.keys();
+		Arrays.sort(slots);
+
+		TLongSet candidates = new TLongHashSet();
+		for (int band = 0; band < bands; band++) {
+			TIntObjectMap<TIntList> buckets = new TIntObjectHashMap<TIntList>();
+			for (int slot : slots) {
+				int bucket = sketches.get(slot).getBucket(band, rows);
+				TIntList members = buckets.get(bucket);
+				if (members == null) {
+					members = new TIntArrayList(2);
+					buckets.put(bucket, members);
+				}
+				members.add(slot);
+			}
+			for (TIntList members : buckets.valueCollection()) {
+				for (int i = 0; i < members.size(); i++) {
+					for (int j = i + 1; j < members.size(); j++) {
+						long combination = Pairing.compute(members.get(i), members.get(j));
+						if (combinationIds.contains(combination) && ! candidates.contains(combination)
+								// the bucket is a hash of the band, skip collisions
+								&& sketches.get(members.get(i)).sharesBucket(sketches.get(members.get(j)), bands, rows)) {
+							candidates.add(combination);
+						}
+					}
+				}
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * Forgets the deferred combinations removed from the cluster set since the last call,
+	 * their ids are reused for new combinations.
+	 */
+	private void forgetRemovedCombinations(IClusterSetIndexed<INode> clusterSet) {
+		if (clusterSet != observedClusterSet) {
+			deferredCombinationIds.clear();
+			observedClusterSet = clusterSet;
+		} else {
+			deferredCombinationIds.removeAll(clusterSet.getCombinationsIdsRemovedSince(epoch));
+		}
+		epoch = clusterSet.getEpoch();
+		clusterSet.retainEpoch(this, epoch);
+	}
+
+	/**
+	 * Counts the candidates among the k combinations with the highest category utility.
+	 */
+	private int countCandidatesInTopK(TLongDoubleMap calculated, IClusterSetIndexed<INode> clusterSet, int k) {
+		IndexedMaxHeap sorted = new IndexedMaxHeap(calculated.size());
+		TLongDoubleIterator it = calculated.iterator();
+		for ( int i = calculated.size(); i-- > 0; ) { // faster iteration by avoiding hasNext()
+			it.advance();
+			sorted.put(it.key(), it.value());
+		}
+		int candidates = 0;
+		for (int i = 0; i < k && ! sorted.isEmpty(); i++) {
+			if (isCandidate(sorted.pollKey(), clusterSet)) candidates++;
+		}
+		return candidates;
+	}
+
+}
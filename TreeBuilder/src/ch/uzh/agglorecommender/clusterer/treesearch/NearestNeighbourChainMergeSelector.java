@@ -0,0 +1,367 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import gnu.trove.iterator.TLongDoubleIterator;
+import gnu.trove.list.TDoubleList;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.map.TLongDoubleMap;
+import gnu.trove.map.TLongIntMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.util.TBLogger;
+
+/**
+ *
+ * Selects merges with the nearest neighbour chain algorithm.
+ * <br>
+ * A chain of open nodes is grown by appending the nearest neighbour (the node with
+ * the highest category utility of the merge) of the top of the chain until two
+ * nodes are reciprocal nearest neighbours. These two nodes are merged.
+ * Only the combinations of the top of the chain are evaluated in each step,
+ * thus the combinations of all open nodes are never materialized.
+ * <br>
+ * The merge order equals the greedy order only if the category utility is reducible,
+ * i.e. if no node has a higher category utility with a merged node than with both of
+ * the merged nodes, and if updates of the other tree don't change the nearest neighbours.
+ * The category utility is not reducible in general. Each detected violation is logged
+ * and counted and the affected part of the chain is discarded.
+ *
+ */
+public class NearestNeighbourChainMergeSelector implements IMergeSelector, Serializable {
+
+	/**
+	 * Determines if a de-serialized file is compatible with this class.
+	 * <br>
+	 * <br>
+	 * Maintainers must change this value if and only if the new version
+	 * of this class is not compatible with old versions.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Combination id returned by {@link IClusterSetIndexed#getCombinationId} for invalid combinations.
+	 */
+	private static final int NO_COMBINATION = -1;
+
+	/**
+	 * Calculates the category utilities of the combinations of the chain nodes.
+	 */
+	private final IMaxCategoryUtilitySearcher searcher;
+
+	/**
+	 * Searches the nearest neighbour of the top of the chain. Only the
+	 * best combination returned by this searcher is used.
+	 */
+	private final IMaxCategoryUtilitySearcher nearestNeighbourSearcher;
+
+	/**
+	 * The nodes of the chain, the last element is the top of the chain.
+	 */
+	private final List<INode> chain = new ArrayList<INode>();
+
+	/**
+	 * The category utility of the merge of chain element i with chain element i + 1 at position i.
+	 */
+	private final TDoubleList links = new TDoubleArrayList();
+
+	/**
+	 * The category utility of the link between the top of the chain and the first node
+	 * of the last merge. {@code Double.NaN} if there is no such link.
+	 */
+	private double formerTopLink = Double.NaN;
+
+	/**
+	 * The number of performed merges.
+	 */
+	private int numberOfMerges = 0;
+
+	/**
+	 * The number of detected divergences from the greedy merge order.
+	 */
+	private int numberOfDivergences = 0;
+
+	/**
+	 * Finds the open nodes whose attributes changed since the last selection.
+	 */
+	private final AttributeChangeTracker changeTracker = new AttributeChangeTracker();
+
+	/**
+	 * Instantiates a new nearest neighbour chain merge selector.
+	 *
+	 * @param searcher the searcher used to calculate the category utility of
+	 * combinations. Must not cache category utilities itself.
+	 */
+	public NearestNeighbourChainMergeSelector(IMaxCategoryUtilitySearcher searcher) {
+		this(searcher, searcher);
+	}
+
+	/**
+	 * Instantiates a new nearest neighbour chain merge selector with a separate
+	 * searcher for the nearest neighbours, e.g. a {@link UpperBoundTopKMaxCUSearcher}.
+	 *
+	 * @param searcher the searcher used to calculate the category utility of
+	 * combinations. Must not cache category utilities itself.
+	 * @param nearestNeighbourSearcher the searcher used to find the nearest neighbour
+	 * of a node. Must return at least the best combination of the passed combinations,
+	 * thus it may return cached category utilities, e.g. a {@link CachedMaxCUSearcher}.
+	 */
+	public NearestNeighbourChainMergeSelector(IMaxCategoryUtilitySearcher searcher,
+			IMaxCategoryUtilitySearcher nearestNeighbourSearcher) {
+		this.searcher = searcher;
+		this.nearestNeighbourSearcher = nearestNeighbourSearcher;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * The nodes of the returned merge are removed from the chain.
+	 */
+	@Override
+	public IMergeResult selectBestMerge(IClusterSetIndexed<INode> clusterSet) {
+		Logger log = TBLogger.getLogger(getClass().getName());
+		if (clusterSet.size() < 2) return null;
+		long time = System.nanoTime();
+
+		revalidateChain(clusterSet);
+
+		while (true) {
+			if (chain.isEmpty() && ! startChain(clusterSet)) {
+				// the searcher skipped all combinations or an attribute indexed set has no candidates,
+				// e.g. of components without common attributes
+				log.warning("No open node has a combination to evaluate, an arbitrary pair of the "
+						+ clusterSet.size() + " open nodes is merged with category utility 0");
+				INode node = clusterSet.getAnyElement();
+				return new MergeResult(0.0, clusterSet.getCombination(clusterSet.getAllCombinationsIds(node).iterator().next()));
+			}
+
+			int top = chain.size() - 1;
+			INode topNode = chain.get(top);
+			TLongDoubleMap candidates = nearestNeighbourSearcher.getMaxCategoryUtilityMerges(clusterSet.getCombinationsIds(topNode), clusterSet);
+			long nearestId = getBestCombinationId(candidates);
+
+			// reciprocal nearest neighbours are merged, ties are resolved in favour of the previous node
+			if (top > 0 && (nearestId == NO_COMBINATION || links.get(top - 1) >= candidates.get(nearestId))) {
+				INode previousNode = chain.get(top - 1);
+				double utility = links.removeAt(top - 1);
+				formerTopLink = top > 1 ? links.removeAt(top - 2) : Double.NaN;
+				chain.remove(top);
+				chain.remove(top - 1);
+
+				log.info("Time in nearest neighbour chain merge selector: " + (double)(System.nanoTime() - time) / 1000000000.0
+						+ " s, chain length: " + chain.size());
+				return new MergeResult(utility, clusterSet.getCombination(clusterSet.getCombinationId(previousNode, topNode)));
+			}
+
+			if (nearestId == NO_COMBINATION) {
+				// the chain was truncated to a node without candidates
+				truncateChain(top);
+				continue;
+			}
+
+			chain.add(getOther(clusterSet.getCombination(nearestId), topNode));
+			links.add(candidates.get(nearestId));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * Only one merge is selected, the chain finds one pair of reciprocal nearest neighbours at a time.
+	 */
+	@Override
+	public List<IMergeResult> selectBestMerges(IClusterSetIndexed<INode> clusterSet, int maxMerges, double tolerance) {
+		IMergeResult best = selectBestMerge(clusterSet);
+		if (best == null) return Collections.emptyList();
+		return Collections.singletonList(best);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * Checks the reducibility of the category utility for the remaining chain nodes:
+	 * if a chain node has a higher category utility with the new node than with
+	 * its successor, the chain is truncated after this node.
+	 */
+	@Override
+	public void mergePerformed(IMergeResult mergeResult, INode newNode, IClusterSetIndexed<INode> clusterSet) {
+		numberOfMerges++;
+
+		// the combinations of the new node with the chain nodes are checked here
+		if (chain.isEmpty()) {
+			formerTopLink = Double.NaN;
+			return;
+		}
+
+		TLongSet combinationIds = new TLongHashSet(chain.size());
+		long[] chainCombinationIds = new long[chain.size()];
+		for (int i = 0; i < chain.size(); i++) {
+			chainCombinationIds[i] = clusterSet.getCombinationId(chain.get(i), newNode);
+			if (chainCombinationIds[i] != NO_COMBINATION) combinationIds.add(chainCombinationIds[i]);
+		}
+		TLongDoubleMap calculated = searcher.getMaxCategoryUtilityMerges(combinationIds, clusterSet);
+
+		int top = chain.size() - 1;
+		for (int i = 0; i <= top; i++) {
+			if (! calculated.containsKey(chainCombinationIds[i])) continue;
+			double link = i < top ? links.get(i) : formerTopLink;
+			double utility = calculated.get(chainCombinationIds[i]);
+			if (utility > link) {
+				reportDivergence("category utility not reducible, merge of " + chain.get(i).getId()
+						+ " with new node " + newNode.getId() + ": " + utility + " > " + link);
+				truncateChain(i + 1);
+				break;
+			}
+		}
+		formerTopLink = Double.NaN;
+	}
+
+	/**
+	 * Gets the number of detected divergences from the greedy merge order.
+	 *
+	 * @return the number of divergences
+	 */
+	public int getNumberOfDivergences() {
+		return numberOfDivergences;
+	}
+
+	@Override
+	public MergeSelectionStatistics getStatistics() {
+		return new MergeSelectionStatistics(numberOfMerges, numberOfDivergences);
+	}
+
+	/**
+	 * Removes nodes which aren't open anymore from the chain and processes the
+	 * nodes of the passed set whose attributes changed since the last selection.
+	 * The chain is truncated before changed chain nodes and after chain nodes which
+	 * have a higher category utility with a changed node than with their successor.
+	 *
+	 * @param clusterSet the set of open nodes.
+	 */
+	private void revalidateChain(IClusterSetIndexed<INode> clusterSet) {
+		for (int i = 0; i < chain.size(); i++) {
+			if (! clusterSet.contains(chain.get(i))) {
+				truncateChain(i);
+				break;
+			}
+		}
+
+		Set<INode> changedNodes = changeTracker.pollChangedNodes(clusterSet);
+		if (changedNodes.isEmpty() || chain.isEmpty()) return;
+
+		for (int i = 0; i < chain.size(); i++) {
+			if (changedNodes.contains(chain.get(i))) {
+				reportDivergence("attributes of chain node " + chain.get(i).getId() + " changed");
+				truncateChain(i);
+				break;
+			}
+		}
+
+		// a changed node may have become the nearest neighbour of a chain node
+		TLongSet combinationIds = new TLongHashSet();
+		TLongIntMap chainPositions = new TLongIntHashMap();
+		for (int i = 0; i < chain.size() - 1; i++) {
+			for (INode changedNode : changedNodes) {
+				long combinationId = clusterSet.getCombinationId(chain.get(i), changedNode);
+				if (combinationId == NO_COMBINATION) continue;
+				combinationIds.add(combinationId);
+				chainPositions.put(combinationId, i);
+			}
+		}
+		if (combinationIds.isEmpty()) return;
+
+		TLongDoubleMap calculated = searcher.getMaxCategoryUtilityMerges(combinationIds, clusterSet);
+		int truncateAfter = chain.size();
+		TLongDoubleIterator cit = calculated.iterator();
+		for ( int i = calculated.size(); i-- > 0; ) { // faster iteration by avoiding hasNext()
+			cit.advance();
+			int position = chainPositions.get(cit.key());
+			if (position < truncateAfter && cit.value() > links.get(position)) {
+				truncateAfter = position;
+			}
+		}
+		if (truncateAfter < chain.size()) {
+			reportDivergence("changed node became nearer neighbour of chain node " + chain.get(truncateAfter).getId());
+			truncateChain(truncateAfter + 1);
+		}
+	}
+
+	/**
+	 * Starts a new chain with the first open node with a candidate combination and
+	 * its nearest neighbour.
+	 *
+	 * @param clusterSet the set of open nodes.
+	 * @return true if a chain was started, false if no open node has a candidate combination.
+	 */
+	private boolean startChain(IClusterSetIndexed<INode> clusterSet) {
+		for (INode node : clusterSet.getUnmodifiableView()) {
+			TLongDoubleMap candidates = nearestNeighbourSearcher.getMaxCategoryUtilityMerges(clusterSet.getCombinationsIds(node), clusterSet);
+			long nearestId = getBestCombinationId(candidates);
+			if (nearestId == NO_COMBINATION) continue;
+			chain.add(node);
+			chain.add(getOther(clusterSet.getCombination(nearestId), node));
+			links.add(candidates.get(nearestId));
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes all elements at and after the passed position from the chain.
+	 *
+	 * @param size the new size of the chain
+	 */
+	private void truncateChain(int size) {
+		while (chain.size() > size) {
+			chain.remove(chain.size() - 1);
+		}
+		int numberOfLinks = Math.max(0, size - 1);
+		if (links.size() > numberOfLinks) {
+			links.remove(numberOfLinks, links.size() - numberOfLinks);
+		}
+	}
+
+	private void reportDivergence(String reason) {
+		Logger log = TBLogger.getLogger(getClass().getName());
+		numberOfDivergences++;
+		log.warning("Nearest neighbour chain diverges from greedy merge order after merge "
+				+ numberOfMerges + " (divergence " + numberOfDivergences + "): " + reason);
+	}
+
+	/**
+	 * Gets the combination with the highest category utility.
+	 * Equal category utilities are resolved in favour of the smaller combination id.
+	 *
+	 * @return the best combination id or {@code NO_COMBINATION} if the map is empty.
+	 */
+	private static long getBestCombinationId(TLongDoubleMap calculated) {
+		long bestId = NO_COMBINATION;
+		double max = Double.NEGATIVE_INFINITY;
+		TLongDoubleIterator it = calculated.iterator();
+		for ( int i = calculated.size(); i-- > 0; ) { // faster iteration by avoiding hasNext()
+			it.advance();
+			if (it.value() > max || (it.value() == max && it.key() < bestId)) {
+				bestId = it.key();
+				max = it.value();
+			}
+		}
+		return bestId;
+	}
+
+	private static INode getOther(Collection<INode> combination, INode node) {
+		for (INode n : combination) {
+			if (n != node) return n;
+		}
+		return null;
+	}
+
+}
@@ -1,22 +1,29 @@
 package ch.uzh.agglorecommender.clusterer.treesearch;
 
-import gnu.trove.iterator.TIntIterator;
-import gnu.trove.map.TIntDoubleMap;
-import gnu.trove.set.TIntSet;
-import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.map.TLongDoubleMap;
+import gnu.trove.set.TLongSet;
 
 import java.io.Serializable;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.logging.Logger;
 
+import ch.uzh.agglorecommender.clusterer.treecomponent.AttributeSignature;
 import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
 import ch.uzh.agglorecommender.util.TBLogger;
 
-import com.google.common.collect.Sets;
-
+/**
+ * 
+ * Removes the combinations of nodes without a shared numerical attribute
+ * before the decorated searcher calculates their category utility.
+ * <br>
+ * The test intersects the {@link AttributeSignature}s of the nodes, it is cheap
+ * enough to repeat it in each cycle instead of remembering the combinations
+ * with shared attributes.
+ *
+ */
 public class NoCommonAttributeSkipMaxCUSearcher extends MaxCategoryUtilitySearcherDecorator implements Serializable {
 
 	/**
@@ -26,18 +33,7 @@ public class NoCommonAttributeSkipMaxCUSearcher extends MaxCategoryUtilitySearch
 	 * Maintainers must change this value if and only if the new version
 	 * of this class is not compatible with old versions.
 	 */
-	private static final long serialVersionUID = 1L;
-	
-	Set<Collection<INode>> combinationsWithSharedAttributes = new HashSet<Collection<INode>>();
-	
-	/**
-	 *  Keeps track of combinations which have been identified as combinations with shared nodes.
-	 *  These combinations won't be tested on shared attributes in a subsequent clustering cycle again.
-	 *  This means that combination id's contained in this set will never be removed from the 
-	 *  set of combinations passed to @code{getMaxCategoryUtilityMerges} to calculate its
-	 *  category utility by this decorator. 
-	 */
-	TIntSet combinationsIndicesWithSharedAttributes = new TIntHashSet();
+	private static final long serialVersionUID = 2L;
 	
 	public NoCommonAttributeSkipMaxCUSearcher(IMaxCategoryUtilitySearcher decoratedSearcher) {
 		super(decoratedSearcher);
@@ -53,19 +49,15 @@ public class NoCommonAttributeSkipMaxCUSearcher extends MaxCategoryUtilitySearch
 		Iterator<Collection<INode>> i = combinationsToCheck.iterator();
 		while (i.hasNext()) {
 			Collection<INode> l =  i.next();
-			if (combinationsWithSharedAttributes.contains(l)) continue;
 			if (l.size() != 2) continue;
 			
 			Iterator<INode> it = l.iterator();
 			INode first = it.next();
 			INode second = it.next();
-			Set<INode> intersection = Sets.intersection(first.getAttributeKeys(), second.getAttributeKeys());
-			if (intersection.size() == 0) {
+			if (! AttributeSignature.of(first).intersects(AttributeSignature.of(second))) {
 				removedLists++;
 				i.remove();
-			} else {
-				combinationsWithSharedAttributes.add(l);
-			}		
+			}
 		}
 		log.info("Time in NoCommonAttributeSkipDecorator: "
 				+ (double)(System.nanoTime() - time) / 1000000000.0 + " seconds, "
@@ -75,8 +67,8 @@ public class NoCommonAttributeSkipMaxCUSearcher extends MaxCategoryUtilitySearch
 	}
 
 	@Override
-	public TIntDoubleMap getMaxCategoryUtilityMerges(
-			TIntSet combinationIds, IClusterSetIndexed<INode> clusterSet) {
+	public TLongDoubleMap getMaxCategoryUtilityMerges(
+			TLongSet combinationIds, IClusterSetIndexed<INode> clusterSet) {
 		Logger log = TBLogger.getLogger(getClass().getName());
 		long time = System.nanoTime();
 		
@@ -85,36 +77,20 @@ public class NoCommonAttributeSkipMaxCUSearcher extends MaxCategoryUtilitySearch
 		int initCombinationsSize = combinationIds.size();
 		
 		// iterate over the collection of possible combinations
-		TIntIterator iterator = combinationIds.iterator();
+		TLongIterator iterator = combinationIds.iterator();
 		for ( int i = combinationIds.size(); i-- > 0; ) {  // faster iteration by avoiding hasNext()
-			int combination = iterator.next();
-			
-			// skip this combination if nodes are known to have shared attributes
-			if (combinationsIndicesWithSharedAttributes.contains(combination)) continue;
+			long combination = iterator.next();
 			
-			// get the attributes of both nodes of the combination
+			// get the attribute signatures of both nodes of the combination
 			Iterator<INode> it = clusterSet.getCombination(combination).iterator();
-			Set<INode> attFirst = it.next().getAttributeKeys();
-			Set<INode> attSecond = it.next().getAttributeKeys();
+			AttributeSignature attFirst = AttributeSignature.of(it.next());
+			AttributeSignature attSecond = AttributeSignature.of(it.next());
 			
-			// check the nodes of the combinations share an attribute
-			boolean remove = true;
-			for (INode aF : attFirst) {
-				if (attSecond.contains(aF)) {
-					// don't remove combination if nodes share an attribute
-					remove = false;
-					break;
-				}			
-			}
-			 
-			if (remove) {
-				// remove combinations without shared attributes from the collection of possible merges
+			// remove combinations without shared attributes from the collection of possible merges
+			if (! attFirst.intersects(attSecond)) {
 				removedLists++;
 				iterator.remove();
-			} else {
-				// store the combination with a shared attribute for future speed up of this filter
-				combinationsIndicesWithSharedAttributes.add(combination);
-			}		
+			}
 		}
 		log.info("Time in NoCommonAttributeSkipDecorator: "
 				+ (double)(System.nanoTime() - time) / 1000000000.0 + " seconds, "
@@ -1,7 +1,7 @@
 package ch.uzh.agglorecommender.clusterer.treesearch;
 
-import gnu.trove.map.TIntDoubleMap;
-import gnu.trove.set.TIntSet;
+import gnu.trove.map.TLongDoubleMap;
+import gnu.trove.set.TLongSet;
 
 import java.io.Serializable;
 import java.util.Collection;
@@ -31,8 +31,8 @@ public class OptimizedMaxCUSearcher extends MaxCategoryUtilitySearcherDecorator
 	}
 
 	@Override
-	public TIntDoubleMap getMaxCategoryUtilityMerges(
-			TIntSet combinationIds, IClusterSetIndexed<INode> clusterSet) {
+	public TLongDoubleMap getMaxCategoryUtilityMerges(
+			TLongSet combinationIds, IClusterSetIndexed<INode> clusterSet) {
 		// TODO Auto-generated method stub
 		return decoratedSearcher.getMaxCategoryUtilityMerges(combinationIds, clusterSet);
 	}
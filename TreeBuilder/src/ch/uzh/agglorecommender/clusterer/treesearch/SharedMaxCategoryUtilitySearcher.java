@@ -25,7 +25,7 @@ public class SharedMaxCategoryUtilitySearcher extends BasicMaxCategoryUtilitySea
 	private static Logger log = TBLogger.getLogger(SharedMaxCategoryUtilitySearcher.class.getName());
 	
 	ClassitMaxCategoryUtilitySearcher classit = new ClassitMaxCategoryUtilitySearcher();
-	CobwebMaxCategoryUtilitySearcher cobweb = new CobwebMaxCategoryUtilitySearcher();
+	CobwebMaxCategoryUtilitySearcher cobweb = new CobwebMaxCategoryUtilitySearcher(false);
 
 	/**Calculates utility of merging nodes in possibleMerge based on Classit Category Utility formula
 	 * Utility is calculated as follows:
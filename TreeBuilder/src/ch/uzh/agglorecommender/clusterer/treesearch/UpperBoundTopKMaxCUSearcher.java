@@ -0,0 +1,235 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import gnu.trove.iterator.TLongDoubleIterator;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.map.TLongDoubleMap;
+import gnu.trove.map.hash.TLongDoubleHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.util.TBLogger;
+
+/**
+ *
+ * Calculates the category utility only of the combinations which can be
+ * among the k best combinations.
+ * <br>
+ * The combinations are evaluated in the order of the upper bound calculated by
+ * {@link ClassitMaxCategoryUtilitySearcher#calculateUpperBoundOfCategoryUtility(INode, INode)},
+ * in batches of the decorated searcher. The evaluation stops as soon as the upper bound of
+ * the next combination is below the k-th best calculated category utility.
+ * Thus the bound is only valid if the decorated searchers calculate the Classit category utility.
+ * <br>
+ * Pruned combinations are not removed from the passed set of combination ids because
+ * they may be among the best combinations in a subsequent clustering cycle.
+ * Combinations which are removed from the set by the decorated searchers are removed
+ * from the passed set.
+ *
+ */
+public class UpperBoundTopKMaxCUSearcher extends MaxCategoryUtilitySearcherDecorator implements Serializable {
+
+	/**
+	 * Determines if a de-serialized file is compatible with this class.
+	 * <br>
+	 * <br>
+	 * Maintainers must change this value if and only if the new version
+	 * of this class is not compatible with old versions.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The max number of combinations passed to the decorated searcher at once.
+	 * Small batches waste less calculations, large batches keep the workers
+	 * of a parallel searcher busy.
+	 */
+	private static final int BATCH_SIZE = 64;
+
+	/**
+	 * The number of best combinations which are calculated exactly by
+	 * {@link #getMaxCategoryUtilityMerges(TLongSet, IClusterSetIndexed)}.
+	 */
+	private final int k;
+
+	/**
+	 * The number of combinations whose category utility was calculated.
+	 */
+	private long numberOfCalculatedCombinations = 0;
+
+	/**
+	 * The number of combinations which were pruned by their upper bound.
+	 */
+	private long numberOfPrunedCombinations = 0;
+
+	/**
+	 * Instantiates a new decorator which calculates at least the best combination.
+	 *
+	 * @param decoratedSearcher the searcher used to calculate the category utilities.
+	 */
+	public UpperBoundTopKMaxCUSearcher(IMaxCategoryUtilitySearcher decoratedSearcher) {
+		this(decoratedSearcher, 1);
+	}
+
+	/**
+	 * Instantiates a new decorator which calculates at least the k best combinations.
+	 *
+	 * @param decoratedSearcher the searcher used to calculate the category utilities.
+	 * @param k the number of best combinations to calculate, at least 1.
+	 */
+	public UpperBoundTopKMaxCUSearcher(IMaxCategoryUtilitySearcher decoratedSearcher, int k) {
+		super(decoratedSearcher);
+		if (k < 1) {
+			Logger log = TBLogger.getLogger(getClass().getName());
+			log.severe("Err: k must be at least 1 but was " + k + "; in: " + getClass().getSimpleName());
+			System.exit(-1);
+		}
+		this.k = k;
+	}
+
+	/**
+	 * Not supported by the upper bound, all combinations are passed to the decorated searcher.
+	 */
+	@Override
+	public Set<IMergeResult> getMaxCategoryUtilityMerges(
+			Set<Collection<INode>> combinationsToCheck, IClusterSet<INode> clusterSet) {
+		return decoratedSearcher.getMaxCategoryUtilityMerges(combinationsToCheck, clusterSet);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * The returned map contains the k best combinations and all other
+	 * combinations calculated in the same batches.
+	 */
+	@Override
+	public TLongDoubleMap getMaxCategoryUtilityMerges(
+			TLongSet combinationIds, IClusterSetIndexed<INode> clusterSet) {
+		return calculateTopK(combinationIds, clusterSet, k);
+	}
+
+	/**
+	 * Gets the k combinations with the highest category utility, sorted by
+	 * descending category utility. Equal category utilities are sorted by
+	 * ascending combination id.
+	 *
+	 * @param combinationIds the combinations to check, see
+	 * {@link IMaxCategoryUtilitySearcher#getMaxCategoryUtilityMerges(TLongSet, IClusterSetIndexed)}.
+	 * @param clusterSet the set of open nodes.
+	 * @param k the max number of returned merges, at least 1.
+	 * @return the k best merges or less if less combinations were calculated.
+	 */
+	public List<IMergeResult> getTopKMerges(TLongSet combinationIds, IClusterSetIndexed<INode> clusterSet, int k) {
+		TLongDoubleMap calculated = calculateTopK(combinationIds, clusterSet, k);
+		IndexedMaxHeap sorted = new IndexedMaxHeap(calculated.size());
+		TLongDoubleIterator it = calculated.iterator();
+		for ( int i = calculated.size(); i-- > 0; ) { // faster iteration by avoiding hasNext()
+			it.advance();
+			sorted.put(it.key(), it.value());
+		}
+		List<IMergeResult> topK = new ArrayList<IMergeResult>(Math.min(k, sorted.size()));
+		while (topK.size() < k && ! sorted.isEmpty()) {
+			double utility = sorted.peekValue();
+			topK.add(new MergeResult(utility, clusterSet.getCombination(sorted.pollKey())));
+		}
+		return topK;
+	}
+
+	/**
+	 * Gets the number of combinations whose category utility was calculated by
+	 * the decorated searcher since the instantiation of this decorator.
+	 *
+	 * @return the number of calculated combinations
+	 */
+	public long getNumberOfCalculatedCombinations() {
+		return numberOfCalculatedCombinations;
+	}
+
+	/**
+	 * Gets the number of combinations which were pruned by their upper bound
+	 * since the instantiation of this decorator.
+	 *
+	 * @return the number of pruned combinations
+	 */
+	public long getNumberOfPrunedCombinations() {
+		return numberOfPrunedCombinations;
+	}
+
+	private TLongDoubleMap calculateTopK(TLongSet combinationIds, IClusterSetIndexed<INode> clusterSet, int k) {
+		Logger log = TBLogger.getLogger(getClass().getName());
+		long time = System.nanoTime();
+		int initCombinationsSize = combinationIds.size();
+
+		// order the combinations by their upper bound
+		IndexedMaxHeap bounds = new IndexedMaxHeap(combinationIds.size());
+		TLongIterator iterator = combinationIds.iterator();
+		for ( int i = combinationIds.size(); i-- > 0; ) {  // faster iteration by avoiding hasNext()
+			long combination = iterator.next();
+			Iterator<INode> it = clusterSet.getCombination(combination).iterator();
+			bounds.put(combination, ClassitMaxCategoryUtilitySearcher.calculateUpperBoundOfCategoryUtility(it.next(), it.next()));
+		}
+
+		// the k best calculated category utilities in descending order
+		double[] topK = new double[k];
+		Arrays.fill(topK, Double.NEGATIVE_INFINITY);
+
+		TLongDoubleMap calculated = new TLongDoubleHashMap();
+		long[] batchIds = new long[BATCH_SIZE];
+		TLongSet batch = new TLongHashSet(BATCH_SIZE);
+		boolean maxCUFound = false;
+		while (! maxCUFound && ! bounds.isEmpty() && bounds.peekValue() >= topK[k - 1]) {
+			batch.clear();
+			int batchSize = 0;
+			while (batchSize < BATCH_SIZE && ! bounds.isEmpty() && bounds.peekValue() >= topK[k - 1]) {
+				batchIds[batchSize] = bounds.pollKey();
+				batch.add(batchIds[batchSize]);
+				batchSize++;
+			}
+
+			TLongDoubleMap result = decoratedSearcher.getMaxCategoryUtilityMerges(batch, clusterSet);
+			numberOfCalculatedCombinations += result.size();
+			for (int i = 0; i < batchSize; i++) {
+				if (result.containsKey(batchIds[i])) {
+					double utility = result.get(batchIds[i]);
+					calculated.put(batchIds[i], utility);
+					insert(topK, utility);
+				} else if (! batch.contains(batchIds[i])) {
+					// skipped by the decorated searchers
+					combinationIds.remove(batchIds[i]);
+				} else {
+					// the decorated searcher found a combination with the max theoretical category utility
+					maxCUFound = true;
+				}
+			}
+		}
+		numberOfPrunedCombinations += bounds.size();
+
+		log.info("Time in UpperBoundTopKDecorator: "
+				+ (double)(System.nanoTime() - time) / 1000000000.0 + " seconds, "
+				+ "Number of pruned comparisons: " + bounds.size() + " of " + initCombinationsSize);
+		return calculated;
+	}
+
+	/**
+	 * Inserts the passed category utility into the descending array of the best
+	 * category utilities if it is better than the last one.
+	 */
+	private static void insert(double[] topK, double utility) {
+		int position = topK.length - 1;
+		if (! (utility > topK[position])) return;
+		while (position > 0 && utility > topK[position - 1]) {
+			topK[position] = topK[position - 1];
+			position--;
+		}
+		topK[position] = utility;
+	}
+
+}
@@ -23,6 +23,11 @@ public class ExtendedNodeUpdater implements INodeUpdater, Serializable {
 	
 	@Override
 	public void updateNodes(INode newNode, Collection<INode> nodesToUpdate) {
+		updateNodes(newNode, nodesToUpdate, null);
+	}
+	
+	@Override
+	public void updateNodes(INode newNode, Collection<INode> nodesToUpdate, IAttributeChangeListener listener) {
 		Logger log = TBLogger.getLogger(getClass().getName());
 		
 		
@@ -30,11 +35,15 @@ public class ExtendedNodeUpdater implements INodeUpdater, Serializable {
 			// Update Node if it is in collection of nodes that should be updated
 			if (nodesToUpdate.contains(attNode)) {
 				attNode.addNumericalAttribute(newNode, newNode.getNumericalAttributeValue(attNode));
+				if (listener != null) listener.attributeAdded(attNode, newNode);
 				
 				// Remove children of new node from nodes of the other tree
 				Iterator<INode> mergedNodes = newNode.getChildren();
 				while(mergedNodes.hasNext()){
-					attNode.removeNumericalAttribute(mergedNodes.next());
+					INode mergedNode = mergedNodes.next();
+					if (attNode.removeNumericalAttribute(mergedNode) != null && listener != null) {
+						listener.attributeRemoved(attNode, mergedNode);
+					}
 				}
 				log.finest(attNode.toString() + " updated with " + newNode);
 			}
@@ -44,11 +53,15 @@ public class ExtendedNodeUpdater implements INodeUpdater, Serializable {
 			// Update Node if it is in collection of nodes that should be updated
 			if (nodesToUpdate.contains(attNode)) {
 				((INode) attNode).addNominalAttribute(newNode, newNode.getNominalAttributeValue(attNode));
+				if (listener != null) listener.attributeAdded((INode) attNode, newNode);
 				
 				// Remove children of new node from nodes of the other tree
 				Iterator<INode> mergedNodes = newNode.getChildren();
 				while(mergedNodes.hasNext()){
-					((INode) attNode).removeNominalAttribute(mergedNodes.next());
+					INode mergedNode = mergedNodes.next();
+					if (((INode) attNode).removeNominalAttribute(mergedNode) != null && listener != null) {
+						listener.attributeRemoved((INode) attNode, mergedNode);
+					}
 				}
 				log.finest(attNode.toString() + " updated with " + newNode);
 			}
@@ -0,0 +1,25 @@
+package ch.uzh.agglorecommender.clusterer.treeupdate;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+
+/**
+ * Is notified about the attributes which an {@link INodeUpdater} adds to or removes from a node.
+ */
+public interface IAttributeChangeListener {
+
+	/**
+	 * Is called after an attribute was added to a node.
+	 *
+	 * @param node the updated node
+	 * @param attributeKey the key of the added numerical or nominal attribute
+	 */
+	public void attributeAdded(INode node, Object attributeKey);
+
+	/**
+	 * Is called after an attribute was removed from a node.
+	 *
+	 * @param node the updated node
+	 * @param attributeKey the key of the removed numerical or nominal attribute
+	 */
+	public void attributeRemoved(INode node, Object attributeKey);
+}
@@ -18,4 +18,14 @@ public interface INodeUpdater {
 	 * @param nodesToUpdate the set of nodes to update.
 	 */
 	public void updateNodes(INode newNode, Collection<INode> nodesToUpdate); // newNode is the node which resulted from last merge
+	
+	/**
+	 * Updates a set of nodes with a new node and reports each added or removed attribute.
+	 * 
+	 * @param newNode with this node the nodesToUpdate is complemented.
+	 * @param nodesToUpdate the set of nodes to update.
+	 * @param listener is notified about the changed attributes of the nodes in {@code nodesToUpdate}.
+	 * May be null.
+	 */
+	public void updateNodes(INode newNode, Collection<INode> nodesToUpdate, IAttributeChangeListener listener);
 }
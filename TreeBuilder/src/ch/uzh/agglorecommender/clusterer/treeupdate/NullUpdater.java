@@ -22,4 +22,10 @@ public class NullUpdater implements INodeUpdater, Serializable {
 
 	}
 
+	@Override
+	public void updateNodes(INode newNode, Collection<INode> nodesToUpdate, IAttributeChangeListener listener) {
+		// Nothing to do
+
+	}
+
 }
@@ -22,11 +22,17 @@ public class SimpleNodeUpdater implements INodeUpdater, Serializable {
 	
 	@Override
 	public void updateNodes(INode newNode, Collection<INode> nodesToUpdate) {
+		updateNodes(newNode, nodesToUpdate, null);
+	}
+	
+	@Override
+	public void updateNodes(INode newNode, Collection<INode> nodesToUpdate, IAttributeChangeListener listener) {
 		Logger log = TBLogger.getLogger(getClass().getName());
 		
 		for (INode attNode : newNode.getNumericalAttributeKeys()) {
 			if (nodesToUpdate.contains(attNode)) {
 				attNode.addNumericalAttribute(newNode, newNode.getNumericalAttributeValue(attNode));
+				if (listener != null) listener.attributeAdded(attNode, newNode);
 				log.finest(attNode.toString() + " updated with " + newNode);
 			} else {
 //				log.finest(attNode.toString() + " NOT updated with " + newNode);
@@ -36,6 +42,7 @@ public class SimpleNodeUpdater implements INodeUpdater, Serializable {
 		for (Object attNode : newNode.getNominalAttributeKeys()) {
 			if (nodesToUpdate.contains(attNode)) {
 				((INode) attNode).addNominalAttribute(newNode, newNode.getNominalAttributeValue(attNode));
+				if (listener != null) listener.attributeAdded((INode) attNode, newNode);
 				log.finest(attNode.toString() + " updated with " + newNode);
 			} else {
 //				log.finest(attNode.toString() + " NOT updated with " + newNode);
@@ -1,6 +1,9 @@
 package ch.uzh.agglorecommender.datasets;
 
+import java.io.File;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
 
 /**
  * Locates a resource to load within this project.
@@ -20,6 +23,26 @@ public class DatasetLocator {
 		return DatasetLocator.class.getResourceAsStream(dataSetDescriptor);
 	}
 	
+	/**
+	 * Finds the file of a resource with a given name within
+	 * this project.
+	 * @param dataSetDescriptor name of the resource
+	 * @return the file of the resource or {@code null} if no
+	 * resource with this name is found or if the resource is
+	 * not a file, e.g. an entry of a jar.
+	 */
+	public static File getDatasetFile(String dataSetDescriptor) {
+		URL url = DatasetLocator.class.getResource(dataSetDescriptor);
+		if (url == null || ! "file".equals(url.getProtocol())) {
+			return null;
+		}
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException e) {
+			return null;
+		}
+	}
+	
 	/**
 	 * Must not be instantiated.
 	 */
@@ -0,0 +1,35 @@
+package ch.uzh.agglorecommender.util;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ * Holds the single pool of the concurrent tasks of the tree builder, e.g. the
+ * category utility evaluations, the merges of attribute maps and the creation of the leaves.
+ * The tasks share the pool, thus there is at most one worker thread per processor,
+ * tasks which wait for sub tasks help to execute them.
+ *
+ */
+public final class TBForkJoinPool {
+
+	/**
+	 * Holds the pool, which is created on first use.
+	 */
+	private static final class PoolHolder {
+		private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	private TBForkJoinPool() {
+		// static holder
+	}
+
+	/**
+	 * Gets the shared pool.
+	 *
+	 * @return the pool with one worker per available processor
+	 */
+	public static ForkJoinPool getPool() {
+		return PoolHolder.pool;
+	}
+
+}
@@ -167,7 +167,7 @@ public class TBLogger {
      *                          or javax.swing
      * @return a suitable Logger
      */
-	public static Logger getLogger(String name) {
+	public static synchronized Logger getLogger(String name) {
 		
 		// check if a logger for passed name is already initialized
 		if (! loggerMap.containsKey(name)) {
@@ -0,0 +1,178 @@
+package ch.uzh.agglorecommender.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ch.uzh.agglorecommender.client.IDataset.DataSetSplit;
+
+public class DatasetCacheTest {
+
+	@Test
+	public void testRatingsAreLoadedFromCache() throws IOException {
+		File source = createSource("1\t242\t3\t881250949\n22\t377\t1\t878887116\n244\t51\t2\t880606923\n");
+
+		GrouplensDataset parsed = new GrouplensDataset(source, DataSetSplit.TRAINING);
+		File cacheFile = DatasetCache.getCacheFile(source, GrouplensDataset.class);
+		assertTrue(cacheFile.isFile());
+
+		DatasetCache cache = DatasetCache.load(source, GrouplensDataset.class);
+		assertNotNull(cache);
+		assertEquals(3, cache.getColumns().size());
+		assertEquals(881250949L, cache.getColumns().getTimestamp(0));
+		assertEquals(2.0f, cache.getColumns().getRating(2), 0.0f);
+		assertEquals(377, cache.getColumns().getContentId(1));
+
+		GrouplensDataset cached = new GrouplensDataset(source, DataSetSplit.TRAINING);
+		Iterator<IDatasetItem<Integer>> expected = parsed.iterateOverDatasetItems();
+		Iterator<IDatasetItem<Integer>> actual = cached.iterateOverDatasetItems();
+		while (expected.hasNext()) {
+			IDatasetItem<Integer> expectedItem = expected.next();
+			IDatasetItem<Integer> actualItem = actual.next();
+			assertEquals(expectedItem.getUserId(), actualItem.getUserId());
+			assertEquals(expectedItem.getContentId(), actualItem.getContentId());
+			assertEquals(expectedItem.getValue(), actualItem.getValue());
+		}
+		assertTrue(! actual.hasNext());
+		cacheFile.delete();
+	}
+
+	@Test
+	public void testChangedSourceInvalidatesCache() throws IOException {
+		File source = createSource("1\t242\t3\t881250949\n");
+		new GrouplensDataset(source, DataSetSplit.TRAINING);
+		File cacheFile = DatasetCache.getCacheFile(source, GrouplensDataset.class);
+
+		// same content with another modification time is still valid
+		assertTrue(source.setLastModified(source.lastModified() - 10000));
+		assertNotNull(DatasetCache.load(source, GrouplensDataset.class));
+		// and the new modification time is stored, the checksum is not calculated again
+		assertEquals(source.lastModified(), readLastModified(cacheFile));
+
+		FileOutputStream out = new FileOutputStream(source);
+		out.write("1\t242\t4\t881250949\n".getBytes(StandardCharsets.US_ASCII));
+		out.close();
+		assertTrue(source.setLastModified(source.lastModified() - 20000));
+		assertNull(DatasetCache.load(source, GrouplensDataset.class));
+
+		GrouplensDataset reparsed = new GrouplensDataset(source, DataSetSplit.TRAINING);
+		assertEquals(Integer.valueOf(4), reparsed.iterateOverDatasetItems().next().getValue());
+		cacheFile.delete();
+	}
+
+	@Test
+	public void testMetaItemsAreDictionaryEncoded() throws IOException {
+		File source = createSource("1|24|M|technician|85711\n");
+		List<MetaDatasetItem<Map<String, String>>> items = new ArrayList<MetaDatasetItem<Map<String, String>>>();
+		for (int i = 1; i <= 3; i++) {
+			Map<String, String> value = new HashMap<String, String>();
+			value.put("24", "Age");
+			value.put(i % 2 == 0 ? "F" : "M", "Gender");
+			items.add(new MetaDatasetItem<Map<String, String>>(value, i, i));
+		}
+		DatasetCache.store(source, GrouplensDatasetMeta.class, null, MetadataStore.create(items.iterator()));
+
+		DatasetCache cache = DatasetCache.load(source, GrouplensDatasetMeta.class);
+		assertNull(cache.getColumns());
+		assertEquals(3, cache.getMetadata().size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(items.get(i).getContentId(), cache.getMetadata().getDatasetId(i));
+			assertEquals(items.get(i).getValue(), cache.getMetadata().get(items.get(i).getContentId()));
+		}
+		assertNull(DatasetCache.load(source, GrouplensDataset.class));
+		DatasetCache.getCacheFile(source, GrouplensDatasetMeta.class).delete();
+	}
+
+	@Test
+	public void testMetasetUsesStoreOfCache() throws IOException {
+		File source = createSource("1|24|M|technician|85711\n2|53|F|other|94043\n");
+		File cacheFile = DatasetCache.getCacheFile(source, GrouplensDatasetMeta.class);
+
+		GrouplensDatasetMeta parsed = new GrouplensDatasetMeta(source, DataSetSplit.USERMETA);
+		assertTrue(cacheFile.isFile());
+		GrouplensDatasetMeta cached = new GrouplensDatasetMeta(source, DataSetSplit.USERMETA);
+
+		// the meta set passes its store without re-encoding its items
+		MetadataStore store = MetadataStore.of(cached);
+		assertSame(cached.getMetadata(), store);
+		assertEquals(MetadataStore.of(parsed).get(2), store.get(2));
+		assertEquals("Gender", store.get(2).get("F"));
+
+		Iterator<IDatasetItem<Integer>> it = cached.iterateOverDatasetItems();
+		IDatasetItem<Integer> first = it.next();
+		assertEquals(1, first.getContentId());
+		assertEquals(store.get(1), ((MetaDatasetItem<?>) first).getValue());
+		assertEquals(2, it.next().getContentId());
+		assertTrue(! it.hasNext());
+		cacheFile.delete();
+	}
+
+	/**
+	 * A number of ratings whose columns exceed the int range, e.g. of a corrupt cache, is rejected.
+	 */
+	@Test
+	public void testNumberOfRatingsBeyondIntRangeInvalidatesCache() throws IOException {
+		File source = createSource("1\t242\t3\t881250949\n");
+		new GrouplensDataset(source, DataSetSplit.TRAINING);
+		File cacheFile = DatasetCache.getCacheFile(source, GrouplensDataset.class);
+
+		RandomAccessFile file = new RandomAccessFile(cacheFile, "rw");
+		try {
+			file.readInt();
+			file.readInt();
+			file.skipBytes(file.readInt());
+			file.skipBytes(3 * 8);
+			// the byte sizes of the columns overflow an int to 4 and 8, the sizes of one rating
+			file.writeInt((1 << 30) + 1);
+		} finally {
+			file.close();
+		}
+		assertNull(DatasetCache.load(source, GrouplensDataset.class));
+		cacheFile.delete();
+	}
+
+	/**
+	 * Reads the source modification time from the header of a cache file.
+	 */
+	private static long readLastModified(File cacheFile) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(cacheFile));
+		try {
+			in.readInt();
+			in.readInt();
+			in.skipBytes(in.readInt());
+			in.readLong();
+			return in.readLong();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static File createSource(String content) throws IOException {
+		File directory = Files.createTempDirectory("datasetcache").toFile();
+		directory.deleteOnExit();
+		File source = new File(directory, "u.data");
+		source.deleteOnExit();
+		Files.write(source.toPath(), Collections.singletonList(content.trim()), StandardCharsets.US_ASCII);
+		return source;
+	}
+
+}
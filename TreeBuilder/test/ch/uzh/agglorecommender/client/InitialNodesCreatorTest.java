@@ -0,0 +1,139 @@
+package ch.uzh.agglorecommender.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.ClassitTreeComponentFactory;
+import ch.uzh.agglorecommender.clusterer.treecomponent.IAttribute;
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.TreeComponentFactory;
+
+public class InitialNodesCreatorTest {
+
+	/**
+	 * A data set of user id, content id and rating triples.
+	 */
+	private static class ItemDataset implements IDataset<Integer> {
+
+		private final List<IDatasetItem<Integer>> items = new ArrayList<IDatasetItem<Integer>>();
+
+		private ItemDataset(int[][] ratings) {
+			for (int[] rating : ratings) {
+				items.add(new SimpleDatasetItem<Integer>(rating[2], rating[0], rating[1]));
+			}
+		}
+
+		@Override
+		public Iterator<IDatasetItem<Integer>> iterateOverDatasetItems() {
+			return items.iterator();
+		}
+
+		@Override
+		public INormalizer<Integer> getNormalizer() {
+			return new IntegerNormalizer(1, 5);
+		}
+	}
+
+	private static final int[][] RATINGS = {
+		{ 7, 100, 5 }, { 7, 2000, 1 }, { 3, 100, 3 }, { 3, 42, 4 }, { 12, 2000, 2 }
+	};
+
+	@Test
+	public void testLeavesFromItems() {
+		IDataset<Integer> dataset = new ItemDataset(RATINGS);
+		InitialNodesCreator creator = create(dataset);
+
+		assertEquals(3, creator.getUserLeaves().size());
+		assertEquals(3, creator.getContentLeaves().size());
+		assertEquals(3, (int) creator.getUserLeaves().keySet().iterator().next());
+
+		INode user = creator.getUserLeaves().get(7);
+		assertEquals(2, user.getNumericalAttributeKeys().size());
+		assertRating(dataset, 5, user.getNumericalAttributeValue(creator.getContentLeaves().get(100)));
+		assertRating(dataset, 1, user.getNumericalAttributeValue(creator.getContentLeaves().get(2000)));
+
+		INode content = creator.getContentLeaves().get(2000);
+		assertEquals(2, content.getNumericalAttributeKeys().size());
+		assertRating(dataset, 1, content.getNumericalAttributeValue(creator.getUserLeaves().get(7)));
+		assertRating(dataset, 2, content.getNumericalAttributeValue(creator.getUserLeaves().get(12)));
+		assertNull(content.getNumericalAttributeValue(creator.getUserLeaves().get(3)));
+	}
+
+	@Test
+	public void testLeavesFromRatingCursor() {
+		IDataset<Integer> dataset = new UserFilteredDataset<Integer>(new ItemDataset(RATINGS), new TIntHashSet(new int[] { 3, 12 }));
+		InitialNodesCreator creator = create(dataset);
+
+		assertEquals(2, creator.getUserLeaves().size());
+		assertEquals(3, creator.getContentLeaves().size());
+		INode content = creator.getContentLeaves().get(100);
+		assertEquals(1, content.getNumericalAttributeKeys().size());
+		assertRating(dataset, 3, content.getNumericalAttributeValue(creator.getUserLeaves().get(3)));
+	}
+
+	@Test
+	public void testLeavesInParallel() {
+		int[][] ratings = new int[3000][];
+		for (int i = 0; i < ratings.length; i++) {
+			ratings[i] = new int[] { i % 1000, i / 1000 * 100 + i % 100, 1 + i % 5 };
+		}
+		// a repeated rating replaces the previous one
+		ratings[2000] = new int[] { 0, 0, 2 };
+		IDataset<Integer> dataset = new ItemDataset(ratings);
+		InitialNodesCreator creator = create(dataset);
+
+		assertEquals(1000, creator.getUserLeaves().size());
+		assertEquals(300, creator.getContentLeaves().size());
+		for (int[] rating : ratings) {
+			INode user = creator.getUserLeaves().get(rating[0]);
+			INode content = creator.getContentLeaves().get(rating[1]);
+			int expected = rating == ratings[0] ? 2 : rating[2];
+			assertRating(dataset, expected, user.getNumericalAttributeValue(content));
+			assertRating(dataset, expected, content.getNumericalAttributeValue(user));
+		}
+		assertEquals(2, creator.getUserLeaves().get(0).getNumericalAttributeKeys().size());
+	}
+
+	private static InitialNodesCreator create(IDataset<Integer> dataset) {
+		Map<String, String> meta = new HashMap<String, String>();
+		meta.put("24", "Age");
+		final List<IDatasetItem<Integer>> metaItems = new ArrayList<IDatasetItem<Integer>>();
+		metaItems.add(cast(new MetaDatasetItem<Map<String, String>>(meta, -1, -1)));
+		IDataset<Integer> metaset = new IDataset<Integer>() {
+
+			@Override
+			public Iterator<IDatasetItem<Integer>> iterateOverDatasetItems() {
+				return Collections.unmodifiableList(metaItems).iterator();
+			}
+
+			@Override
+			public INormalizer<Integer> getNormalizer() {
+				return null;
+			}
+		};
+		TreeComponentFactory factory = ClassitTreeComponentFactory.getInstance();
+		return new InitialNodesCreator(dataset, metaset, metaset, factory, factory);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static IDatasetItem<Integer> cast(MetaDatasetItem item) {
+		return item;
+	}
+
+	private static void assertRating(IDataset<Integer> dataset, int rating, IAttribute attribute) {
+		assertEquals(1, attribute.getSupport());
+		assertEquals(dataset.getNormalizer().normalizeRating(rating), attribute.getSumOfRatings(), 1e-9);
+	}
+
+}
@@ -0,0 +1,151 @@
+package ch.uzh.agglorecommender.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class MetadataStoreTest {
+
+	/**
+	 * A meta set of the passed records, the content id of each item is its data set id.
+	 */
+	private static class Metaset implements IDataset<Integer> {
+
+		private final List<IDatasetItem<Integer>> items = new ArrayList<IDatasetItem<Integer>>();
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private void add(int datasetId, Map<String, String> record) {
+			IDatasetItem item = new MetaDatasetItem<Map<String, String>>(record, -1, datasetId);
+			items.add(item);
+		}
+
+		@Override
+		public Iterator<IDatasetItem<Integer>> iterateOverDatasetItems() {
+			return items.iterator();
+		}
+
+		@Override
+		public INormalizer<Integer> getNormalizer() {
+			return null;
+		}
+	}
+
+	private static Map<String, String> record(String... keysAndValues) {
+		Map<String, String> record = new HashMap<String, String>();
+		for (int i = 0; i < keysAndValues.length; i += 2) {
+			record.put(keysAndValues[i], keysAndValues[i + 1]);
+		}
+		return record;
+	}
+
+	private static Metaset createMetaset() {
+		Metaset metaset = new Metaset();
+		metaset.add(3, record("24", "Age", "M", "Gender", "technician", "Occupation"));
+		metaset.add(1, record("53", "Age", "F", "Gender", "other", "Occupation"));
+		metaset.add(3, record("99", "Age"));
+		metaset.add(7, record("Toy Story (1995)", "Title", "Z\u00fcrich", null));
+		return metaset;
+	}
+
+	@Test
+	public void testLookup() {
+		MetadataStore store = MetadataStore.of(createMetaset());
+
+		assertEquals(4, store.size());
+		assertEquals(3, store.getDatasetId(0));
+		assertEquals(record("53", "Age", "F", "Gender", "other", "Occupation"), store.get(1));
+		// the first record of an id is found
+		assertEquals(record("24", "Age", "M", "Gender", "technician", "Occupation"), store.get(3));
+		assertEquals(record("Toy Story (1995)", "Title", "Z\u00fcrich", null), store.get(7));
+		assertTrue(store.contains(7));
+		assertFalse(store.contains(2));
+		assertNull(store.get(2));
+	}
+
+	@Test
+	public void testEmptyStore() {
+		MetadataStore store = MetadataStore.of(null);
+
+		assertEquals(0, store.size());
+		assertNull(store.get(0));
+	}
+
+	/**
+	 * Writes the passed store to a buffer and reads it from there, as from a mapped cache.
+	 */
+	private static MetadataStore writeAndMap(MetadataStore store) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(42);
+		store.write(out);
+		out.writeInt(43);
+		out.close();
+
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		assertEquals(42, buffer.getInt());
+		MetadataStore mapped = MetadataStore.map(buffer);
+		// the position is advanced behind the store
+		assertEquals(43, buffer.getInt());
+		return mapped;
+	}
+
+	@Test
+	public void testWriteAndMap() throws IOException {
+		MetadataStore store = MetadataStore.of(createMetaset());
+		MetadataStore mapped = writeAndMap(store);
+		assertEquals(store.size(), mapped.size());
+		for (int i = 0; i < store.size(); i++) {
+			int datasetId = store.getDatasetId(i);
+			assertEquals(datasetId, mapped.getDatasetId(i));
+			assertEquals(store.get(datasetId), mapped.get(datasetId));
+		}
+		assertNull(mapped.get(2));
+	}
+
+	@Test
+	public void testConcurrentReads() throws Exception {
+		Metaset metaset = new Metaset();
+		for (int i = 0; i < 1000; i++) {
+			metaset.add(i, record(Integer.toString(i % 80), "Age", "user " + i, "Name"));
+		}
+		final MetadataStore mapped = writeAndMap(MetadataStore.of(metaset));
+
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		Thread[] readers = new Thread[4];
+		for (int t = 0; t < readers.length; t++) {
+			readers[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 999; i >= 0; i--) {
+							assertEquals(record(Integer.toString(i % 80), "Age", "user " + i, "Name"), mapped.get(i));
+						}
+					} catch (Throwable e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+					}
+				}
+			};
+			readers[t].start();
+		}
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		assertTrue(failures.toString(), failures.isEmpty());
+	}
+
+}
@@ -0,0 +1,64 @@
+package ch.uzh.agglorecommender.client;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class RatingColumnsTest {
+
+	private static final String LINES =
+			"1\t242\t3\t881250949\n"
+			+ "userId,movieId,rating,timestamp\n"
+			+ "22,377,1.5,878887116\r\n"
+			+ "\n"
+			+ "244::51::2::880606923\n"
+			+ "166\t346\t1";
+
+	@Test
+	public void testLoadFile() throws IOException {
+		File file = File.createTempFile("ratings", ".data");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(LINES.getBytes(StandardCharsets.US_ASCII));
+		out.close();
+
+		assertColumns(RatingColumns.load(new FileInputStream(file)));
+	}
+
+	@Test
+	public void testLoadStream() throws IOException {
+		assertColumns(RatingColumns.load(new ByteArrayInputStream(LINES.getBytes(StandardCharsets.US_ASCII))));
+	}
+
+	private void assertColumns(RatingColumns columns) {
+		assertEquals(4, columns.size());
+
+		assertEquals(1, columns.getUserId(0));
+		assertEquals(242, columns.getContentId(0));
+		assertEquals(3.0f, columns.getRating(0), 0.0f);
+		assertEquals(881250949L, columns.getTimestamp(0));
+
+		assertEquals(22, columns.getUserId(1));
+		assertEquals(377, columns.getContentId(1));
+		assertEquals(1.5f, columns.getRating(1), 1e-6f);
+		assertEquals(878887116L, columns.getTimestamp(1));
+
+		assertEquals(244, columns.getUserId(2));
+		assertEquals(51, columns.getContentId(2));
+		assertEquals(2.0f, columns.getRating(2), 0.0f);
+
+		// the last line has neither a time stamp nor a line break
+		assertEquals(166, columns.getUserId(3));
+		assertEquals(346, columns.getContentId(3));
+		assertEquals(1.0f, columns.getRating(3), 0.0f);
+		assertEquals(0L, columns.getTimestamp(3));
+	}
+
+}
@@ -0,0 +1,264 @@
+package ch.uzh.agglorecommender.clusterer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.uzh.agglorecommender.client.ClusterResult;
+import ch.uzh.agglorecommender.client.IDataset;
+import ch.uzh.agglorecommender.client.IDatasetItem;
+import ch.uzh.agglorecommender.client.INormalizer;
+import ch.uzh.agglorecommender.client.InitialNodesCreator;
+import ch.uzh.agglorecommender.client.IntegerNormalizer;
+import ch.uzh.agglorecommender.client.MetaDatasetItem;
+import ch.uzh.agglorecommender.client.MetadataStore;
+import ch.uzh.agglorecommender.client.SerializableRMOperatorDescription;
+import ch.uzh.agglorecommender.client.SimpleDatasetItem;
+import ch.uzh.agglorecommender.clusterer.treecomponent.ClassitTreeComponentFactory;
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.TreeComponentFactory;
+import ch.uzh.agglorecommender.clusterer.treesearch.BasicMaxCategoryUtilitySearcher;
+import ch.uzh.agglorecommender.clusterer.treesearch.ClassitMaxCategoryUtilitySearcher;
+import ch.uzh.agglorecommender.clusterer.treesearch.EMergeSelection;
+import ch.uzh.agglorecommender.clusterer.treeupdate.ExtendedNodeUpdater;
+
+public class TreeBuilderTest {
+
+	/**
+	 * The result of the pipelined clustering only depends on the number of merges
+	 * per barrier, not on the scheduling of the user and the content thread.
+	 */
+	@Test
+	public void testPipelinedClusteringIsDeterministic() {
+		IDataset<Integer> dataset = createDataset(40, 25, 0.2, new Random(17));
+		for (int mergesPerBarrier : new int[] { 1, 3, 10 }) {
+			String[] first = cluster(dataset, mergesPerBarrier);
+			String[] second = cluster(dataset, mergesPerBarrier);
+			assertEquals("user tree, merges per barrier: " + mergesPerBarrier, first[0], second[0]);
+			assertEquals("content tree, merges per barrier: " + mergesPerBarrier, first[1], second[1]);
+		}
+	}
+
+	/**
+	 * The nearest neighbour chain caches its searches, with a cache which evicts
+	 * most entries the trees converge as well.
+	 */
+	@Test
+	public void testNearestNeighbourChainConvergesWithSmallCache() {
+		IDataset<Integer> dataset = createDataset(30, 20, 0.3, new Random(11));
+		String[] trees = cluster(dataset, new ClusteringSettings()
+				.setMergeSelection(EMergeSelection.NearestNeighbourChain)
+				.setCacheBytes(1024)
+				.setVisualization(false));
+		for (int id = 0; id < 30; id++) {
+			assertTrue(trees[0].matches(".*\\b" + id + "\\b.*"));
+		}
+	}
+
+	/**
+	 * A heap merge selector selects no merge if all category utilities are NaN,
+	 * the pipelined clustering must fail instead of repeating empty rounds.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testRoundWithoutMergesFails() {
+		SerializableRMOperatorDescription.setOperatorDescription("groupKey", "key", "iconName");
+		TreeComponentFactory factory = ClassitTreeComponentFactory.getInstance();
+		TreeBuilder treeBuilder = new TreeBuilder(
+				new NaNSearcher(),
+				new NaNSearcher(),
+				factory,
+				factory,
+				new ExtendedNodeUpdater(),
+				new ClusteringSettings()
+						.setMergesPerBarrier(2)
+						.setVisualization(false));
+		InitialNodesCreator leafNodes = new InitialNodesCreator(
+				createDataset(6, 5, 0.8, new Random(3)), (IDataset<?>) null, (IDataset<?>) null, factory, factory);
+		treeBuilder.startClustering(null, leafNodes);
+	}
+
+	/**
+	 * The meta data of the leaves are not serialized, they are attached again after the de-serialization.
+	 */
+	@Test
+	public void testMetadataIsAttachedAfterDeserialization() throws IOException, ClassNotFoundException {
+		SerializableRMOperatorDescription.setOperatorDescription("groupKey", "key", "iconName");
+		TreeComponentFactory factory = ClassitTreeComponentFactory.getInstance();
+		MetadataStore contentMetadata = MetadataStore.of(null);
+		MetadataStore userMetadata = MetadataStore.of(createUserMetaset(10));
+		// the leaves are clustered without nominal attributes, the meta data are attached afterwards
+		TreeBuilder treeBuilder = new TreeBuilder(
+				new ClassitMaxCategoryUtilitySearcher(),
+				new ClassitMaxCategoryUtilitySearcher(),
+				factory,
+				factory,
+				new ExtendedNodeUpdater(),
+				new ClusteringSettings().setVisualization(false));
+		InitialNodesCreator leafNodes = new InitialNodesCreator(
+				createDataset(10, 8, 0.5, new Random(5)), contentMetadata, contentMetadata, factory, factory);
+		ClusterResult result = treeBuilder.startClustering(null, leafNodes);
+		treeBuilder.attachMetadata(contentMetadata, userMetadata);
+		assertEquals(userMetadata.get(3), result.getUserTreeLeavesMap().get(3).getMeta());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(treeBuilder);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		TreeBuilder resumed = (TreeBuilder) in.readObject();
+		in.close();
+
+		ClusterResult resumedResult = resumed.resumeClustering(null);
+		assertNull(resumedResult.getUserTreeLeavesMap().get(3).getMeta());
+		resumed.attachMetadata(contentMetadata, userMetadata);
+		for (INode leaf : resumedResult.getUserTreeLeavesMap().values()) {
+			assertNotNull(leaf.getMeta());
+			assertEquals(userMetadata.get((int) leaf.getDatasetId()), leaf.getMeta());
+		}
+	}
+
+	/**
+	 * Clusters the passed data set in pipelined mode.
+	 *
+	 * @return the user tree and the content tree in canonical form, see {@link #toCanonicalString(INode)}
+	 */
+	private static String[] cluster(IDataset<Integer> dataset, int mergesPerBarrier) {
+		return cluster(dataset, new ClusteringSettings()
+				.setMergesPerBarrier(mergesPerBarrier)
+				.setVisualization(false));
+	}
+
+	/**
+	 * Clusters the passed data set with the passed settings.
+	 *
+	 * @return the user tree and the content tree in canonical form, see {@link #toCanonicalString(INode)}
+	 */
+	private static String[] cluster(IDataset<Integer> dataset, ClusteringSettings settings) {
+		SerializableRMOperatorDescription.setOperatorDescription("groupKey", "key", "iconName");
+		TreeComponentFactory factory = ClassitTreeComponentFactory.getInstance();
+		TreeBuilder treeBuilder = new TreeBuilder(
+				new ClassitMaxCategoryUtilitySearcher(),
+				new ClassitMaxCategoryUtilitySearcher(),
+				factory,
+				factory,
+				new ExtendedNodeUpdater(),
+				settings);
+		InitialNodesCreator leafNodes = new InitialNodesCreator(dataset, (IDataset<?>) null, (IDataset<?>) null, factory, factory);
+		ClusterResult result = treeBuilder.startClustering(null, leafNodes);
+
+		assertNotNull(result.getUserTreeRoot());
+		assertNotNull(result.getContentTreeRoot());
+		return new String[] { toCanonicalString(result.getUserTreeRoot()), toCanonicalString(result.getContentTreeRoot()) };
+	}
+
+	/**
+	 * Gets a representation of the tree which only depends on its structure
+	 * and on the data set ids of its leaves, not on the ids of the nodes.
+	 */
+	private static String toCanonicalString(INode node) {
+		if (node.isLeaf()) {
+			return String.valueOf(node.getDatasetId());
+		}
+		List<String> children = new ArrayList<String>();
+		Iterator<INode> it = node.getChildren();
+		while (it.hasNext()) {
+			children.add(toCanonicalString(it.next()));
+		}
+		Collections.sort(children);
+		return children.toString();
+	}
+
+	/**
+	 * Calculates a category utility of NaN for each combination.
+	 */
+	private static class NaNSearcher extends BasicMaxCategoryUtilitySearcher {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected double calculateCategoryUtility(Collection<INode> possibleMerge) {
+			return Double.NaN;
+		}
+
+		@Override
+		protected double getMaxTheoreticalPossibleCategoryUtility() {
+			return Double.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Creates a meta set of the gender of each user.
+	 */
+	private static IDataset<Integer> createUserMetaset(int numberOfUsers) {
+		final List<IDatasetItem<Integer>> items = new ArrayList<IDatasetItem<Integer>>();
+		for (int user = 0; user < numberOfUsers; user++) {
+			Map<String, String> record = new HashMap<String, String>();
+			record.put(user % 2 == 0 ? "F" : "M", "Gender");
+			add(items, new MetaDatasetItem<Map<String, String>>(record, user, user));
+		}
+		return new IDataset<Integer>() {
+
+			@Override
+			public Iterator<IDatasetItem<Integer>> iterateOverDatasetItems() {
+				return items.iterator();
+			}
+
+			@Override
+			public INormalizer<Integer> getNormalizer() {
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Adds a meta item, meta sets store their items as raw type.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static void add(List<IDatasetItem<Integer>> items, IDatasetItem item) {
+		items.add(item);
+	}
+
+	/**
+	 * Creates a data set in which each user rates each content with the passed probability.
+	 */
+	private static IDataset<Integer> createDataset(int numberOfUsers, int numberOfContents, double density, Random random) {
+		final List<IDatasetItem<Integer>> items = new ArrayList<IDatasetItem<Integer>>();
+		for (int user = 0; user < numberOfUsers; user++) {
+			for (int content = 0; content < numberOfContents; content++) {
+				if (random.nextDouble() < density) {
+					items.add(new SimpleDatasetItem<Integer>(1 + random.nextInt(5), user, content));
+				}
+			}
+		}
+		return new IDataset<Integer>() {
+
+			@Override
+			public Iterator<IDatasetItem<Integer>> iterateOverDatasetItems() {
+				return Collections.unmodifiableList(items).iterator();
+			}
+
+			@Override
+			public INormalizer<Integer> getNormalizer() {
+				return new IntegerNormalizer(1, 5);
+			}
+		};
+	}
+
+}
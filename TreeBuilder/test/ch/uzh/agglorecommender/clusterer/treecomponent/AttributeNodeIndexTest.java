@@ -0,0 +1,53 @@
+package ch.uzh.agglorecommender.clusterer.treecomponent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.Test;
+
+public class AttributeNodeIndexTest {
+
+	@Test
+	public void testIdIsOwnedByFirstNode() {
+		AttributeNodeIndex index = AttributeNodeIndex.current();
+		INode owner = new Node(ENodeType.Content, 0, null);
+		INode other = new Node(ENodeType.Content, 1, null);
+		int id = (int) owner.getId();
+		assertTrue(index.register(id, owner));
+		assertTrue(index.register(id, owner));
+		assertFalse(index.register(id, other));
+		assertSame(owner, index.get(id));
+	}
+
+	/**
+	 * The index is shared by the maps and released with the last map.
+	 */
+	@Test
+	public void testIndexIsReleasedWithLastMap() throws InterruptedException {
+		INode attribute = new Node(ENodeType.Content, 0, null);
+		ClassitAttributeMap map = new ClassitAttributeMap(4);
+		map.put(attribute, new ClassitAttribute(1, 2.0, 4.0));
+		WeakReference<AttributeNodeIndex> index = new WeakReference<AttributeNodeIndex>(AttributeNodeIndex.current());
+		assertSame(attribute, index.get().get((int) attribute.getId()));
+
+		// the nodes of the map stay registered as long as the map is referenced
+		System.gc();
+		assertSame(index.get(), AttributeNodeIndex.current());
+		assertEquals(1, map.getSupport(0));
+		assertSame(attribute, map.getAttributeKey(0));
+
+		map = null;
+		for (int i = 0; i < 100 && index.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(index.get());
+		assertNull(AttributeNodeIndex.current().get((int) attribute.getId()));
+	}
+
+}
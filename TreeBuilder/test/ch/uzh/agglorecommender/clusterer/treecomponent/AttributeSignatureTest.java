@@ -0,0 +1,112 @@
+package ch.uzh.agglorecommender.clusterer.treecomponent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class AttributeSignatureTest {
+
+	private final TreeComponentFactory factory = ClassitTreeComponentFactory.getInstance();
+
+	@Test
+	public void testSignaturesEqualSetIntersection() {
+		Random random = new Random(7);
+		List<INode> attributes = TestNodes.createAttributeNodes(300);
+
+		for (int run = 0; run < 50; run++) {
+			List<Map<INode, IAttribute>> attMaps = new ArrayList<Map<INode, IAttribute>>();
+			List<INode> nodes = new ArrayList<INode>();
+			for (int n = 0; n < 2; n++) {
+				// sparse and dense nodes
+				double density = random.nextDouble() * random.nextDouble();
+				Map<INode, IAttribute> attMap = new HashMap<INode, IAttribute>();
+				for (INode attribute : attributes) {
+					if (random.nextDouble() < density) {
+						attMap.put(attribute, factory.createNumericAttribute(1.0));
+					}
+				}
+				attMaps.add(attMap);
+				INode node = new Node(ENodeType.User, n, null);
+				node.setNumericalAttributes(random.nextBoolean() ? factory.createNumericalAttributeMap(attMap) : attMap);
+				nodes.add(node);
+			}
+
+			int shared = 0;
+			for (INode attribute : attMaps.get(0).keySet()) {
+				if (attMaps.get(1).containsKey(attribute)) shared++;
+			}
+			AttributeSignature first = AttributeSignature.of(nodes.get(0));
+			AttributeSignature second = AttributeSignature.of(nodes.get(1));
+			assertTrue(first.isExact());
+			assertEquals(attMaps.get(0).size(), first.cardinality());
+			assertEquals(shared, first.intersectionCardinality(second));
+			assertEquals(shared, second.intersectionCardinality(first));
+			assertEquals(shared > 0, first.intersects(second));
+		}
+	}
+
+	@Test
+	public void testSignatureIsCachedUntilAttributesChange() {
+		List<INode> attributes = TestNodes.createAttributeNodes(3);
+		Node node = new Node(ENodeType.User, 0, null);
+		Map<INode, IAttribute> attMap = new HashMap<INode, IAttribute>();
+		attMap.put(attributes.get(0), factory.createNumericAttribute(1.0));
+		node.setNumericalAttributes(attMap);
+		AttributeSignature signature = node.getAttributeSignature();
+		assertSame(signature, node.getAttributeSignature());
+
+		attMap = new HashMap<INode, IAttribute>(attMap);
+		attMap.put(attributes.get(2), factory.createNumericAttribute(1.0));
+		node.setNumericalAttributes(attMap);
+		assertNotSame(signature, node.getAttributeSignature());
+		assertEquals(2, node.getAttributeSignature().cardinality());
+	}
+
+	@Test
+	public void testDuplicateIdsAreNotExact() {
+		List<INode> attributes = TestNodes.createAttributeNodes(2);
+		attributes.get(1).setId(attributes.get(0).getId());
+		Node node = new Node(ENodeType.User, 0, null);
+		Map<INode, IAttribute> attMap = new HashMap<INode, IAttribute>();
+		for (INode attribute : attributes) {
+			attMap.put(attribute, factory.createNumericAttribute(1.0));
+		}
+		node.setNumericalAttributes(attMap);
+		assertFalse(node.getAttributeSignature().isExact());
+		assertEquals(1, node.getAttributeSignature().cardinality());
+	}
+
+	/**
+	 * Nodes which share an attribute without a bit are not skipped.
+	 */
+	@Test
+	public void testAttributesWithoutBitMayIntersect() {
+		List<INode> attributes = TestNodes.createAttributeNodes(2);
+		attributes.get(0).setId(-1);
+		attributes.get(1).setId((long) Integer.MAX_VALUE + 1);
+		for (INode attribute : attributes) {
+			Map<INode, IAttribute> attMap = new HashMap<INode, IAttribute>();
+			attMap.put(attribute, factory.createNumericAttribute(1.0));
+			Node first = new Node(ENodeType.User, 0, null);
+			first.setNumericalAttributes(attMap);
+			Node second = new Node(ENodeType.User, 1, null);
+			second.setNumericalAttributes(new HashMap<INode, IAttribute>(attMap));
+
+			assertFalse(first.getAttributeSignature().isExact());
+			assertEquals(0, first.getAttributeSignature().cardinality());
+			assertTrue(first.getAttributeSignature().intersects(second.getAttributeSignature()));
+			assertTrue(second.getAttributeSignature().intersects(first.getAttributeSignature()));
+		}
+	}
+
+}
@@ -0,0 +1,187 @@
+package ch.uzh.agglorecommender.clusterer.treecomponent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.uzh.agglorecommender.clusterer.treesearch.ClassitMaxCategoryUtilitySearcher;
+
+public class ClassitAttributeMapTest {
+
+	private final TreeComponentFactory factory = ClassitTreeComponentFactory.getInstance();
+
+	@Test
+	public void testMapOperations() {
+		List<INode> attributes = TestNodes.createAttributeNodes(5);
+		ClassitAttributeMap map = new ClassitAttributeMap(2);
+
+		// insert in descending id order to test the sorted insertion
+		for (int i = attributes.size() - 1; i >= 0; i--) {
+			assertNull(map.put(attributes.get(i), factory.createNumericAttribute(i)));
+		}
+		assertEquals(5, map.size());
+		for (int i = 0; i < map.getNumberOfColumnEntries() - 1; i++) {
+			assertTrue(map.getAttributeId(i) < map.getAttributeId(i + 1));
+		}
+		assertEquals(3.0, map.get(attributes.get(3)).getSumOfRatings(), 0.0);
+
+		map.put(attributes.get(3), new ClassitAttribute(2, 5.0, 13.0));
+		assertEquals(5, map.size());
+		assertEquals(2, map.get(attributes.get(3)).getSupport());
+
+		assertEquals(1.0, map.remove(attributes.get(1)).getSumOfRatings(), 0.0);
+		assertFalse(map.containsKey(attributes.get(1)));
+		assertEquals(4, map.keySet().size());
+		assertTrue(map.isColumnar());
+	}
+
+	@Test
+	public void testOverflowForOtherAttributeTypes() {
+		List<INode> attributes = TestNodes.createAttributeNodes(2);
+		ClassitAttributeMap map = new ClassitAttributeMap(2);
+		map.put(attributes.get(0), factory.createNumericAttribute(1.0));
+		map.put(attributes.get(1), CobwebTreeComponentFactory.getInstance().createNumericAttribute(1.0));
+
+		assertEquals(2, map.size());
+		assertFalse(map.isColumnar());
+		assertTrue(map.get(attributes.get(1)) instanceof CobwebAttribute);
+	}
+
+	@Test
+	public void testOverflowForIdOwnedByOtherNode() {
+		List<INode> attributes = TestNodes.createAttributeNodes(2);
+		ClassitAttributeMap map = new ClassitAttributeMap(2);
+		map.put(attributes.get(0), factory.createNumericAttribute(1.0));
+
+		// ids are not unique after de-serialization
+		INode sameId = new Node(ENodeType.Content, 7, null);
+		sameId.setId(attributes.get(0).getId());
+		map.put(sameId, factory.createNumericAttribute(3.0));
+
+		assertEquals(2, map.size());
+		assertFalse(map.isColumnar());
+		assertEquals(1.0, map.get(attributes.get(0)).getSumOfRatings(), 0.0);
+		assertEquals(3.0, map.get(sameId).getSumOfRatings(), 0.0);
+		assertEquals(new HashMap<INode, IAttribute>(map).keySet(), map.keySet());
+	}
+
+	@Test
+	public void testSerializationKeepsAttributeNodes() throws IOException, ClassNotFoundException {
+		List<INode> attributes = TestNodes.createAttributeNodes(5);
+		ClassitAttributeMap map = new ClassitAttributeMap(8);
+		for (int i = 0; i < attributes.size(); i++) {
+			map.put(attributes.get(i), factory.createNumericAttribute(i + 1.0));
+		}
+		List<Object> written = new ArrayList<Object>();
+		written.add(attributes);
+		written.add(map);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(written);
+		out.close();
+		List<?> read = (List<?>) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		List<?> readAttributes = (List<?>) read.get(0);
+		ClassitAttributeMap readMap = (ClassitAttributeMap) read.get(1);
+
+		// the ids of the read nodes are owned by the nodes of this process
+		assertEquals(5, readMap.size());
+		assertFalse(readMap.isColumnar());
+		for (int i = 0; i < attributes.size(); i++) {
+			assertNotSame(attributes.get(i), readAttributes.get(i));
+			assertEquals(i + 1.0, readMap.get(readAttributes.get(i)).getSumOfRatings(), 0.0);
+			assertNull(readMap.get(attributes.get(i)));
+		}
+	}
+
+	@Test
+	public void testMergeJoinEqualsCategoryUtility() {
+		Random random = new Random(1);
+		List<INode> attributes = TestNodes.createAttributeNodes(30);
+		ClassitMaxCategoryUtilitySearcher searcher = new ClassitMaxCategoryUtilitySearcher();
+
+		for (int run = 0; run < 20; run++) {
+			List<INode> columnarNodes = new ArrayList<INode>();
+			List<INode> hashedNodes = new ArrayList<INode>();
+			for (int n = 0; n < 2; n++) {
+				Map<INode, IAttribute> attMap = new HashMap<INode, IAttribute>();
+				for (INode attribute : attributes) {
+					if (random.nextDouble() < 0.4) {
+						int support = 1 + random.nextInt(4);
+						double sum = support * random.nextDouble();
+						attMap.put(attribute, new ClassitAttribute(support, sum, sum * sum));
+					}
+				}
+				INode columnarNode = new Node(ENodeType.User, n, null);
+				columnarNode.setNumericalAttributes(factory.createNumericalAttributeMap(attMap));
+				columnarNodes.add(columnarNode);
+				INode hashedNode = new Node(ENodeType.User, n, null);
+				hashedNode.setNumericalAttributes(attMap);
+				hashedNodes.add(hashedNode);
+			}
+			assertEquals(searcher.calculateCategoryUtility(hashedNodes),
+					searcher.calculateCategoryUtility(columnarNodes), 1e-12);
+		}
+	}
+
+	@Test
+	public void testMergeEqualsMergeOfSingleAttributes() {
+		Random random = new Random(3);
+		// small merges are merged sequentially, large ones in ranges
+		for (int numberOfAttributes : new int[] { 40, 3 * ClassitAttributeMap.PARALLEL_MERGE_THRESHOLD }) {
+			List<INode> attributes = TestNodes.createAttributeNodes(numberOfAttributes);
+			List<INode> columnarNodes = new ArrayList<INode>();
+			List<INode> hashedNodes = new ArrayList<INode>();
+			for (int n = 0; n < 3; n++) {
+				Map<INode, IAttribute> attMap = new HashMap<INode, IAttribute>();
+				for (INode attribute : attributes) {
+					if (random.nextDouble() < 0.5) {
+						int support = 1 + random.nextInt(4);
+						double sum = support * random.nextDouble();
+						attMap.put(attribute, new ClassitAttribute(support, sum, sum * sum));
+					}
+				}
+				INode columnarNode = new Node(ENodeType.User, n, null);
+				columnarNode.setNumericalAttributes(factory.createNumericalAttributeMap(attMap));
+				columnarNode.setNominalAttributes(new HashMap<Object, IAttribute>());
+				columnarNodes.add(columnarNode);
+				INode hashedNode = new Node(ENodeType.User, n, null);
+				hashedNode.setNumericalAttributes(attMap);
+				hashedNode.setNominalAttributes(new HashMap<Object, IAttribute>());
+				hashedNodes.add(hashedNode);
+			}
+
+			INode merged = factory.createInternalNode(ENodeType.User, columnarNodes, 0.0);
+			ClassitAttributeMap columns = ((Node) merged).getColumnarNumericalAttributes();
+			assertTrue(columns != null);
+			for (int i = 0; i < columns.getNumberOfColumnEntries() - 1; i++) {
+				assertTrue(columns.getAttributeId(i) < columns.getAttributeId(i + 1));
+			}
+			INode expected = factory.createInternalNode(ENodeType.User, hashedNodes, 0.0);
+			assertEquals(expected.getNumericalAttributeKeys(), merged.getNumericalAttributeKeys());
+			for (INode attribute : expected.getNumericalAttributeKeys()) {
+				IAttribute expectedAttribute = expected.getNumericalAttributeValue(attribute);
+				IAttribute mergedAttribute = merged.getNumericalAttributeValue(attribute);
+				assertEquals(expectedAttribute.getSupport(), mergedAttribute.getSupport());
+				assertEquals(expectedAttribute.getSumOfRatings(), mergedAttribute.getSumOfRatings(), 0.0);
+				assertEquals(expectedAttribute.getSumOfSquaredRatings(), mergedAttribute.getSumOfSquaredRatings(), 0.0);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+package ch.uzh.agglorecommender.clusterer.treecomponent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class MinHashSketchTest {
+
+	private final TreeComponentFactory factory = ClassitTreeComponentFactory.getInstance();
+
+	@Test
+	public void testMergedSketchEqualsSketchOfUnion() {
+		List<INode> attributes = TestNodes.createAttributeNodes(100);
+		INode first = createNode(attributes, 0, 60);
+		INode second = createNode(attributes, 40, 100);
+		MinHashSketch.of(first);
+		MinHashSketch.of(second);
+
+		List<INode> nodesToMerge = new ArrayList<INode>();
+		nodesToMerge.add(first);
+		nodesToMerge.add(second);
+		Node merged = (Node) factory.createInternalNode(ENodeType.User, nodesToMerge, 0.0);
+
+		// the sketch was set by the factory
+		MinHashSketch sketch = merged.getCurrentMinHashSketch();
+		assertNotNull(sketch);
+		assertTrue(sketch.hasEqualValues(MinHashSketch.create(merged.getNumericalAttributeKeys(), 0)));
+		assertTrue(sketch.hasEqualValues(MinHashSketch.of(createNode(attributes, 0, 100))));
+	}
+
+	@Test
+	public void testMergedSketchIsNotSetWithoutSketchesOfMergedNodes() {
+		List<INode> attributes = TestNodes.createAttributeNodes(10);
+		List<INode> nodesToMerge = new ArrayList<INode>();
+		nodesToMerge.add(createNode(attributes, 0, 5));
+		nodesToMerge.add(createNode(attributes, 5, 10));
+		Node merged = (Node) factory.createInternalNode(ENodeType.User, nodesToMerge, 0.0);
+		assertNull(merged.getCurrentMinHashSketch());
+		assertEquals(1.0, MinHashSketch.of(merged).estimateJaccardSimilarity(MinHashSketch.of(createNode(attributes, 0, 10))), 0.0);
+	}
+
+	@Test
+	public void testEstimatedSimilarityAndBuckets() {
+		List<INode> attributes = TestNodes.createAttributeNodes(400);
+		MinHashSketch first = MinHashSketch.of(createNode(attributes, 0, 200));
+		MinHashSketch similar = MinHashSketch.of(createNode(attributes, 20, 220));
+		MinHashSketch disjoint = MinHashSketch.of(createNode(attributes, 200, 400));
+
+		// the Jaccard similarity of the first two nodes is 180 / 220
+		assertEquals(180.0 / 220.0, first.estimateJaccardSimilarity(similar), 0.15);
+		assertEquals(0.0, first.estimateJaccardSimilarity(disjoint), 0.05);
+		assertTrue(first.sharesBucket(similar, 32, 4));
+		assertFalse(first.sharesBucket(disjoint, 32, 4));
+	}
+
+	private INode createNode(List<INode> attributes, int from, int to) {
+		Map<INode, IAttribute> attMap = new HashMap<INode, IAttribute>();
+		for (INode attribute : attributes.subList(from, to)) {
+			attMap.put(attribute, factory.createNumericAttribute(1.0));
+		}
+		INode node = new Node(ENodeType.User, 0, null);
+		node.setNumericalAttributes(factory.createNumericalAttributeMap(attMap));
+		node.setNominalAttributes(new HashMap<Object, IAttribute>());
+		return node;
+	}
+
+}
@@ -0,0 +1,102 @@
+package ch.uzh.agglorecommender.clusterer.treecomponent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class NodeSubtreeStatisticsTest {
+
+	@Test
+	public void testStatisticsOfMergedNodes() {
+		INode root = buildRandomTree(200, new Random(29));
+		assertEquals(200, root.getNumberOfLeafNodes());
+		assertEquals(199 + 199, root.getNumberOfNodesInSubtree());
+		assertStatistics(root);
+	}
+
+	@Test
+	public void testStatisticsFollowAddAndRemoveChild() {
+		Random random = new Random(31);
+		INode root = buildRandomTree(50, random);
+		INode other = buildRandomTree(20, random);
+		List<Integer> ids = root.getDataSetIds();
+
+		// move a subtree of the second tree below a leaf of the first tree
+		INode leaf = root;
+		while (! leaf.isLeaf()) leaf = leaf.getChildren().next();
+		INode subtree = other.getChildren().next();
+		other.removeChild(subtree);
+		leaf.addChild(subtree);
+
+		assertEquals(50 - 1 + subtree.getNumberOfLeafNodes(), root.getNumberOfLeafNodes());
+		assertStatistics(root);
+		assertStatistics(other);
+
+		// lists returned before the change are not affected
+		assertEquals(50, ids.size());
+	}
+
+	@Test
+	public void testLeavesOfSubtreesAreRangesOfRootNumbering() {
+		INode root = buildRandomTree(100, new Random(37));
+		List<Integer> rootIds = root.getDataSetIds();
+		List<INode> stack = new ArrayList<INode>();
+		stack.add(root);
+		while (! stack.isEmpty()) {
+			INode node = stack.remove(stack.size() - 1);
+			List<Integer> ids = node.getDataSetIds();
+			int start = Collections.indexOfSubList(rootIds, ids);
+			assertTrue(start >= 0);
+			Iterator<INode> it = node.getChildren();
+			while (it.hasNext()) stack.add(it.next());
+		}
+	}
+
+	/**
+	 * Merges random pairs of open nodes until a single root is left.
+	 */
+	private static INode buildRandomTree(int numberOfLeaves, Random random) {
+		List<INode> open = new ArrayList<INode>();
+		for (int i = 0; i < numberOfLeaves; i++) {
+			open.add(new Node(ENodeType.User, i, null));
+		}
+		while (open.size() > 1) {
+			INode first = open.remove(random.nextInt(open.size()));
+			INode second = open.remove(random.nextInt(open.size()));
+			open.add(new Node(ENodeType.User, Arrays.asList(first, second),
+					new HashMap<INode, IAttribute>(), new HashMap<Object, IAttribute>(), 0.0));
+		}
+		return open.get(0);
+	}
+
+	/**
+	 * Compares the cached statistics of all nodes of the subtree with a recursive calculation.
+	 */
+	private static void assertStatistics(INode node) {
+		int leaves = node.isLeaf() ? 1 : 0;
+		int nodes = node.getChildrenCount();
+		List<Integer> ids = new ArrayList<Integer>();
+		if (node.isLeaf()) ids.addAll(node.getDataSetIds());
+		Iterator<INode> it = node.getChildren();
+		while (it.hasNext()) {
+			INode child = it.next();
+			assertStatistics(child);
+			leaves += child.getNumberOfLeafNodes();
+			nodes += child.getNumberOfNodesInSubtree();
+			ids.addAll(child.getDataSetIds());
+		}
+		assertEquals(leaves, node.getNumberOfLeafNodes());
+		assertEquals(nodes, node.getNumberOfNodesInSubtree());
+		assertEquals(ids, node.getDataSetIds());
+	}
+
+}
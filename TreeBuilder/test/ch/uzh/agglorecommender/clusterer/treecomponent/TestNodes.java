@@ -0,0 +1,42 @@
+package ch.uzh.agglorecommender.clusterer.treecomponent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * Creates the nodes used as fixtures by the tests of the clusterer.
+ *
+ */
+public final class TestNodes {
+
+	private TestNodes() {
+		// static factory methods only
+	}
+
+	/**
+	 * Creates nodes without attributes whose data set ids are 0 to {@code numberOfNodes - 1}.
+	 *
+	 * @param type the type of the nodes
+	 * @param numberOfNodes the number of nodes to create
+	 * @return the nodes in ascending order of their data set ids
+	 */
+	public static List<INode> createNodes(ENodeType type, int numberOfNodes) {
+		List<INode> nodes = new ArrayList<INode>();
+		for (int i = 0; i < numberOfNodes; i++) {
+			nodes.add(new Node(type, i, null));
+		}
+		return nodes;
+	}
+
+	/**
+	 * Creates content nodes to use as the attribute keys of user nodes.
+	 *
+	 * @param numberOfNodes the number of nodes to create
+	 * @return the nodes in ascending order of their data set ids
+	 */
+	public static List<INode> createAttributeNodes(int numberOfNodes) {
+		return createNodes(ENodeType.Content, numberOfNodes);
+	}
+
+}
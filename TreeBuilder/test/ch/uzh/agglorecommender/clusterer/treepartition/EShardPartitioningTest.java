@@ -0,0 +1,91 @@
+package ch.uzh.agglorecommender.clusterer.treepartition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.ClassitTreeComponentFactory;
+import ch.uzh.agglorecommender.clusterer.treecomponent.ENodeType;
+import ch.uzh.agglorecommender.clusterer.treecomponent.IAttribute;
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.Node;
+import ch.uzh.agglorecommender.clusterer.treecomponent.TreeComponentFactory;
+
+public class EShardPartitioningTest {
+
+	private final TreeComponentFactory factory = ClassitTreeComponentFactory.getInstance();
+
+	@Test
+	public void testShardsAreBalancedAndDisjoint() {
+		List<INode> users = createGroupedUsers();
+		for (EShardPartitioning partitioning : EShardPartitioning.values()) {
+			List<List<INode>> shards = partitioning.partition(users, 3);
+			assertEquals(3, shards.size());
+			Set<INode> assigned = new HashSet<INode>();
+			for (List<INode> shard : shards) {
+				assertTrue(shard.size() == 6 || shard.size() == 7);
+				assigned.addAll(shard);
+			}
+			assertEquals(new HashSet<INode>(users), assigned);
+
+			// the assignment doesn't depend on the order of the users
+			List<INode> reversed = new ArrayList<INode>(users);
+			Collections.reverse(reversed);
+			assertEquals(shards, partitioning.partition(reversed, 3));
+		}
+	}
+
+	@Test
+	public void testMoreShardsThanUsers() {
+		List<INode> users = createGroupedUsers().subList(0, 2);
+		assertEquals(2, EShardPartitioning.Random.partition(users, 5).size());
+	}
+
+	@Test
+	public void testMinHashAssignsIdenticalUsersToTheSameShard() {
+		List<INode> users = createGroupedUsers();
+		List<List<INode>> shards = EShardPartitioning.MinHash.partition(users, 4);
+		for (List<INode> shard : shards) {
+			// the users of a group rate the same content
+			Set<Long> groups = new HashSet<Long>();
+			for (INode user : shard) {
+				groups.add(user.getDatasetId() / 5);
+			}
+			assertEquals(1, groups.size());
+		}
+	}
+
+	/**
+	 * Creates four groups of five users, the users of a group rate the same content.
+	 */
+	private List<INode> createGroupedUsers() {
+		List<INode> content = new ArrayList<INode>();
+		for (int i = 0; i < 200; i++) {
+			content.add(new Node(ENodeType.Content, i, null));
+		}
+		List<INode> users = new ArrayList<INode>();
+		for (int group = 0; group < 4; group++) {
+			for (int n = 0; n < 5; n++) {
+				Map<INode, IAttribute> attMap = new HashMap<INode, IAttribute>();
+				for (int i = group * 50; i < group * 50 + 50; i++) {
+					attMap.put(content.get(i), factory.createNumericAttribute(1 + (i + n) % 5));
+				}
+				INode user = new Node(ENodeType.User, users.size(), null);
+				user.setNumericalAttributes(factory.createNumericalAttributeMap(attMap));
+				user.setNominalAttributes(new HashMap<Object, IAttribute>());
+				users.add(user);
+			}
+		}
+		return users;
+	}
+
+}
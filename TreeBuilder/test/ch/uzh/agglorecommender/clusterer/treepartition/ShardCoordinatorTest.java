@@ -0,0 +1,90 @@
+package ch.uzh.agglorecommender.clusterer.treepartition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gnu.trove.set.TIntSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.ClassitTreeComponentFactory;
+import ch.uzh.agglorecommender.clusterer.treecomponent.ENodeType;
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.Node;
+import ch.uzh.agglorecommender.clusterer.treeupdate.SimpleNodeUpdater;
+
+public class ShardCoordinatorTest {
+
+	@Test
+	public void testUserIdsRoundTrip() throws IOException {
+		File file = File.createTempFile("shard", ".users");
+		file.deleteOnExit();
+		ShardCoordinator.writeUserIds(createUsers(0, 5), file);
+		TIntSet ids = ShardCoordinator.readUserIds(file);
+		assertEquals(5, ids.size());
+		for (int id = 0; id < 5; id++) {
+			assertTrue(ids.contains(id));
+		}
+	}
+
+	@Test
+	public void testEachShardIsClusteredByAWorkerProcess() throws IOException {
+		File workDirectory = Files.createTempDirectory("shards").toFile();
+		List<List<INode>> shards = new ArrayList<List<INode>>();
+		shards.add(createUsers(0, 3));
+		shards.add(createUsers(3, 7));
+		Map<Integer, INode> leaves = new HashMap<Integer, INode>();
+		for (List<INode> shard : shards) {
+			for (INode user : shard) {
+				leaves.put((int) user.getDatasetId(), user);
+			}
+		}
+
+		List<SubRootForest> forests = new ShardCoordinator(workDirectory, 1)
+				.clusterShards(shards, LeafWorker.class, Arrays.asList("-unused", "argument"));
+		assertEquals(2, forests.size());
+		for (int i = 0; i < shards.size(); i++) {
+			List<INode> subRoots = forests.get(i).rebuild(leaves, ClassitTreeComponentFactory.getInstance(),
+					new SimpleNodeUpdater(), Collections.<INode>emptyList());
+			assertEquals(shards.get(i), subRoots);
+			assertTrue(new File(workDirectory, "shard-" + i + ".log").exists());
+		}
+	}
+
+	private static List<INode> createUsers(int fromId, int toId) {
+		List<INode> users = new ArrayList<INode>();
+		for (int id = fromId; id < toId; id++) {
+			users.add(new Node(ENodeType.User, id, null));
+		}
+		return users;
+	}
+
+	/**
+	 * A worker which doesn't merge, its sub-roots are the users of its shard in ascending order.
+	 */
+	public static class LeafWorker {
+
+		public static void main(String[] args) {
+			List<String> arguments = Arrays.asList(args);
+			File usersFile = new File(arguments.get(arguments.indexOf(ShardCoordinator.USERS_OPTION) + 1));
+			File resultFile = new File(arguments.get(arguments.indexOf(ShardCoordinator.RESULT_OPTION) + 1));
+			int[] ids = ShardCoordinator.readUserIds(usersFile).toArray();
+			Arrays.sort(ids);
+			List<INode> subRoots = new ArrayList<INode>();
+			for (int id : ids) {
+				subRoots.add(new Node(ENodeType.User, id, null));
+			}
+			SubRootForest.of(subRoots).write(resultFile);
+		}
+	}
+
+}
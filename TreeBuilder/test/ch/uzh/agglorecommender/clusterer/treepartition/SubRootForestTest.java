@@ -0,0 +1,100 @@
+package ch.uzh.agglorecommender.clusterer.treepartition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.ClassitTreeComponentFactory;
+import ch.uzh.agglorecommender.clusterer.treecomponent.ENodeType;
+import ch.uzh.agglorecommender.clusterer.treecomponent.IAttribute;
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.Node;
+import ch.uzh.agglorecommender.clusterer.treecomponent.TestNodes;
+import ch.uzh.agglorecommender.clusterer.treecomponent.TreeComponentFactory;
+import ch.uzh.agglorecommender.clusterer.treeupdate.SimpleNodeUpdater;
+
+public class SubRootForestTest {
+
+	private final TreeComponentFactory factory = ClassitTreeComponentFactory.getInstance();
+
+	@Test
+	public void testWrittenForestIsRebuiltFromOtherLeaves() throws IOException {
+		List<INode> content = TestNodes.createAttributeNodes(3);
+		Map<Integer, INode> users = createUserLeaves(content);
+		INode inner = factory.createInternalNode(ENodeType.User, Arrays.asList(users.get(1), users.get(2)), 0.5);
+		INode subRoot = factory.createInternalNode(ENodeType.User, Arrays.asList(inner, users.get(3)), 0.25);
+		INode single = users.get(4);
+
+		File file = File.createTempFile("forest", ".bin");
+		file.deleteOnExit();
+		SubRootForest.of(Arrays.asList(subRoot, single)).write(file);
+		SubRootForest forest = SubRootForest.read(file);
+		assertEquals(2, forest.getNumberOfMerges());
+		assertEquals(2, forest.getNumberOfSubRoots());
+
+		// the leaves of another process
+		List<INode> otherContent = TestNodes.createAttributeNodes(3);
+		Map<Integer, INode> otherUsers = createUserLeaves(otherContent);
+		List<INode> subRoots = forest.rebuild(otherUsers, factory, new SimpleNodeUpdater(), otherContent);
+		assertEquals(2, subRoots.size());
+		assertSame(otherUsers.get(4), subRoots.get(1));
+
+		INode rebuilt = subRoots.get(0);
+		assertNotSame(subRoot, rebuilt);
+		assertEquals(0.25, rebuilt.getCategoryUtility(), 0.0);
+		assertEquals(3, rebuilt.getNumberOfLeafNodes());
+		assertEquals(subRoot.getNumericalAttributeKeys().size(), rebuilt.getNumericalAttributeKeys().size());
+		for (INode contentLeaf : otherContent) {
+			IAttribute expected = subRoot.getNumericalAttributeValue(content.get(otherContent.indexOf(contentLeaf)));
+			IAttribute actual = rebuilt.getNumericalAttributeValue(contentLeaf);
+			assertEquals(expected.getSupport(), actual.getSupport(), 0.0);
+			assertEquals(expected.getMeanOfRatings(), actual.getMeanOfRatings(), 1e-12);
+		}
+
+		// the content leaves know the new user nodes
+		Iterator<INode> it = rebuilt.getChildren();
+		INode rebuiltInner = it.next();
+		if (rebuiltInner.isLeaf()) rebuiltInner = it.next();
+		assertEquals(0.5, rebuiltInner.getCategoryUtility(), 0.0);
+		assertSame(rebuilt, rebuiltInner.getParent());
+		assertTrue(otherContent.get(0).hasAttribute(rebuilt));
+	}
+
+	/**
+	 * Creates four users with the data set ids 1 to 4 which rate all content leaves.
+	 */
+	private Map<Integer, INode> createUserLeaves(List<INode> content) {
+		Map<Integer, INode> users = new HashMap<Integer, INode>();
+		for (int id = 1; id <= 4; id++) {
+			Map<INode, IAttribute> attMap = new HashMap<INode, IAttribute>();
+			for (int i = 0; i < content.size(); i++) {
+				attMap.put(content.get(i), factory.createNumericAttribute(1 + (id + i) % 5));
+			}
+			INode user = new Node(ENodeType.User, id, null);
+			user.setNumericalAttributes(factory.createNumericalAttributeMap(attMap));
+			user.setNominalAttributes(new HashMap<Object, IAttribute>());
+			users.put(id, user);
+		}
+		for (INode contentLeaf : content) {
+			Map<INode, IAttribute> attMap = new HashMap<INode, IAttribute>();
+			for (INode user : users.values()) {
+				attMap.put(user, user.getNumericalAttributeValue(contentLeaf));
+			}
+			contentLeaf.setNumericalAttributes(factory.createNumericalAttributeMap(attMap));
+			contentLeaf.setNominalAttributes(new HashMap<Object, IAttribute>());
+		}
+		return users;
+	}
+
+}
@@ -0,0 +1,131 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.ClassitAttribute;
+import ch.uzh.agglorecommender.clusterer.treecomponent.ENodeType;
+import ch.uzh.agglorecommender.clusterer.treecomponent.IAttribute;
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.Node;
+import ch.uzh.agglorecommender.clusterer.treeupdate.ExtendedNodeUpdater;
+
+import com.google.common.collect.ImmutableList;
+
+public class AttributeIndexedClusterSetTest {
+
+	@Test
+	public void testOnlyCombinationsWithSharedAttributes() {
+		Random random = new Random(11);
+		List<INode> attributes = createNodes(ENodeType.Content, 100);
+		List<INode> nodes = createNodes(ENodeType.User, 80);
+		for (INode node : nodes) {
+			setRandomAttributes(node, attributes, random);
+		}
+		AttributeIndexedClusterSet clusterSet = new AttributeIndexedClusterSet(ImmutableList.copyOf(nodes));
+		assertCombinations(clusterSet);
+
+		clusterSet.remove(nodes.get(3));
+		clusterSet.remove(nodes.get(42));
+		INode newNode = new Node(ENodeType.User, 1000, null);
+		setRandomAttributes(newNode, attributes, random);
+		clusterSet.add(newNode);
+		assertCombinations(clusterSet);
+	}
+
+	@Test
+	public void testIndexFollowsNodeUpdater() {
+		Random random = new Random(13);
+		List<INode> contentNodes = createNodes(ENodeType.Content, 60);
+		List<INode> userNodes = createNodes(ENodeType.User, 60);
+		for (INode userNode : userNodes) {
+			setRandomAttributes(userNode, contentNodes, random);
+		}
+		AttributeIndexedClusterSet userSet = new AttributeIndexedClusterSet(ImmutableList.copyOf(userNodes));
+
+		// merge two content nodes, the users rating one of them get the new node as attribute
+		Map<INode, IAttribute> attributesOfNewNode = new HashMap<INode, IAttribute>();
+		for (INode userNode : userNodes) {
+			IAttribute attribute = userNode.getNumericalAttributeValue(contentNodes.get(0));
+			if (attribute == null) attribute = userNode.getNumericalAttributeValue(contentNodes.get(1));
+			if (attribute != null) attributesOfNewNode.put(userNode, attribute);
+		}
+		INode newNode = new Node(ENodeType.Content, Arrays.asList(contentNodes.get(0), contentNodes.get(1)),
+				attributesOfNewNode, new HashMap<Object, IAttribute>(), 0.5);
+		new ExtendedNodeUpdater().updateNodes(newNode, userSet.getUnmodifiableView(), userSet);
+
+		assertCombinations(userSet);
+		// exactly the users of the merged nodes are queued as changed, once
+		assertEquals(attributesOfNewNode.keySet(), userSet.pollChangedNodes());
+		assertTrue(userSet.pollChangedNodes().isEmpty());
+	}
+
+	/**
+	 * Compares the combinations of the passed set with the pairs of open nodes sharing an attribute.
+	 */
+	private static void assertCombinations(AttributeIndexedClusterSet clusterSet) {
+		List<INode> nodes = new ArrayList<INode>(clusterSet.getUnmodifiableView());
+		TLongSet expected = new TLongHashSet();
+		for (int i = 0; i < nodes.size(); i++) {
+			TLongSet expectedOfNode = new TLongHashSet();
+			for (int j = 0; j < nodes.size(); j++) {
+				if (i == j) continue;
+				for (INode attribute : nodes.get(i).getNumericalAttributeKeys()) {
+					if (nodes.get(j).getNumericalAttributeValue(attribute) != null) {
+						expectedOfNode.add(clusterSet.getCombinationId(nodes.get(i), nodes.get(j)));
+						break;
+					}
+				}
+			}
+			assertEquals(expectedOfNode, clusterSet.getCombinationsIds(nodes.get(i)));
+			expected.addAll(expectedOfNode);
+		}
+		assertEquals(expected, clusterSet.getCombinationsIds());
+
+		// the iterator returns each combination once
+		TLongSet iterated = new TLongHashSet();
+		int numberOfIterated = 0;
+		TLongIterator it = clusterSet.combinationsIdsIterator();
+		while (it.hasNext()) {
+			iterated.add(it.next());
+			numberOfIterated++;
+		}
+		assertEquals(expected, iterated);
+		assertEquals(expected.size(), numberOfIterated);
+	}
+
+	private static List<INode> createNodes(ENodeType type, int numberOfNodes) {
+		List<INode> nodes = new ArrayList<INode>();
+		for (int i = 0; i < numberOfNodes; i++) {
+			Node node = new Node(type, i, null);
+			node.setNumericalAttributes(new HashMap<INode, IAttribute>());
+			node.setNominalAttributes(new HashMap<Object, IAttribute>());
+			nodes.add(node);
+		}
+		return nodes;
+	}
+
+	private static void setRandomAttributes(INode node, List<INode> attributes, Random random) {
+		Map<INode, IAttribute> attMap = new HashMap<INode, IAttribute>();
+		for (INode attribute : attributes) {
+			if (random.nextDouble() < 0.02) {
+				attMap.put(attribute, new ClassitAttribute(1, 1.0, 1.0));
+			}
+		}
+		node.setNumericalAttributes(attMap);
+		node.setNominalAttributes(new HashMap<Object, IAttribute>());
+	}
+
+}
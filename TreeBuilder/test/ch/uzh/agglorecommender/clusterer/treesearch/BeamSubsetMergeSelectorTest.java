@@ -0,0 +1,67 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import static ch.uzh.agglorecommender.clusterer.treesearch.MergeSelectorFixtures.createClusterSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.ENodeType;
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.TestNodes;
+import ch.uzh.agglorecommender.clusterer.treesearch.MergeSelectorFixtures.SumSearcher;
+
+public class BeamSubsetMergeSelectorTest {
+
+	@Test
+	public void testBestSubsetOfThePoolIsSelected() {
+		List<INode> nodes = TestNodes.createNodes(ENodeType.User, 10);
+		BeamSubsetMergeSelector selector = new BeamSubsetMergeSelector(new SumSearcher(), 4, 2);
+
+		// the seeds (8,9) and (7,9) form a pool of three nodes
+		IMergeResult merge = selector.selectBestMerge(createClusterSet(nodes));
+		assertEquals(24.007, merge.getCategoryUtility(), 1e-9);
+		assertEquals(new HashSet<INode>(nodes.subList(7, 10)), new HashSet<INode>(merge.getNodes()));
+
+		// the seeds (8,9), (7,9), (7,8) and (6,9) form a pool of four nodes
+		selector = new BeamSubsetMergeSelector(new SumSearcher(), 4, 4);
+		merge = selector.selectBestMerge(createClusterSet(nodes));
+		assertEquals(30.006, merge.getCategoryUtility(), 1e-9);
+		assertEquals(new HashSet<INode>(nodes.subList(6, 10)), new HashSet<INode>(merge.getNodes()));
+	}
+
+	@Test
+	public void testPairsOnlyWithoutLargerSubsets() {
+		List<INode> nodes = TestNodes.createNodes(ENodeType.User, 10);
+		BeamSubsetMergeSelector selector = new BeamSubsetMergeSelector(new SumSearcher(), 3, 1);
+
+		// the pool of a single seed has only two nodes
+		IMergeResult merge = selector.selectBestMerge(createClusterSet(nodes));
+		assertEquals(17.008, merge.getCategoryUtility(), 1e-9);
+		assertEquals(new HashSet<INode>(Arrays.asList(nodes.get(8), nodes.get(9))), new HashSet<INode>(merge.getNodes()));
+	}
+
+	@Test
+	public void testSelectedMergesAreDisjoint() {
+		List<INode> nodes = TestNodes.createNodes(ENodeType.User, 10);
+		BeamSubsetMergeSelector selector = new BeamSubsetMergeSelector(new SumSearcher());
+
+		// the pool of the 16 best pairs consists of the nodes 2 to 9, (7,8,9) and (4,5,6) are the best disjoint triples
+		List<IMergeResult> merges = selector.selectBestMerges(createClusterSet(nodes), 3, 100.0);
+		assertEquals(2, merges.size());
+		assertEquals(24.007, merges.get(0).getCategoryUtility(), 1e-9);
+		assertEquals(15.004, merges.get(1).getCategoryUtility(), 1e-9);
+		Set<INode> merged = new HashSet<INode>();
+		for (IMergeResult merge : merges) {
+			assertTrue(Collections.disjoint(merged, merge.getNodes()));
+			merged.addAll(merge.getNodes());
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.ENodeType;
+import ch.uzh.agglorecommender.clusterer.treecomponent.IAttribute;
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.Node;
+
+import com.google.common.collect.ImmutableList;
+
+public class CategoryUtilityCacheTest {
+
+	@Test
+	public void testSizeIsBoundedByBudget() {
+		CategoryUtilityCache cache = new CategoryUtilityCache(1000 * CategoryUtilityCache.BYTES_PER_ENTRY);
+		for (int i = 0; i < 100000; i++) {
+			cache.put(i, i, 0);
+		}
+		assertTrue(cache.size() <= cache.getMaxEntries());
+		assertTrue(cache.getMaxEntries() <= 1000);
+		assertEquals(100000 - cache.size(), cache.getEvictions());
+
+		// the newest entries are kept
+		assertEquals(99999.0, cache.get(99999, 0), 0.0);
+		assertTrue(Double.isNaN(cache.get(0, 0)));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testRemovedEntriesAreNotEvictedAgain() {
+		CategoryUtilityCache cache = new CategoryUtilityCache(1000 * CategoryUtilityCache.BYTES_PER_ENTRY);
+		TLongSet removed = new TLongHashSet();
+		for (int i = 0; i < 100000; i++) {
+			cache.put(i, i, 0);
+			if (i % 2 == 0) removed.add(i);
+			if (removed.size() == 100) {
+				cache.removeAll(removed);
+				removed.clear();
+			}
+		}
+		// only entries which were still cached are counted as evictions
+		assertTrue(cache.getEvictions() < 50000);
+	}
+
+	@Test
+	public void testConcurrentWrites() throws InterruptedException {
+		final CategoryUtilityCache cache = new CategoryUtilityCache(Long.MAX_VALUE);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			final int offset = t * 10000;
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					for (int i = offset; i < offset + 10000; i++) {
+						cache.put(i, i / 2.0, 0);
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) thread.start();
+		for (Thread thread : threads) thread.join();
+
+		assertEquals(40000, cache.size());
+		for (int i = 0; i < 40000; i++) {
+			assertEquals(i / 2.0, cache.get(i, 0), 0.0);
+		}
+	}
+
+	@Test
+	public void testEntriesOfRemovedNodesArePurged() {
+		List<INode> nodes = new ArrayList<INode>();
+		for (int i = 0; i < 20; i++) {
+			nodes.add(new Node(ENodeType.User, i, null));
+		}
+		ClusterSetIndexed<INode> clusterSet = new ClusterSetIndexed<INode>(ImmutableList.copyOf(nodes));
+		CachedMaxCUSearcher searcher = new CachedMaxCUSearcher(new ConstantSearcher(), 1 << 20);
+		searcher.getMaxCategoryUtilityMerges(clusterSet.getCombinationsIds(), clusterSet);
+		assertEquals(190, searcher.getCache().size());
+
+		clusterSet.remove(nodes.get(0));
+		clusterSet.remove(nodes.get(1));
+		assertEquals(190 - 19 - 18, searcher.getCache().size());
+	}
+
+	@Test
+	public void testEntriesOfChangedNodesAreStale() {
+		List<INode> nodes = new ArrayList<INode>();
+		for (int i = 0; i < 20; i++) {
+			nodes.add(new Node(ENodeType.User, i, null));
+		}
+		ClusterSetIndexed<INode> clusterSet = new ClusterSetIndexed<INode>(ImmutableList.copyOf(nodes));
+		ConstantSearcher constantSearcher = new ConstantSearcher();
+		CachedMaxCUSearcher searcher = new CachedMaxCUSearcher(constantSearcher, 1 << 20);
+		searcher.getMaxCategoryUtilityMerges(clusterSet.getCombinationsIds(), clusterSet);
+		assertEquals(190, constantSearcher.numberOfCalculations);
+
+		// only the combinations of the changed node are calculated again
+		nodes.get(5).setNominalAttributes(new HashMap<Object, IAttribute>());
+		searcher.getMaxCategoryUtilityMerges(clusterSet.getCombinationsIds(), clusterSet);
+		assertEquals(190 + 19, constantSearcher.numberOfCalculations);
+		assertEquals(19, searcher.getCache().getStaleEntries());
+
+		searcher.getMaxCategoryUtilityMerges(clusterSet.getCombinationsIds(), clusterSet);
+		assertEquals(190 + 19, constantSearcher.numberOfCalculations);
+	}
+
+	private static class ConstantSearcher extends BasicMaxCategoryUtilitySearcher {
+
+		private static final long serialVersionUID = 1L;
+
+		private int numberOfCalculations = 0;
+
+		@Override
+		protected synchronized double calculateCategoryUtility(Collection<INode> possibleMerge) {
+			numberOfCalculations++;
+			return 0.5;
+		}
+
+		@Override
+		protected double getMaxTheoreticalPossibleCategoryUtility() {
+			return 1.0;
+		}
+	}
+
+}
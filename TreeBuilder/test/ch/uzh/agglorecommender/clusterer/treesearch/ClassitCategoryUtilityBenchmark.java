@@ -0,0 +1,128 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import ch.uzh.agglorecommender.client.IDatasetItem;
+import ch.uzh.agglorecommender.client.RandomDataset;
+import ch.uzh.agglorecommender.clusterer.treecomponent.ClassitTreeComponentFactory;
+import ch.uzh.agglorecommender.clusterer.treecomponent.ENodeType;
+import ch.uzh.agglorecommender.clusterer.treecomponent.IAttribute;
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.TreeComponentFactory;
+
+/**
+ *
+ * Micro benchmark of the Classit category utility kernel for pair merges.
+ * <br>
+ * Measures the time per evaluated pair of user leaf nodes created from a {@link RandomDataset}
+ * for several rating densities, once with hash map attributes and once with columnar attributes.
+ * Each measurement is preceded by warm up rounds and repeated to show the variance.
+ * The sum of all category utilities is printed to prevent dead code elimination.
+ * <br>
+ * Run the main method with {@code -server} and a fixed heap size, compare the ns/pair with
+ * the result of the previous version to detect regressions.
+ *
+ */
+public class ClassitCategoryUtilityBenchmark {
+
+	private static final int NUMBER_OF_USERS = 200;
+
+	private static final int NUMBER_OF_CONTENT_ITEMS = 1000;
+
+	private static final int[] DENSITIES_IN_PERCENT = { 1, 5, 20, 50 };
+
+	private static final int WARM_UP_ROUNDS = 5;
+
+	private static final int MEASUREMENT_ROUNDS = 5;
+
+	public static void main(String[] args) {
+		System.out.println("density\tattributes\tnodes\tround\thashed ns/pair\tcolumnar ns/pair");
+		for (int density : DENSITIES_IN_PERCENT) {
+			RandomDataset dataset = new RandomDataset(NUMBER_OF_USERS, NUMBER_OF_CONTENT_ITEMS, 100 - density);
+			List<INode> hashedNodes = createUserNodes(dataset, false);
+			List<INode> columnarNodes = createUserNodes(dataset, true);
+
+			for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+				evaluateAllPairs(hashedNodes);
+				evaluateAllPairs(columnarNodes);
+			}
+			for (int round = 0; round < MEASUREMENT_ROUNDS; round++) {
+				System.out.println(density + "%\t" + averageNumberOfAttributes(hashedNodes) + "\t"
+						+ hashedNodes.size() + "\t" + round + "\t"
+						+ String.format("%.1f", nanosPerPair(hashedNodes)) + "\t"
+						+ String.format("%.1f", nanosPerPair(columnarNodes)));
+			}
+		}
+	}
+
+	private static double nanosPerPair(List<INode> nodes) {
+		long time = System.nanoTime();
+		double checksum = evaluateAllPairs(nodes);
+		long elapsed = System.nanoTime() - time;
+		if (Double.isInfinite(checksum)) {
+			System.out.println("checksum: " + checksum);
+		}
+		long pairs = (long) nodes.size() * (nodes.size() - 1) / 2;
+		return (double) elapsed / (double) pairs;
+	}
+
+	private static double evaluateAllPairs(List<INode> nodes) {
+		double checksum = 0.0;
+		for (int i = 0; i < nodes.size(); i++) {
+			for (int j = i + 1; j < nodes.size(); j++) {
+				double utility = ClassitMaxCategoryUtilitySearcher.calculateCategoryUtility(nodes.get(i), nodes.get(j));
+				if (utility == utility) { // skip NaN of nodes without attributes
+					checksum += utility;
+				}
+			}
+		}
+		return checksum;
+	}
+
+	private static long averageNumberOfAttributes(List<INode> nodes) {
+		long sum = 0;
+		for (INode node : nodes) {
+			sum += node.getNumericalAttributeKeys().size();
+		}
+		return nodes.isEmpty() ? 0 : sum / nodes.size();
+	}
+
+	/**
+	 * Creates the user leaf nodes of the data set the same way as the {@code InitialNodesCreator}.
+	 */
+	private static List<INode> createUserNodes(RandomDataset dataset, boolean columnar) {
+		TreeComponentFactory factory = ClassitTreeComponentFactory.getInstance();
+		Map<Integer, INode> contentNodes = new HashMap<Integer, INode>();
+		Map<Integer, Map<INode, IAttribute>> userAttributes = new HashMap<Integer, Map<INode, IAttribute>>();
+
+		Iterator<IDatasetItem<Double>> it = dataset.iterateOverDatasetItems();
+		while (it.hasNext()) {
+			IDatasetItem<Double> item = it.next();
+			INode contentNode = contentNodes.get(item.getContentId());
+			if (contentNode == null) {
+				contentNode = factory.createLeafNode(ENodeType.Content, item.getContentId(), null);
+				contentNodes.put(item.getContentId(), contentNode);
+			}
+			Map<INode, IAttribute> attributes = userAttributes.get(item.getUserId());
+			if (attributes == null) {
+				attributes = new HashMap<INode, IAttribute>();
+				userAttributes.put(item.getUserId(), attributes);
+			}
+			double rating = dataset.getNormalizer().normalizeRating(item.getValue());
+			attributes.put(contentNode, factory.createNumericAttribute(rating));
+		}
+
+		List<INode> userNodes = new ArrayList<INode>();
+		for (Map.Entry<Integer, Map<INode, IAttribute>> user : userAttributes.entrySet()) {
+			INode userNode = factory.createLeafNode(ENodeType.User, user.getKey(), null);
+			userNode.setNumericalAttributes(columnar ? factory.createNumericalAttributeMap(user.getValue()) : user.getValue());
+			userNodes.add(userNode);
+		}
+		return userNodes;
+	}
+
+}
@@ -0,0 +1,94 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.ClassitAttribute;
+import ch.uzh.agglorecommender.clusterer.treecomponent.ClassitTreeComponentFactory;
+import ch.uzh.agglorecommender.clusterer.treecomponent.ENodeType;
+import ch.uzh.agglorecommender.clusterer.treecomponent.IAttribute;
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.Node;
+
+public class ClassitCategoryUtilityKernelTest {
+
+	@Test
+	public void testKernelEqualsMultiPassCalculation() {
+		Random random = new Random(7);
+		List<INode> attributes = new ArrayList<INode>();
+		for (int i = 0; i < 50; i++) {
+			attributes.add(new Node(ENodeType.Content, i, null));
+		}
+
+		for (int run = 0; run < 50; run++) {
+			List<Map<INode, IAttribute>> attMaps = new ArrayList<Map<INode, IAttribute>>();
+			for (int n = 0; n < 2; n++) {
+				Map<INode, IAttribute> attMap = new HashMap<INode, IAttribute>();
+				for (INode attribute : attributes) {
+					if (random.nextDouble() < 0.3) {
+						int support = 1 + random.nextInt(3);
+						double sumOfRatings = 0.0;
+						double sumOfSquaredRatings = 0.0;
+						for (int s = 0; s < support; s++) {
+							double rating = random.nextInt(11);
+							sumOfRatings += rating;
+							sumOfSquaredRatings += rating * rating;
+						}
+						attMap.put(attribute, new ClassitAttribute(support, sumOfRatings, sumOfSquaredRatings));
+					}
+				}
+				attMaps.add(attMap);
+			}
+
+			List<INode> hashed = createNodes(attMaps, false);
+			List<INode> columnar = createNodes(attMaps, true);
+			double expected = calculateMultiPass(hashed);
+			assertEquals(expected, ClassitMaxCategoryUtilitySearcher.calculateCategoryUtility(hashed.get(0), hashed.get(1)), 1e-12);
+			assertEquals(expected, ClassitMaxCategoryUtilitySearcher.calculateCategoryUtility(hashed.get(1), hashed.get(0)), 1e-12);
+			assertEquals(expected, ClassitMaxCategoryUtilitySearcher.calculateCategoryUtility(columnar.get(0), columnar.get(1)), 1e-12);
+		}
+	}
+
+	/**
+	 * The calculation of the category utility before the single pass kernel.
+	 */
+	private static double calculateMultiPass(List<INode> merge) {
+		Set<INode> allAttributes = new HashSet<INode>();
+		for (INode node : merge) {
+			allAttributes.addAll(node.getNumericalAttributeKeys());
+		}
+		double utility = 0.0;
+		for (INode attribute : allAttributes) {
+			if (merge.get(0).getNumericalAttributeValue(attribute) == null
+					|| merge.get(1).getNumericalAttributeValue(attribute) == null) continue;
+			int support = ClassitMaxCategoryUtilitySearcher.calcSupportOfAttribute(attribute, merge);
+			double sumOfRatings = ClassitMaxCategoryUtilitySearcher.calcSumOfRatingsOfAttribute(attribute, merge);
+			double sumOfSquaredRatings = ClassitMaxCategoryUtilitySearcher.calcSumOfSquaredRatingsOfAttribute(attribute, merge);
+			double stdDev = Math.sqrt((1.0 / ((double) (support - 1))) * (sumOfSquaredRatings - (1.0 / (double) support) * Math.pow(sumOfRatings, 2.0)));
+			utility += 1.0 / Math.max(stdDev, ClassitMaxCategoryUtilitySearcher.getAcuity());
+		}
+		return utility / (double) allAttributes.size();
+	}
+
+	private static List<INode> createNodes(List<Map<INode, IAttribute>> attMaps, boolean columnar) {
+		List<INode> nodes = new ArrayList<INode>();
+		for (Map<INode, IAttribute> attMap : attMaps) {
+			INode node = new Node(ENodeType.User, nodes.size(), null);
+			node.setNumericalAttributes(columnar
+					? ClassitTreeComponentFactory.getInstance().createNumericalAttributeMap(attMap)
+					: attMap);
+			nodes.add(node);
+		}
+		return nodes;
+	}
+
+}
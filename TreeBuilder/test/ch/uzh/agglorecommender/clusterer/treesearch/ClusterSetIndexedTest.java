@@ -0,0 +1,156 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.uzh.agglorecommender.clusterer.treesearch.ClusterSetIndexed.Pairing;
+
+import com.google.common.collect.ImmutableList;
+
+public class ClusterSetIndexedTest {
+
+	@Test
+	public void testPairingIsExact() {
+		int[] slots = { 0, 1, 2, 32767, 32768, 46341, 65536, 1 << 20, Integer.MAX_VALUE - 1, Integer.MAX_VALUE };
+		for (int i = 0; i < slots.length; i++) {
+			for (int j = i + 1; j < slots.length; j++) {
+				long id = Pairing.compute(slots[i], slots[j]);
+				assertTrue(id >= 0);
+				assertEquals(slots[i], Pairing.computeX(id));
+				assertEquals(slots[j], Pairing.computeY(id));
+			}
+		}
+	}
+
+	@Test
+	public void testSlotsOfRemovedElementsAreReused() {
+		List<Integer> leaves = new ArrayList<Integer>();
+		for (int i = 0; i < 100; i++) {
+			leaves.add(i);
+		}
+		ClusterSetIndexed<Integer> clusterSet = new ClusterSetIndexed<Integer>(ImmutableList.copyOf(leaves), false);
+
+		// more additions than a short can count, always merging the two oldest elements
+		int next = 100;
+		List<Integer> open = new ArrayList<Integer>(leaves);
+		for (int i = 0; i < 40000; i++) {
+			clusterSet.add(next);
+			clusterSet.remove(open.remove(0));
+			clusterSet.remove(open.remove(0));
+			open.add(next);
+			clusterSet.add(next + 1);
+			open.add(next + 1);
+			next += 2;
+		}
+		assertEquals(100, clusterSet.size());
+		assertTrue(clusterSet.getNumberOfSlots() <= 101);
+
+		Integer element = open.get(0);
+		TLongSet combinationIds = clusterSet.getCombinationsIds(element);
+		assertEquals(99, combinationIds.size());
+		HashSet<Integer> partners = new HashSet<Integer>();
+		TLongIterator it = combinationIds.iterator();
+		while (it.hasNext()) {
+			long id = it.next();
+			List<Integer> combination = new ArrayList<Integer>(clusterSet.getCombination(id));
+			assertTrue(combination.contains(element));
+			combination.remove(element);
+			partners.add(combination.get(0));
+			assertEquals(id, clusterSet.getCombinationId(element, combination.get(0)));
+		}
+		assertEquals(new HashSet<Integer>(open.subList(1, open.size())), partners);
+	}
+
+	@Test
+	public void testDeltasSinceEpochReproduceLiveSet() {
+		List<Integer> leaves = new ArrayList<Integer>();
+		for (int i = 0; i < 50; i++) {
+			leaves.add(i);
+		}
+		ClusterSetIndexed<Integer> clusterSet = new ClusterSetIndexed<Integer>(ImmutableList.copyOf(leaves));
+		Random random = new Random(3);
+		List<Integer> open = new ArrayList<Integer>(leaves);
+		int next = 50;
+		for (int round = 0; round < 20; round++) {
+			long epoch = clusterSet.getEpoch();
+			clusterSet.retainEpoch(this, epoch);
+			TLongSet replica = clusterSet.getCombinationsIds();
+
+			// merge some random pairs
+			for (int i = random.nextInt(4); i >= 0 && open.size() > 2; i--) {
+				clusterSet.add(next);
+				clusterSet.remove(open.remove(random.nextInt(open.size())));
+				clusterSet.remove(open.remove(random.nextInt(open.size())));
+				open.add(next++);
+			}
+
+			replica.removeAll(clusterSet.getCombinationsIdsRemovedSince(epoch));
+			replica.addAll(clusterSet.getCombinationsIdsAddedSince(epoch));
+			assertEquals(clusterSet.getCombinationsIds(), replica);
+		}
+
+		TLongSet iterated = new TLongHashSet();
+		TLongIterator it = clusterSet.combinationsIdsIterator();
+		while (it.hasNext()) {
+			iterated.add(it.next());
+		}
+		assertEquals(clusterSet.getCombinationsIds(), iterated);
+		assertTrue(clusterSet.getCombinationsIdsAddedSince(clusterSet.getEpoch()).isEmpty());
+	}
+
+	/**
+	 * The changes are kept for the slowest consumer and released when it moves on.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testChangesBeforeSmallestRetainedEpochAreReleased() {
+		ClusterSetIndexed<Integer> clusterSet = new ClusterSetIndexed<Integer>(ImmutableList.of(0, 1, 2, 3));
+		Object slow = new Object();
+		Object fast = new Object();
+		clusterSet.retainEpoch(slow, 0);
+		clusterSet.retainEpoch(fast, 0);
+		clusterSet.add(4);
+		clusterSet.remove(0);
+		clusterSet.retainEpoch(fast, clusterSet.getEpoch());
+		assertEquals(clusterSet.getCombinationsIds(4), clusterSet.getCombinationsIdsAddedSince(0));
+		assertEquals(4, clusterSet.getCombinationsIdsRemovedSince(0).size());
+
+		clusterSet.retainEpoch(slow, clusterSet.getEpoch());
+		assertEquals(2, clusterSet.getEpoch());
+		assertTrue(clusterSet.getCombinationsIdsAddedSince(2).isEmpty());
+		clusterSet.getCombinationsIdsAddedSince(0);
+	}
+
+	@Test
+	public void testCombinationsOfMissingElementAreEmpty() {
+		ClusterSetIndexed<Integer> clusterSet = new ClusterSetIndexed<Integer>(ImmutableList.of(0, 1, 2));
+		clusterSet.remove(1);
+		assertTrue(clusterSet.getCombinationsIds(1).isEmpty());
+		assertTrue(clusterSet.getCombinationsIds(7).isEmpty());
+		assertEquals(1, clusterSet.getCombinationsIds(0).size());
+	}
+
+	@Test
+	public void testStoredCombinationsFollowReusedSlots() {
+		ClusterSetIndexed<Integer> clusterSet = new ClusterSetIndexed<Integer>(ImmutableList.copyOf(Arrays.asList(0, 1, 2, 3)));
+		clusterSet.remove(1);
+		clusterSet.add(4);
+		assertEquals(6, clusterSet.getCombinationsIds().size());
+		assertEquals(clusterSet.getCombinationsIds(4).size(), 3);
+		TLongIterator it = clusterSet.getCombinationsIds().iterator();
+		while (it.hasNext()) {
+			assertTrue(! clusterSet.getCombination(it.next()).contains(1));
+		}
+	}
+
+}
@@ -0,0 +1,185 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.CobwebAttribute;
+import ch.uzh.agglorecommender.clusterer.treecomponent.ENodeType;
+import ch.uzh.agglorecommender.clusterer.treecomponent.IAttribute;
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.Node;
+import ch.uzh.agglorecommender.clusterer.treecomponent.TestNodes;
+
+public class CobwebCategoryUtilityKernelTest {
+
+	/**
+	 * The summation orders differ, thus the results are only equal up to rounding.
+	 */
+	@Test
+	public void testKernelEqualsProbabilityMapCalculation() {
+		Random random = new Random(17);
+		List<INode> attributes = TestNodes.createAttributeNodes(40);
+		List<INode> nominalAttributes = TestNodes.createAttributeNodes(5);
+
+		for (int run = 0; run < 50; run++) {
+			INode first = createNode(attributes, nominalAttributes, random);
+			INode second = createNode(attributes, nominalAttributes, random);
+			for (boolean numerical : new boolean[] { true, false }) {
+				double expected = CobwebMaxCategoryUtilitySearcher.calculateCategoryUtility(Arrays.asList(first, second), numerical);
+				assertEquals(expected, CobwebMaxCategoryUtilitySearcher.calculateCategoryUtility(first, second, numerical), 1e-12);
+			}
+		}
+	}
+
+	/**
+	 * The kernel calculates each squared probability bitwise equal to the probability map calculation,
+	 * but sums them in the order of its merge-join instead of the hash order of the probability maps.
+	 * Thus it is bitwise equal to the terms of the probability maps summed in its order.
+	 */
+	@Test
+	public void testKernelEqualsProbabilityMapTermsInKernelOrder() {
+		Random random = new Random(31);
+		List<INode> attributes = TestNodes.createAttributeNodes(40);
+		List<INode> nominalAttributes = TestNodes.createAttributeNodes(5);
+
+		for (int run = 0; run < 50; run++) {
+			INode first = createNode(attributes, nominalAttributes, random);
+			INode second = createNode(attributes, nominalAttributes, random);
+			for (boolean numerical : new boolean[] { true, false }) {
+				double expected = sumInKernelOrder(first, second, numerical);
+				assertEquals(expected, CobwebMaxCategoryUtilitySearcher.calculateCategoryUtility(first, second, numerical), 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void testKernelIsExactForSingleAttribute() {
+		Random random = new Random(19);
+		List<INode> attributes = TestNodes.createAttributeNodes(1);
+		for (int run = 0; run < 50; run++) {
+			INode first = createNode(attributes, new ArrayList<INode>(), random);
+			INode second = createNode(attributes, new ArrayList<INode>(), random);
+			if (first.getNumericalAttributeKeys().isEmpty() && second.getNumericalAttributeKeys().isEmpty()) continue;
+
+			// the same terms in the same order, thus the results are bitwise equal
+			double expected = CobwebMaxCategoryUtilitySearcher.calculateCategoryUtility(Arrays.asList(first, second), true);
+			assertEquals(expected, CobwebMaxCategoryUtilitySearcher.calculateCategoryUtility(first, second, true), 0.0);
+		}
+	}
+
+	@Test
+	public void testDefaultSearcherUsesNominalAttributesOnly() {
+		Random random = new Random(29);
+		List<INode> attributes = TestNodes.createAttributeNodes(20);
+		List<INode> nominalAttributes = TestNodes.createAttributeNodes(3);
+		CobwebMaxCategoryUtilitySearcher defaultSearcher = new CobwebMaxCategoryUtilitySearcher();
+		CobwebMaxCategoryUtilitySearcher ratingSearcher = new CobwebMaxCategoryUtilitySearcher(true);
+		for (int run = 0; run < 20; run++) {
+			List<INode> merge = Arrays.asList(
+					createNode(attributes, nominalAttributes, random),
+					createNode(attributes, nominalAttributes, random));
+			assertEquals(CobwebMaxCategoryUtilitySearcher.calculateCategoryUtility(merge, false),
+					defaultSearcher.calculateCategoryUtility(merge), 1e-12);
+			assertEquals(CobwebMaxCategoryUtilitySearcher.calculateCategoryUtility(merge, true),
+					ratingSearcher.calculateCategoryUtility(merge), 1e-12);
+		}
+	}
+
+	@Test
+	public void testMergedAttributeEqualsProbabilityMap() {
+		Random random = new Random(23);
+		List<INode> attributes = TestNodes.createAttributeNodes(10);
+		for (int run = 0; run < 50; run++) {
+			List<INode> merge = Arrays.asList(
+					createNode(attributes, new ArrayList<INode>(), random),
+					createNode(attributes, new ArrayList<INode>(), random),
+					createNode(attributes, new ArrayList<INode>(), random));
+			int leafCount = 3;
+			for (INode attribute : attributes) {
+				Map<Object, Double> expected = CobwebMaxCategoryUtilitySearcher.calculateAttributeProbabilities(attribute, merge, leafCount);
+				CobwebAttribute merged = CobwebMaxCategoryUtilitySearcher.calculateMergedAttribute(attribute, merge, leafCount);
+				Map<Object, Double> actual = new HashMap<Object, Double>();
+				Iterator<Map.Entry<Object, Double>> it = merged.getProbabilities();
+				while (it.hasNext()) {
+					Map.Entry<Object, Double> entry = it.next();
+					actual.put(entry.getKey(), entry.getValue());
+				}
+				assertEquals(expected.keySet(), actual.keySet());
+				for (Object value : expected.keySet()) {
+					assertEquals((float) expected.get(value).doubleValue(), actual.get(value).floatValue(), 0.0f);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sums the squared probabilities of the probability map calculation in the order of the kernel:
+	 * the attributes of the first node, then the attributes only of the second node,
+	 * the values of an attribute in the order of their codes.
+	 */
+	private static double sumInKernelOrder(INode first, INode second, boolean numerical) {
+		List<INode> merge = Arrays.asList(first, second);
+		int leafCount = first.getNumberOfLeafNodes() + second.getNumberOfLeafNodes();
+		List<Object> keys = new ArrayList<Object>();
+		if (numerical) {
+			keys.addAll(first.getNumericalAttributeKeys());
+			for (INode key : second.getNumericalAttributeKeys()) {
+				if (first.getNumericalAttributeValue(key) == null) keys.add(key);
+			}
+		}
+		keys.addAll(first.getNominalAttributeKeys());
+		for (Object key : second.getNominalAttributeKeys()) {
+			if (first.getNominalAttributeValue(key) == null) keys.add(key);
+		}
+
+		double sum = 0.0;
+		for (Object key : keys) {
+			Map<Object, Double> probabilities = CobwebMaxCategoryUtilitySearcher.calculateAttributeProbabilities((INode) key, merge, leafCount);
+			// the entries of an attribute are in the order of the value codes
+			Iterator<Map.Entry<Object, Double>> it = new CobwebAttribute(probabilities).getProbabilities();
+			while (it.hasNext()) {
+				double probability = probabilities.get(it.next().getKey());
+				sum += probability * probability;
+			}
+		}
+		return sum / (double) keys.size();
+	}
+
+	/**
+	 * Creates a node with random rating probabilities and one random nominal value per nominal attribute.
+	 */
+	private static INode createNode(List<INode> attributes, List<INode> nominalAttributes, Random random) {
+		Map<INode, IAttribute> numerical = new HashMap<INode, IAttribute>();
+		for (INode attribute : attributes) {
+			if (random.nextDouble() < 0.3) {
+				Map<Object, Double> probabilities = new HashMap<Object, Double>();
+				for (int rating = 1; rating <= 5; rating++) {
+					if (random.nextDouble() < 0.4) {
+						probabilities.put(rating / 5.0, (double) random.nextFloat());
+					}
+				}
+				numerical.put(attribute, new CobwebAttribute(probabilities));
+			}
+		}
+		Map<Object, IAttribute> nominal = new HashMap<Object, IAttribute>();
+		for (INode attribute : nominalAttributes) {
+			Map<Object, Double> probabilities = new HashMap<Object, Double>();
+			probabilities.put("value" + random.nextInt(3), 1.0);
+			nominal.put(attribute, new CobwebAttribute(probabilities));
+		}
+		Node node = new Node(ENodeType.User, 0, null);
+		node.setNumericalAttributes(numerical);
+		node.setNominalAttributes(nominal);
+		return node;
+	}
+
+}
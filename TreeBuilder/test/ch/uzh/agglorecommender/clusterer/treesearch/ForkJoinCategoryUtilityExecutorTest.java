@@ -0,0 +1,129 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import static ch.uzh.agglorecommender.clusterer.treesearch.MergeSelectorFixtures.createClusterSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import gnu.trove.iterator.TLongIterator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+
+public class ForkJoinCategoryUtilityExecutorTest {
+
+	@Test
+	public void testAllCombinationsCalculated() {
+		ClusterSetIndexed<INode> clusterSet = createClusterSet(100);
+		long[] ids = clusterSet.getCombinationsIds().toArray();
+		double[] utilities = new double[ids.length];
+		boolean[] calculated = new boolean[ids.length];
+		StubSearcher searcher = new StubSearcher(-1L);
+
+		int best = new ForkJoinCategoryUtilityExecutor().evaluate(ids, utilities, calculated, searcher, clusterSet);
+
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < ids.length; i++) {
+			assertTrue(calculated[i]);
+			assertEquals(searcher.calculateCategoryUtility(clusterSet.getCombination(ids[i])), utilities[i], 0.0);
+			max = Math.max(max, utilities[i]);
+		}
+		assertEquals(max, utilities[best], 0.0);
+	}
+
+	@Test
+	public void testTerminationOnMaxTheoreticalCategoryUtility() {
+		ClusterSetIndexed<INode> clusterSet = createClusterSet(100);
+		long[] ids = clusterSet.getCombinationsIds().toArray();
+		double[] utilities = new double[ids.length];
+		boolean[] calculated = new boolean[ids.length];
+		int maxPosition = ids.length / 3;
+		long maxKey = getKey(clusterSet.getCombination(ids[maxPosition]));
+
+		int best = new ForkJoinCategoryUtilityExecutor().evaluate(ids, utilities, calculated, new StubSearcher(maxKey), clusterSet);
+
+		assertEquals(maxPosition, best);
+		assertTrue(calculated[maxPosition]);
+		assertEquals(1.0, utilities[maxPosition], 0.0);
+
+		// a new evaluation is not affected by the termination of the previous one
+		calculated = new boolean[ids.length];
+		new ForkJoinCategoryUtilityExecutor().evaluate(ids, utilities, calculated, new StubSearcher(-1L), clusterSet);
+		for (boolean c : calculated) {
+			assertTrue(c);
+		}
+	}
+
+	@Test
+	public void testCombinationsWithoutIdsCalculated() {
+		ClusterSetIndexed<INode> clusterSet = createClusterSet(100);
+		List<Collection<INode>> combinations = new ArrayList<Collection<INode>>();
+		TLongIterator it = clusterSet.getCombinationsIds().iterator();
+		while (it.hasNext()) {
+			combinations.add(clusterSet.getCombination(it.next()));
+		}
+		double[] utilities = new double[combinations.size()];
+		boolean[] calculated = new boolean[combinations.size()];
+		int maxPosition = combinations.size() / 2;
+		StubSearcher searcher = new StubSearcher(getKey(combinations.get(maxPosition)));
+
+		int best = new ForkJoinCategoryUtilityExecutor().evaluate(combinations, utilities, calculated, searcher);
+
+		assertEquals(maxPosition, best);
+		assertEquals(1.0, utilities[maxPosition], 0.0);
+		for (int i = 0; i < combinations.size(); i++) {
+			if (calculated[i]) {
+				assertEquals(searcher.calculateCategoryUtility(combinations.get(i)), utilities[i], 0.0);
+			}
+		}
+
+		// the searcher evaluates sets of combinations with its executor
+		Set<IMergeResult> results = new StubSearcher(-1L).getMaxCategoryUtilityMerges(
+				new HashSet<Collection<INode>>(combinations), clusterSet);
+		assertEquals(combinations.size(), results.size());
+	}
+
+	private static long getKey(Collection<INode> combination) {
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		for (INode node : combination) {
+			min = Math.min(min, node.getId());
+			max = Math.max(max, node.getId());
+		}
+		return min * 1000003L + max;
+	}
+
+	/**
+	 * Returns a deterministic utility in [0, 0.5) for each combination and
+	 * the max theoretical utility for the combination with the passed key.
+	 */
+	private static class StubSearcher extends BasicMaxCategoryUtilitySearcher {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long maxKey;
+
+		private StubSearcher(long maxKey) {
+			this.maxKey = maxKey;
+		}
+
+		@Override
+		protected double calculateCategoryUtility(Collection<INode> possibleMerge) {
+			long key = getKey(possibleMerge);
+			if (key == maxKey) return 1.0;
+			return (double) ((key * 2654435761L) & 0xffff) / 131072.0;
+		}
+
+		@Override
+		protected double getMaxTheoreticalPossibleCategoryUtility() {
+			return 1.0;
+		}
+	}
+
+}
@@ -0,0 +1,138 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import static ch.uzh.agglorecommender.clusterer.treesearch.MergeSelectorFixtures.cluster;
+import static ch.uzh.agglorecommender.clusterer.treesearch.MergeSelectorFixtures.createClusterSet;
+import static ch.uzh.agglorecommender.clusterer.treesearch.MergeSelectorFixtures.createDisjointGroups;
+import static ch.uzh.agglorecommender.clusterer.treesearch.MergeSelectorFixtures.performMerge;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.ClassitTreeComponentFactory;
+import ch.uzh.agglorecommender.clusterer.treecomponent.ENodeType;
+import ch.uzh.agglorecommender.clusterer.treecomponent.IAttribute;
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.TestNodes;
+import ch.uzh.agglorecommender.clusterer.treesearch.MergeSelectorFixtures.SpanSearcher;
+import ch.uzh.agglorecommender.clusterer.treesearch.MergeSelectorFixtures.SumSearcher;
+
+public class HeapMergeSelectorTest {
+
+	@Test
+	public void testSelectedMergesAreDisjointAndWithinTolerance() {
+		ClusterSetIndexed<INode> clusterSet = createClusterSet(10);
+		HeapMergeSelector selector = new HeapMergeSelector(new SumSearcher());
+
+		// (8,9) is the best merge, (6,7) the best merge without node 8 or 9
+		List<IMergeResult> merges = selector.selectBestMerges(clusterSet, 3, 5.0);
+		assertEquals(2, merges.size());
+		assertEquals(17.008, merges.get(0).getCategoryUtility(), 1e-9);
+		assertEquals(13.006, merges.get(1).getCategoryUtility(), 1e-9);
+		assertTrue(Collections.disjoint(merges.get(0).getNodes(), merges.get(1).getNodes()));
+
+		assertEquals(1, selector.getNumberOfNonGreedyMerges());
+		assertEquals(4.002, selector.getMaxUtilityGap(), 1e-9);
+		assertEquals(4.002, selector.getMeanUtilityGap(), 1e-9);
+		MergeSelectionStatistics statistics = selector.getStatistics();
+		assertEquals(1, statistics.getNumberOfNonGreedyMerges());
+		assertEquals(4.002, statistics.getMeanUtilityGap(), 1e-9);
+		assertEquals(4.002, statistics.getMaxUtilityGap(), 1e-9);
+	}
+
+	@Test
+	public void testZeroToleranceSelectsOnlyTheBestMerge() {
+		ClusterSetIndexed<INode> clusterSet = createClusterSet(10);
+		HeapMergeSelector selector = new HeapMergeSelector(new SumSearcher());
+
+		List<IMergeResult> merges = selector.selectBestMerges(clusterSet, 3, 0.0);
+		assertEquals(1, merges.size());
+		assertEquals(17.008, merges.get(0).getCategoryUtility(), 1e-9);
+		assertEquals(0, selector.getNumberOfNonGreedyMerges());
+	}
+
+	@Test
+	public void testDisconnectedComponentsAreMergedAtZeroUtility() {
+		// the posting lists of the set contain no combination of the two groups
+		AttributeIndexedClusterSet clusterSet = createDisjointGroups();
+		HeapMergeSelector selector = new HeapMergeSelector(new SumSearcher());
+
+		List<INode> newNodes = new ArrayList<INode>();
+		for (int merge = 0; merge < 2; merge++) {
+			IMergeResult result = selector.selectBestMerge(clusterSet);
+			assertTrue(result.getCategoryUtility() > 0.0);
+			newNodes.add(performMerge(result, clusterSet, selector));
+		}
+
+		assertTrue(clusterSet.getCombinationsIds().isEmpty());
+		IMergeResult last = selector.selectBestMerge(clusterSet);
+		assertEquals(0.0, last.getCategoryUtility(), 0.0);
+		assertEquals(new HashSet<INode>(newNodes), new HashSet<INode>(last.getNodes()));
+		performMerge(last, clusterSet, selector);
+		assertTrue(clusterSet.clusteringDone());
+		assertTrue(selector.selectBestMerges(clusterSet, 2, 0.0).isEmpty());
+	}
+
+	@Test
+	public void testChangedNodesOfNotIndexedSetAreEvaluatedAgain() {
+		List<INode> nodes = TestNodes.createNodes(ENodeType.User, 4);
+		for (INode node : nodes) {
+			node.setNumericalAttributes(new HashMap<INode, IAttribute>());
+		}
+		ClusterSetIndexed<INode> clusterSet = createClusterSet(nodes);
+		HeapMergeSelector selector = new HeapMergeSelector(new AttributeCountSearcher());
+		assertEquals(0.0, selector.getBestMerges(clusterSet, 1).get(0).getCategoryUtility(), 0.0);
+
+		// the plain set doesn't report the changes, they are found by the attribute versions
+		IAttribute attribute = ClassitTreeComponentFactory.getInstance().createNumericAttribute(1.0);
+		nodes.get(1).addNumericalAttribute(nodes.get(0), attribute);
+		nodes.get(2).addNumericalAttribute(nodes.get(0), attribute);
+		IMergeResult best = selector.selectBestMerge(clusterSet);
+		assertEquals(2.0, best.getCategoryUtility(), 0.0);
+		assertEquals(new HashSet<INode>(nodes.subList(1, 3)), new HashSet<INode>(best.getNodes()));
+	}
+
+	@Test
+	public void testBoundedHeapSelectsTheSameMerges() {
+		HeapMergeSelector unbounded = new HeapMergeSelector(new SpanSearcher(), Long.MAX_VALUE);
+		HeapMergeSelector bounded = new HeapMergeSelector(new SpanSearcher(), 8 * HeapMergeSelector.BYTES_PER_ENTRY);
+
+		List<Double> unboundedUtilities = new ArrayList<Double>();
+		List<Double> boundedUtilities = new ArrayList<Double>();
+		assertEquals(cluster(unbounded, 12, unboundedUtilities), cluster(bounded, 12, boundedUtilities));
+		assertEquals(unboundedUtilities, boundedUtilities);
+		assertEquals(0, unbounded.getNumberOfEvictions());
+		assertTrue(bounded.getNumberOfEvictions() > 0);
+		assertTrue(bounded.getNumberOfRescans() > 0);
+	}
+
+	/**
+	 * The category utility of a pair is the number of numerical attributes of both nodes.
+	 */
+	private static class AttributeCountSearcher extends BasicMaxCategoryUtilitySearcher {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected double calculateCategoryUtility(Collection<INode> possibleMerge) {
+			int count = 0;
+			for (INode node : possibleMerge) {
+				count += node.getNumericalAttributeKeys().size();
+			}
+			return count;
+		}
+
+		@Override
+		protected double getMaxTheoreticalPossibleCategoryUtility() {
+			return Double.MAX_VALUE;
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IndexedMaxHeapTest {
+
+	@Test
+	public void pollReturnsKeysInDescendingValueOrder() {
+		IndexedMaxHeap heap = new IndexedMaxHeap(4);
+		heap.put(1, 0.5);
+		heap.put(2, 0.9);
+		heap.put(3, 0.1);
+		heap.put(4, 0.7);
+
+		assertEquals(4, heap.size());
+		assertEquals(2, heap.pollKey());
+		assertEquals(4, heap.pollKey());
+		assertEquals(1, heap.pollKey());
+		assertEquals(3, heap.pollKey());
+		assertTrue(heap.isEmpty());
+	}
+
+	@Test
+	public void equalValuesAreOrderedByKey() {
+		IndexedMaxHeap heap = new IndexedMaxHeap(4);
+		heap.put(7, 1.0);
+		heap.put(3, 1.0);
+		heap.put(5, 1.0);
+
+		assertEquals(3, heap.pollKey());
+		assertEquals(5, heap.pollKey());
+		assertEquals(7, heap.pollKey());
+	}
+
+	@Test
+	public void updateAndRemoveKeepHeapOrder() {
+		IndexedMaxHeap heap = new IndexedMaxHeap(4);
+		heap.put(1, 0.5);
+		heap.put(2, 0.9);
+		heap.put(3, 0.1);
+
+		assertFalse(heap.put(3, 2.0));
+		assertEquals(3, heap.peekKey());
+		assertEquals(2.0, heap.peekValue(), 0.0);
+
+		assertTrue(heap.remove(3));
+		assertFalse(heap.remove(3));
+		assertFalse(heap.contains(3));
+		assertTrue(Double.isNaN(heap.get(3)));
+		assertEquals(2, heap.peekKey());
+
+		heap.put(2, 0.0);
+		assertEquals(1, heap.peekKey());
+	}
+
+	@Test
+	public void topKeysDoesNotModifyHeap() {
+		IndexedMaxHeap heap = new IndexedMaxHeap(4);
+		for (int key = 0; key < 20; key++) {
+			heap.put(key, (key * 7) % 20);
+		}
+		long[] top = heap.topKeys(5);
+		assertEquals(5, top.length);
+		assertEquals(20, heap.size());
+		for (long key : top) {
+			assertEquals(heap.peekKey(), key);
+			heap.remove(key);
+		}
+		assertEquals(3, heap.topKeys(3).length);
+		assertEquals(15, heap.topKeys(100).length);
+		assertEquals(0, new IndexedMaxHeap(1).topKeys(3).length);
+	}
+
+	@Test
+	public void randomOperationsMatchReference() {
+		Random r = new Random(42);
+		IndexedMaxHeap heap = new IndexedMaxHeap(16);
+		Map<Long, Double> reference = new HashMap<Long, Double>();
+		for (int i = 0; i < 20000; i++) {
+			long key = r.nextInt(500);
+			if (r.nextInt(3) == 0) {
+				assertEquals(reference.remove(key) != null, heap.remove(key));
+			} else {
+				double value = r.nextInt(50) / 10.0;
+				reference.put(key, value);
+				heap.put(key, value);
+			}
+			assertEquals(reference.size(), heap.size());
+			if (! reference.isEmpty()) {
+				double max = -Double.MAX_VALUE;
+				for (double v : reference.values()) {
+					max = Math.max(max, v);
+				}
+				assertEquals(max, heap.peekValue(), 0.0);
+				assertEquals(max, reference.get(heap.peekKey()), 0.0);
+			}
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class KSubsetsTest {
+
+	@Test
+	public void testNextEnumeratesConsecutiveRanks() {
+		for (int k = 1; k <= 5; k++) {
+			int[] subset = new int[k];
+			for (int i = 0; i < k; i++) {
+				subset[i] = i;
+			}
+			long expectedRank = 0;
+			do {
+				assertEquals(expectedRank, KSubsets.rank(subset));
+				int[] unranked = new int[k];
+				KSubsets.unrank(expectedRank, unranked);
+				assertArrayEquals(subset, unranked);
+				expectedRank++;
+			} while (KSubsets.next(subset, 12));
+
+			// C(12, k) subsets
+			long binomial = 1;
+			for (int i = 0; i < k; i++) {
+				binomial = binomial * (12 - i) / (i + 1);
+			}
+			assertEquals(binomial, expectedRank);
+		}
+	}
+
+	@Test
+	public void testUnrankOfLargeIndices() {
+		int[][] subsets = {
+				{ 3, 70000 },
+				{ 1, 2, 4634, 5000, 6553 },
+				{ 999999, 1000000, 1000001 } };
+		for (int[] subset : subsets) {
+			int[] unranked = new int[subset.length];
+			KSubsets.unrank(KSubsets.rank(subset), unranked);
+			assertArrayEquals(subset, unranked);
+		}
+	}
+
+	@Test
+	public void testNextMaskEnumeratesAllMasks() {
+		int count = 0;
+		long limit = 1L << 10;
+		for (long mask = 7; mask < limit; mask = KSubsets.nextMask(mask)) {
+			assertEquals(3, Long.bitCount(mask));
+			count++;
+		}
+		assertEquals(120, count);
+	}
+
+	@Test
+	public void testIsRankable() {
+		assertTrue(KSubsets.isRankable(100000, 2));
+		assertTrue(KSubsets.isRankable(10000, 5));
+		assertTrue(KSubsets.isRankable(3, 5));
+		assertFalse(KSubsets.isRankable(100000, 5));
+	}
+
+}
@@ -0,0 +1,173 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.ClassitTreeComponentFactory;
+import ch.uzh.agglorecommender.clusterer.treecomponent.ENodeType;
+import ch.uzh.agglorecommender.clusterer.treecomponent.IAttribute;
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.Node;
+import ch.uzh.agglorecommender.clusterer.treecomponent.TestNodes;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ *
+ * Cluster sets, merge helpers and searchers with synthetic category utilities
+ * shared by the tests of the merge selectors.
+ *
+ */
+final class MergeSelectorFixtures {
+
+	private MergeSelectorFixtures() {
+		// static fixtures only
+	}
+
+	/**
+	 * Creates a set of user leaves without attributes whose data set ids are 0 to {@code numberOfNodes - 1}.
+	 */
+	static ClusterSetIndexed<INode> createClusterSet(int numberOfNodes) {
+		return createClusterSet(TestNodes.createNodes(ENodeType.User, numberOfNodes));
+	}
+
+	static ClusterSetIndexed<INode> createClusterSet(List<INode> nodes) {
+		return new ClusterSetIndexed<INode>(ImmutableList.copyOf(nodes));
+	}
+
+	/**
+	 * Creates an attribute indexed set of four users in two groups without a common attribute:
+	 * the users 0 and 1 rate only the first item, the users 2 and 3 only the second item.
+	 */
+	static AttributeIndexedClusterSet createDisjointGroups() {
+		List<INode> items = TestNodes.createNodes(ENodeType.Content, 2);
+		List<INode> users = new ArrayList<INode>();
+		for (int i = 0; i < 4; i++) {
+			INode user = new Node(ENodeType.User, i, null);
+			Map<INode, IAttribute> attributes = new HashMap<INode, IAttribute>();
+			attributes.put(items.get(i / 2), ClassitTreeComponentFactory.getInstance().createNumericAttribute(1.0));
+			user.setNumericalAttributes(attributes);
+			user.setNominalAttributes(new HashMap<Object, IAttribute>());
+			users.add(user);
+		}
+		return new AttributeIndexedClusterSet(ImmutableList.copyOf(users));
+	}
+
+	/**
+	 * Clusters user leaves with empty attribute maps with the passed selector until one node is left.
+	 *
+	 * @return the data set ids of the leaves of each merge in merge order
+	 */
+	static List<Set<Integer>> cluster(IMergeSelector selector, int numberOfLeaves) {
+		return cluster(selector, numberOfLeaves, new ArrayList<Double>());
+	}
+
+	/**
+	 * Clusters user leaves with empty attribute maps with the passed selector until one node is left.
+	 *
+	 * @param utilities receives the category utilities of the merges in merge order
+	 * @return the data set ids of the leaves of each merge in merge order
+	 */
+	static List<Set<Integer>> cluster(IMergeSelector selector, int numberOfLeaves, List<Double> utilities) {
+		List<INode> leaves = TestNodes.createNodes(ENodeType.User, numberOfLeaves);
+		for (INode leaf : leaves) {
+			leaf.setNumericalAttributes(new HashMap<INode, IAttribute>());
+		}
+		ClusterSetIndexed<INode> clusterSet = createClusterSet(leaves);
+		List<Set<Integer>> merges = new ArrayList<Set<Integer>>();
+		while (clusterSet.size() > 1) {
+			IMergeResult merge = selector.selectBestMerge(clusterSet);
+			INode newNode = performMerge(merge, clusterSet, selector);
+			merges.add(new TreeSet<Integer>(newNode.getDataSetIds()));
+			utilities.add(merge.getCategoryUtility());
+		}
+		return merges;
+	}
+
+	/**
+	 * Replaces the nodes of the passed merge by a new node with the union of their
+	 * numerical attributes and reports the merge to the selector.
+	 *
+	 * @return the new node
+	 */
+	static INode performMerge(IMergeResult merge, ClusterSetIndexed<INode> clusterSet, IMergeSelector selector) {
+		Map<INode, IAttribute> attributes = new HashMap<INode, IAttribute>();
+		for (INode node : merge.getNodes()) {
+			clusterSet.remove(node);
+			for (INode key : node.getNumericalAttributeKeys()) {
+				attributes.put(key, node.getNumericalAttributeValue(key));
+			}
+		}
+		INode newNode = new Node(ENodeType.User, merge.getNodes(), attributes, new HashMap<Object, IAttribute>(),
+				merge.getCategoryUtility());
+		clusterSet.add(newNode);
+		selector.mergePerformed(merge, newNode, clusterSet);
+		return newNode;
+	}
+
+	/**
+	 * The category utility of a subset is the sum of the data set ids of all its leaves plus
+	 * a small fraction of the smallest id. Thus all pairs of leaves have distinct utilities,
+	 * larger subsets of the leaves with the highest ids are better and a merged node is
+	 * nearer to every node than the merged nodes, i.e. the category utility is not reducible.
+	 */
+	static class SumSearcher extends BasicMaxCategoryUtilitySearcher {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected double calculateCategoryUtility(Collection<INode> possibleMerge) {
+			long sum = 0;
+			long min = Long.MAX_VALUE;
+			for (INode node : possibleMerge) {
+				for (int id : node.getDataSetIds()) {
+					sum += id;
+					min = Math.min(min, id);
+				}
+			}
+			return sum + min * 0.001;
+		}
+
+		@Override
+		protected double getMaxTheoreticalPossibleCategoryUtility() {
+			return Double.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * The category utility of a pair is the negative span of the data set ids of all leaves
+	 * of both nodes (complete linkage), minus a small fraction of the sum of 2^id of the leaves.
+	 * Thus the utilities of pairs of open nodes are distinct and a merged node is never
+	 * nearer to a node than the nearer of the merged nodes, i.e. the category utility is reducible.
+	 */
+	static class SpanSearcher extends BasicMaxCategoryUtilitySearcher {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected double calculateCategoryUtility(Collection<INode> possibleMerge) {
+			long min = Long.MAX_VALUE;
+			long max = Long.MIN_VALUE;
+			long bits = 0;
+			for (INode node : possibleMerge) {
+				for (int id : node.getDataSetIds()) {
+					min = Math.min(min, id);
+					max = Math.max(max, id);
+					bits |= 1L << id;
+				}
+			}
+			return min - max - bits * 1e-6;
+		}
+
+		@Override
+		protected double getMaxTheoreticalPossibleCategoryUtility() {
+			return Double.MAX_VALUE;
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gnu.trove.iterator.TLongDoubleIterator;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.map.TLongDoubleMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.ClassitTreeComponentFactory;
+import ch.uzh.agglorecommender.clusterer.treecomponent.ENodeType;
+import ch.uzh.agglorecommender.clusterer.treecomponent.IAttribute;
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.Node;
+import ch.uzh.agglorecommender.clusterer.treecomponent.TreeComponentFactory;
+
+import com.google.common.collect.ImmutableList;
+
+public class MinHashCandidateMaxCUSearcherTest {
+
+	private final TreeComponentFactory factory = ClassitTreeComponentFactory.getInstance();
+
+	@Test
+	public void testOnlyCandidatesAreEvaluatedUntilFullScan() {
+		ClusterSetIndexed<INode> clusterSet = new ClusterSetIndexed<INode>(ImmutableList.copyOf(createGroupedNodes()));
+		MinHashCandidateMaxCUSearcher searcher = new MinHashCandidateMaxCUSearcher(new ClassitMaxCategoryUtilitySearcher(), 32, 4, 2);
+
+		TLongSet combinationIds = clusterSet.getCombinationsIds();
+		int numberOfCombinations = combinationIds.size();
+		TLongDoubleMap calculated = searcher.getMaxCategoryUtilityMerges(combinationIds, clusterSet);
+		assertTrue(calculated.size() < numberOfCombinations);
+		assertEquals(calculated.size(), combinationIds.size());
+		TLongIterator it = combinationIds.iterator();
+		while (it.hasNext()) {
+			assertTrue(searcher.isCandidate(it.next(), clusterSet));
+		}
+
+		// the second call is a full scan and evaluates the deferred combinations
+		TLongDoubleMap scanned = searcher.getMaxCategoryUtilityMerges(new TLongHashSet(), clusterSet);
+		assertEquals(numberOfCombinations - calculated.size(), scanned.size());
+		assertEquals(1, searcher.getNumberOfFullScans());
+		TLongIterator scannedIt = scanned.keySet().iterator();
+		while (scannedIt.hasNext()) {
+			assertFalse(calculated.containsKey(scannedIt.next()));
+		}
+
+		// the best combinations are within the groups, thus none of them was deferred
+		IndexedMaxHeap heap = new IndexedMaxHeap(numberOfCombinations);
+		putAll(heap, calculated);
+		putAll(heap, scanned);
+		assertTrue(Double.isNaN(searcher.getRecall()));
+		searcher.recordRecall(heap);
+		assertEquals(1.0, searcher.getRecall(), 0.0);
+		assertEquals(1.0, searcher.measureRecall(clusterSet.getCombinationsIds(), clusterSet, 5), 0.0);
+	}
+
+	@Test
+	public void testCombinationsWithoutCandidatesAreEvaluated() {
+		List<INode> nodes = createGroupedNodes();
+		ClusterSetIndexed<INode> clusterSet = new ClusterSetIndexed<INode>(ImmutableList.copyOf(nodes));
+		MinHashCandidateMaxCUSearcher searcher = new MinHashCandidateMaxCUSearcher(new ClassitMaxCategoryUtilitySearcher(), 32, 4, 0);
+		INode first = nodes.get(0);
+
+		// the combinations of a node of another group only
+		TLongSet combinationIds = clusterSet.getCombinationsIds(first);
+		TLongIterator it = combinationIds.iterator();
+		while (it.hasNext()) {
+			if (searcher.isCandidate(it.next(), clusterSet)) it.remove();
+		}
+		int numberOfCombinations = combinationIds.size();
+		assertFalse(combinationIds.isEmpty());
+		TLongDoubleMap calculated = searcher.getMaxCategoryUtilityMerges(combinationIds, clusterSet);
+		assertEquals(numberOfCombinations, calculated.size());
+	}
+
+	@Test
+	public void testRecallIsRecordedByHeapMergeSelector() {
+		ClusterSetIndexed<INode> clusterSet = new ClusterSetIndexed<INode>(ImmutableList.copyOf(createGroupedNodes()));
+		MinHashCandidateMaxCUSearcher searcher = new MinHashCandidateMaxCUSearcher(new ClassitMaxCategoryUtilitySearcher(), 32, 4, 1);
+		HeapMergeSelector selector = new HeapMergeSelector(searcher);
+		selector.selectBestMerge(clusterSet);
+		assertEquals(1, searcher.getNumberOfFullScans());
+		assertEquals(1.0, searcher.getRecall(), 0.0);
+	}
+
+	private static void putAll(IndexedMaxHeap heap, TLongDoubleMap calculated) {
+		TLongDoubleIterator it = calculated.iterator();
+		while (it.hasNext()) {
+			it.advance();
+			heap.put(it.key(), it.value());
+		}
+	}
+
+	/**
+	 * Creates four groups of five nodes, the nodes of a group share most of their attributes.
+	 */
+	private List<INode> createGroupedNodes() {
+		List<INode> attributes = new ArrayList<INode>();
+		for (int i = 0; i < 400; i++) {
+			attributes.add(new Node(ENodeType.Content, i, null));
+		}
+		List<INode> nodes = new ArrayList<INode>();
+		for (int group = 0; group < 4; group++) {
+			for (int n = 0; n < 5; n++) {
+				Map<INode, IAttribute> attMap = new HashMap<INode, IAttribute>();
+				for (int i = group * 100 + n; i < group * 100 + 95 + n; i++) {
+					attMap.put(attributes.get(i), factory.createNumericAttribute(1 + (i + n) % 5));
+				}
+				INode node = new Node(ENodeType.User, nodes.size(), null);
+				node.setNumericalAttributes(factory.createNumericalAttributeMap(attMap));
+				node.setNominalAttributes(new HashMap<Object, IAttribute>());
+				nodes.add(node);
+			}
+		}
+		return nodes;
+	}
+
+}
@@ -0,0 +1,86 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import static ch.uzh.agglorecommender.clusterer.treesearch.MergeSelectorFixtures.cluster;
+import static ch.uzh.agglorecommender.clusterer.treesearch.MergeSelectorFixtures.createDisjointGroups;
+import static ch.uzh.agglorecommender.clusterer.treesearch.MergeSelectorFixtures.performMerge;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treesearch.MergeSelectorFixtures.SpanSearcher;
+import ch.uzh.agglorecommender.clusterer.treesearch.MergeSelectorFixtures.SumSearcher;
+
+public class NearestNeighbourChainMergeSelectorTest {
+
+	/**
+	 * With a reducible utility the chain builds the same clusters as the greedy selection.
+	 * The order of the merges depends on the start of the chain, i.e. on the iteration
+	 * order of the open nodes, thus only the clusters are compared.
+	 */
+	@Test
+	public void testReducibleUtilityFollowsGreedyOrder() {
+		List<Set<Integer>> greedy = cluster(new HeapMergeSelector(new SpanSearcher()), 12);
+		NearestNeighbourChainMergeSelector selector = new NearestNeighbourChainMergeSelector(new SpanSearcher());
+		List<Set<Integer>> chain = cluster(selector, 12);
+
+		assertEquals(11, greedy.size());
+		assertEquals(11, chain.size());
+		assertEquals(new HashSet<Set<Integer>>(greedy), new HashSet<Set<Integer>>(chain));
+		assertEquals(0, selector.getNumberOfDivergences());
+		assertEquals(11, selector.getStatistics().getNumberOfMerges());
+	}
+
+	@Test
+	public void testNonReducibleUtilityIsCountedAsDivergence() {
+		NearestNeighbourChainMergeSelector selector = new NearestNeighbourChainMergeSelector(new SumSearcher());
+		List<Set<Integer>> merges = cluster(selector, 10);
+
+		// the new node of the first merge is nearer to the rest of the chain than its former neighbour
+		assertEquals(9, merges.size());
+		assertTrue(selector.getNumberOfDivergences() > 0);
+		assertEquals(selector.getNumberOfDivergences(), selector.getStatistics().getNumberOfDivergences());
+	}
+
+	/**
+	 * The nearest neighbour searches are cached with a budget far below the number of
+	 * combinations, the cache evicts entries and the clusters don't change.
+	 */
+	@Test
+	public void testCachedNearestNeighbourSearchEvictsDuringClustering() {
+		List<Set<Integer>> uncached = cluster(new NearestNeighbourChainMergeSelector(new SpanSearcher()), 30);
+		CachedMaxCUSearcher cachedSearcher = new CachedMaxCUSearcher(new SpanSearcher(), 128 * CategoryUtilityCache.BYTES_PER_ENTRY);
+		List<Set<Integer>> cached = cluster(new NearestNeighbourChainMergeSelector(new SpanSearcher(), cachedSearcher), 30);
+
+		assertEquals(new HashSet<Set<Integer>>(uncached), new HashSet<Set<Integer>>(cached));
+		CategoryUtilityCache cache = cachedSearcher.getCache();
+		assertTrue(cache.getEvictions() > 0);
+		assertTrue(cache.getHits() > 0);
+		assertTrue(cache.size() <= cache.getMaxEntries());
+	}
+
+	@Test
+	public void testDisconnectedComponentsAreMergedAtZeroUtility() {
+		// the posting lists of the set contain no combination of the two groups
+		AttributeIndexedClusterSet clusterSet = createDisjointGroups();
+		NearestNeighbourChainMergeSelector selector = new NearestNeighbourChainMergeSelector(new SumSearcher());
+
+		List<INode> newNodes = new ArrayList<INode>();
+		for (int merge = 0; merge < 2; merge++) {
+			IMergeResult result = selector.selectBestMerge(clusterSet);
+			assertTrue(result.getCategoryUtility() > 0.0);
+			newNodes.add(performMerge(result, clusterSet, selector));
+		}
+
+		IMergeResult last = selector.selectBestMerge(clusterSet);
+		assertEquals(0.0, last.getCategoryUtility(), 0.0);
+		assertEquals(new HashSet<INode>(newNodes), new HashSet<INode>(last.getNodes()));
+	}
+
+}
@@ -0,0 +1,101 @@
+package ch.uzh.agglorecommender.clusterer.treesearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.set.TLongSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.uzh.agglorecommender.clusterer.treecomponent.ClassitAttribute;
+import ch.uzh.agglorecommender.clusterer.treecomponent.ClassitTreeComponentFactory;
+import ch.uzh.agglorecommender.clusterer.treecomponent.ENodeType;
+import ch.uzh.agglorecommender.clusterer.treecomponent.IAttribute;
+import ch.uzh.agglorecommender.clusterer.treecomponent.INode;
+import ch.uzh.agglorecommender.clusterer.treecomponent.Node;
+
+import com.google.common.collect.ImmutableList;
+
+public class UpperBoundTopKMaxCUSearcherTest {
+
+	@Test
+	public void testUpperBoundIsNotBelowCategoryUtility() {
+		for (boolean columnar : new boolean[] { false, true }) {
+			List<INode> nodes = createNodes(60, columnar, new Random(3));
+			for (int i = 0; i < nodes.size(); i++) {
+				for (int j = i + 1; j < nodes.size(); j++) {
+					double utility = ClassitMaxCategoryUtilitySearcher.calculateCategoryUtility(nodes.get(i), nodes.get(j));
+					double bound = ClassitMaxCategoryUtilitySearcher.calculateUpperBoundOfCategoryUtility(nodes.get(i), nodes.get(j));
+					assertTrue(utility + " > " + bound, utility <= bound + 1e-12);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testTopKMergesEqualExhaustiveSearch() {
+		for (boolean columnar : new boolean[] { false, true }) {
+			ClusterSetIndexed<INode> clusterSet = new ClusterSetIndexed<INode>(
+					ImmutableList.copyOf(createNodes(120, columnar, new Random(5))));
+			TLongSet combinationIds = clusterSet.getCombinationsIds();
+			int numberOfCombinations = combinationIds.size();
+			double[] expected = new double[numberOfCombinations];
+			int n = 0;
+			TLongIterator it = combinationIds.iterator();
+			while (it.hasNext()) {
+				Iterator<INode> nodes = clusterSet.getCombination(it.next()).iterator();
+				expected[n++] = ClassitMaxCategoryUtilitySearcher.calculateCategoryUtility(nodes.next(), nodes.next());
+			}
+			Arrays.sort(expected);
+
+			int k = 5;
+			UpperBoundTopKMaxCUSearcher searcher = new UpperBoundTopKMaxCUSearcher(new ClassitMaxCategoryUtilitySearcher());
+			List<IMergeResult> topK = searcher.getTopKMerges(combinationIds, clusterSet, k);
+
+			assertEquals(k, topK.size());
+			for (int i = 0; i < k; i++) {
+				assertEquals(expected[numberOfCombinations - 1 - i], topK.get(i).getCategoryUtility(), 1e-12);
+			}
+			// pruned combinations stay in the set of combinations
+			assertEquals(numberOfCombinations, combinationIds.size());
+			assertEquals(numberOfCombinations, searcher.getNumberOfCalculatedCombinations() + searcher.getNumberOfPrunedCombinations());
+			assertTrue(searcher.getNumberOfPrunedCombinations() > 0);
+		}
+	}
+
+	/**
+	 * Creates nodes with sparse ratings of a few popular and many rare attributes.
+	 */
+	private static List<INode> createNodes(int numberOfNodes, boolean columnar, Random random) {
+		List<INode> attributes = new ArrayList<INode>();
+		for (int i = 0; i < 200; i++) {
+			attributes.add(new Node(ENodeType.Content, i, null));
+		}
+		List<INode> nodes = new ArrayList<INode>();
+		for (int n = 0; n < numberOfNodes; n++) {
+			Map<INode, IAttribute> attMap = new HashMap<INode, IAttribute>();
+			for (INode attribute : attributes) {
+				double density = attribute.getId() < 10 ? 0.5 : 0.03;
+				if (random.nextDouble() < density) {
+					double rating = random.nextInt(11) / 10.0;
+					attMap.put(attribute, new ClassitAttribute(1, rating, rating * rating));
+				}
+			}
+			INode node = new Node(ENodeType.User, n, null);
+			node.setNumericalAttributes(columnar
+					? ClassitTreeComponentFactory.getInstance().createNumericalAttributeMap(attMap)
+					: attMap);
+			nodes.add(node);
+		}
+		return nodes;
+	}
+
+}